@@ -0,0 +1,4 @@
+# JMH-Benchmarks übersetzen und starten. Alle Parameter werden an JMH
+# weitergereicht, z.B. ./benchmark.sh XmlBenchmark -p objects=500 -prof gc
+mvn -B -q -Pjmh -DskipTests compile || exit 1
+java -Dfile.encoding=UTF-8 -Dlog4j.configurationFile=src/jmh/resources/log4j2-jmh.xml -classpath target/classes:$(cat target/jmh.classpath) org.openjdk.jmh.Main "$@"
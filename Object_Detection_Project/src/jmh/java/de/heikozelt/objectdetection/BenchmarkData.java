@@ -0,0 +1,54 @@
+package de.heikozelt.objectdetection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * Erzeugt synthetische Testdaten für die Benchmarks. Mit festem Seed, damit
+ * jeder Lauf dieselben Daten misst.
+ *
+ * @author Heiko Zelt
+ */
+public class BenchmarkData {
+
+	private static final String[] CLASS_NAMES = { "person", "bicycle", "car", "dog", "cat", "bird", "chair",
+			"potted plant", "tv", "laptop" };
+
+	/**
+	 * @param n Anzahl Objekte
+	 * @return n zufällige Objekte mit Wahrscheinlichkeit und Bounding Box
+	 */
+	public static DetectedObjects objects(int n) {
+		Random random = new Random(n);
+		List<String> classNames = new ArrayList<String>(n);
+		List<Double> probabilities = new ArrayList<Double>(n);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>(n);
+		for (int i = 0; i < n; i++) {
+			classNames.add(CLASS_NAMES[random.nextInt(CLASS_NAMES.length)]);
+			probabilities.add(random.nextDouble());
+			double x = random.nextDouble() * 0.8;
+			double y = random.nextDouble() * 0.8;
+			boundingBoxes.add(new Rectangle(x, y, random.nextDouble() * 0.2, random.nextDouble() * 0.2));
+		}
+		return new DetectedObjects(classNames, probabilities, boundingBoxes);
+	}
+
+	/**
+	 * @param count            Anzahl Ergebnisse
+	 * @param objectsPerResult Anzahl Objekte pro Ergebnis
+	 * @return Ergebnisse wie nach einem Lauf über count Bilder
+	 */
+	public static Result[] results(int count, int objectsPerResult) {
+		DetectedObjects objects = objects(objectsPerResult);
+		Result[] results = new Result[count];
+		for (int i = 0; i < count; i++) {
+			results[i] = new Result(String.format("IMG_%06d.jpg", i), 640, 480, objects, 100 + i % 50);
+		}
+		return results;
+	}
+}
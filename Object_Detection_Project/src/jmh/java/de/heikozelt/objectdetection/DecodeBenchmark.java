@@ -0,0 +1,64 @@
+package de.heikozelt.objectdetection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+
+/**
+ * Misst das Dekodieren der Beispielbilder im "collection"-Verzeichnis. Einmal
+ * nur das Dekodieren aus dem Speicher, einmal mit Lesen der Datei wie in
+ * BatchJob und einmal mit Subsampling (kürzere Kante mindestens 300 Pixel).
+ *
+ * @author Heiko Zelt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+	@Param({ "0006.png", "0406.png", "0660.png" })
+	String fileName;
+
+	byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		BatchJob.setCollectionPath("collection");
+		bytes = Files.readAllBytes(Paths.get("collection", fileName));
+	}
+
+	@Benchmark
+	public Image fromInputStream() throws IOException {
+		return ImageFactory.getInstance().fromInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	@Benchmark
+	public Image readImage() throws IOException {
+		return BatchJob.readImage(fileName);
+	}
+
+	@Benchmark
+	public Image subsampled() throws IOException {
+		return SubsampledImage.decode(bytes, 300);
+	}
+}
@@ -0,0 +1,75 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.translate.TranslateException;
+
+/**
+ * Misst den eigenen Code rund um die Objekt-Erkennung mit einem StubPredictor:
+ * Zeitmessung, Aufbau des Result-Objekts und Batch-Verwaltung. Die Inferenz
+ * selbst kostet hier nichts. Regressionen in BatchJob fallen so auf, ohne
+ * dass ein Modell geladen werden muss.
+ *
+ * @author Heiko Zelt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InferenceBenchmark {
+
+	@Param({ "1", "10", "100" })
+	int objects;
+
+	StubPredictor predictor;
+	List<String> fileNames = new ArrayList<String>();
+	List<Image> imgs = new ArrayList<Image>();
+
+	@Setup
+	public void setup() throws IOException {
+		BatchJob.setCollectionPath("collection");
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		BatchJob.setCache(null);
+		predictor = new StubPredictor(BenchmarkData.objects(objects));
+		for (String fileName : new String[] { "0006.png", "0406.png", "0660.png" }) {
+			fileNames.add(fileName);
+			imgs.add(BatchJob.readImage(fileName));
+		}
+	}
+
+	@Benchmark
+	public Result predict() throws TranslateException {
+		return BatchJob.predict(fileNames.get(0), imgs.get(0), predictor);
+	}
+
+	@Benchmark
+	public List<Result> predictBatch() throws TranslateException {
+		return BatchJob.predictBatch(fileNames, imgs, predictor);
+	}
+
+	/**
+	 * Lesen, Dekodieren und Erkennung eines Bildes wie in BatchJob.detectAll()
+	 */
+	@Benchmark
+	public Result detect() throws IOException, TranslateException {
+		return BatchJob.detect(fileNames.get(0), predictor);
+	}
+}
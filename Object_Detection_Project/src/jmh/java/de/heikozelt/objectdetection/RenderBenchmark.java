@@ -0,0 +1,88 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+
+/**
+ * Misst das Zeichnen der Bounding Boxes und Speichern der Kopie, einmal über
+ * die ARGB-Kopie in BatchJob.saveBoundingBoxImage(), einmal mit dem
+ * BoundingBoxRenderer in verschiedenen Einstellungen.
+ *
+ * @author Heiko Zelt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+	@Param({ "1", "10", "100" })
+	int objects;
+
+	Image img;
+	DetectedObjects detection;
+	Path dir;
+	String bbFileName;
+	BoundingBoxRenderer png = new BoundingBoxRenderer();
+	BoundingBoxRenderer fastPng = new BoundingBoxRenderer();
+	BoundingBoxRenderer thumbnail = new BoundingBoxRenderer();
+
+	@Setup
+	public void setup() throws IOException {
+		BatchJob.setCollectionPath("collection");
+		img = BatchJob.readImage("0006.png");
+		detection = BenchmarkData.objects(objects);
+		dir = Files.createTempDirectory("boxes");
+		bbFileName = dir.resolve("0006.png.boxes.png").toString();
+		fastPng.setPngCompression(1);
+		thumbnail.setFormat("jpg");
+		thumbnail.setMaxEdge(256);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(dir.resolve("0006.png.boxes.png"));
+		Files.deleteIfExists(dir.resolve("0006.png.boxes.jpg"));
+		Files.delete(dir);
+	}
+
+	@Benchmark
+	public void saveBoundingBoxImage() throws IOException {
+		BatchJob.saveBoundingBoxImage(img, detection, bbFileName);
+	}
+
+	@Benchmark
+	public void rendererPng() throws IOException {
+		png.render(dir.resolve("0006.png").toString(), img, detection);
+	}
+
+	@Benchmark
+	public void rendererFastPng() throws IOException {
+		fastPng.render(dir.resolve("0006.png").toString(), img, detection);
+	}
+
+	@Benchmark
+	public void rendererJpegThumbnail() throws IOException {
+		thumbnail.render(dir.resolve("0006.png").toString(), img, detection);
+	}
+}
@@ -0,0 +1,99 @@
+package de.heikozelt.objectdetection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Vergleicht XML-Format und Binärformat beim Schreiben und Lesen der
+ * Ergebnisse. Die Größe der Dateien wird beim Setup ausgegeben.
+ *
+ * @author Heiko Zelt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ResultFormatBenchmark {
+
+	@Param({ "10000" })
+	int results;
+
+	@Param({ "10" })
+	int objectsPerResult;
+
+	Result[] array;
+	byte[] xml;
+	byte[] binary;
+
+	@Setup
+	public void setup() throws IOException {
+		array = BenchmarkData.results(results, objectsPerResult);
+		xml = writeXml().getBytes(StandardCharsets.UTF_8);
+		binary = writeBinary();
+		System.out.println("xml: " + xml.length + " bytes, binary: " + binary.length + " bytes");
+	}
+
+	@Benchmark
+	public String writeXml() throws IOException {
+		StringWriter out = new StringWriter();
+		try (StreamingXmlExporter exporter = new StreamingXmlExporter(out)) {
+			for (Result r : array) {
+				exporter.accept(r);
+			}
+		}
+		return out.toString();
+	}
+
+	@Benchmark
+	public byte[] writeBinary() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryResultWriter writer = new BinaryResultWriter(out)) {
+			for (Result r : array) {
+				writer.accept(r);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Einlesen mit dem DOM-Parser des JDK
+	 */
+	@Benchmark
+	public Document readXml() throws IOException, SAXException, ParserConfigurationException {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+	}
+
+	@Benchmark
+	public void readBinary(Blackhole blackhole) throws IOException {
+		try (BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(binary))) {
+			Result r;
+			while ((r = reader.read()) != null) {
+				blackhole.consume(r);
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package de.heikozelt.objectdetection;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Misst BatchJob.resultsAsXml() für große Sammlungen.
+ *
+ * @author Heiko Zelt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ResultsXmlBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int results;
+
+	@Param({ "10" })
+	int objectsPerResult;
+
+	Result[] array;
+
+	@Setup
+	public void setup() {
+		array = BenchmarkData.results(results, objectsPerResult);
+	}
+
+	@Benchmark
+	public String resultsAsXml() {
+		return BatchJob.resultsAsXml(array);
+	}
+}
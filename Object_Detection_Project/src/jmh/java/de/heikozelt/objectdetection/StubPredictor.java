@@ -0,0 +1,74 @@
+package de.heikozelt.objectdetection;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import ai.djl.Device;
+import ai.djl.Model;
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.ndarray.NDManager;
+
+/**
+ * Predictor ohne Modell und ohne Engine. Er liefert immer dieselben Objekte.
+ * Damit laufen die Benchmarks offline und messen nur den eigenen Code rund um
+ * predict().
+ *
+ * @author Heiko Zelt
+ */
+public class StubPredictor extends Predictor<Image, DetectedObjects> {
+
+	private DetectedObjects objects;
+
+	/**
+	 * @param objects Ergebnis, das jeder Aufruf von predict() liefert
+	 */
+	public StubPredictor(DetectedObjects objects) {
+		super(stubModel(), null, false);
+		this.objects = objects;
+	}
+
+	/**
+	 * Baut ein Model, das nur die Aufrufe im Konstruktor von Predictor
+	 * beantwortet.
+	 */
+	private static Model stubModel() {
+		ClassLoader loader = StubPredictor.class.getClassLoader();
+		Object[] manager = new Object[1];
+		manager[0] = Proxy.newProxyInstance(loader, new Class<?>[] { NDManager.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "newSubManager":
+				return manager[0];
+			case "getDevice":
+				return Device.cpu();
+			case "isOpen":
+				return false;
+			default:
+				return null;
+			}
+		});
+		return (Model) Proxy.newProxyInstance(loader, new Class<?>[] { Model.class },
+				(proxy, method, args) -> "getNDManager".equals(method.getName()) ? manager[0] : null);
+	}
+
+	@Override
+	public DetectedObjects predict(Image img) {
+		return objects;
+	}
+
+	@Override
+	public List<DetectedObjects> batchPredict(List<Image> imgs) {
+		List<DetectedObjects> list = new ArrayList<DetectedObjects>(imgs.size());
+		for (int i = 0; i < imgs.size(); i++) {
+			list.add(objects);
+		}
+		return list;
+	}
+
+	@Override
+	public void close() {
+		// nichts zu tun
+	}
+}
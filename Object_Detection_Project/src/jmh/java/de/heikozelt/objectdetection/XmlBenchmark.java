@@ -0,0 +1,81 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.modality.cv.output.DetectedObjects.DetectedObject;
+
+/**
+ * Misst die XML-Ausgabe eines Ergebnisses mit 1 bis 500 synthetischen
+ * Objekten. Mit "-prof gc" zeigt gc.alloc.rate.norm die pro Aufruf allokierten
+ * Bytes. appendXml() und streamingExporter() verwenden ihre Puffer wieder und
+ * sollten nahe 0 liegen.
+ *
+ * @author Heiko Zelt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlBenchmark {
+
+	@Param({ "1", "10", "100", "500" })
+	int objects;
+
+	Result result;
+	DetectedObject obj;
+	StringBuilder buffer;
+	StreamingXmlExporter exporter;
+
+	@Setup
+	public void setup() throws IOException {
+		result = BenchmarkData.results(1, objects)[0];
+		obj = result.getObjects().item(0);
+		buffer = new StringBuilder(1024 * 1024);
+		exporter = new StreamingXmlExporter(Writer.nullWriter());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		exporter.close();
+	}
+
+	@Benchmark
+	public String asXml() {
+		return result.asXml();
+	}
+
+	@Benchmark
+	public String objectAsXml() {
+		return result.objectAsXml(obj);
+	}
+
+	@Benchmark
+	public StringBuilder appendXml() {
+		buffer.setLength(0);
+		result.appendXml(buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public long streamingExporter() throws IOException {
+		exporter.accept(result);
+		return exporter.getCount();
+	}
+}
@@ -0,0 +1,217 @@
+package de.heikozelt.objectdetection;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sucht die schnellste Kombination aus Anzahl Worker, Threads der Engine und
+ * Batch-Größe. Ob ein Worker mit vielen Engine-Threads oder viele Worker mit
+ * je einem Thread schneller sind, hängt von Engine, Modell, Bildgrößen und
+ * Rechner ab. Deshalb wird eine Stichprobe der Sammlung mit jeder Kombination
+ * analysiert und der Durchsatz in Bildern pro Sekunde gemessen.
+ * <p>
+ * Jeder Versuch läuft mit einem eigenen Detector, der Modell und Predictor des
+ * geladenen Detectors mitbenutzt. Bounding-Box-Bilder werden nicht
+ * gespeichert, der Cache wird nicht benutzt. Ein erster, nicht gemessener
+ * Durchlauf wärmt Engine und Dateisystem-Cache auf.
+ * <p>
+ * Zu jeder Anzahl Worker gehören so viele intra-op Threads, dass zusammen alle
+ * Prozessorkerne genutzt werden. PyTorch erlaubt, die intra-op Threads zur
+ * Laufzeit zu ändern. Die inter-op Threads dagegen nur einmal vor der ersten
+ * Operation, sie gelten deshalb für die ganze Kalibrierung und werden nur ins
+ * Profil übernommen, siehe TuningProfile.INTER_OP_PROPERTY. Bei anderen
+ * Engines bleiben die Threads, wie die Engine sie eingestellt hat.
+ *
+ * @author Heiko Zelt
+ */
+public class AutoTuner {
+	private static Logger logger = LogManager.getLogger(AutoTuner.class);
+
+	/**
+	 * Standard-Größe der Stichprobe
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 32;
+
+	private final Detector detector;
+	private final int cores;
+	private int sampleSize = DEFAULT_SAMPLE_SIZE;
+	private int[] workerCounts;
+	private int[] batchSizes = { 1, 4, 8 };
+	private final List<TuningProfile> table = new ArrayList<TuningProfile>();
+
+	/**
+	 * @param detector Detector mit geladenem Modell, wird nicht verändert
+	 */
+	public AutoTuner(Detector detector) {
+		this.detector = detector;
+		cores = Runtime.getRuntime().availableProcessors();
+		// 1, 2, 4, ... und alle Kerne
+		TreeSet<Integer> counts = new TreeSet<Integer>();
+		for (int w = 1; w < cores; w *= 2) {
+			counts.add(w);
+		}
+		counts.add(cores);
+		workerCounts = counts.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * @param sampleSize Anzahl Bilder pro Versuch, Standard DEFAULT_SAMPLE_SIZE
+	 * @return this
+	 */
+	public AutoTuner setSampleSize(int sampleSize) {
+		if (sampleSize < 1) {
+			throw new IllegalArgumentException("Stichprobe muss mindestens 1 Bild enthalten: " + sampleSize);
+		}
+		this.sampleSize = sampleSize;
+		return this;
+	}
+
+	/**
+	 * @param workerCounts zu probierende Anzahlen Worker, Standard 1, 2, 4, ...
+	 *                     bis zur Anzahl Prozessorkerne
+	 * @return this
+	 */
+	public AutoTuner setWorkerCounts(int... workerCounts) {
+		this.workerCounts = workerCounts.clone();
+		return this;
+	}
+
+	/**
+	 * @param batchSizes zu probierende Batch-Größen, Standard 1, 4 und 8
+	 * @return this
+	 */
+	public AutoTuner setBatchSizes(int... batchSizes) {
+		this.batchSizes = batchSizes.clone();
+		return this;
+	}
+
+	/**
+	 * @return gemessene Kombinationen der letzten Kalibrierung
+	 */
+	public List<TuningProfile> getTable() {
+		return table;
+	}
+
+	/**
+	 * Probiert alle Kombinationen, protokolliert die Tabelle und stellt die
+	 * intra-op Threads der schnellsten Kombination ein.
+	 *
+	 * @return schnellste Kombination
+	 * @throws Exception Stichprobe leer oder Objekt-Erkennung fehlgeschlagen
+	 */
+	public TuningProfile calibrate() throws Exception {
+		List<String> sample = sample();
+		if (sample.isEmpty()) {
+			throw new Exception("Keine Bilder für die Kalibrierung in " + detector.getCollectionPath());
+		}
+		String engineName = detector.getEngineName();
+		int interOpThreads = Integer.getInteger(TuningProfile.INTER_OP_PROPERTY, 0);
+		boolean threadsSettable = "PyTorch".equals(engineName);
+		logger.info("Kalibrierung mit " + sample.size() + " Bildern, " + cores + " Prozessorkerne, Engine "
+				+ engineName);
+		table.clear();
+		trial(sample, 1, 1);
+		TuningProfile best = null;
+		for (int workers : workerCounts) {
+			int intraOpThreads = 0;
+			if (threadsSettable) {
+				intraOpThreads = Math.max(1, cores / workers);
+				threadsSettable = setIntraOpThreads(intraOpThreads);
+			}
+			for (int batchSize : batchSizes) {
+				if (batchSize > 1 && batchSize > sample.size()) {
+					continue;
+				}
+				double imagesPerSec = trial(sample, workers, batchSize);
+				TuningProfile p = new TuningProfile(engineName, cores, workers, batchSize,
+						threadsSettable ? intraOpThreads : 0, interOpThreads, imagesPerSec);
+				table.add(p);
+				if (best == null || imagesPerSec > best.getImagesPerSec()) {
+					best = p;
+				}
+			}
+		}
+		logTable(best);
+		if (best.getIntraOpThreads() > 0) {
+			setIntraOpThreads(best.getIntraOpThreads());
+		}
+		return best;
+	}
+
+	/**
+	 * @return die ersten sampleSize Dateinamen der Sammlung
+	 * @throws Exception
+	 */
+	private List<String> sample() throws Exception {
+		DetectorConfig config = detector.getConfig();
+		List<String> sample = new ArrayList<String>(sampleSize);
+		try (CollectionWalker walker = new CollectionWalker(Paths.get(config.getCollectionPath()),
+				config.isRecursive(), config.getIncludeGlob())) {
+			while (sample.size() < sampleSize && walker.hasNext()) {
+				sample.add(walker.next());
+			}
+		}
+		return sample;
+	}
+
+	/**
+	 * Analysiert die Stichprobe mit einer Kombination.
+	 *
+	 * @return Durchsatz in Bildern pro Sekunde
+	 * @throws Exception
+	 */
+	private double trial(List<String> sample, int workers, int batchSize) throws Exception {
+		DetectorConfig config = detector.getConfig().toBuilder().setWorkers(workers).setBatchSize(batchSize)
+				.setSaveBoundingBoxImage(false).setShard(null).build();
+		int[] count = new int[1];
+		long startTime;
+		long elapsed;
+		try (Detector trial = new Detector(config, detector.getModel(), detector.getPredictor())) {
+			// fehlerhafte Bilder werden übersprungen und nicht mitgezählt
+			trial.setErrorReport(new ErrorReport());
+			startTime = System.nanoTime();
+			trial.detectFiles(sample.iterator(), r -> count[0]++);
+			elapsed = System.nanoTime() - startTime;
+		}
+		double imagesPerSec = count[0] * 1e9 / Math.max(1, elapsed);
+		logger.debug(String.format(Locale.ROOT, "%d Worker, Batch %d: %.1f Bilder/s", workers, batchSize,
+				imagesPerSec));
+		return imagesPerSec;
+	}
+
+	private void logTable(TuningProfile best) {
+		logger.info(String.format(Locale.ROOT, "%8s %6s %9s %9s %10s", "workers", "batch", "intra-op", "inter-op",
+				"images/s"));
+		for (TuningProfile p : table) {
+			logger.info(String.format(Locale.ROOT, "%8d %6d %9s %9s %10.1f %s", p.getWorkers(), p.getBatchSize(),
+					TuningProfile.threads(p.getIntraOpThreads()), TuningProfile.threads(p.getInterOpThreads()),
+					p.getImagesPerSec(), p == best ? "*" : ""));
+		}
+		logger.info("schnellste Einstellung " + best);
+	}
+
+	/**
+	 * Ändert die intra-op Threads von PyTorch zur Laufzeit. Die Engine wird per
+	 * Reflection angesprochen, damit das Programm auch mit einer anderen Engine
+	 * im Klassenpfad übersetzt werden kann.
+	 *
+	 * @param threads Anzahl Threads
+	 * @return false, wenn die Threads nicht geändert werden konnten
+	 */
+	static boolean setIntraOpThreads(int threads) {
+		try {
+			Class.forName("ai.djl.pytorch.jni.JniUtils").getMethod("setNumThreads", int.class).invoke(null,
+					threads);
+			return true;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			logger.warn("intra-op Threads können nicht geändert werden: " + e);
+			return false;
+		}
+	}
+}
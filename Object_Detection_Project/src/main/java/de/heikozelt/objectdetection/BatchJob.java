@@ -1,26 +1,26 @@
 package de.heikozelt.objectdetection;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.LongSummaryStatistics;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import ai.djl.Application;
 import ai.djl.ModelException;
 import ai.djl.engine.Engine;
 import ai.djl.inference.Predictor;
 import ai.djl.modality.cv.Image;
-import ai.djl.modality.cv.ImageFactory;
 import ai.djl.modality.cv.output.DetectedObjects;
 import ai.djl.repository.zoo.Criteria;
-import ai.djl.repository.zoo.ModelZoo;
 import ai.djl.repository.zoo.ZooModel;
 import ai.djl.translate.TranslateException;
 
@@ -28,15 +28,64 @@ import ai.djl.translate.TranslateException;
  * Die Klasse enthält das Hauptprogramm. Es liest Bild-Dateien aus einem
  * Verzeichnis, erkennt Objekte und speichert das Ergbnis als XML-Datei. Zwecks
  * Objekt-Erkennung wird die Deep Java Library verwendet.
+ * <p>
+ * Die eigentliche Verarbeitung erledigt ein Detector. Die statischen Methoden
+ * arbeiten mit einem einzigen Detector pro Prozess, siehe getDetector().
  * 
  * @author Heiko Zelt
  */
 public class BatchJob {
-	private static String collectionPath = "collection";
 	private static String resultXmlFilename = "export/result.xml";
-	private static String boundingBoxesPath = "boxes";
-	private static Boolean isSaveBoundingBoxImageEnabled = true;
-	private static float threshold = 0.5f;
+	private static String resultFormat = ResultExporter.FORMAT_XML;
+
+	/**
+	 * Einstellungen der statischen Methoden. Jede Änderung erzeugt eine neue,
+	 * unveränderliche DetectorConfig.
+	 */
+	private static DetectorConfig.Builder config = DetectorConfig.builder();
+
+	// Der Detector hinter den statischen Methoden. Die static-Setter koennen
+	// unabhängig von der init()-methode aufgerufen werden. Das ist nützlich um
+	// Mocks zu injizieren.
+	private static Detector detector = new Detector(config.build());
+
+	/**
+	 * Exit-Code, wenn einzelne Bilder übersprungen wurden
+	 */
+	public static final int EXIT_IMAGES_FAILED = 2;
+
+	/**
+	 * Exit-Code, wenn der Lauf abgebrochen wurde
+	 */
+	public static final int EXIT_ABORTED = 3;
+
+	/**
+	 * Profil-Datei von --auto-tune, wenn --profile fehlt
+	 */
+	public static final String DEFAULT_PROFILE = "autotune.properties";
+
+	private static Logger logger = LogManager.getLogger(BatchJob.class);
+
+	/**
+	 * Übernimmt geänderte Einstellungen in den Detector der statischen Methoden.
+	 * Modell, Predictor, Cache usw. bleiben erhalten.
+	 * 
+	 * @param builder geänderte Einstellungen
+	 */
+	private static void configure(DetectorConfig.Builder builder) {
+		detector = detector.reconfigure(builder.build());
+	}
+
+	/**
+	 * Die statischen Methoden sind dünne Hüllen um diesen Detector. Wer mehrere
+	 * Läufe gleichzeitig im selben Prozess braucht, erzeugt statt dessen eigene
+	 * Detector-Instanzen.
+	 * 
+	 * @return Detector mit den Einstellungen der statischen Setter
+	 */
+	public static Detector getDetector() {
+		return detector;
+	}
 
 	/**
 	 * Es können Kopien der Bilder mit eingezeichneten Bounding Boxes abgespeichert
@@ -46,19 +95,9 @@ public class BatchJob {
 	 * @param enabled true = aktiviert
 	 */
 	public static void setSaveBoundingBoxImageEnabled(Boolean enabled) {
-		BatchJob.isSaveBoundingBoxImageEnabled = enabled;
+		configure(config.setSaveBoundingBoxImage(enabled));
 	}
 
-	private static Logger logger = LogManager.getLogger(BatchJob.class);
-
-	// Die static-Felder koennen unabhängig von der init()-methode gesetzt werden.
-	// Das ist nützlich um Mocks zu injizieren.
-	private static Engine engine = null;
-	private static String backbone = null;
-	private static Criteria<Image, DetectedObjects> criteria = null;
-	private static ZooModel<Image, DetectedObjects> model = null;
-	private static Predictor<Image, DetectedObjects> predictor = null;
-
 	/**
 	 * Mit dieser Methode kann ein vom Standartwert abweichender Pfad für das
 	 * Verzeichnis mit den Bildern gesetzt werden. (z.B. Zwecks Unit-Test mit
@@ -67,7 +106,7 @@ public class BatchJob {
 	 * @param path Beispiel: "collection" oder "/home/heiko/Pictures"
 	 */
 	public static void setCollectionPath(String path) {
-		BatchJob.collectionPath = path;
+		configure(config.setCollectionPath(path));
 	}
 
 	/**
@@ -80,6 +119,19 @@ public class BatchJob {
 		BatchJob.resultXmlFilename = resultXmlFilename;
 	}
 
+	/**
+	 * Legt das Format der Ergebnisdatei fest.
+	 * 
+	 * @param format ResultExporter.FORMAT_XML (Standard) oder
+	 *               ResultExporter.FORMAT_BINARY
+	 */
+	public static void setResultFormat(String format) {
+		if (!ResultExporter.FORMAT_XML.equals(format) && !ResultExporter.FORMAT_BINARY.equals(format)) {
+			throw new IllegalArgumentException("unbekanntes Format: " + format + "\n" + USAGE);
+		}
+		BatchJob.resultFormat = format;
+	}
+
 	/**
 	 * Mit dieser Methode kann ein vom Standartwert abweichender Pfad für das
 	 * Verzeichnis mit den Bild-Kopien mit eingezeichneten Bounding Boxes gesetzt
@@ -88,54 +140,290 @@ public class BatchJob {
 	 * @param boundingBoxesPath Beispiel: "boxes" oder "/tmp/bounding_boxes"
 	 */
 	public static void setBoundingBoxesPath(String boundingBoxesPath) {
-		BatchJob.boundingBoxesPath = boundingBoxesPath;
+		configure(config.setBoundingBoxesPath(boundingBoxesPath));
 	}
 
 	/**
-	 * initialisiert benötigte Bild-Erkennungs-Engine und Modell
+	 * Legt den Threshold fest, mit dem das Modell bei init() geladen wird.
+	 * 
+	 * @param threshold minimale Wahrscheinlichkeit, Standardwert 0.5
 	 */
-	public static void init() {
-		logger.debug("DeepObjectDetection initialisation");
-		engine = Engine.getInstance();
-		if (engine == null) {
-			logger.error("Keine Engine verfügbar!");
-			return;
-		}
-		logger.debug("using engine " + engine.getEngineName());
+	public static void setThreshold(float threshold) {
+		configure(config.setThreshold(threshold));
+	}
 
-		if ("TensorFlow".equals(engine.getEngineName())) {
-			backbone = "mobilenet_v2";
-		} else {
-			backbone = "resnet50";
-		}
-		logger.debug("using backbone " + backbone);
+	/**
+	 * Legt fest, wie viele Bilder parallel analysiert werden. Bei mehr als einem
+	 * Worker bekommt jeder Worker einen eigenen Predictor aus demselben Modell.
+	 * 
+	 * @param workers Anzahl Worker-Threads, Standardwert 1 (sequentiell)
+	 */
+	public static void setWorkers(int workers) {
+		configure(config.setWorkers(workers));
+	}
 
-		try {
-			Criteria<Image, DetectedObjects> c0 = Criteria.builder().optApplication(Application.CV.OBJECT_DETECTION)
-					.setTypes(Image.class, DetectedObjects.class).build();
-			logger.debug("list all models -> " + ModelZoo.listModels(c0));
-
-			criteria = Criteria.builder().optApplication(Application.CV.OBJECT_DETECTION)
-					.setTypes(Image.class, DetectedObjects.class).optFilter("backbone", backbone)
-					.optArgument("threshold", threshold).build();
-			logger.debug("listModels() -> " + ModelZoo.listModels(criteria));
-			model = ModelZoo.loadModel(criteria);
-			if (model == null) {
-				logger.error("Kein passendes Model gefunden!");
-				return;
-			}
+	/**
+	 * Legt fest, ob auch Bilder in Unterverzeichnissen des
+	 * "collection"-Verzeichnisses analysiert werden.
+	 * 
+	 * @param recursive true = Unterverzeichnisse durchsuchen, Standardwert false
+	 */
+	public static void setRecursive(boolean recursive) {
+		configure(config.setRecursive(recursive));
+	}
 
-			predictor = model.newPredictor();
-			if (predictor == null) {
-				logger.error("Kein Predictor vorhanden!");
-				return;
-			}
+	/**
+	 * Legt fest, welche Dateien als Bilder analysiert werden. Andere Dateien werden
+	 * übersprungen.
+	 * 
+	 * @param glob Muster für den Dateinamen, z.B. "*.jpg", Standardwert siehe
+	 *             CollectionWalker.DEFAULT_GLOB
+	 */
+	public static void setIncludeGlob(String glob) {
+		configure(config.setIncludeGlob(glob));
+	}
+
+	/**
+	 * Legt fest, wie viele Bilder höchstens gleichzeitig in Arbeit sind (gelesen,
+	 * aber noch nicht übergeben). Das begrenzt den Speicherbedarf bei paralleler
+	 * Verarbeitung.
+	 * 
+	 * @param maxInFlight maximale Anzahl Bilder, Standardwert 256
+	 */
+	public static void setMaxInFlight(int maxInFlight) {
+		configure(config.setMaxInFlight(maxInFlight));
+	}
+
+	/**
+	 * Schaltet den persistenten Cache für Ergebnisse ein. Unveränderte Bilder
+	 * werden dann nicht erneut analysiert.
+	 * 
+	 * @param cache geöffneter Cache oder null (ausgeschaltet)
+	 */
+	public static void setCache(DetectionCache cache) {
+		detector.setCache(cache);
+	}
+
+	/**
+	 * Große Bilder werden mit verringerter Auflösung dekodiert (Subsampling), da
+	 * der Detektor sie ohnehin verkleinert. Die Größenangaben im Ergebnis beziehen
+	 * sich weiterhin auf das Original.
+	 * 
+	 * @param minEdge minimale Länge der kürzeren Kante nach dem Dekodieren in
+	 *                Pixeln, z.B. 600, 0 = immer ganz dekodieren (Standard)
+	 */
+	public static void setDecodeMinEdge(int minEdge) {
+		configure(config.setDecodeMinEdge(minEdge));
+	}
+
+	/**
+	 * Legt fest, wie die Bilddateien gelesen werden, z.B. mit Vorlesen im
+	 * Hintergrund.
+	 * 
+	 * @param loader neuer Loader, der alte wird geschlossen
+	 */
+	public static void setImageLoader(ImageLoader loader) {
+		detector.setImageLoader(loader);
+	}
+
+	/**
+	 * Filtert die erkannten Objekte jedes Bildes, bevor sie im Result, im Cache
+	 * und in der Ergebnisdatei landen.
+	 * 
+	 * @param filter Regeln oder null (alle Objekte übernehmen, Standard)
+	 */
+	public static void setDetectionFilter(DetectionFilter filter) {
+		configure(config.setFilter(filter));
+	}
+
+	/**
+	 * Schaltet die Suche nach gleichen und ähnlichen Bildern ein. Deren Objekte
+	 * werden vom zuerst analysierten Bild übernommen, ohne Objekt-Erkennung.
+	 * 
+	 * @param distance -1 = aus (Standard), 0 = nur Bilder mit gleichen Pixeln,
+	 *                 sonst maximaler Hamming-Abstand der dHashes, siehe
+	 *                 DuplicateFinder
+	 */
+	public static void setDedupDistance(int distance) {
+		configure(config.setDedupDistance(distance));
+	}
+
+	/**
+	 * Analysiert große Bilder in sich überlappenden Kacheln, damit kleine Objekte
+	 * beim Verkleinern auf die Eingabegröße des Modells nicht verschwinden, siehe
+	 * TiledInference.
+	 * 
+	 * @param tileSize Kantenlänge der Kacheln in Pixeln, 0 = ganze Bilder
+	 *                 (Standard)
+	 * @param overlap  Überlappung benachbarter Kacheln in Pixeln
+	 * @param memoryMb Speicher für die Kacheln eines Batches in MB
+	 */
+	public static void setTiling(int tileSize, int overlap, int memoryMb) {
+		configure(config.setTiling(tileSize, overlap, memoryMb));
+	}
+
+	/**
+	 * Kalibriert Worker, Threads der Engine und Batch-Größe mit einer Stichprobe
+	 * der Sammlung und übernimmt die schnellste Einstellung, siehe AutoTuner. Das
+	 * Modell muss bereits geladen sein.
+	 * 
+	 * @param sampleSize Anzahl Bilder pro Versuch
+	 * @return schnellste Einstellung
+	 * @throws Exception
+	 */
+	public static TuningProfile autoTune(int sampleSize) throws Exception {
+		TuningProfile profile = new AutoTuner(detector).setSampleSize(sampleSize).calibrate();
+		applyProfile(profile);
+		return profile;
+	}
+
+	/**
+	 * Übernimmt Worker und Batch-Größe eines Profils. Die Threads der Engine
+	 * wirken nur, wenn die Methode vor init() aufgerufen wird.
+	 * 
+	 * @param profile z.B. von einem früheren Lauf mit --auto-tune
+	 */
+	public static void applyProfile(TuningProfile profile) {
+		profile.applyThreadProperties();
+		configure(config.setWorkers(profile.getWorkers()).setBatchSize(profile.getBatchSize()));
+	}
+
+	/**
+	 * Beschränkt den Lauf auf einen Teil der Bilder, damit mehrere Prozesse (z.B.
+	 * auf mehreren Rechnern) die Sammlung gemeinsam analysieren können.
+	 * 
+	 * @param shard Teil der Sammlung oder null (alle Bilder, Standard)
+	 */
+	public static void setShard(Shard shard) {
+		configure(config.setShard(shard));
+	}
+
+	/**
+	 * Schaltet die Fehler-Isolierung ein: Bilder, die nicht gelesen, dekodiert
+	 * oder analysiert werden können, werden im Bericht eingetragen und
+	 * übersprungen, statt den ganzen Lauf abzubrechen. Fehler beim Schreiben der
+	 * Ergebnisse brechen den Lauf weiterhin ab.
+	 * 
+	 * @param errors Bericht oder null (erster Fehler bricht ab, Standard)
+	 */
+	public static void setErrorReport(ErrorReport errors) {
+		detector.setErrorReport(errors);
+	}
+
+	/**
+	 * @return Bericht über übersprungene Bilder oder null
+	 */
+	public static ErrorReport getErrorReport() {
+		return detector.getErrorReport();
+	}
+
+	/**
+	 * Legt fest, wie die Kopien mit Bounding Boxes gespeichert werden, z.B. als
+	 * JPEG, verkleinert, nur Ausschnitte oder asynchron.
+	 * 
+	 * @param renderer neuer Renderer, der alte wird nicht geschlossen
+	 */
+	public static void setRenderer(BoundingBoxRenderer renderer) {
+		detector.setRenderer(renderer);
+	}
+
+	/**
+	 * Setzt die Laufzeit-Messungen, in die alle Stufen ihre Zeiten eintragen.
+	 * 
+	 * @param metrics z.B. new RunMetrics() für einen neuen Lauf
+	 */
+	public static void setMetrics(RunMetrics metrics) {
+		detector.setMetrics(metrics);
+	}
 
-		} catch (IOException | ModelException e) {
-			e.printStackTrace();
+	/**
+	 * @return Laufzeit-Messungen des aktuellen Laufs
+	 */
+	public static RunMetrics getMetrics() {
+		return detector.getMetrics();
+	}
+
+	/**
+	 * Die Modelle im Model-Zoo aufzulisten dauert und ist nur für die Fehlersuche
+	 * interessant. Deshalb passiert es nur auf Wunsch.
+	 * 
+	 * @param enabled true = alle passenden Modelle protokollieren (Level debug)
+	 */
+	public static void setListModelsEnabled(boolean enabled) {
+		configure(config.setListModels(enabled));
+	}
+
+	/**
+	 * Legt das Modell fest, statt alle Model-Zoos nach einem passenden Modell zu
+	 * durchsuchen. Zusammen mit dem lokalen DJL-Cache (und -Doffline=true) wird
+	 * dann nichts heruntergeladen.
+	 * 
+	 * @param artifact "GROUP:ARTIFACT", z.B. "ai.djl.pytorch:ssd", null = suchen
+	 */
+	public static void setModelArtifact(String artifact) {
+		configure(config.setModelArtifact(artifact));
+	}
+
+	/**
+	 * Legt fest, wie viele Vorhersagen mit einem künstlichen Bild nach dem Laden
+	 * des Modells gemacht werden. Die erste Vorhersage ist wegen JIT und
+	 * Graph-Optimierung der Engine deutlich langsamer. Diese Zeiten gehen nicht in
+	 * die Statistik ein.
+	 * 
+	 * @param iterations Anzahl Aufwärm-Vorhersagen, Standardwert 1, 0 = keine
+	 */
+	public static void setWarmUpIterations(int iterations) {
+		configure(config.setWarmUpIterations(iterations));
+	}
+
+	/**
+	 * Legt fest, wie viele Bilder gemeinsam in einem Aufruf von
+	 * Predictor.batchPredict() analysiert werden.
+	 * 
+	 * @param batchSize Anzahl Bilder pro Batch, Standardwert 1 (einzeln)
+	 */
+	public static void setBatchSize(int batchSize) {
+		configure(config.setBatchSize(batchSize));
+	}
+
+	/**
+	 * Schaltet die Verarbeitung in einer Pipeline mit den Stufen Dekodieren,
+	 * Objekt-Erkennung und Ausgabe ein. Die Anzahl Threads der Objekt-Erkennung
+	 * wird mit setWorkers() festgelegt.
+	 * 
+	 * @param decodeThreads Anzahl Threads zum Lesen und Dekodieren, 0 = keine
+	 *                      Pipeline
+	 * @param outputThreads Anzahl Threads zum Speichern der Bounding-Box-Bilder
+	 * @param queueCapacity maximale Anzahl Bilder in jeder Queue zwischen den
+	 *                      Stufen
+	 */
+	public static void setPipeline(int decodeThreads, int outputThreads, int queueCapacity) {
+		configure(config.setPipeline(decodeThreads, outputThreads, queueCapacity));
+	}
+
+	/**
+	 * initialisiert benötigte Bild-Erkennungs-Engine und Modell
+	 */
+	public static void init() {
+		try {
+			detector.load();
+		} catch (IOException | ModelException | TranslateException e) {
+			logger.error("Modell konnte nicht geladen werden", e);
 		}
 	}
 
+	/**
+	 * Macht einige Vorhersagen mit einem künstlichen, grauen Bild, siehe
+	 * Detector.warmUp().
+	 * 
+	 * @param predictor  Predictor, der aufgewärmt wird
+	 * @param iterations Anzahl Vorhersagen
+	 * @throws TranslateException
+	 */
+	static void warmUp(Predictor<Image, DetectedObjects> predictor, int iterations) throws TranslateException {
+		Detector.warmUp(predictor, iterations);
+	}
+
 	/**
 	 * Speichert eine Kopie des Bild mit eingezeichneten Bounding Boxes. Das ist
 	 * sehr anschaulich und nützlich Zwecks Debugging und Evaluation.
@@ -155,7 +443,9 @@ public class BatchJob {
 		newImage.drawBoundingBoxes(detection);
 
 		// OpenJDK can't save jpg with alpha channel
-		newImage.save(Files.newOutputStream(imagePath), "png");
+		try (OutputStream out = Files.newOutputStream(imagePath)) {
+			newImage.save(out, "png");
+		}
 		logger.info("Detected objects image has been saved in: {}", imagePath);
 	}
 
@@ -169,23 +459,44 @@ public class BatchJob {
 	 * @throws TranslateException
 	 */
 	public static Result detect(String fileName) throws IOException, TranslateException {
-		String path = collectionPath + File.separator + fileName;
-		logger.debug("reading image from file: " + path);
-		File f = new File(path);
-		FileInputStream in = new FileInputStream(f);
-		Image img = ImageFactory.getInstance().fromInputStream(in);
-		long startTime = System.currentTimeMillis();
-		DetectedObjects objects = predictor.predict(img);
-		long endTime = System.currentTimeMillis();
-		long predictTime = endTime - startTime;
-		logger.debug("result: " + objects.getClass().getName());
-		logger.info("predict time: " + predictTime + " msec");
-		Result result = new Result(fileName, img.getWidth(), img.getHeight(), objects, predictTime);
-		String bbFilename = boundingBoxesPath + File.separator + f.getName() + ".boxes.png";
-		if (isSaveBoundingBoxImageEnabled) {
-			saveBoundingBoxImage(img, objects, bbFilename);
-		}
-		return result;
+		return detector.detect(fileName);
+	}
+
+	/**
+	 * Wie detect(String), aber mit einem bestimmten Predictor.
+	 * 
+	 * @param fileName  Dateiname der Bilddatei (ohne Pfad)
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @return erkannte Objekte und weitere Infos
+	 * @throws IOException
+	 * @throws TranslateException
+	 */
+	public static Result detect(String fileName, Predictor<Image, DetectedObjects> predictor)
+			throws IOException, TranslateException {
+		return detector.detect(fileName, predictor);
+	}
+
+	/**
+	 * siehe Detector.readImage()
+	 */
+	static Image readImage(String fileName) throws IOException {
+		return detector.readImage(fileName);
+	}
+
+	/**
+	 * siehe Detector.predict()
+	 */
+	static Result predict(String fileName, Image img, Predictor<Image, DetectedObjects> predictor)
+			throws TranslateException {
+		return detector.predict(fileName, img, predictor);
+	}
+
+	/**
+	 * siehe Detector.predictBatch()
+	 */
+	static List<Result> predictBatch(List<String> fileNames, List<Image> imgs,
+			Predictor<Image, DetectedObjects> predictor) throws TranslateException {
+		return detector.predictBatch(fileNames, imgs, predictor);
 	}
 
 	/**
@@ -195,16 +506,19 @@ public class BatchJob {
 	 * @throws Exception
 	 */
 	public static Result[] detectAll() throws Exception {
-		logger.info("lese Bilder aus Verzeichnis " + collectionPath);
-		String[] fileNames = new File(collectionPath).list();
-		if (fileNames == null) {
-			throw new Exception("Collection files not found!");
-		}
-		Result[] results = new Result[fileNames.length];
-		for (int i = 0; i < fileNames.length; i++) {
-			results[i] = detect(fileNames[i]);
-		}
-		return results;
+		return detector.detectAll();
+	}
+
+	/**
+	 * Führt die Objekt-Ekennung für alle Bilder im "collection"-Verzeichnis durch
+	 * und übergibt jedes Ergebnis sofort, in der Reihenfolge der Dateien. Die
+	 * Ergebnisse werden nicht gesammelt.
+	 * 
+	 * @param consumer Empfänger der Ergebnisse, z.B. StreamingXmlExporter
+	 * @throws Exception
+	 */
+	public static void detectAll(ResultConsumer consumer) throws Exception {
+		detector.detectAll(consumer);
 	}
 
 	/**
@@ -214,10 +528,10 @@ public class BatchJob {
 	 */
 	public static void printAll(Result[] results) {
 		for (Result r : results) {
-			logger.info("Dateiname: " + r.getFilename());
-			DetectedObjects objects = r.getObjects();
-			for (int i = 0; i < objects.getNumberOfObjects(); i++) {
-				logger.info("erkannt: " + objects.item(i));
+			logger.info("Dateiname: {}", r.getFilename());
+			for (int i = 0; i < r.getNumberOfObjects(); i++) {
+				logger.info("erkannt: {} {} [x={}, y={}, width={}, height={}]", r.getClassName(i),
+						r.getProbability(i), r.getX(i), r.getY(i), r.getBoxWidth(i), r.getBoxHeight(i));
 			}
 		}
 	}
@@ -230,12 +544,11 @@ public class BatchJob {
 	 */
 	public static String resultsAsXml(Result[] results) {
 		StringBuilder str = new StringBuilder();
-		str.append(
-				"<gmaf-collection xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:noNamespaceSchemaLocation=\"gmaf_schema.xsd\">\n");
+		str.append(StreamingXmlExporter.HEADER);
 		for (Result r : results) {
-			str.append(r.asXml());
+			r.appendXml(str);
 		}
-		str.append("</gmaf-collection>\n");
+		str.append(StreamingXmlExporter.FOOTER);
 		return str.toString();
 	}
 
@@ -247,11 +560,11 @@ public class BatchJob {
 	 * @throws IOException
 	 */
 	public static void exportAll(Result[] results) throws IOException {
-		logger.info("exportiere Ergebnisse im XML-Format in Datei " + resultXmlFilename);
-		String str = resultsAsXml(results);
-		BufferedWriter bwr = new BufferedWriter(new FileWriter(new File(resultXmlFilename)));
-		bwr.write(str);
-		bwr.close();
+		try (StreamingXmlExporter exporter = new StreamingXmlExporter(Paths.get(resultXmlFilename))) {
+			for (Result r : results) {
+				exporter.accept(r);
+			}
+		}
 	}
 
 	/**
@@ -280,39 +593,486 @@ public class BatchJob {
 	 *             <li>Ergebnisdatei z.B. "export/result.xml"</li>
 	 *             <li>Threshold z.B. 0.5.</li>
 	 *             </ol>
+	 *             Zusätzlich sind folgende Optionen möglich:
+	 *             <ul>
+	 *             <li>--workers N: Anzahl paralleler Worker, z.B. 4</li>
+	 *             <li>--recursive: auch Unterverzeichnisse durchsuchen</li>
+	 *             <li>--include GLOB: nur passende Dateien analysieren, z.B.
+	 *             "*.jpg"</li>
+	 *             <li>--max-in-flight N: höchstens N Bilder gleichzeitig in
+	 *             Arbeit</li>
+	 *             <li>--thresholds T1,T2,...: eine Ergebnisdatei pro Threshold
+	 *             in einem Durchlauf; der Dateiname muss {i} (Nummer ab 1) oder
+	 *             {t} (Threshold) enthalten</li>
+	 *             <li>--format xml|bin: Format der Ergebnisdatei, bin =
+	 *             kompaktes Binärformat, siehe BinaryResultWriter</li>
+	 *             <li>--cache FILE: Ergebnisse in FILE speichern und
+	 *             unveränderte Bilder nicht erneut analysieren</li>
+	 *             <li>--cache-hash: zusätzlich den Dateiinhalt per SHA-256
+	 *             vergleichen</li>
+	 *             <li>--batch-size N: Anzahl Bilder pro batchPredict()-Aufruf</li>
+	 *             <li>--decode-size N: große Bilder verkleinert dekodieren,
+	 *             kürzere Kante mindestens N Pixel</li>
+	 *             <li>--render full|crops: ganze Bilder mit Bounding Boxes oder
+	 *             nur die Ausschnitte der Objekte speichern</li>
+	 *             <li>--render-format png|jpg: Format der gespeicherten
+	 *             Bilder</li>
+	 *             <li>--render-max-edge N: Bilder auf höchstens N Pixel
+	 *             Kantenlänge verkleinern</li>
+	 *             <li>--png-compression N: Deflate-Level 0 bis 9</li>
+	 *             <li>--jpeg-quality Q: JPEG-Qualität 0.0 bis 1.0</li>
+	 *             <li>--prefetch N: die nächsten N Bilddateien im Hintergrund
+	 *             lesen</li>
+	 *             <li>--mmap-min-size MB: Bilddateien ab dieser Größe
+	 *             memory-mapped lesen (Standard 16)</li>
+	 *             <li>--render-threads N: Threads zum Speichern, 0 = synchron
+	 *             (Standard 1)</li>
+	 *             <li>--retries N: vorübergehende Lesefehler bis zu N-mal mit
+	 *             wachsender Pause wiederholen (Standard 2)</li>
+	 *             <li>--fail-fast: beim ersten fehlerhaften Bild abbrechen,
+	 *             statt es zu überspringen</li>
+	 *             <li>--classes C1,C2,...: nur diese Klassen übernehmen</li>
+	 *             <li>--exclude-classes C1,C2,...: diese Klassen nicht
+	 *             übernehmen</li>
+	 *             <li>--class-thresholds C1=T1,C2=T2,...: eigener Threshold pro
+	 *             Klasse</li>
+	 *             <li>--top-k K: höchstens K Objekte pro Bild</li>
+	 *             <li>--nms IOU: Non-Maximum Suppression über alle Klassen</li>
+	 *             <li>--tile-size N: große Bilder in Kacheln von N x N Pixeln
+	 *             analysieren</li>
+	 *             <li>--tile-overlap N: Überlappung der Kacheln in Pixeln
+	 *             (Standard 128)</li>
+	 *             <li>--tile-memory MB: Speicher für die Kacheln eines Batches
+	 *             (Standard 512)</li>
+	 *             <li>--dedup D: Objekte gleicher (D = 0) oder ähnlicher Bilder
+	 *             (Hamming-Abstand bis D) übernehmen statt sie zu erkennen</li>
+	 *             <li>--auto-tune N: vor dem Lauf Worker, Threads und
+	 *             Batch-Größe mit N Bildern kalibrieren und das Profil
+	 *             speichern</li>
+	 *             <li>--profile FILE: Profil für --auto-tune (Standard
+	 *             autotune.properties); ohne --auto-tune wird ein vorhandenes
+	 *             Profil übernommen</li>
+	 *             <li>--shard i/N: nur den i-ten von N Teilen der Bilder
+	 *             analysieren, Zusammenführen mit ResultMerger</li>
+	 *             <li>--list-models: passende Modelle im Model-Zoo
+	 *             protokollieren (langsam)</li>
+	 *             <li>--model GROUP:ARTIFACT: Modell festlegen statt zu
+	 *             suchen, z.B. ai.djl.pytorch:ssd</li>
+	 *             <li>--model-cache DIR: Verzeichnis des DJL-Caches</li>
+	 *             <li>--offline: nur den lokalen DJL-Cache verwenden</li>
+	 *             <li>--warmup N: Anzahl Aufwärm-Vorhersagen (Standard 1)</li>
+	 *             <li>--serve PORT: statt eines Laufs als HTTP-Dienst auf
+	 *             localhost:PORT laufen, siehe DetectionService</li>
+	 *             <li>--decode-threads N: Pipeline mit N Threads zum Dekodieren
+	 *             einschalten</li>
+	 *             <li>--output-threads N: Threads zum Speichern der
+	 *             Bounding-Box-Bilder in der Pipeline</li>
+	 *             <li>--queue-capacity N: Kapazität der Queues zwischen den
+	 *             Pipeline-Stufen</li>
+	 *             </ul>
+	 *             Bilder, die nicht gelesen oder analysiert werden können, werden
+	 *             übersprungen und in result.errors.tsv neben der Ergebnisdatei
+	 *             aufgeführt. Exit-Code 0 = alles analysiert, 2 =
+	 *             EXIT_IMAGES_FAILED, 3 = EXIT_ABORTED.
 	 */
 	public static void main(String[] args) {
 		try {
 			logger.info("Object detection batch job started.");
 
-			switch (args.length) {
+			String cacheFilename = null;
+			float[] thresholds = null;
+			boolean cacheHash = false;
+			int servePort = -1;
+			int renderThreads = 1;
+			int prefetch = 0;
+			long mmapMinSize = ImageLoader.DEFAULT_MMAP_MIN_SIZE;
+			int retries = 2;
+			boolean failFast = false;
+			int tileSize = 0;
+			int tileOverlap = 128;
+			int tileMemory = 512;
+			int autoTune = 0;
+			String profileFilename = null;
+			DetectionFilter detectionFilter = new DetectionFilter();
+			BoundingBoxRenderer renderer = new BoundingBoxRenderer();
+			List<String> positional = new ArrayList<String>();
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--serve":
+					servePort = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--decode-size":
+					setDecodeMinEdge(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--render":
+					String mode = optionValue(args, ++i);
+					if (!mode.equals("full") && !mode.equals("crops")) {
+						throw new IllegalArgumentException("--render muss full oder crops sein: " + mode);
+					}
+					renderer.setCropsOnly(mode.equals("crops"));
+					break;
+				case "--render-format":
+					renderer.setFormat(optionValue(args, ++i));
+					break;
+				case "--render-max-edge":
+					renderer.setMaxEdge(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--png-compression":
+					renderer.setPngCompression(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--jpeg-quality":
+					renderer.setJpegQuality(Float.parseFloat(optionValue(args, ++i)));
+					break;
+				case "--prefetch":
+					prefetch = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--mmap-min-size":
+					mmapMinSize = Long.parseLong(optionValue(args, ++i)) * 1024 * 1024;
+					break;
+				case "--render-threads":
+					renderThreads = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--retries":
+					retries = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--fail-fast":
+					failFast = true;
+					break;
+				case "--classes":
+					detectionFilter.setAllow(Arrays.asList(optionValue(args, ++i).split(",")));
+					break;
+				case "--exclude-classes":
+					detectionFilter.setDeny(Arrays.asList(optionValue(args, ++i).split(",")));
+					break;
+				case "--class-thresholds":
+					detectionFilter.parseClassThresholds(optionValue(args, ++i));
+					break;
+				case "--top-k":
+					detectionFilter.setTopK(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--nms":
+					detectionFilter.setNmsIoU(Float.parseFloat(optionValue(args, ++i)));
+					break;
+				case "--dedup":
+					setDedupDistance(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--tile-size":
+					tileSize = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--tile-overlap":
+					tileOverlap = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--tile-memory":
+					tileMemory = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--auto-tune":
+					autoTune = Integer.parseInt(optionValue(args, ++i));
+					break;
+				case "--profile":
+					profileFilename = optionValue(args, ++i);
+					break;
+				case "--shard":
+					setShard(Shard.parse(optionValue(args, ++i)));
+					break;
+				case "--list-models":
+					setListModelsEnabled(true);
+					break;
+				case "--model":
+					setModelArtifact(optionValue(args, ++i));
+					break;
+				case "--model-cache":
+					// muss gesetzt sein, bevor DJL das erste Mal auf den Cache zugreift
+					System.setProperty("DJL_CACHE_DIR", optionValue(args, ++i));
+					break;
+				case "--offline":
+					System.setProperty("offline", "true");
+					break;
+				case "--warmup":
+					setWarmUpIterations(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--workers":
+					setWorkers(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--recursive":
+					setRecursive(true);
+					break;
+				case "--include":
+					setIncludeGlob(optionValue(args, ++i));
+					break;
+				case "--max-in-flight":
+					setMaxInFlight(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--format":
+					setResultFormat(optionValue(args, ++i));
+					break;
+				case "--thresholds":
+					thresholds = MultiThresholdExporter.parseThresholds(optionValue(args, ++i));
+					break;
+				case "--cache":
+					cacheFilename = optionValue(args, ++i);
+					break;
+				case "--cache-hash":
+					cacheHash = true;
+					break;
+				case "--batch-size":
+					setBatchSize(Integer.parseInt(optionValue(args, ++i)));
+					break;
+				case "--decode-threads":
+					setPipeline(Integer.parseInt(optionValue(args, ++i)), config.build().getOutputThreads(),
+							config.build().getQueueCapacity());
+					break;
+				case "--output-threads":
+					setPipeline(config.build().getDecodeThreads(), Integer.parseInt(optionValue(args, ++i)),
+							config.build().getQueueCapacity());
+					break;
+				case "--queue-capacity":
+					setPipeline(config.build().getDecodeThreads(), config.build().getOutputThreads(),
+							Integer.parseInt(optionValue(args, ++i)));
+					break;
+				default:
+					positional.add(args[i]);
+				}
+			}
+
+			switch (positional.size()) {
 			case 0:
 				break;
 			case 2:
-				collectionPath = args[0];
-				resultXmlFilename = args[1];
+				setCollectionPath(positional.get(0));
+				resultXmlFilename = positional.get(1);
 				break;
 			case 3:
-				collectionPath = args[0];
-				resultXmlFilename = args[1];
-				threshold = Float.parseFloat(args[2]);
+				setCollectionPath(positional.get(0));
+				resultXmlFilename = positional.get(1);
+				setThreshold(Float.parseFloat(positional.get(2)));
+				if (thresholds != null) {
+					throw new IllegalArgumentException("Threshold und --thresholds schließen sich aus\n" + USAGE);
+				}
 				break;
 			default:
-				logger.fatal("Falsche Anzahl Kommandozeilenparameter. Erwartet: 0, 2 oder 3. Gegeben:" + args.length);
-				logger.info(
-						"usage: java -cp ... de.heikozelt.objectdetection.BatchJob [<collections directory> <results file> [<threshold>]]");
+				logger.fatal("Falsche Anzahl Kommandozeilenparameter. Erwartet: 0, 2 oder 3. Gegeben:"
+						+ positional.size());
+				logger.info(USAGE);
 				System.exit(1);
 			}
+			if (renderThreads > 0) {
+				renderer.setThreads(renderThreads, 2 * renderThreads);
+			}
+			setRenderer(renderer);
+			ImageLoader imageLoader = new ImageLoader(mmapMinSize, prefetch);
+			imageLoader.setRetries(retries, 100);
+			setImageLoader(imageLoader);
+			setErrorReport(failFast ? null : new ErrorReport());
+			setTiling(tileSize, tileOverlap, tileMemory);
+			if (thresholds != null) {
+				// nur einmal mit dem kleinsten Threshold analysieren, danach filtern
+				setThreshold(MultiThresholdExporter.min(thresholds));
+			}
+			float threshold = detector.getConfig().getThreshold();
+			if (!detectionFilter.isPassThrough()) {
+				if (detectionFilter.getMinClassThreshold() < threshold) {
+					logger.warn("Thresholds pro Klasse unter " + threshold
+							+ " wirken nicht, die Engine verwirft diese Objekte bereits");
+				}
+				setDetectionFilter(detectionFilter);
+			}
+			Path profileFile = Paths.get(profileFilename == null ? DEFAULT_PROFILE : profileFilename);
+			if (autoTune == 0 && profileFilename != null) {
+				if (Files.exists(profileFile)) {
+					// vor init(), die Threads gelten nur beim Start der Engine
+					TuningProfile profile = TuningProfile.load(profileFile);
+					logger.info("übernehme Profil aus " + profileFile + ": " + profile);
+					if (profile.getCores() != Runtime.getRuntime().availableProcessors()) {
+						logger.warn("Profil wurde auf einem Rechner mit " + profile.getCores()
+								+ " Prozessorkernen kalibriert");
+					}
+					applyProfile(profile);
+				} else {
+					logger.warn("Profil " + profileFile + " nicht gefunden, Kalibrierung mit --auto-tune");
+				}
+			}
+			DetectionService service = null;
+			if (servePort >= 0) {
+				if (thresholds != null) {
+					throw new IllegalArgumentException("--serve und --thresholds schließen sich aus\n" + USAGE);
+				}
+				if (autoTune > 0) {
+					throw new IllegalArgumentException("--serve und --auto-tune schließen sich aus\n" + USAGE);
+				}
+				// Health-Check antwortet schon, während das Modell geladen wird
+				service = new DetectionService(new InetSocketAddress(InetAddress.getLoopbackAddress(), servePort),
+						detector.getConfig().getWorkers());
+				service.start();
+			}
 			init();
-			Result[] results = detectAll();
-			// printAll(results);
-			long average = calculateAveragePredictTime(results);
+			if (detector.getPredictor() == null) {
+				// ohne Modell würde jedes Bild einzeln fehlschlagen und übersprungen
+				if (service != null) {
+					service.close();
+				}
+				throw new Exception("Modell konnte nicht geladen werden");
+			}
+			if (autoTune > 0) {
+				autoTune(autoTune).save(profileFile);
+			}
+			if (cacheFilename != null) {
+				setCache(new DetectionCache(Paths.get(cacheFilename), detector.modelFingerprint(), cacheHash));
+			}
+			if (service != null) {
+				service.warmUp(detector.getModel(), detector.getConfig().getWorkers());
+				DetectionService s = service;
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					s.close();
+					closeDetector();
+					closeCache();
+				}));
+				// die Threads des Dienstes halten die JVM am Leben
+				return;
+			}
+			// Ergebnisse werden sofort geschrieben und nicht bis zum Ende gesammelt
+			LongSummaryStatistics predictTimes = new LongSummaryStatistics();
+			RunMetrics metrics = getMetrics();
+			metrics.start();
+			try (ResultExporter exporter = openExporter(thresholds)) {
+				detectAll(r -> {
+					long startTime = System.nanoTime();
+					exporter.accept(r);
+					metrics.record(RunMetrics.SERIALIZE, System.nanoTime() - startTime);
+					metrics.imageDone();
+					predictTimes.accept(r.getPredictTime());
+				});
+			}
+			// gibt Renderer, Loader, Predictor und Modell frei, auch den nativen
+			// Speicher der Engine
+			detector.close();
+			metrics.stop();
+			long average = (long) predictTimes.getAverage();
 			logger.info("Durchschnittliche predict-Zeit: " + average + " msec");
-			exportAll(results);
+			writeMetrics();
+			closeCache();
+			if (writeErrorReport() > 0) {
+				System.exit(EXIT_IMAGES_FAILED);
+			}
 			logger.info("Object detection batch job finished.");
 		} catch (Exception e) {
-			logger.fatal(e);
+			logger.fatal("Batch-Job abgebrochen", e);
+			// bereits analysierte Bilder bleiben im Cache und in der Ergebnisdatei
+			closeDetector();
+			closeCache();
+			writeErrorReport();
+			System.exit(EXIT_ABORTED);
+		}
+	}
+
+	/**
+	 * Gibt Predictor, Modell und die übrigen Ressourcen des Detectors frei, ohne
+	 * eine Exception weiterzugeben.
+	 */
+	private static void closeDetector() {
+		try {
+			detector.close();
+		} catch (IOException | RuntimeException e) {
+			logger.error("Detector konnte nicht geschlossen werden", e);
+		}
+	}
+
+	/**
+	 * Protokolliert die Trefferquote und schließt den Cache, falls vorhanden.
+	 */
+	private static void closeCache() {
+		DetectionCache cache = detector.getCache();
+		if (cache != null) {
+			logger.info("Cache: " + cache.getHits() + " Treffer, " + cache.getMisses() + " neu analysiert");
+			try {
+				cache.close();
+			} catch (IOException e) {
+				logger.error("Cache konnte nicht geschlossen werden", e);
+			}
+			setCache(null);
+		}
+	}
+
+	/**
+	 * Speichert den Bericht über übersprungene Bilder neben der Ergebnisdatei,
+	 * falls die Fehler-Isolierung eingeschaltet ist.
+	 * 
+	 * @return Anzahl übersprungener Bilder
+	 */
+	private static int writeErrorReport() {
+		ErrorReport errors = getErrorReport();
+		if (errors == null) {
+			return 0;
+		}
+		String filename = ErrorReport.filename(resultXmlFilename);
+		try {
+			errors.write(Paths.get(filename));
+		} catch (IOException e) {
+			logger.error("Fehlerbericht konnte nicht gespeichert werden", e);
+		}
+		if (errors.getCount() > 0) {
+			logger.error(errors.getCount() + " Bilder übersprungen, siehe " + filename);
+		}
+		return errors.getCount();
+	}
+
+	/**
+	 * Protokolliert die Laufzeit-Messungen und speichert sie neben der
+	 * Ergebnisdatei als JSON (letzter Lauf) und CSV (alle Läufe).
+	 * 
+	 * @throws IOException
+	 */
+	private static void writeMetrics() throws IOException {
+		RunMetrics metrics = getMetrics();
+		for (String line : metrics.summary()) {
+			logger.info(line);
+		}
+		metrics.writeJson(Paths.get(RunMetrics.filename(resultXmlFilename, "json")));
+		metrics.appendCsv(Paths.get(RunMetrics.filename(resultXmlFilename, "csv")));
+	}
+
+	/**
+	 * Öffnet die Ergebnisdatei(en).
+	 * 
+	 * @param thresholds null = eine Datei mit dem Ergebnis wie analysiert, sonst
+	 *                   eine gefilterte Datei pro Threshold
+	 * @return Exporter, der die Ergebnisse direkt schreibt
+	 * @throws IOException
+	 */
+	private static ResultExporter openExporter(float[] thresholds) throws IOException {
+		if (thresholds == null) {
+			return ResultExporter.open(Paths.get(resultXmlFilename), resultFormat);
+		}
+		return new MultiThresholdExporter(resultXmlFilename, thresholds, resultFormat);
+	}
+
+	private static final String USAGE = "usage: java -cp ... de.heikozelt.objectdetection.BatchJob [--workers <n>]"
+			+ " [--recursive] [--include <glob>] [--max-in-flight <n>] [--thresholds <t1,t2,...>]"
+			+ " [--format xml|bin]"
+			+ " [--cache <file> [--cache-hash]]"
+			+ " [--batch-size <n>] [--serve <port>]"
+			+ " [--decode-size <n>] [--render full|crops] [--render-format png|jpg] [--render-max-edge <n>]"
+			+ " [--png-compression <0-9>] [--jpeg-quality <0.0-1.0>] [--render-threads <n>]"
+			+ " [--prefetch <n>] [--mmap-min-size <mb>] [--retries <n>] [--fail-fast] [--shard <i/N>]"
+			+ " [--classes <c1,c2,...>] [--exclude-classes <c1,c2,...>] [--class-thresholds <c1=t1,...>]"
+			+ " [--top-k <k>] [--nms <iou>] [--dedup <distance>]"
+			+ " [--tile-size <n> [--tile-overlap <n>] [--tile-memory <mb>]]"
+			+ " [--auto-tune <n>] [--profile <file>]"
+			+ " [--list-models] [--model <group:artifact>] [--model-cache <dir>] [--offline] [--warmup <n>]"
+			+ " [--decode-threads <n>] [--output-threads <n>] [--queue-capacity <n>]"
+			+ " [<collections directory> <results file> [<threshold>]]";
+
+	/**
+	 * Liefert den Wert einer Kommandozeilen-Option.
+	 * 
+	 * @param args  alle Kommandozeilenparameter
+	 * @param index Position des Wertes (hinter dem Options-Namen)
+	 * @return Wert der Option
+	 */
+	private static String optionValue(String[] args, int index) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("Wert fehlt für Option " + args[index - 1] + "\n" + USAGE);
 		}
+		return args[index];
 	}
 
 	/**
@@ -320,7 +1080,7 @@ public class BatchJob {
 	 * @param engine siehe DJL-Doku
 	 */
 	public static void setEngine(Engine engine) {
-		BatchJob.engine = engine;
+		detector.setEngine(engine);
 	}
 
 	/**
@@ -328,7 +1088,7 @@ public class BatchJob {
 	 * @param backbone siehe DJL-Doku
 	 */
 	public static void setBackbone(String backbone) {
-		BatchJob.backbone = backbone;
+		detector.setBackbone(backbone);
 	}
 
 	/**
@@ -336,7 +1096,7 @@ public class BatchJob {
 	 * @param criteria siehe DJL-Doku
 	 */
 	public static void setCriteria(Criteria<Image, DetectedObjects> criteria) {
-		BatchJob.criteria = criteria;
+		detector.setCriteria(criteria);
 	}
 
 	/**
@@ -344,7 +1104,7 @@ public class BatchJob {
 	 * @param model siehe DJL-Doku
 	 */
 	public static void setModel(ZooModel<Image, DetectedObjects> model) {
-		BatchJob.model = model;
+		detector.setModel(model);
 	}
 
 	/**
@@ -352,7 +1112,7 @@ public class BatchJob {
 	 * @param predictor siehe DJL-Doku
 	 */
 	public static void setPredictor(Predictor<Image, DetectedObjects> predictor) {
-		BatchJob.predictor = predictor;
+		detector.setPredictor(predictor);
 	}
 
 }
@@ -0,0 +1,180 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Liest Ergebnisdateien im Binärformat von BinaryResultWriter. Die Ergebnisse
+ * werden einzeln mit read() geliefert, die Datei muss nicht ganz in den
+ * Speicher passen.
+ *
+ * @author Heiko Zelt
+ * @see BinaryResultWriter
+ */
+public class BinaryResultReader implements AutoCloseable {
+	private static Logger logger = LogManager.getLogger(BinaryResultReader.class);
+
+	private DataInputStream in;
+
+	/**
+	 * Nummern der Klassennamen in der ClassNameTable, in der Reihenfolge der
+	 * Nummern in der Datei
+	 */
+	private int[] tableIds = new int[16];
+	private int classCount = 0;
+
+	/**
+	 * Öffnet die Datei (gepuffert) und prüft den Kopf.
+	 *
+	 * @param path Ergebnisdatei, z.B. export/result.bin
+	 * @throws IOException wenn die Datei nicht im Binärformat ist
+	 */
+	public BinaryResultReader(Path path) throws IOException {
+		this(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+	}
+
+	/**
+	 * Liest aus einem beliebigen InputStream. Der Stream wird mit close()
+	 * geschlossen.
+	 *
+	 * @param in Quelle
+	 * @throws IOException wenn die Daten nicht im Binärformat sind
+	 */
+	public BinaryResultReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(in);
+		byte[] magic = new byte[BinaryResultWriter.MAGIC.length];
+		try {
+			this.in.readFully(magic);
+		} catch (EOFException e) {
+			throw new IOException("Datei ist zu kurz für das Binärformat");
+		}
+		if (!Arrays.equals(magic, BinaryResultWriter.MAGIC)) {
+			throw new IOException("keine Ergebnisdatei im Binärformat");
+		}
+		byte version = this.in.readByte();
+		if (version != BinaryResultWriter.VERSION) {
+			throw new IOException("nicht unterstützte Version des Binärformats: " + version);
+		}
+	}
+
+	/**
+	 * Liest das nächste Ergebnis.
+	 *
+	 * @return Ergebnis oder null am Ende der Datei
+	 * @throws IOException z.B. bei einer abgeschnittenen Datei
+	 */
+	public Result read() throws IOException {
+		while (true) {
+			int type = in.read();
+			if (type == -1) {
+				return null;
+			}
+			int length = in.readInt();
+			switch (type) {
+			case BinaryResultWriter.TYPE_CLASS_NAME:
+				if (classCount == tableIds.length) {
+					tableIds = Arrays.copyOf(tableIds, 2 * classCount);
+				}
+				tableIds[classCount++] = ClassNameTable.id(in.readUTF());
+				break;
+			case BinaryResultWriter.TYPE_RESULT:
+				return readResult();
+			default:
+				logger.debug("skipping unknown record type {} ({} bytes)", type, length);
+				in.skipNBytes(length);
+			}
+		}
+	}
+
+	private Result readResult() throws IOException {
+		String filename = in.readUTF();
+		int width = in.readInt();
+		int height = in.readInt();
+		long date = in.readLong();
+		long predictTime = in.readLong();
+		int n = in.readInt();
+		if (n < 0) {
+			throw new IOException("ungültige Anzahl Objekte: " + n);
+		}
+		int[] classIds = new int[n];
+		float[] boxes = new float[4 * n];
+		float[] probabilities = new float[n];
+		for (int i = 0; i < n; i++) {
+			int id = in.readUnsignedShort();
+			if (id >= classCount) {
+				throw new IOException("unbekannte Nummer eines Klassennamens: " + id);
+			}
+			classIds[i] = tableIds[id];
+			for (int k = 0; k < 4; k++) {
+				boxes[4 * i + k] = in.readFloat();
+			}
+			probabilities[i] = in.readFloat();
+		}
+		return new Result(filename, width, height, classIds, boxes, probabilities, predictTime, date);
+	}
+
+	/**
+	 * Liest alle Ergebnisse einer Datei.
+	 *
+	 * @param path Ergebnisdatei
+	 * @return alle Ergebnisse in der Reihenfolge der Datei
+	 * @throws IOException
+	 */
+	public static List<Result> readAll(Path path) throws IOException {
+		List<Result> results = new ArrayList<Result>();
+		try (BinaryResultReader reader = new BinaryResultReader(path)) {
+			Result r;
+			while ((r = reader.read()) != null) {
+				results.add(r);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Schließt die Datei.
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Wandelt eine Ergebnisdatei im Binärformat in das XML-Format um und gibt es
+	 * auf der Standardausgabe aus.
+	 *
+	 * @param args Ergebnisdatei im Binärformat
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			logger.error("usage: java -cp ... de.heikozelt.objectdetection.BinaryResultReader <result.bin>");
+			System.exit(1);
+		}
+		try (BinaryResultReader reader = new BinaryResultReader(Paths.get(args[0]));
+				StreamingXmlExporter exporter = new StreamingXmlExporter(
+						new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)))) {
+			Result r;
+			while ((r = reader.read()) != null) {
+				exporter.accept(r);
+			}
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
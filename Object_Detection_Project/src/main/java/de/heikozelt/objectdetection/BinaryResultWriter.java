@@ -0,0 +1,194 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Schreibt die Ergebnisse der Objekt-Erkennung in ein kompaktes Binärformat.
+ * Ein Objekt braucht 22 Bytes statt ca. 300 Bytes im XML-Format. Gelesen wird
+ * die Datei mit BinaryResultReader.
+ * <p>
+ * Aufbau der Datei (alle Zahlen big-endian wie bei DataOutputStream):
+ *
+ * <pre>
+ * Kopf:     MAGIC (7 Bytes "GMAFBIN"), VERSION (1 Byte)
+ * Datensatz: Typ (1 Byte), Länge des Inhalts in Bytes (int), Inhalt
+ *
+ * Typ 1, Klassenname:  Name (modified UTF-8 wie DataOutput.writeUTF)
+ *                      Die Klassennamen werden in der Reihenfolge ihres
+ *                      ersten Auftretens ab 0 nummeriert.
+ * Typ 2, Ergebnis:     Dateiname (UTF), Breite (int), Höhe (int),
+ *                      Datum (long, ms seit 1970), predictTime (long, ms),
+ *                      Anzahl Objekte (int), pro Objekt:
+ *                      Nummer des Klassennamens (unsigned short),
+ *                      x, y, Breite, Höhe der Bounding Box (float, relativ 0.0 - 1.0),
+ *                      Wahrscheinlichkeit (float)
+ * </pre>
+ *
+ * Ein Klassenname steht immer vor dem ersten Ergebnis, das ihn verwendet. So
+ * kann die Datei wie die XML-Datei fortlaufend geschrieben werden. Unbekannte
+ * Typen überspringt der Reader anhand der Länge.
+ * <p>
+ * Bounding Boxes und Wahrscheinlichkeiten werden mit float-Genauigkeit
+ * gespeichert. Das genügt, weil die Engine sie ohnehin als float berechnet.
+ *
+ * @author Heiko Zelt
+ */
+public class BinaryResultWriter implements ResultExporter {
+	private static Logger logger = LogManager.getLogger(BinaryResultWriter.class);
+
+	/**
+	 * Kennung am Anfang der Datei
+	 */
+	public static final byte[] MAGIC = { 'G', 'M', 'A', 'F', 'B', 'I', 'N' };
+
+	/**
+	 * Version des Formats
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * Datensatz mit einem Klassennamen
+	 */
+	public static final byte TYPE_CLASS_NAME = 1;
+
+	/**
+	 * Datensatz mit einem Ergebnis
+	 */
+	public static final byte TYPE_RESULT = 2;
+
+	/**
+	 * größte Nummer eines Klassennamens (unsigned short)
+	 */
+	public static final int MAX_CLASS_ID = 0xffff;
+
+	private DataOutputStream out;
+
+	/**
+	 * Puffer für den Inhalt eines Datensatzes, wird wiederverwendet
+	 */
+	private ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(1024);
+	private DataOutputStream record = new DataOutputStream(recordBytes);
+
+	/**
+	 * Nummern der bereits geschriebenen Klassennamen in der Datei, Index ist die
+	 * Nummer in der ClassNameTable, -1 = noch nicht geschrieben
+	 */
+	private int[] fileIds = new int[0];
+	private int classCount = 0;
+
+	/**
+	 * Anzahl geschriebener Ergebnisse
+	 */
+	private long count = 0;
+
+	/**
+	 * Öffnet die Datei (gepuffert) und schreibt den Kopf.
+	 *
+	 * @param path Ergebnisdatei, z.B. export/result.bin
+	 * @throws IOException
+	 */
+	public BinaryResultWriter(Path path) throws IOException {
+		this(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+		logger.info("exportiere Ergebnisse im Binärformat in Datei " + path);
+	}
+
+	/**
+	 * Schreibt in einen beliebigen OutputStream, z.B. zu Testzwecken. Der Stream
+	 * wird mit close() geschlossen.
+	 *
+	 * @param out Ziel
+	 * @throws IOException
+	 */
+	public BinaryResultWriter(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(out);
+		this.out.write(MAGIC);
+		this.out.writeByte(VERSION);
+	}
+
+	/**
+	 * Schreibt ein Ergebnis, vorher die Klassennamen, die noch nicht in der Datei
+	 * stehen.
+	 *
+	 * @param result erkannte Objekte und weitere Infos
+	 * @throws IOException
+	 */
+	@Override
+	public void accept(Result result) throws IOException {
+		int n = result.getNumberOfObjects();
+		for (int i = 0; i < n; i++) {
+			classId(result.getClassId(i));
+		}
+		recordBytes.reset();
+		record.writeUTF(result.getFilename());
+		record.writeInt(result.getImgWidth());
+		record.writeInt(result.getImgHeight());
+		record.writeLong(result.getTime());
+		record.writeLong(result.getPredictTime());
+		record.writeInt(n);
+		for (int i = 0; i < n; i++) {
+			record.writeShort(classId(result.getClassId(i)));
+			record.writeFloat(result.getX(i));
+			record.writeFloat(result.getY(i));
+			record.writeFloat(result.getBoxWidth(i));
+			record.writeFloat(result.getBoxHeight(i));
+			record.writeFloat(result.getProbability(i));
+		}
+		writeRecord(TYPE_RESULT);
+		count++;
+	}
+
+	/**
+	 * @param tableId Nummer in der ClassNameTable
+	 * @return Nummer des Klassennamens in der Datei, ein neuer Name wird zuerst
+	 *         geschrieben
+	 */
+	private int classId(int tableId) throws IOException {
+		if (tableId >= fileIds.length) {
+			int oldLength = fileIds.length;
+			fileIds = Arrays.copyOf(fileIds, Math.max(tableId + 1, ClassNameTable.size()));
+			Arrays.fill(fileIds, oldLength, fileIds.length, -1);
+		}
+		if (fileIds[tableId] < 0) {
+			if (classCount > MAX_CLASS_ID) {
+				throw new IOException("zu viele verschiedene Klassennamen: " + classCount);
+			}
+			recordBytes.reset();
+			record.writeUTF(ClassNameTable.name(tableId));
+			writeRecord(TYPE_CLASS_NAME);
+			fileIds[tableId] = classCount++;
+		}
+		return fileIds[tableId];
+	}
+
+	private void writeRecord(byte type) throws IOException {
+		out.writeByte(type);
+		out.writeInt(recordBytes.size());
+		recordBytes.writeTo(out);
+	}
+
+	/**
+	 * @return Anzahl bisher geschriebener Ergebnisse
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Schließt die Datei.
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+		logger.debug("{} results exported, {} class names", count, classCount);
+	}
+}
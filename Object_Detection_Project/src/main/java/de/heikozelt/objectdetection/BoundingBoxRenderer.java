@@ -0,0 +1,389 @@
+package de.heikozelt.objectdetection;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.DetectedObjects.DetectedObject;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * Speichert Kopien der Bilder mit eingezeichneten Bounding Boxes oder nur die
+ * Ausschnitte der erkannten Objekte. Statt für jedes Bild eine ARGB-Kopie in
+ * voller Auflösung anzulegen, wird in einen Puffer pro Thread gezeichnet, der
+ * für alle weiteren Bilder wiederverwendet wird. Optional wird verkleinert
+ * (Thumbnail), als JPEG gespeichert oder die PNG-Kompression eingestellt.
+ * <p>
+ * Mit setThreads() wird asynchron in eigenen Threads gespeichert. Die Queue
+ * ist begrenzt; ist sie voll, speichert der aufrufende Thread selbst. So
+ * wächst der Speicherbedarf nicht, wenn das Speichern langsamer als die
+ * Objekt-Erkennung ist.
+ *
+ * @author Heiko Zelt
+ */
+public class BoundingBoxRenderer implements AutoCloseable {
+	private static Logger logger = LogManager.getLogger(BoundingBoxRenderer.class);
+
+	private static final Color[] COLORS = { Color.RED, Color.GREEN, Color.BLUE, Color.ORANGE, Color.MAGENTA,
+			Color.CYAN, Color.YELLOW, Color.PINK };
+
+	private String format = "png";
+	private int maxEdge = 0;
+	private int pngCompression = -1;
+	private float jpegQuality = 0.85f;
+	private boolean cropsOnly = false;
+	private int threads = 0;
+	private volatile RunMetrics metrics = null;
+
+	/**
+	 * Zeichenpuffer pro Thread, wird nur vergrößert, nie verkleinert
+	 */
+	private ThreadLocal<BufferedImage> buffers = new ThreadLocal<BufferedImage>();
+
+	private ThreadPoolExecutor executor;
+	private int pending = 0;
+	private IOException failure;
+
+	/**
+	 * @param metrics Laufzeit-Messungen, in die die Zeit jedes Bildes eingetragen
+	 *                wird, oder null (keine Messung, Standard)
+	 */
+	public void setMetrics(RunMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param format "png" (Standard) oder "jpg"
+	 */
+	public void setFormat(String format) {
+		String f = format.toLowerCase(Locale.ROOT);
+		if (f.equals("jpeg")) {
+			f = "jpg";
+		}
+		if (!f.equals("png") && !f.equals("jpg")) {
+			throw new IllegalArgumentException("Format muss png oder jpg sein: " + format);
+		}
+		this.format = f;
+	}
+
+	/**
+	 * @param maxEdge maximale Breite und Höhe in Pixeln, größere Bilder werden
+	 *                verkleinert, 0 = Originalgröße (Standard)
+	 */
+	public void setMaxEdge(int maxEdge) {
+		if (maxEdge < 0) {
+			throw new IllegalArgumentException("maximale Kantenlänge darf nicht negativ sein: " + maxEdge);
+		}
+		this.maxEdge = maxEdge;
+	}
+
+	/**
+	 * @param level Deflate-Level 0 (schnell, groß) bis 9 (langsam, klein), -1 =
+	 *              Standard von ImageIO
+	 */
+	public void setPngCompression(int level) {
+		if (level < -1 || level > 9) {
+			throw new IllegalArgumentException("PNG-Kompression muss zwischen 0 und 9 liegen: " + level);
+		}
+		this.pngCompression = level;
+	}
+
+	/**
+	 * @param quality JPEG-Qualität zwischen 0.0 und 1.0, Standard 0.85
+	 */
+	public void setJpegQuality(float quality) {
+		if (quality < 0.0f || quality > 1.0f) {
+			throw new IllegalArgumentException("JPEG-Qualität muss zwischen 0.0 und 1.0 liegen: " + quality);
+		}
+		this.jpegQuality = quality;
+	}
+
+	/**
+	 * @param cropsOnly true = statt des ganzen Bildes nur die Ausschnitte der
+	 *                  erkannten Objekte speichern, je eine Datei pro Objekt
+	 */
+	public void setCropsOnly(boolean cropsOnly) {
+		this.cropsOnly = cropsOnly;
+	}
+
+	/**
+	 * Schaltet asynchrones Speichern ein.
+	 *
+	 * @param threads       Anzahl Threads, 0 = im aufrufenden Thread (Standard)
+	 * @param queueCapacity maximale Anzahl wartender Bilder
+	 */
+	public synchronized void setThreads(int threads, int queueCapacity) {
+		if (executor != null) {
+			throw new IllegalStateException("Threads können nur vor dem ersten Bild gesetzt werden");
+		}
+		this.threads = threads;
+		if (threads > 0) {
+			executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), r -> {
+						Thread t = new Thread(r, "render");
+						t.setDaemon(true);
+						return t;
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+	}
+
+	/**
+	 * Speichert das Bild eines Ergebnisses, je nach Einstellung sofort oder
+	 * asynchron. Das Bild darf danach vom Aufrufer nicht mehr verändert werden.
+	 *
+	 * @param baseName  Anfang des Dateinamens, z.B. "boxes/IMG_0001.png", daran
+	 *                  wird ".boxes.png" bzw. ".crop1.jpg" usw. angehängt
+	 * @param img       dekodiertes Bild
+	 * @param detection erkannte Objekte
+	 * @throws IOException bei synchronem Speichern oder wenn ein früheres
+	 *                     asynchrones Speichern fehlgeschlagen ist
+	 */
+	public void submit(String baseName, Image img, DetectedObjects detection) throws IOException {
+		if (threads == 0) {
+			render(baseName, img, detection);
+			return;
+		}
+		synchronized (this) {
+			if (failure != null) {
+				throw failure;
+			}
+			pending++;
+		}
+		executor.execute(() -> {
+			try {
+				render(baseName, img, detection);
+			} catch (IOException | RuntimeException e) {
+				logger.error("Bounding-Box-Bild für " + baseName + " konnte nicht gespeichert werden", e);
+				synchronized (this) {
+					if (failure == null) {
+						failure = e instanceof IOException ? (IOException) e : new IOException(e);
+					}
+				}
+			} finally {
+				synchronized (this) {
+					pending--;
+					notifyAll();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Wartet, bis alle asynchron übergebenen Bilder gespeichert sind.
+	 *
+	 * @throws IOException wenn ein Bild nicht gespeichert werden konnte
+	 */
+	public synchronized void flush() throws IOException {
+		try {
+			while (pending > 0) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("beim Warten auf Bounding-Box-Bilder unterbrochen", e);
+		}
+		if (failure != null) {
+			IOException e = failure;
+			failure = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Speichert das Bild im aufrufenden Thread.
+	 *
+	 * @param baseName  Anfang des Dateinamens, z.B. "boxes/IMG_0001.png"
+	 * @param img       dekodiertes Bild
+	 * @param detection erkannte Objekte
+	 * @throws IOException
+	 */
+	public void render(String baseName, Image img, DetectedObjects detection) throws IOException {
+		long startTime = System.nanoTime();
+		Object wrapped = img.getWrappedImage();
+		if (!(wrapped instanceof BufferedImage)) {
+			// andere ImageFactory: wie bisher über eine Kopie des Bildes
+			BatchJob.saveBoundingBoxImage(img, detection, baseName + ".boxes.png");
+		} else if (cropsOnly) {
+			renderCrops(baseName, (BufferedImage) wrapped, detection);
+		} else {
+			renderFull(baseName + ".boxes." + format, (BufferedImage) wrapped, detection);
+		}
+		RunMetrics m = metrics;
+		if (m != null) {
+			m.record(RunMetrics.RENDER, System.nanoTime() - startTime);
+		}
+	}
+
+	private void renderFull(String fileName, BufferedImage src, DetectedObjects detection) throws IOException {
+		double scale = scale(src.getWidth(), src.getHeight());
+		int width = Math.max(1, (int) Math.round(src.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(src.getHeight() * scale));
+		BufferedImage canvas = buffer(width, height);
+		Graphics2D g = canvas.createGraphics();
+		try {
+			if (scale < 1.0) {
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			}
+			g.drawImage(src, 0, 0, width, height, null);
+			drawBoxes(g, detection, width, height);
+		} finally {
+			g.dispose();
+		}
+		write(canvas, Paths.get(fileName));
+		logger.debug("Detected objects image has been saved in: {}", fileName);
+	}
+
+	private void renderCrops(String baseName, BufferedImage src, DetectedObjects detection) throws IOException {
+		int n = detection.getNumberOfObjects();
+		for (int i = 0; i < n; i++) {
+			DetectedObject obj = detection.item(i);
+			Rectangle rect = obj.getBoundingBox().getBounds();
+			int x = clamp((int) Math.floor(rect.getX() * src.getWidth()), 0, src.getWidth() - 1);
+			int y = clamp((int) Math.floor(rect.getY() * src.getHeight()), 0, src.getHeight() - 1);
+			int w = clamp((int) Math.ceil(rect.getWidth() * src.getWidth()), 1, src.getWidth() - x);
+			int h = clamp((int) Math.ceil(rect.getHeight() * src.getHeight()), 1, src.getHeight() - y);
+			double scale = scale(w, h);
+			int width = Math.max(1, (int) Math.round(w * scale));
+			int height = Math.max(1, (int) Math.round(h * scale));
+			BufferedImage canvas = buffer(width, height);
+			Graphics2D g = canvas.createGraphics();
+			try {
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(src, 0, 0, width, height, x, y, x + w, y + h, null);
+			} finally {
+				g.dispose();
+			}
+			write(canvas, Paths.get(baseName + ".crop" + (i + 1) + "." + format));
+		}
+		logger.debug("{} crops of {} saved", n, baseName);
+	}
+
+	/**
+	 * @return Faktor, um die Kantenlänge auf maxEdge zu begrenzen (höchstens 1.0)
+	 */
+	private double scale(int width, int height) {
+		int edge = Math.max(width, height);
+		if (maxEdge == 0 || edge <= maxEdge) {
+			return 1.0;
+		}
+		return (double) maxEdge / edge;
+	}
+
+	/**
+	 * Liefert den Zeichenpuffer des aktuellen Threads in der gewünschten Größe.
+	 * Der Puffer wird nur neu angelegt, wenn er zu klein ist. Sonst wird ein
+	 * Ausschnitt verwendet, der sich die Pixel mit dem Puffer teilt.
+	 */
+	private BufferedImage buffer(int width, int height) {
+		BufferedImage buffer = buffers.get();
+		if (buffer == null || buffer.getWidth() < width || buffer.getHeight() < height) {
+			int w = buffer == null ? width : Math.max(width, buffer.getWidth());
+			int h = buffer == null ? height : Math.max(height, buffer.getHeight());
+			// RGB statt ARGB: JPEG kann keinen Alpha-Kanal und PNG braucht keinen
+			buffer = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			buffers.set(buffer);
+			logger.debug("render buffer {}x{} allocated", w, h);
+		}
+		if (buffer.getWidth() == width && buffer.getHeight() == height) {
+			return buffer;
+		}
+		return buffer.getSubimage(0, 0, width, height);
+	}
+
+	private static void drawBoxes(Graphics2D g, DetectedObjects detection, int width, int height) {
+		int stroke = Math.max(2, Math.min(width, height) / 200);
+		g.setStroke(new BasicStroke(stroke));
+		g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(10, Math.min(width, height) / 40)));
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		int n = detection.getNumberOfObjects();
+		for (int i = 0; i < n; i++) {
+			DetectedObject obj = detection.item(i);
+			Rectangle rect = obj.getBoundingBox().getBounds();
+			int x = (int) Math.round(rect.getX() * width);
+			int y = (int) Math.round(rect.getY() * height);
+			int w = (int) Math.round(rect.getWidth() * width);
+			int h = (int) Math.round(rect.getHeight() * height);
+			Color color = COLORS[Math.floorMod(obj.getClassName().hashCode(), COLORS.length)];
+			g.setColor(color);
+			g.drawRect(x, y, w, h);
+			String label = String.format(Locale.ROOT, "%s %.2f", obj.getClassName(), obj.getProbability());
+			int textHeight = g.getFontMetrics().getAscent();
+			int textY = Math.max(textHeight, y - stroke);
+			g.fillRect(x, textY - textHeight, g.getFontMetrics().stringWidth(label) + 4, textHeight + 2);
+			g.setColor(Color.WHITE);
+			g.drawString(label, x + 2, textY);
+		}
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * Kodiert das Bild mit den eingestellten Parametern. Die Datei wird in jedem
+	 * Fall geschlossen.
+	 */
+	private void write(BufferedImage image, Path path) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		if (!writers.hasNext()) {
+			throw new IOException("kein ImageWriter für " + format);
+		}
+		ImageWriter writer = writers.next();
+		try (OutputStream out = Files.newOutputStream(path);
+				ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+			writer.setOutput(ios);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (format.equals("jpg")) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(jpegQuality);
+			} else if (pngCompression >= 0 && param.canWriteCompressed()) {
+				// der PNG-Writer des JDK rechnet die Qualität in den Deflate-Level um
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(Math.max(0.0f, 1.0f - pngCompression / 9.0f - 0.01f));
+			}
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * Wartet auf alle wartenden Bilder und beendet die Threads.
+	 *
+	 * @throws IOException wenn ein Bild nicht gespeichert werden konnte
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+}
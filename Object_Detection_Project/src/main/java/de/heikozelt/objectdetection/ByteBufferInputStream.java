@@ -0,0 +1,71 @@
+package de.heikozelt.objectdetection;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream, der direkt aus einem ByteBuffer liest, ohne den Inhalt vorher in
+ * ein byte-Array zu kopieren. Der Buffer kann auch ein direkter oder ein
+ * memory-mapped Buffer sein. Position und Limit des übergebenen Buffers werden
+ * nicht verändert, gelesen wird aus einer Kopie der Sicht (duplicate()).
+ *
+ * @author Heiko Zelt
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private ByteBuffer buffer;
+	private int mark;
+
+	/**
+	 * @param buffer Daten zwischen position und limit
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer.duplicate();
+		this.mark = this.buffer.position();
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		mark = buffer.position();
+	}
+
+	@Override
+	public void reset() {
+		buffer.position(mark);
+	}
+}
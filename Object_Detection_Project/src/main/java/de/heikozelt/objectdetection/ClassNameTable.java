@@ -0,0 +1,67 @@
+package de.heikozelt.objectdetection;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabelle aller vorkommenden Klassennamen. Jeder Name wird nur einmal
+ * gespeichert und bekommt eine Nummer. Result speichert statt der Namen nur
+ * diese Nummern. Das Modell kennt nur wenige Klassen (z.B. 80 bei COCO), die
+ * Tabelle bleibt also klein.
+ * <p>
+ * Mehrere Threads dürfen gleichzeitig Namen eintragen und lesen. Das Lesen
+ * über die Nummer kommt ohne Sperre aus.
+ *
+ * @author Heiko Zelt
+ */
+public final class ClassNameTable {
+
+	private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * Namen in der Reihenfolge der Nummern, wird beim Eintragen kopiert
+	 */
+	private static volatile String[] names = new String[0];
+
+	private ClassNameTable() {
+	}
+
+	/**
+	 * Liefert die Nummer eines Klassennamens, ein neuer Name wird eingetragen.
+	 *
+	 * @param name Klassenname, z.B. "cat"
+	 * @return Nummer ab 0
+	 */
+	public static int id(String name) {
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		synchronized (ClassNameTable.class) {
+			id = ids.get(name);
+			if (id == null) {
+				String[] grown = Arrays.copyOf(names, names.length + 1);
+				id = names.length;
+				grown[id] = name;
+				names = grown;
+				ids.put(name, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @param id Nummer, die id() geliefert hat
+	 * @return Klassenname
+	 */
+	public static String name(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @return Anzahl eingetragener Namen
+	 */
+	public static int size() {
+		return names.length;
+	}
+}
@@ -0,0 +1,82 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Liefert die Bilddateien eines Verzeichnisses nach und nach, statt alle
+ * Dateinamen vorab in ein Array zu lesen. Der nächste Dateiname wird erst
+ * gelesen, wenn er gebraucht wird. So bleibt der Speicherbedarf auch bei
+ * Millionen von Dateien konstant und das erste Bild kann sofort verarbeitet
+ * werden. Optional werden Unterverzeichnisse durchsucht. Es werden nur
+ * reguläre Dateien geliefert, deren Name zum Glob-Muster passt.
+ *
+ * @author Heiko Zelt
+ */
+public class CollectionWalker implements Iterator<String>, AutoCloseable {
+	private static Logger logger = LogManager.getLogger(CollectionWalker.class);
+
+	/**
+	 * Standard-Filter: übliche Bildformate
+	 */
+	public static final String DEFAULT_GLOB = "*.{png,jpg,jpeg,gif,bmp,PNG,JPG,JPEG,GIF,BMP}";
+
+	private Stream<Path> stream;
+	private Iterator<Path> iterator;
+	private Path root;
+
+	/**
+	 * Öffnet das Verzeichnis.
+	 *
+	 * @param root      Verzeichnis mit Bildern, z.B. "collection"
+	 * @param recursive true = auch Unterverzeichnisse durchsuchen
+	 * @param glob      Muster für den Dateinamen (ohne Pfad), z.B. "*.png"
+	 * @throws IOException wenn das Verzeichnis nicht gelesen werden kann
+	 */
+	public CollectionWalker(Path root, boolean recursive, String glob) throws IOException {
+		this.root = root;
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		stream = recursive ? Files.walk(root) : Files.list(root);
+		iterator = stream.filter(p -> Files.isRegularFile(p) && matcher.matches(p.getFileName())).iterator();
+		logger.debug("walking {} recursive={} glob={}", root, recursive, glob);
+	}
+
+	/**
+	 * @return true, wenn es noch eine passende Datei gibt
+	 * @throws UncheckedIOException wenn ein Verzeichnis nicht gelesen werden kann
+	 */
+	@Override
+	public boolean hasNext() {
+		return iterator.hasNext();
+	}
+
+	/**
+	 * @return Pfad der nächsten Datei relativ zum Wurzelverzeichnis, z.B.
+	 *         "IMG_0001.png" oder "urlaub/IMG_0002.png"
+	 */
+	@Override
+	public String next() {
+		if (!iterator.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return root.relativize(iterator.next()).toString();
+	}
+
+	/**
+	 * Gibt die Verzeichnis-Handles frei.
+	 */
+	@Override
+	public void close() {
+		stream.close();
+	}
+}
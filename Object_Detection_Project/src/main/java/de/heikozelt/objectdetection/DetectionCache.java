@@ -0,0 +1,342 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Persistenter Cache für die Ergebnisse der Objekt-Erkennung. Für jedes
+ * analysierte Bild wird eine Zeile an die Cache-Datei angehängt, sobald das
+ * Bild fertig ist. Beim nächsten Lauf werden unveränderte Bilder (gleicher
+ * Pfad, gleiche Größe, gleiches Änderungsdatum und optional gleicher
+ * SHA-256-Hash) nicht erneut analysiert. Bricht ein Lauf ab, setzt der nächste
+ * Lauf dort fort, wo der abgebrochene aufgehört hat.
+ * <p>
+ * Die erste Zeile enthält einen Fingerabdruck des Modells (Engine, Backbone,
+ * Threshold). Passt er nicht zum aktuellen Modell, wird der Cache verworfen.
+ * <p>
+ * Wird ein geändertes Bild erneut analysiert, ersetzt die neue Zeile die alte,
+ * die alte bleibt aber in der Datei. Gibt es mehr ersetzte als gültige Zeilen,
+ * wird die Datei beim Öffnen oder Schließen ohne die ersetzten Zeilen neu
+ * geschrieben, zuerst in eine temporäre Datei, die dann umbenannt wird.
+ * <p>
+ * Der SHA-256-Hash wird außerhalb der Sperre berechnet, damit parallele Worker
+ * nicht aufeinander warten, während eine Datei gelesen wird.
+ * <p>
+ * Format (UTF-8, Felder durch Tabulator getrennt):
+ *
+ * <pre>
+ * #detection-cache v1	&lt;Fingerabdruck&gt;
+ * &lt;Pfad&gt;	&lt;Größe&gt;	&lt;mtime&gt;	&lt;Hash oder -&gt;	&lt;Breite&gt;	&lt;Höhe&gt;	&lt;predictTime&gt;	&lt;Anzahl&gt;	(&lt;Klasse&gt;	&lt;p&gt;	&lt;x&gt;	&lt;y&gt;	&lt;w&gt;	&lt;h&gt;)*
+ * </pre>
+ *
+ * @author Heiko Zelt
+ */
+public class DetectionCache implements AutoCloseable {
+	private static Logger logger = LogManager.getLogger(DetectionCache.class);
+
+	private static final String MAGIC = "#detection-cache v1";
+	private static final int FIXED_FIELDS = 8;
+	private static final int OBJECT_FIELDS = 6;
+
+	/**
+	 * Ein Eintrag im Cache
+	 */
+	private static class Entry {
+		long size;
+		long mtime;
+		String hash;
+		String[] fields;
+	}
+
+	private Path cacheFile;
+	private String fingerprint;
+	private boolean useHash;
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+	private BufferedWriter out;
+	/**
+	 * Anzahl ersetzter oder unvollständiger Zeilen in der Datei
+	 */
+	private long superseded = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Öffnet den Cache und liest alle gültigen Einträge ein. Existiert die Datei
+	 * nicht oder passt der Fingerabdruck nicht, wird sie neu angelegt.
+	 *
+	 * @param cacheFile   Cache-Datei, z.B. "export/result.cache"
+	 * @param fingerprint beschreibt Modell und Parameter, z.B.
+	 *                    "PyTorch/resnet50/0.5"
+	 * @param useHash     true = zusätzlich den SHA-256-Hash des Dateiinhalts
+	 *                    vergleichen
+	 * @throws IOException
+	 */
+	public DetectionCache(Path cacheFile, String fingerprint, boolean useHash) throws IOException {
+		this.cacheFile = cacheFile;
+		this.fingerprint = fingerprint;
+		this.useHash = useHash;
+		boolean valid = load();
+		if (valid && superseded > entries.size()) {
+			compact();
+		}
+		if (valid) {
+			out = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		} else {
+			out = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8);
+			out.write(header());
+			out.flush();
+		}
+		logger.info("Cache " + cacheFile + " mit " + entries.size() + " Einträgen geöffnet");
+	}
+
+	/**
+	 * Liest die Cache-Datei ein.
+	 *
+	 * @return false, wenn die Datei fehlt oder zu einem anderen Modell gehört
+	 */
+	private boolean load() throws IOException {
+		if (!Files.exists(cacheFile)) {
+			return false;
+		}
+		try (BufferedReader in = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+			String header = in.readLine();
+			if (header == null || !header.equals(MAGIC + "\t" + escape(fingerprint))) {
+				logger.info("Cache " + cacheFile + " gehört zu anderem Modell und wird verworfen: " + header);
+				return false;
+			}
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (!isComplete(fields)) {
+					// z.B. letzte Zeile nach einem Absturz
+					logger.warn("unvollständiger Cache-Eintrag wird ignoriert: " + line);
+					superseded++;
+					continue;
+				}
+				Entry e = new Entry();
+				e.size = Long.parseLong(fields[1]);
+				e.mtime = Long.parseLong(fields[2]);
+				e.hash = fields[3];
+				e.fields = fields;
+				if (entries.put(unescape(fields[0]), e) != null) {
+					superseded++;
+				}
+			}
+		}
+		return true;
+	}
+
+	private String header() {
+		return MAGIC + "\t" + escape(fingerprint) + "\n";
+	}
+
+	/**
+	 * Schreibt die Cache-Datei nur mit den gültigen Einträgen neu. Die Datei
+	 * wird erst ersetzt, wenn die neue vollständig geschrieben ist.
+	 */
+	private void compact() throws IOException {
+		logger.info("Cache " + cacheFile + " wird ohne " + superseded + " ersetzte Zeilen neu geschrieben");
+		Path dir = cacheFile.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(dir, cacheFile.getFileName().toString(), ".tmp");
+		try {
+			try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				w.write(header());
+				for (Entry e : entries.values()) {
+					w.write(String.join("\t", e.fields));
+					w.write('\n');
+				}
+			}
+			try {
+				Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		superseded = 0;
+	}
+
+	private static boolean isComplete(String[] fields) {
+		if (fields.length < FIXED_FIELDS) {
+			return false;
+		}
+		try {
+			int n = Integer.parseInt(fields[7]);
+			return fields.length == FIXED_FIELDS + n * OBJECT_FIELDS;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Sucht ein gültiges Ergebnis für eine Bilddatei.
+	 *
+	 * @param fileName Dateiname relativ zum "collection"-Verzeichnis
+	 * @param path     vollständiger Pfad der Bilddatei
+	 * @return gespeichertes Ergebnis oder null, wenn das Bild neu analysiert werden
+	 *         muss
+	 * @throws IOException
+	 */
+	public Result lookup(String fileName, Path path) throws IOException {
+		Entry e;
+		synchronized (this) {
+			e = entries.get(fileName);
+		}
+		if (e != null) {
+			BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+			if (e.size == attr.size() && e.mtime == attr.lastModifiedTime().toMillis()
+					&& (!useHash || e.hash.equals(hash(path)))) {
+				hits.incrementAndGet();
+				return toResult(fileName, e.fields);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Hängt das Ergebnis eines Bildes an die Cache-Datei an.
+	 *
+	 * @param result erkannte Objekte und weitere Infos
+	 * @param path   vollständiger Pfad der Bilddatei
+	 * @throws IOException
+	 */
+	public void store(Result result, Path path) throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+		String hash = useHash ? hash(path) : "-";
+		int n = result.getNumberOfObjects();
+		StringBuilder line = new StringBuilder();
+		line.append(escape(result.getFilename())).append('\t').append(attr.size()).append('\t')
+				.append(attr.lastModifiedTime().toMillis()).append('\t').append(hash)
+				.append('\t').append(result.getImgWidth()).append('\t').append(result.getImgHeight()).append('\t')
+				.append(result.getPredictTime()).append('\t').append(n);
+		for (int i = 0; i < n; i++) {
+			line.append('\t').append(escape(result.getClassName(i))).append('\t').append(result.getProbability(i))
+					.append('\t').append(result.getX(i)).append('\t').append(result.getY(i)).append('\t')
+					.append(result.getBoxWidth(i)).append('\t').append(result.getBoxHeight(i));
+		}
+		Entry e = new Entry();
+		e.size = attr.size();
+		e.mtime = attr.lastModifiedTime().toMillis();
+		e.hash = hash;
+		e.fields = line.toString().split("\t", -1);
+		line.append('\n');
+
+		synchronized (this) {
+			out.write(line.toString());
+			// sofort schreiben, damit nach einem Absturz nichts verloren ist
+			out.flush();
+			if (entries.put(result.getFilename(), e) != null) {
+				superseded++;
+			}
+		}
+	}
+
+	/**
+	 * Baut aus einem Cache-Eintrag wieder ein Result.
+	 */
+	private static Result toResult(String fileName, String[] fields) {
+		int n = Integer.parseInt(fields[7]);
+		int[] classIds = new int[n];
+		float[] boxes = new float[4 * n];
+		float[] probabilities = new float[n];
+		for (int i = 0; i < n; i++) {
+			int f = FIXED_FIELDS + i * OBJECT_FIELDS;
+			classIds[i] = ClassNameTable.id(unescape(fields[f]));
+			probabilities[i] = Float.parseFloat(fields[f + 1]);
+			for (int k = 0; k < 4; k++) {
+				boxes[4 * i + k] = Float.parseFloat(fields[f + 2 + k]);
+			}
+		}
+		return new Result(fileName, Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), classIds, boxes,
+				probabilities, Long.parseLong(fields[6]), System.currentTimeMillis());
+	}
+
+	/**
+	 * Berechnet den SHA-256-Hash des Dateiinhalts.
+	 */
+	static String hash(Path path) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // gibt es in jeder JVM
+		}
+		byte[] buffer = new byte[65536];
+		try (InputStream in = Files.newInputStream(path)) {
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, len);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String s) {
+		if (s.indexOf('\\') < 0) {
+			return s;
+		}
+		StringBuilder str = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char next = s.charAt(++i);
+				str.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				str.append(c);
+			}
+		}
+		return str.toString();
+	}
+
+	/**
+	 * @return Anzahl Bilder, deren Ergebnis aus dem Cache kam
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Anzahl Bilder, die neu analysiert werden mussten
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Schließt die Cache-Datei und schreibt sie ggf. ohne ersetzte Zeilen neu.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+		if (superseded > entries.size()) {
+			compact();
+		}
+	}
+}
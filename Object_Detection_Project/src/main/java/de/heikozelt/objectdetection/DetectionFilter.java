@@ -0,0 +1,348 @@
+package de.heikozelt.objectdetection;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Filtert die erkannten Objekte eines Bildes nach der Objekt-Erkennung und vor
+ * dem Speichern im Result, Cache und in der Ergebnisdatei. Möglich sind:
+ * <ul>
+ * <li>nur bestimmte Klassen (allow) bzw. bestimmte Klassen nicht (deny)</li>
+ * <li>ein eigener Threshold pro Klasse</li>
+ * <li>Non-Maximum Suppression über alle Klassen: von zwei Objekten, deren
+ * Bounding Boxes sich stärker als eine Grenze überlappen (Intersection over
+ * Union), bleibt nur das wahrscheinlichere</li>
+ * <li>höchstens K Objekte pro Bild, die wahrscheinlichsten</li>
+ * </ul>
+ * Die übrigen Objekte behalten ihre Reihenfolge. Der globale Threshold wird
+ * bereits von der Engine angewendet, ein niedrigerer Threshold pro Klasse wirkt
+ * deshalb nur, wenn der globale Threshold ebenfalls niedriger ist.
+ * <p>
+ * Die Regeln werden vor dem Lauf eingestellt, danach dürfen mehrere Threads
+ * gleichzeitig apply() aufrufen. DetectorConfig übernimmt eine unveränderliche
+ * Kopie (frozenCopy()), spätere Änderungen am Original wirken sich auf bereits
+ * gebaute Konfigurationen nicht aus. Klassennamen werden beim Einstellen in
+ * Nummern der ClassNameTable übersetzt, pro Objekt wird nur in einem Array
+ * nachgeschlagen.
+ *
+ * @author Heiko Zelt
+ */
+public class DetectionFilter {
+
+	/**
+	 * Wahrscheinlichkeit, die kein Objekt erreicht (Klasse ausgeschlossen)
+	 */
+	private static final float REJECT = Float.POSITIVE_INFINITY;
+
+	/**
+	 * erlaubte Klassen, null = alle
+	 */
+	private TreeSet<String> allow = null;
+	private TreeSet<String> deny = new TreeSet<String>();
+	private TreeMap<String, Float> classThresholds = new TreeMap<String, Float>();
+	private int topK = 0;
+	private float nmsIoU = 0;
+
+	/**
+	 * minimale Wahrscheinlichkeit pro Nummer eines Klassennamens
+	 */
+	private float[] minProbabilities = new float[0];
+
+	/**
+	 * minimale Wahrscheinlichkeit für Klassen, die beim Einstellen noch nicht
+	 * bekannt waren
+	 */
+	private float defaultMinProbability = 0;
+
+	/**
+	 * true = Regeln dürfen nicht mehr geändert werden
+	 */
+	private boolean frozen = false;
+
+	/**
+	 * Liefert eine Kopie, deren Regeln nicht mehr geändert werden können. Eine
+	 * bereits unveränderliche Kopie wird selbst zurückgegeben.
+	 *
+	 * @return unveränderliche Kopie
+	 */
+	public DetectionFilter frozenCopy() {
+		if (frozen) {
+			return this;
+		}
+		DetectionFilter copy = new DetectionFilter();
+		copy.allow = allow == null ? null : new TreeSet<String>(allow);
+		copy.deny = new TreeSet<String>(deny);
+		copy.classThresholds = new TreeMap<String, Float>(classThresholds);
+		copy.topK = topK;
+		copy.nmsIoU = nmsIoU;
+		copy.minProbabilities = minProbabilities.clone();
+		copy.defaultMinProbability = defaultMinProbability;
+		copy.frozen = true;
+		return copy;
+	}
+
+	/**
+	 * @return true, wenn die Regeln nicht mehr geändert werden können
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkModifiable() {
+		if (frozen) {
+			throw new IllegalStateException("Filter ist unveränderlich, bitte das Original ändern: " + this);
+		}
+	}
+
+	/**
+	 * Nur diese Klassen übernehmen.
+	 *
+	 * @param classNames z.B. "cat", "dog"; null = alle Klassen (Standard)
+	 */
+	public void setAllow(Collection<String> classNames) {
+		checkModifiable();
+		allow = classNames == null ? null : new TreeSet<String>(classNames);
+		update();
+	}
+
+	/**
+	 * Diese Klassen nicht übernehmen, auch wenn sie erlaubt sind.
+	 *
+	 * @param classNames z.B. "person"
+	 */
+	public void setDeny(Collection<String> classNames) {
+		checkModifiable();
+		deny = new TreeSet<String>(classNames);
+		update();
+	}
+
+	/**
+	 * Setzt einen eigenen Threshold für eine Klasse.
+	 *
+	 * @param className z.B. "cat"
+	 * @param threshold minimale Wahrscheinlichkeit, z.B. 0.3
+	 */
+	public void setClassThreshold(String className, float threshold) {
+		checkModifiable();
+		if (threshold < 0 || threshold > 1) {
+			throw new IllegalArgumentException("Threshold muss zwischen 0 und 1 liegen: " + className + "=" + threshold);
+		}
+		classThresholds.put(className, threshold);
+		update();
+	}
+
+	/**
+	 * @param k höchstens so viele Objekte pro Bild, die wahrscheinlichsten; 0 =
+	 *          unbegrenzt (Standard)
+	 */
+	public void setTopK(int k) {
+		checkModifiable();
+		if (k < 0) {
+			throw new IllegalArgumentException("K darf nicht negativ sein: " + k);
+		}
+		topK = k;
+	}
+
+	/**
+	 * Schaltet die Non-Maximum Suppression über alle Klassen ein.
+	 *
+	 * @param iou Objekte, die sich mit einem wahrscheinlicheren Objekt stärker
+	 *            überlappen, fallen weg, z.B. 0.7; 0 = aus (Standard)
+	 */
+	public void setNmsIoU(float iou) {
+		checkModifiable();
+		if (iou < 0 || iou > 1) {
+			throw new IllegalArgumentException("IoU muss zwischen 0 und 1 liegen: " + iou);
+		}
+		nmsIoU = iou;
+	}
+
+	/**
+	 * @return true, wenn keine Regel eingestellt ist und apply() nichts ändert
+	 */
+	public boolean isPassThrough() {
+		return allow == null && deny.isEmpty() && classThresholds.isEmpty() && topK == 0 && nmsIoU == 0;
+	}
+
+	/**
+	 * Übersetzt die Regeln in ein Array, das über die Nummer des Klassennamens
+	 * gelesen wird.
+	 */
+	private void update() {
+		Map<Integer, Float> rules = new LinkedHashMap<Integer, Float>();
+		if (allow != null) {
+			for (String name : allow) {
+				rules.put(ClassNameTable.id(name), 0f);
+			}
+		}
+		for (Map.Entry<String, Float> e : classThresholds.entrySet()) {
+			int id = ClassNameTable.id(e.getKey());
+			if (allow == null || rules.containsKey(id)) {
+				rules.put(id, e.getValue());
+			}
+		}
+		for (String name : deny) {
+			rules.put(ClassNameTable.id(name), REJECT);
+		}
+		defaultMinProbability = allow == null ? 0 : REJECT;
+		float[] min = new float[ClassNameTable.size()];
+		Arrays.fill(min, defaultMinProbability);
+		for (Map.Entry<Integer, Float> e : rules.entrySet()) {
+			min[e.getKey()] = e.getValue();
+		}
+		minProbabilities = min;
+	}
+
+	private float minProbability(int classId) {
+		return classId < minProbabilities.length ? minProbabilities[classId] : defaultMinProbability;
+	}
+
+	/**
+	 * Wendet die Regeln auf ein Ergebnis an.
+	 *
+	 * @param result erkannte Objekte eines Bildes
+	 * @return gefiltertes Ergebnis (oder result, wenn kein Objekt wegfällt)
+	 */
+	public Result apply(Result result) {
+		int n = result.getNumberOfObjects();
+		if (n == 0 || isPassThrough()) {
+			return result;
+		}
+		int[] order = new int[n];
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			if (result.getProbability(i) >= minProbability(result.getClassId(i))) {
+				order[m++] = i;
+			}
+		}
+		// nach Wahrscheinlichkeit absteigend sortieren, bei Gleichstand bleibt die
+		// Reihenfolge (Insertion Sort, es sind nur wenige Objekte)
+		for (int a = 1; a < m; a++) {
+			int i = order[a];
+			float p = result.getProbability(i);
+			int b = a - 1;
+			while (b >= 0 && result.getProbability(order[b]) < p) {
+				order[b + 1] = order[b];
+				b--;
+			}
+			order[b + 1] = i;
+		}
+		boolean[] keep = new boolean[n];
+		int kept = 0;
+		int limit = topK > 0 ? topK : Integer.MAX_VALUE;
+		for (int a = 0; a < m && kept < limit; a++) {
+			int i = order[a];
+			if (nmsIoU > 0 && isSuppressed(result, order, a, keep)) {
+				continue;
+			}
+			keep[i] = true;
+			kept++;
+		}
+		return result.select(keep, kept);
+	}
+
+	/**
+	 * @return true, wenn sich das Objekt order[a] mit einem wahrscheinlicheren,
+	 *         bereits übernommenen Objekt zu stark überlappt
+	 */
+	private boolean isSuppressed(Result result, int[] order, int a, boolean[] keep) {
+		int i = order[a];
+		for (int c = 0; c < a; c++) {
+			if (keep[order[c]] && iou(result, order[c], i) > nmsIoU) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Intersection over Union zweier Bounding Boxes eines Ergebnisses. Die
+	 * relativen Koordinaten genügen, das Verhältnis der Flächen ändert sich
+	 * durch Skalieren von x und y nicht.
+	 *
+	 * @param result Ergebnis
+	 * @param a      Index des ersten Objekts
+	 * @param b      Index des zweiten Objekts
+	 * @return 0.0 (keine Überlappung) bis 1.0 (gleiche Box)
+	 */
+	static float iou(Result result, int a, int b) {
+		return iou(result.getX(a), result.getY(a), result.getBoxWidth(a), result.getBoxHeight(a), result.getX(b),
+				result.getY(b), result.getBoxWidth(b), result.getBoxHeight(b));
+	}
+
+	/**
+	 * Intersection over Union zweier Rechtecke (x, y, Breite, Höhe).
+	 *
+	 * @return 0.0 (keine Überlappung) bis 1.0 (gleiches Rechteck)
+	 */
+	static float iou(float ax, float ay, float aw, float ah, float bx, float by, float bw, float bh) {
+		float iw = Math.min(ax + aw, bx + bw) - Math.max(ax, bx);
+		float ih = Math.min(ay + ah, by + bh) - Math.max(ay, by);
+		if (iw <= 0 || ih <= 0) {
+			return 0;
+		}
+		float intersection = iw * ih;
+		float union = aw * ah + bw * bh - intersection;
+		return union <= 0 ? 0 : intersection / union;
+	}
+
+	/**
+	 * Liest die Thresholds pro Klasse von der Kommandozeile.
+	 *
+	 * @param spec z.B. "cat=0.3,dog=0.7"
+	 */
+	public void parseClassThresholds(String spec) {
+		for (String pair : spec.split(",")) {
+			int eq = pair.indexOf('=');
+			if (eq <= 0) {
+				throw new IllegalArgumentException("erwartet KLASSE=THRESHOLD: " + pair);
+			}
+			setClassThreshold(pair.substring(0, eq).trim(), Float.parseFloat(pair.substring(eq + 1).trim()));
+		}
+	}
+
+	/**
+	 * @return kleinster Threshold pro Klasse oder 1.0, wenn keiner eingestellt ist
+	 */
+	public float getMinClassThreshold() {
+		float min = 1;
+		for (float t : classThresholds.values()) {
+			min = Math.min(min, t);
+		}
+		return min;
+	}
+
+	/**
+	 * @return Beschreibung aller Regeln, gleiche Regeln ergeben denselben Text
+	 *         (z.B. für den Fingerabdruck des Caches)
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("filter");
+		if (allow != null) {
+			s.append(" allow=").append(String.join(",", allow));
+		}
+		if (!deny.isEmpty()) {
+			s.append(" deny=").append(String.join(",", deny));
+		}
+		if (!classThresholds.isEmpty()) {
+			s.append(" thresholds=");
+			String separator = "";
+			for (Map.Entry<String, Float> e : classThresholds.entrySet()) {
+				s.append(separator).append(e.getKey()).append('=').append(e.getValue());
+				separator = ",";
+			}
+		}
+		if (topK > 0) {
+			s.append(" top-k=").append(topK);
+		}
+		if (nmsIoU > 0) {
+			s.append(" nms=").append(nmsIoU);
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,489 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.repository.zoo.ZooModel;
+
+/**
+ * Verarbeitet die Bilder in drei Stufen, die gleichzeitig laufen: Lesen und
+ * Dekodieren, Objekt-Erkennung und Ausgabe (Speichern der Kopie mit Bounding
+ * Boxes). Zwischen den Stufen liegen Queues mit begrenzter Kapazität. Jede
+ * Stufe hat eine eigene Anzahl Threads. So muss die Objekt-Erkennung nicht auf
+ * die Festplatte oder das Kodieren/Dekodieren der Bilder warten.
+ * <p>
+ * Ist im Detector die Fehler-Isolierung eingeschaltet, wird ein Bild, das nicht
+ * gelesen oder analysiert werden kann, übersprungen und die übrigen Bilder
+ * laufen weiter. Sonst bricht der erste Fehler die ganze Pipeline ab.
+ *
+ * @author Heiko Zelt
+ */
+public class DetectionPipeline {
+	private static Logger logger = LogManager.getLogger(DetectionPipeline.class);
+
+	/**
+	 * Ein Bild auf dem Weg durch die Pipeline. Sind img und result null, wurde es
+	 * übersprungen.
+	 */
+	private static class Item {
+		int index;
+		String fileName;
+		Image img;
+		Result result;
+
+		Item(int index, String fileName) {
+			this.index = index;
+			this.fileName = fileName;
+		}
+	}
+
+	/**
+	 * Markierung für das Ende der Eingabe ("poison pill")
+	 */
+	private static final Item END = new Item(-1, null);
+
+	private int decodeThreads;
+	private int inferThreads;
+	private int outputThreads;
+	private int queueCapacity;
+	private int batchSize = 1;
+	private int maxInFlight = Integer.MAX_VALUE;
+
+	/**
+	 * liest, analysiert und speichert die Bilder, null = Standard-Detector von
+	 * BatchJob
+	 */
+	private Detector detector = null;
+
+	private StageStatistics decodeStatistics;
+	private StageStatistics inferStatistics;
+	private StageStatistics outputStatistics;
+
+	/**
+	 * Gesamtlaufzeit des letzten Durchlaufs in Nanosekunden
+	 */
+	private long wallNanos;
+
+	/**
+	 * erste aufgetretene Exception, danach werden keine neuen Bilder mehr gelesen
+	 */
+	private AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+	/**
+	 * Empfänger der Ergebnisse des laufenden Durchlaufs
+	 */
+	private ResultConsumer consumer;
+
+	/**
+	 * fertige Ergebnisse, deren Vorgänger noch nicht übergeben wurden
+	 */
+	private Map<Integer, Result> pending = new HashMap<Integer, Result>();
+
+	/**
+	 * Index des nächsten zu übergebenden Ergebnisses
+	 */
+	private int nextIndex;
+
+	/**
+	 * Index des nächsten gelesenen Dateinamens
+	 */
+	private int readIndex;
+
+	/**
+	 * begrenzt die Anzahl Bilder in der Pipeline
+	 */
+	private Semaphore inFlight;
+
+	/**
+	 * einfacher Konstruktor
+	 *
+	 * @param decodeThreads Anzahl Threads zum Lesen und Dekodieren
+	 * @param inferThreads  Anzahl Threads zur Objekt-Erkennung (jeweils mit
+	 *                      eigenem Predictor)
+	 * @param outputThreads Anzahl Threads zum Speichern der Bounding-Box-Bilder
+	 * @param queueCapacity maximale Anzahl Elemente in jeder Queue
+	 */
+	public DetectionPipeline(int decodeThreads, int inferThreads, int outputThreads, int queueCapacity) {
+		if (decodeThreads < 1 || inferThreads < 1 || outputThreads < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Anzahl Threads und Queue-Kapazität müssen mindestens 1 sein");
+		}
+		this.decodeThreads = decodeThreads;
+		this.inferThreads = inferThreads;
+		this.outputThreads = outputThreads;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Legt fest, wie viele Bilder ein Inferenz-Thread höchstens gemeinsam mit
+	 * batchPredict() analysiert. Es werden nur Bilder zusammengefasst, die bereits
+	 * in der Queue warten. Auf einen vollen Batch wird nicht gewartet.
+	 *
+	 * @param batchSize maximale Anzahl Bilder pro Batch, Standardwert 1
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch-Größe muss mindestens 1 sein: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Legt fest, mit welchen Einstellungen, welchem Cache und welchen Messungen
+	 * die Stufen arbeiten.
+	 *
+	 * @param detector Detector oder null (Standard-Detector von BatchJob)
+	 */
+	public void setDetector(Detector detector) {
+		this.detector = detector;
+	}
+
+	/**
+	 * @return Detector, mit dem die Stufen arbeiten
+	 */
+	private Detector detector() {
+		return detector != null ? detector : BatchJob.getDetector();
+	}
+
+	/**
+	 * Legt fest, wie viele Bilder höchstens gleichzeitig in der Pipeline sind
+	 * (gelesen, aber noch nicht übergeben). Das begrenzt auch die Anzahl der
+	 * Ergebnisse, die auf ihre Vorgänger warten.
+	 *
+	 * @param maxInFlight maximale Anzahl Bilder, Standardwert unbegrenzt
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight muss mindestens 1 sein: " + maxInFlight);
+		}
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Verarbeitet alle Bilder. Die Ergebnisse stehen in derselben Reihenfolge wie
+	 * die Dateinamen.
+	 *
+	 * @param fileNames Dateinamen der Bilddateien (ohne Pfad)
+	 * @param model     Modell, aus dem für jeden Inferenz-Thread ein Predictor
+	 *                  erzeugt wird; darf null sein, wenn es nur einen
+	 *                  Inferenz-Thread gibt
+	 * @param predictor Predictor für den Fall eines einzigen Inferenz-Threads ohne
+	 *                  Modell (z.B. Mock)
+	 * @return Ergebnis-Liste mit Bildern und erkannten Objekten
+	 * @throws Exception erste in einer Stufe aufgetretene Exception
+	 */
+	public Result[] run(String[] fileNames, ZooModel<Image, DetectedObjects> model,
+			Predictor<Image, DetectedObjects> predictor) throws Exception {
+		List<Result> results = new ArrayList<Result>(fileNames.length);
+		run(Arrays.asList(fileNames).iterator(), model, predictor, results::add);
+		return results.toArray(new Result[results.size()]);
+	}
+
+	/**
+	 * Verarbeitet alle Bilder und übergibt jedes Ergebnis, sobald es fertig ist.
+	 * Die Übergabe erfolgt in der Reihenfolge der Dateinamen und nie gleichzeitig
+	 * aus mehreren Threads. Ergebnisse, die vor ihren Vorgängern fertig sind,
+	 * werden kurz zurückgehalten. Die Dateinamen werden erst gelesen, wenn ein
+	 * Decode-Thread sie braucht.
+	 *
+	 * @param files     Dateinamen der Bilddateien (relativ zum
+	 *                  "collection"-Verzeichnis)
+	 * @param model     siehe run(String[], ZooModel, Predictor)
+	 * @param predictor siehe run(String[], ZooModel, Predictor)
+	 * @param consumer  Empfänger der Ergebnisse
+	 * @throws Exception erste in einer Stufe aufgetretene Exception
+	 */
+	public void run(Iterator<String> files, ZooModel<Image, DetectedObjects> model,
+			Predictor<Image, DetectedObjects> predictor, ResultConsumer consumer) throws Exception {
+		if (model == null && (inferThreads > 1 || predictor == null)) {
+			throw new Exception("Kein Model vorhanden! Parallele Verarbeitung benötigt ein Model.");
+		}
+		decodeStatistics = new StageStatistics("decode", decodeThreads);
+		inferStatistics = new StageStatistics("infer", inferThreads);
+		outputStatistics = new StageStatistics("output", outputThreads);
+		failure.set(null);
+		this.consumer = consumer;
+		pending.clear();
+		nextIndex = 0;
+		readIndex = 0;
+		// fail() gibt zusätzlich eine Genehmigung pro Decode-Thread frei, das darf
+		// auch bei unbegrenztem maxInFlight nicht überlaufen
+		inFlight = new Semaphore(Math.min(maxInFlight, Integer.MAX_VALUE - decodeThreads));
+
+		BlockingQueue<Item> inferQueue = new ArrayBlockingQueue<Item>(queueCapacity);
+		BlockingQueue<Item> outputQueue = new ArrayBlockingQueue<Item>(queueCapacity);
+		AtomicInteger activeDecoders = new AtomicInteger(decodeThreads);
+		AtomicInteger activeInferers = new AtomicInteger(inferThreads);
+
+		long startTime = System.nanoTime();
+		PredictorPool pool = model == null ? null : new PredictorPool(model, inferThreads);
+		try {
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int t = 0; t < decodeThreads; t++) {
+				threads.add(new Thread(
+						() -> decode(files, inferQueue, activeDecoders),
+						"decode-" + t));
+			}
+			for (int t = 0; t < inferThreads; t++) {
+				threads.add(new Thread(() -> infer(inferQueue, outputQueue, activeInferers, pool, predictor),
+						"infer-" + t));
+			}
+			for (int t = 0; t < outputThreads; t++) {
+				threads.add(new Thread(() -> output(outputQueue), "output-" + t));
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} finally {
+			if (pool != null) {
+				pool.close();
+			}
+		}
+		wallNanos = System.nanoTime() - startTime;
+		logStatistics();
+
+		Exception e = failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	/**
+	 * Erste Stufe: Bilder lesen und dekodieren.
+	 */
+	private void decode(Iterator<String> files, BlockingQueue<Item> inferQueue, AtomicInteger activeDecoders) {
+		try {
+			while (failure.get() == null) {
+				inFlight.acquire();
+				Item item;
+				synchronized (files) {
+					if (failure.get() != null || !files.hasNext()) {
+						inFlight.release();
+						break;
+					}
+					item = new Item(readIndex++, files.next());
+				}
+				long t0 = System.nanoTime();
+				try {
+					// Bilder mit gültigem Cache-Eintrag werden nicht gelesen
+					item.result = detector().lookupCache(item.fileName);
+				} catch (Exception e) {
+					inFlight.release();
+					fail(e);
+					break;
+				}
+				if (item.result == null) {
+					try {
+						item.img = detector().readImage(item.fileName);
+					} catch (IOException e) {
+						if (!detector().skip(item.fileName, e)) {
+							inFlight.release();
+							fail(e);
+							break;
+						}
+					}
+				}
+				decodeStatistics.recordBusy(System.nanoTime() - t0);
+				inferQueue.put(item);
+			}
+		} catch (InterruptedException | RuntimeException e) {
+			fail(e);
+		} finally {
+			if (activeDecoders.decrementAndGet() == 0) {
+				putEnd(inferQueue, inferThreads);
+			}
+		}
+	}
+
+	/**
+	 * Zweite Stufe: Objekt-Erkennung, jeder Thread mit eigenem Predictor. Wartende
+	 * Bilder werden bis zur Batch-Größe zusammengefasst.
+	 */
+	private void infer(BlockingQueue<Item> inferQueue, BlockingQueue<Item> outputQueue,
+			AtomicInteger activeInferers, PredictorPool pool, Predictor<Image, DetectedObjects> predictor) {
+		Predictor<Image, DetectedObjects> p = null;
+		try {
+			p = pool == null ? predictor : pool.borrow();
+			List<Item> batch = new ArrayList<Item>(batchSize);
+			boolean end = false;
+			while (!end) {
+				inferStatistics.sampleQueueDepth(inferQueue.size());
+				Item item = inferQueue.take();
+				if (item == END) {
+					break;
+				}
+				batch.clear();
+				batch.add(item);
+				// bereits wartende Bilder zu einem Batch zusammenfassen,
+				// dabei höchstens eine END-Markierung verbrauchen
+				while (batch.size() < batchSize && (item = inferQueue.poll()) != null) {
+					if (item == END) {
+						end = true;
+						break;
+					}
+					batch.add(item);
+				}
+				if (failure.get() != null) {
+					continue; // nur noch Queue leeren
+				}
+				long t0 = System.nanoTime();
+				try {
+					List<Item> todo = new ArrayList<Item>(batch.size());
+					List<String> fileNames = new ArrayList<String>(batch.size());
+					List<Image> imgs = new ArrayList<Image>(batch.size());
+					for (Item i : batch) {
+						if (i.result == null && i.img != null) { // nicht aus dem Cache, nicht übersprungen
+							todo.add(i);
+							fileNames.add(i.fileName);
+							imgs.add(i.img);
+						}
+					}
+					if (!todo.isEmpty()) {
+						List<Result> results = detector().predictBatch(fileNames, imgs, p);
+						for (int i = 0; i < todo.size(); i++) {
+							todo.get(i).result = results.get(i);
+						}
+					}
+				} catch (Exception e) {
+					fail(e);
+					continue;
+				}
+				long nanos = (System.nanoTime() - t0) / batch.size();
+				for (Item i : batch) {
+					inferStatistics.recordBusy(nanos);
+					outputQueue.put(i);
+				}
+			}
+		} catch (InterruptedException e) {
+			fail(e);
+		} finally {
+			if (pool != null && p != null) {
+				pool.release(p);
+			}
+			if (activeInferers.decrementAndGet() == 0) {
+				putEnd(outputQueue, outputThreads);
+			}
+		}
+	}
+
+	/**
+	 * Dritte Stufe: Bounding-Box-Bild speichern und Ergebnis übergeben.
+	 */
+	private void output(BlockingQueue<Item> outputQueue) {
+		try {
+			while (true) {
+				outputStatistics.sampleQueueDepth(outputQueue.size());
+				Item item = outputQueue.take();
+				if (item == END) {
+					break;
+				}
+				if (failure.get() != null) {
+					continue;
+				}
+				long t0 = System.nanoTime();
+				try {
+					if (item.img != null && item.result != null) { // nicht aus dem Cache, nicht übersprungen
+						if (detector().getConfig().isSaveBoundingBoxImage()) {
+							detector().saveBoundingBoxImage(item.fileName, item.img, item.result.getObjects());
+						}
+						detector().storeCache(item.result);
+					}
+					deliver(item.index, item.result);
+				} catch (Exception e) {
+					fail(e);
+					continue;
+				}
+				outputStatistics.recordBusy(System.nanoTime() - t0);
+			}
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Übergibt Ergebnisse in der Reihenfolge der Dateinamen an den Empfänger.
+	 * Vorzeitig fertige Ergebnisse warten, bis ihre Vorgänger übergeben wurden.
+	 * Übersprungene Bilder (result null) halten nur ihren Platz in der Reihenfolge.
+	 */
+	private synchronized void deliver(int index, Result result) throws IOException {
+		pending.put(index, result);
+		while (pending.containsKey(nextIndex)) {
+			Result r = pending.remove(nextIndex);
+			nextIndex++;
+			inFlight.release();
+			if (r != null) {
+				consumer.accept(r);
+			}
+		}
+	}
+
+	/**
+	 * Merkt sich die erste Exception. Danach werden keine neuen Bilder mehr gelesen
+	 * und die Queues nur noch geleert.
+	 */
+	private void fail(Exception e) {
+		if (failure.compareAndSet(null, e)) {
+			logger.error("Pipeline abgebrochen: " + e);
+			// wartende Decode-Threads aufwecken, damit sie sich beenden,
+			// eine Genehmigung pro Thread genügt
+			inFlight.release(decodeThreads);
+		}
+	}
+
+	/**
+	 * Signalisiert allen Threads der nächsten Stufe das Ende der Eingabe.
+	 */
+	private void putEnd(BlockingQueue<Item> queue, int consumers) {
+		for (int i = 0; i < consumers; i++) {
+			try {
+				queue.put(END);
+			} catch (InterruptedException e) {
+				fail(e);
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Schreibt die Zähler aller Stufen ins Log.
+	 */
+	private void logStatistics() {
+		logger.info("pipeline wall time: " + wallNanos / 1_000_000 + " msec");
+		for (StageStatistics s : getStatistics()) {
+			logger.info(s.summary(wallNanos));
+		}
+	}
+
+	/**
+	 * @return Zähler der Stufen decode, infer und output (nach run())
+	 */
+	public StageStatistics[] getStatistics() {
+		return new StageStatistics[] { decodeStatistics, inferStatistics, outputStatistics };
+	}
+
+	/**
+	 * @return Gesamtlaufzeit des letzten Durchlaufs in Nanosekunden
+	 */
+	public long getWallNanos() {
+		return wallNanos;
+	}
+}
@@ -0,0 +1,301 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.repository.zoo.ZooModel;
+
+/**
+ * Dauerhaft laufender Dienst für die Objekt-Erkennung. Engine und Modell
+ * werden nur einmal geladen und bleiben mit einem Pool von Predictors im
+ * Speicher. Aufträge werden per HTTP übergeben und bekommen dasselbe XML
+ * zurück, das BatchJob in die Ergebnisdatei schreibt. So entfällt der Start
+ * von JVM, Engine und Modell für jeden Auftrag.
+ * <p>
+ * Endpunkte:
+ * <ul>
+ * <li>GET /health: 200, sobald der Dienst läuft</li>
+ * <li>GET /ready: 200, sobald das Modell geladen ist, sonst 503</li>
+ * <li>GET /detect?file=NAME: ein Bild</li>
+ * <li>GET /detect?dir=NAME[&amp;recursive=true]: alle Bilder eines
+ * Verzeichnisses</li>
+ * <li>POST /detect: Liste von Dateinamen im Body, einer pro Zeile</li>
+ * </ul>
+ * Alle Namen sind relativ zum "collection"-Verzeichnis. Pfade außerhalb
+ * dieses Verzeichnisses werden abgelehnt.
+ * <p>
+ * Bilder, die nicht gelesen oder analysiert werden können, werden bei
+ * eingeschalteter Fehler-Isolierung übersprungen und in der Antwort als
+ * XML-Kommentar genannt. Bricht ein Auftrag ab, nachdem der Status 200 schon
+ * gesendet ist, endet die Antwort mit einem Kommentar "ERROR: ..." statt mit
+ * dem Ende-Tag.
+ *
+ * @author Heiko Zelt
+ */
+public class DetectionService implements AutoCloseable {
+	private static Logger logger = LogManager.getLogger(DetectionService.class);
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private volatile PredictorPool pool;
+	private volatile Detector detector = null;
+
+	/**
+	 * Erzeugt den Dienst. Er nimmt erst nach start() Verbindungen an.
+	 *
+	 * @param address z.B. localhost:8080, Port 0 = beliebiger freier Port
+	 * @param threads Anzahl gleichzeitig bearbeiteter Aufträge
+	 * @throws IOException wenn der Port belegt ist
+	 */
+	public DetectionService(InetSocketAddress address, int threads) throws IOException {
+		server = HttpServer.create(address, 0);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext("/health", exchange -> send(exchange, 200, "UP\n"));
+		server.createContext("/ready",
+				exchange -> send(exchange, isReady() ? 200 : 503, isReady() ? "READY\n" : "WARMING_UP\n"));
+		server.createContext("/detect", this::handleDetect);
+	}
+
+	/**
+	 * Startet den Dienst. Bis warmUp() fertig ist, meldet /ready 503.
+	 */
+	public void start() {
+		server.start();
+		logger.info("Detection-Service hört auf " + server.getAddress());
+	}
+
+	/**
+	 * Legt den Pool von Predictors an. Danach ist der Dienst bereit.
+	 *
+	 * @param model    geladenes Modell
+	 * @param poolSize Anzahl Predictors
+	 */
+	public void warmUp(ZooModel<Image, DetectedObjects> model, int poolSize) {
+		pool = new PredictorPool(model, poolSize);
+		logger.info("Detection-Service bereit mit " + poolSize + " Predictors");
+	}
+
+	/**
+	 * Legt fest, mit welchen Einstellungen die Aufträge bearbeitet werden.
+	 *
+	 * @param detector Detector oder null (Standard-Detector von BatchJob)
+	 */
+	public void setDetector(Detector detector) {
+		this.detector = detector;
+	}
+
+	/**
+	 * @return Detector, mit dem die Aufträge bearbeitet werden
+	 */
+	private Detector detector() {
+		Detector d = detector;
+		return d != null ? d : BatchJob.getDetector();
+	}
+
+	/**
+	 * @return true, wenn das Modell geladen ist und Aufträge bearbeitet werden
+	 */
+	public boolean isReady() {
+		return pool != null;
+	}
+
+	/**
+	 * @return Port, auf dem der Dienst hört
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handleDetect(HttpExchange exchange) throws IOException {
+		try {
+			if (!isReady()) {
+				send(exchange, 503, "WARMING_UP\n");
+				return;
+			}
+			Path root = Paths.get(detector().getCollectionPath()).toAbsolutePath().normalize();
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			List<String> fileNames = new ArrayList<String>();
+			CollectionWalker walker = null;
+			Path base = root;
+			if ("POST".equals(exchange.getRequestMethod())) {
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (!line.isBlank()) {
+						fileNames.add(checkFile(root, line.strip()));
+					}
+				}
+			} else if (query.containsKey("file")) {
+				fileNames.add(checkFile(root, query.get("file")));
+			} else if (query.containsKey("dir")) {
+				base = resolve(root, query.get("dir"));
+				if (!Files.isDirectory(base)) {
+					throw new IllegalArgumentException("Verzeichnis nicht gefunden: " + query.get("dir"));
+				}
+				boolean recursive = "true".equals(query.get("recursive"));
+				walker = new CollectionWalker(base, recursive, CollectionWalker.DEFAULT_GLOB);
+			} else {
+				throw new IllegalArgumentException("Parameter file oder dir fehlt");
+			}
+			Iterator<String> files = walker != null ? walker : fileNames.iterator();
+			try {
+				detect(exchange, files, root.relativize(base));
+			} finally {
+				if (walker != null) {
+					walker.close();
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, e.getMessage() + "\n");
+		} catch (Exception e) {
+			logger.error("Auftrag fehlgeschlagen: " + exchange.getRequestURI(), e);
+			// Wenn schon Ergebnisse gesendet wurden, kann der Status nicht mehr geändert werden
+			if (exchange.getResponseCode() == -1) {
+				send(exchange, 500, e + "\n");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Analysiert die Bilder und sendet die Ergebnisse sofort. Fehlerhafte Bilder
+	 * werden übersprungen, siehe Detector.setErrorReport().
+	 *
+	 * @param files Dateinamen relativ zu base
+	 * @param base  Verzeichnis relativ zum "collection"-Verzeichnis
+	 */
+	private void detect(HttpExchange exchange, Iterator<String> files, Path base) throws Exception {
+		Detector d = detector();
+		Predictor<Image, DetectedObjects> predictor = pool.borrow();
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=UTF-8");
+			exchange.sendResponseHeaders(200, 0);
+			try (StreamingXmlExporter exporter = new StreamingXmlExporter(
+					new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)))) {
+				try {
+					while (files.hasNext()) {
+						if (Thread.currentThread().isInterrupted()) {
+							throw new InterruptedException("Dienst wird beendet");
+						}
+						String fileName = base.resolve(files.next()).toString();
+						// ein fehlerhaftes Bild bricht den Auftrag nicht ab
+						Result result = d.detectOrSkip(fileName, predictor);
+						if (result == null) {
+							exporter.comment("übersprungen: " + fileName);
+						} else {
+							exporter.accept(result);
+						}
+					}
+				} catch (Exception e) {
+					// der Status 200 ist schon gesendet, deshalb eine Fehlermarke statt des Ende-Tags
+					exporter.abort(e.toString());
+					throw e;
+				}
+			}
+		} finally {
+			pool.release(predictor);
+		}
+	}
+
+	/**
+	 * Prüft, ob die Datei existiert und im "collection"-Verzeichnis liegt.
+	 *
+	 * @return Name relativ zum "collection"-Verzeichnis
+	 */
+	private static String checkFile(Path root, String name) {
+		Path file = resolve(root, name);
+		if (!Files.isRegularFile(file)) {
+			throw new IllegalArgumentException("Datei nicht gefunden: " + name);
+		}
+		return root.relativize(file).toString();
+	}
+
+	private static Path resolve(Path root, String name) {
+		Path path = root.resolve(name).normalize();
+		if (!path.startsWith(root)) {
+			throw new IllegalArgumentException("Pfad außerhalb des collection-Verzeichnisses: " + name);
+		}
+		return path;
+	}
+
+	/**
+	 * Zerlegt den Query-String, z.B. "dir=urlaub&amp;recursive=true".
+	 */
+	static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> query = new HashMap<String, String>();
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return query;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			query.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+		return query;
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Beendet den Dienst und schließt die Predictors. Das Modell wird nicht
+	 * geschlossen.
+	 */
+	@Override
+	public void close() {
+		server.stop(1);
+		// laufende Aufträge brechen beim nächsten Bild ab, ein laufender
+		// predict()-Aufruf benutzt seinen Predictor aber bis zum Ende
+		executor.shutdownNow();
+		try {
+			while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				logger.warn("warte auf laufende Aufträge");
+			}
+		} catch (InterruptedException e) {
+			logger.warn("Warten auf laufende Aufträge unterbrochen");
+			Thread.currentThread().interrupt();
+		}
+		if (pool != null) {
+			pool.close();
+		}
+		logger.info("Detection-Service beendet");
+	}
+}
@@ -0,0 +1,1209 @@
+package de.heikozelt.objectdetection;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.djl.Application;
+import ai.djl.ModelException;
+import ai.djl.engine.Engine;
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.repository.zoo.Criteria;
+import ai.djl.repository.zoo.ModelNotFoundException;
+import ai.djl.repository.zoo.ModelZoo;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.translate.TranslateException;
+
+/**
+ * Objekt-Erkennung für eine Bildersammlung mit einer festen Konfiguration.
+ * Jede Instanz hat ihre eigenen Einstellungen, Messungen, ihren Cache und
+ * ihren Fehlerbericht. Mehrere Instanzen können deshalb im selben Prozess
+ * gleichzeitig laufen, ohne sich zu beeinflussen, z.B.
+ *
+ * <pre>
+ * {@code
+ * try (Detector detector = Detector.open(config)) {
+ * 	detector.detectAll(exporter);
+ * }
+ * }
+ * </pre>
+ *
+ * Ein mit open() erzeugter Detector lädt Engine und Modell selbst und gibt sie
+ * mit close() wieder frei. Detektoren mit unterschiedlichem Threshold können
+ * sich auch ein bereits geladenes Modell teilen (siehe Konstruktor mit Modell),
+ * dann bekommt jeder einen eigenen Predictor und das Modell bleibt offen.
+ * <p>
+ * Cache, Renderer, Loader, Messungen und Fehlerbericht werden vor dem Lauf
+ * gesetzt. Danach dürfen mehrere Threads gleichzeitig detect() aufrufen, die
+ * Aufrufe teilen sich dann den Predictor der Instanz.
+ *
+ * @author Heiko Zelt
+ */
+public class Detector implements AutoCloseable {
+	private static Logger logger = LogManager.getLogger(Detector.class);
+
+	private final DetectorConfig config;
+
+	private Engine engine = null;
+	private String backbone = null;
+	private Criteria<Image, DetectedObjects> criteria = null;
+	private ZooModel<Image, DetectedObjects> model = null;
+	private Predictor<Image, DetectedObjects> predictor = null;
+	private boolean ownsModel = false;
+	private boolean ownsPredictor = false;
+
+	/**
+	 * true, wenn das Modell mit einem anderen Threshold geladen sein kann
+	 */
+	private boolean applyThreshold = false;
+
+	/**
+	 * Ein Predictor darf nicht von mehreren Threads gleichzeitig benutzt werden.
+	 */
+	private final Object predictorLock = new Object();
+
+	private DetectionCache cache = null;
+	private RunMetrics metrics;
+	private BoundingBoxRenderer renderer;
+	private ImageLoader loader;
+	private ErrorReport errors = null;
+
+	/**
+	 * bereits analysierte Bilder, null = keine Suche nach Duplikaten
+	 */
+	private final DuplicateFinder<Result.Detections> duplicates;
+
+	/**
+	 * Analyse großer Bilder in Kacheln, null = ganze Bilder analysieren
+	 */
+	private final TiledInference tiling;
+
+	/**
+	 * Erzeugt einen Detector ohne Modell. Das Modell wird mit load() geladen.
+	 *
+	 * @param config Einstellungen
+	 */
+	public Detector(DetectorConfig config) {
+		this(config, null, null);
+	}
+
+	/**
+	 * Erzeugt einen Detector, der ein bereits geladenes Modell mitbenutzt. Er
+	 * bekommt einen eigenen Predictor, den close() schließt. Das Modell bleibt
+	 * offen. Der Threshold der Konfiguration wird zusätzlich nach der Erkennung
+	 * angewendet, er wirkt also nur, wenn er nicht unter dem Threshold liegt, mit
+	 * dem das Modell geladen wurde.
+	 *
+	 * @param config Einstellungen
+	 * @param model  geladenes Modell, gehört weiterhin dem Aufrufer
+	 */
+	public Detector(DetectorConfig config, ZooModel<Image, DetectedObjects> model) {
+		this(config, model, model.newPredictor());
+		ownsPredictor = true;
+		applyThreshold = true;
+	}
+
+	/**
+	 * Erzeugt einen Detector mit vorhandenem Modell und Predictor, z.B. Mocks in
+	 * Unit-Tests. Beide gehören weiterhin dem Aufrufer.
+	 *
+	 * @param config    Einstellungen
+	 * @param model     Modell, darf null sein, wenn nur ein Worker arbeitet
+	 * @param predictor Predictor
+	 */
+	public Detector(DetectorConfig config, ZooModel<Image, DetectedObjects> model,
+			Predictor<Image, DetectedObjects> predictor) {
+		this.config = config;
+		this.model = model;
+		this.predictor = predictor;
+		duplicates = newDuplicateFinder(config);
+		tiling = newTiledInference(config);
+		metrics = new RunMetrics();
+		renderer = new BoundingBoxRenderer();
+		renderer.setMetrics(metrics);
+		loader = new ImageLoader();
+	}
+
+	/**
+	 * Kopie mit anderer Konfiguration, siehe reconfigure()
+	 */
+	private Detector(DetectorConfig config, Detector source) {
+		this.config = config;
+		engine = source.engine;
+		backbone = source.backbone;
+		criteria = source.criteria;
+		model = source.model;
+		predictor = source.predictor;
+		ownsModel = source.ownsModel;
+		ownsPredictor = source.ownsPredictor;
+		applyThreshold = source.applyThreshold;
+		cache = source.cache;
+		metrics = source.metrics;
+		renderer = source.renderer;
+		loader = source.loader;
+		errors = source.errors;
+		duplicates = newDuplicateFinder(config);
+		tiling = newTiledInference(config);
+	}
+
+	private static DuplicateFinder<Result.Detections> newDuplicateFinder(DetectorConfig config) {
+		return config.getDedupDistance() < 0 ? null
+				: new DuplicateFinder<Result.Detections>(config.getDedupDistance());
+	}
+
+	private static TiledInference newTiledInference(DetectorConfig config) {
+		return config.getTileSize() == 0 ? null
+				: new TiledInference(config.getTileSize(), config.getTileOverlap(), config.getTileMemoryMb());
+	}
+
+	/**
+	 * Erzeugt einen Detector und lädt Engine und Modell.
+	 *
+	 * @param config Einstellungen
+	 * @return Detector, der Modell und Predictor besitzt
+	 * @throws IOException
+	 * @throws ModelException
+	 * @throws TranslateException
+	 */
+	public static Detector open(DetectorConfig config) throws IOException, ModelException, TranslateException {
+		Detector detector = new Detector(config);
+		detector.load();
+		return detector;
+	}
+
+	/**
+	 * Kopie mit anderer Konfiguration, aber denselben Ressourcen. Modell und
+	 * Predictor gehören danach der Kopie.
+	 *
+	 * @param config neue Einstellungen
+	 * @return neuer Detector
+	 */
+	Detector reconfigure(DetectorConfig config) {
+		Detector copy = new Detector(config, this);
+		ownsModel = false;
+		ownsPredictor = false;
+		return copy;
+	}
+
+	/**
+	 * Lädt Engine und Modell, erzeugt den Predictor und wärmt ihn auf. Die Dauer
+	 * jeder Phase wird in den Messungen eingetragen.
+	 *
+	 * @throws IOException
+	 * @throws ModelException     wenn keine Engine oder kein passendes Modell
+	 *                            gefunden wird
+	 * @throws TranslateException
+	 */
+	public void load() throws IOException, ModelException, TranslateException {
+		logger.debug("DeepObjectDetection initialisation");
+		long startTime = System.nanoTime();
+		long phaseStart = startTime;
+		engine = Engine.getInstance();
+		if (engine == null) {
+			throw new ModelNotFoundException("Keine Engine verfügbar!");
+		}
+		logger.debug("using engine " + engine.getEngineName());
+		phaseStart = startupPhase("engine", phaseStart);
+
+		if ("TensorFlow".equals(engine.getEngineName())) {
+			backbone = "mobilenet_v2";
+		} else {
+			backbone = "resnet50";
+		}
+		logger.debug("using backbone " + backbone);
+
+		if (config.isListModels()) {
+			Criteria<Image, DetectedObjects> c0 = Criteria.builder().optApplication(Application.CV.OBJECT_DETECTION)
+					.setTypes(Image.class, DetectedObjects.class).build();
+			logger.debug("list all models -> " + ModelZoo.listModels(c0));
+		}
+
+		Criteria.Builder<Image, DetectedObjects> builder = Criteria.builder()
+				.optApplication(Application.CV.OBJECT_DETECTION).setTypes(Image.class, DetectedObjects.class)
+				.optFilter("backbone", backbone).optArgument("threshold", config.getThreshold());
+		if (config.getModelArtifact() != null) {
+			String[] parts = config.getModelArtifact().split(":");
+			builder.optGroupId(parts[0]).optArtifactId(parts[1]);
+		}
+		criteria = builder.build();
+		if (config.isListModels()) {
+			logger.debug("listModels() -> " + ModelZoo.listModels(criteria));
+			phaseStart = startupPhase("list-models", phaseStart);
+		}
+		model = ModelZoo.loadModel(criteria);
+		if (model == null) {
+			throw new ModelNotFoundException("Kein passendes Model gefunden!");
+		}
+		ownsModel = true;
+		phaseStart = startupPhase("load-model", phaseStart);
+
+		predictor = model.newPredictor();
+		ownsPredictor = true;
+		phaseStart = startupPhase("new-predictor", phaseStart);
+
+		warmUp(predictor, config.getWarmUpIterations());
+		startupPhase("warm-up", phaseStart);
+		logger.info("startup time: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " msec");
+	}
+
+	/**
+	 * Beendet eine Phase des Starts, protokolliert und speichert ihre Dauer.
+	 *
+	 * @param phase      Name der Phase, z.B. "load-model"
+	 * @param phaseStart Beginn der Phase (System.nanoTime())
+	 * @return Ende der Phase = Beginn der nächsten Phase
+	 */
+	private long startupPhase(String phase, long phaseStart) {
+		long now = System.nanoTime();
+		metrics.recordStartup(phase, now - phaseStart);
+		logger.info("startup phase " + phase + ": " + TimeUnit.NANOSECONDS.toMillis(now - phaseStart) + " msec");
+		return now;
+	}
+
+	/**
+	 * Macht einige Vorhersagen mit einem künstlichen, grauen Bild, damit JIT und
+	 * Engine ihre Optimierungen erledigen, bevor das erste echte Bild kommt. Die
+	 * Zeiten werden nicht in die Statistik eingetragen.
+	 *
+	 * @param predictor  Predictor, der aufgewärmt wird
+	 * @param iterations Anzahl Vorhersagen
+	 * @throws TranslateException
+	 */
+	static void warmUp(Predictor<Image, DetectedObjects> predictor, int iterations) throws TranslateException {
+		if (iterations == 0) {
+			return;
+		}
+		BufferedImage gray = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = gray.createGraphics();
+		g.setColor(Color.GRAY);
+		g.fillRect(0, 0, gray.getWidth(), gray.getHeight());
+		g.dispose();
+		Image img = ImageFactory.getInstance().fromImage(gray);
+		for (int i = 0; i < iterations; i++) {
+			long startTime = System.nanoTime();
+			predictor.predict(img);
+			logger.debug("warm-up predict time: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+					+ " msec");
+		}
+	}
+
+	/**
+	 * @return Einstellungen dieses Detectors
+	 */
+	public DetectorConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return geladenes Modell oder null
+	 */
+	public ZooModel<Image, DetectedObjects> getModel() {
+		return model;
+	}
+
+	/**
+	 * @return Predictor der Instanz oder null
+	 */
+	public Predictor<Image, DetectedObjects> getPredictor() {
+		return predictor;
+	}
+
+	/**
+	 * @return Name der Engine, z.B. "PyTorch", oder "none", solange kein Modell
+	 *         geladen ist
+	 */
+	public String getEngineName() {
+		return engine == null ? "none" : engine.getEngineName();
+	}
+
+	/**
+	 * @return Verzeichnis mit den Bildern
+	 */
+	public String getCollectionPath() {
+		return config.getCollectionPath();
+	}
+
+	/**
+	 * einfache Setter-Methode
+	 * @param engine siehe DJL-Doku
+	 */
+	void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * einfache Setter-Methode
+	 * @param backbone siehe DJL-Doku
+	 */
+	void setBackbone(String backbone) {
+		this.backbone = backbone;
+	}
+
+	/**
+	 * einfache Setter-Methode
+	 * @param criteria siehe DJL-Doku
+	 */
+	void setCriteria(Criteria<Image, DetectedObjects> criteria) {
+		this.criteria = criteria;
+	}
+
+	/**
+	 * Ersetzt das Modell. Ein bisher eigenes Modell bleibt offen, das neue gehört
+	 * dem Aufrufer.
+	 * @param model siehe DJL-Doku
+	 */
+	void setModel(ZooModel<Image, DetectedObjects> model) {
+		this.model = model;
+		ownsModel = false;
+	}
+
+	/**
+	 * Ersetzt den Predictor. Ein bisher eigener Predictor bleibt offen, der neue
+	 * gehört dem Aufrufer.
+	 * @param predictor siehe DJL-Doku
+	 */
+	void setPredictor(Predictor<Image, DetectedObjects> predictor) {
+		this.predictor = predictor;
+		ownsPredictor = false;
+	}
+
+	/**
+	 * Schaltet den persistenten Cache für Ergebnisse ein. Unveränderte Bilder
+	 * werden dann nicht erneut analysiert. Der Cache gehört weiterhin dem
+	 * Aufrufer.
+	 *
+	 * @param cache geöffneter Cache oder null (ausgeschaltet)
+	 */
+	public void setCache(DetectionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return Cache oder null
+	 */
+	public DetectionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Legt fest, wie die Bilddateien gelesen werden, z.B. mit Vorlesen im
+	 * Hintergrund.
+	 *
+	 * @param loader neuer Loader, gehört danach dem Detector; der alte wird
+	 *               geschlossen
+	 */
+	public void setImageLoader(ImageLoader loader) {
+		this.loader.close();
+		this.loader = loader;
+	}
+
+	/**
+	 * Legt fest, wie die Kopien mit Bounding Boxes gespeichert werden.
+	 *
+	 * @param renderer neuer Renderer, gehört danach dem Detector; der alte wird
+	 *                 nicht geschlossen
+	 */
+	public void setRenderer(BoundingBoxRenderer renderer) {
+		this.renderer = renderer;
+		renderer.setMetrics(metrics);
+	}
+
+	/**
+	 * @return Renderer für die Kopien mit Bounding Boxes
+	 */
+	public BoundingBoxRenderer getRenderer() {
+		return renderer;
+	}
+
+	/**
+	 * Setzt die Laufzeit-Messungen, in die alle Stufen ihre Zeiten eintragen.
+	 *
+	 * @param metrics z.B. new RunMetrics() für einen neuen Lauf
+	 */
+	public void setMetrics(RunMetrics metrics) {
+		this.metrics = metrics;
+		renderer.setMetrics(metrics);
+	}
+
+	/**
+	 * @return Laufzeit-Messungen
+	 */
+	public RunMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Schaltet die Fehler-Isolierung ein, siehe BatchJob.setErrorReport().
+	 *
+	 * @param errors Bericht oder null (erster Fehler bricht ab, Standard)
+	 */
+	public void setErrorReport(ErrorReport errors) {
+		this.errors = errors;
+	}
+
+	/**
+	 * @return Bericht über übersprungene Bilder oder null
+	 */
+	public ErrorReport getErrorReport() {
+		return errors;
+	}
+
+	/**
+	 * Trägt ein fehlgeschlagenes Bild im Bericht ein, falls die Fehler-Isolierung
+	 * eingeschaltet ist.
+	 *
+	 * @param fileName Dateiname relativ zum "collection"-Verzeichnis
+	 * @param e        Ursache
+	 * @return true, wenn das Bild übersprungen wird, false, wenn der Aufrufer die
+	 *         Exception weiterreichen muss
+	 */
+	boolean skip(String fileName, Exception e) {
+		if (errors == null) {
+			return false;
+		}
+		errors.record(fileName, e);
+		return true;
+	}
+
+	/**
+	 * Beschreibt das geladene Modell und die Parameter, die das Ergebnis
+	 * beeinflussen. Ändert sich der Fingerabdruck, werden Cache-Einträge ungültig.
+	 *
+	 * @return z.B. "PyTorch/resnet50/0.5", ggf. mit dem festgelegten Modell,
+	 *         der minimalen Kante beim verkleinerten Dekodieren, den Regeln des
+	 *         DetectionFilter, dem Hamming-Abstand für ähnliche Bilder und der
+	 *         Größe der Kacheln
+	 */
+	public String modelFingerprint() {
+		String fingerprint = getEngineName() + "/" + backbone + "/" + config.getThreshold();
+		if (config.getModelArtifact() != null) {
+			fingerprint += "/model=" + config.getModelArtifact();
+		}
+		// verkleinert dekodierte Bilder ergeben andere Objekte
+		if (config.getDecodeMinEdge() > 0) {
+			fingerprint += "/decode=" + config.getDecodeMinEdge();
+		}
+		DetectionFilter filter = config.getFilter();
+		if (filter != null) {
+			fingerprint += "/" + filter;
+		}
+		// exakte Duplikate ergeben dasselbe Ergebnis, ähnliche Bilder nicht
+		if (config.getDedupDistance() > 0) {
+			fingerprint += "/dedup=" + config.getDedupDistance();
+		}
+		if (tiling != null) {
+			fingerprint += "/tiles=" + tiling;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Liest ein Bild aus einer Datei und startet die Objekt-Erkennung mit dem
+	 * Predictor der Instanz. Gleichzeitige Aufrufe warten aufeinander.
+	 *
+	 * @param fileName Dateiname der Bilddatei (ohne Pfad)
+	 * @return erkannte Objekte und weitere Infos
+	 * @throws IOException
+	 * @throws TranslateException
+	 */
+	public Result detect(String fileName) throws IOException, TranslateException {
+		synchronized (predictorLock) {
+			return detect(fileName, predictor);
+		}
+	}
+
+	/**
+	 * Wie detect(String), aber mit einem bestimmten Predictor. Wird von den
+	 * Worker-Threads verwendet, die jeweils einen eigenen Predictor haben.
+	 *
+	 * @param fileName  Dateiname der Bilddatei (ohne Pfad)
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @return erkannte Objekte und weitere Infos
+	 * @throws IOException
+	 * @throws TranslateException
+	 */
+	public Result detect(String fileName, Predictor<Image, DetectedObjects> predictor)
+			throws IOException, TranslateException {
+		return detect(fileName, predictor, false);
+	}
+
+	/**
+	 * Wie detect(String, Predictor), ein fehlerhaftes Bild wird aber
+	 * übersprungen und im Bericht eingetragen, falls die Fehler-Isolierung
+	 * eingeschaltet ist, siehe setErrorReport().
+	 *
+	 * @param fileName  Dateiname relativ zum "collection"-Verzeichnis
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @return erkannte Objekte und weitere Infos, null = übersprungen
+	 * @throws IOException
+	 * @throws TranslateException
+	 */
+	Result detectOrSkip(String fileName, Predictor<Image, DetectedObjects> predictor)
+			throws IOException, TranslateException {
+		return detect(fileName, predictor, true);
+	}
+
+	/**
+	 * Wie detect(String, Predictor), Fehler beim Lesen, Dekodieren oder
+	 * Analysieren können aber zum Überspringen des Bildes führen, siehe
+	 * setErrorReport().
+	 *
+	 * @param fileName  Dateiname der Bilddatei (ohne Pfad)
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @param isolate   true = Fehler des Bildes im Bericht eintragen
+	 * @return erkannte Objekte und weitere Infos, null = übersprungen
+	 * @throws IOException
+	 * @throws TranslateException
+	 */
+	private Result detect(String fileName, Predictor<Image, DetectedObjects> predictor, boolean isolate)
+			throws IOException, TranslateException {
+		Result cached = lookupCache(fileName);
+		if (cached != null) {
+			return cached;
+		}
+		Image img;
+		Result result;
+		try {
+			img = readImage(fileName);
+			result = predict(fileName, img, predictor);
+		} catch (IOException | TranslateException e) {
+			if (isolate && skip(fileName, e)) {
+				return null;
+			}
+			throw e;
+		}
+		if (config.isSaveBoundingBoxImage()) {
+			saveBoundingBoxImage(fileName, img, result.getObjects());
+		}
+		storeCache(result);
+		return result;
+	}
+
+	/**
+	 * Sucht ein gespeichertes Ergebnis für ein unverändertes Bild.
+	 *
+	 * @param fileName Dateiname relativ zum "collection"-Verzeichnis
+	 * @return Ergebnis aus dem Cache oder null (kein Cache oder Bild neu/geändert)
+	 * @throws IOException
+	 */
+	Result lookupCache(String fileName) throws IOException {
+		if (cache == null) {
+			return null;
+		}
+		return cache.lookup(fileName, Paths.get(config.getCollectionPath(), fileName));
+	}
+
+	/**
+	 * Speichert ein fertiges Ergebnis im Cache, falls dieser eingeschaltet ist.
+	 *
+	 * @param result erkannte Objekte und weitere Infos
+	 * @throws IOException
+	 */
+	void storeCache(Result result) throws IOException {
+		if (cache != null) {
+			cache.store(result, Paths.get(config.getCollectionPath(), result.getFilename()));
+		}
+	}
+
+	/**
+	 * Liest und dekodiert ein Bild aus dem "collection"-Verzeichnis (erste Stufe
+	 * der Verarbeitung).
+	 *
+	 * @param fileName Dateiname der Bilddatei (ohne Pfad)
+	 * @return dekodiertes Bild
+	 * @throws IOException auch wenn der Decoder an einer beschädigten Datei
+	 *                     scheitert
+	 */
+	Image readImage(String fileName) throws IOException {
+		Path path = Paths.get(config.getCollectionPath(), fileName);
+		logger.debug("reading image from file: {}", path);
+		// erst komplett lesen, dann dekodieren, damit beide Zeiten getrennt messbar sind
+		long startTime = System.nanoTime();
+		try (ImageLoader.ImageData data = loader.load(path)) {
+			long readTime = System.nanoTime();
+			Image img;
+			try {
+				if (config.getDecodeMinEdge() > 0) {
+					img = SubsampledImage.decode(data.buffer(), config.getDecodeMinEdge());
+				} else {
+					img = ImageFactory.getInstance().fromInputStream(data.stream());
+				}
+			} catch (RuntimeException e) {
+				// Decoder melden beschädigte Dateien oft mit RuntimeExceptions
+				throw new IOException("Bild kann nicht dekodiert werden: " + path, e);
+			}
+			metrics.record(RunMetrics.READ, readTime - startTime);
+			metrics.record(RunMetrics.DECODE, System.nanoTime() - readTime);
+			return img;
+		}
+	}
+
+	/**
+	 * Führt die eigentliche Objekt-Erkennung für ein bereits dekodiertes Bild durch
+	 * (zweite Stufe der Verarbeitung). Ist die Suche nach Duplikaten
+	 * eingeschaltet, werden stattdessen die Objekte eines gleichen oder ähnlichen,
+	 * bereits analysierten Bildes übernommen. Werden zwei Duplikate gleichzeitig
+	 * in verschiedenen Threads analysiert, findet keins das andere.
+	 *
+	 * @param fileName  Dateiname der Bilddatei (ohne Pfad)
+	 * @param img       dekodiertes Bild
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @return erkannte Objekte und weitere Infos
+	 * @throws TranslateException
+	 */
+	Result predict(String fileName, Image img, Predictor<Image, DetectedObjects> predictor)
+			throws TranslateException {
+		if (duplicates == null) {
+			return predictUnique(fileName, img, predictor);
+		}
+		DuplicateFinder.Key key = DuplicateFinder.key(img);
+		if (key == null) {
+			return predictUnique(fileName, img, predictor);
+		}
+		Result duplicate = duplicateOf(fileName, img, duplicates.find(key));
+		if (duplicate != null) {
+			return duplicate;
+		}
+		Result result = predictUnique(fileName, img, predictor);
+		duplicates.add(key, result.detections());
+		return result;
+	}
+
+	/**
+	 * Übernimmt die erkannten Objekte eines gleichen oder ähnlichen Bildes.
+	 *
+	 * @param fileName       Dateiname der Bilddatei (ohne Pfad)
+	 * @param img            dekodiertes Bild
+	 * @param representative Objekte des bereits analysierten Bildes oder null
+	 * @return Ergebnis mit Dateiname und Größe des Bildes oder null, wenn es kein
+	 *         Duplikat ist
+	 */
+	private Result duplicateOf(String fileName, Image img, Result.Detections representative) {
+		if (representative == null) {
+			return null;
+		}
+		metrics.duplicateFound();
+		logger.debug("{} ist ein Duplikat", fileName);
+		return representative.copyFor(fileName, SubsampledImage.originalWidth(img),
+				SubsampledImage.originalHeight(img));
+	}
+
+	/**
+	 * Wie predict(), aber immer mit Objekt-Erkennung. Große Bilder werden bei
+	 * eingeschalteten Kacheln in Kacheln analysiert, siehe TiledInference.
+	 */
+	private Result predictUnique(String fileName, Image img, Predictor<Image, DetectedObjects> predictor)
+			throws TranslateException {
+		long startTime = System.nanoTime();
+		DetectedObjects objects;
+		if (tiling != null && tiling.applies(img)) {
+			objects = tiling.predict(img, predictor);
+		} else {
+			objects = predictor.predict(img);
+		}
+		long nanos = System.nanoTime() - startTime;
+		metrics.record(RunMetrics.PREDICT, nanos);
+		long predictTime = TimeUnit.NANOSECONDS.toMillis(nanos);
+		logger.debug("result: {}", objects.getClass().getName());
+		logger.info("predict time: {} msec", predictTime);
+		// bei verkleinert dekodierten Bildern zählt die Größe des Originals
+		return postFilter(new Result(fileName, SubsampledImage.originalWidth(img),
+				SubsampledImage.originalHeight(img), objects, predictTime));
+	}
+
+	/**
+	 * Wendet den Threshold der Konfiguration (nur bei einem mitbenutzten Modell,
+	 * sonst hat die Engine ihn schon angewendet) und den DetectionFilter an.
+	 *
+	 * @param result Ergebnis der Objekt-Erkennung
+	 * @return gefiltertes Ergebnis
+	 */
+	private Result postFilter(Result result) {
+		if (applyThreshold) {
+			result = result.filter(config.getThreshold());
+		}
+		DetectionFilter filter = config.getFilter();
+		return filter == null ? result : filter.apply(result);
+	}
+
+	/**
+	 * Führt die Objekt-Erkennung für mehrere bereits dekodierte Bilder in einem
+	 * Aufruf von batchPredict() durch. Die gemessene Zeit wird gleichmäßig auf die
+	 * Bilder verteilt. Schlägt der Batch fehl, werden die Bilder einzeln analysiert.
+	 * So bekommen alle intakten Bilder ihr Ergebnis und der Fehler des defekten
+	 * Bildes wird wie bei der Einzelverarbeitung weitergereicht bzw. bei
+	 * eingeschalteter Fehler-Isolierung im Bericht eingetragen.
+	 *
+	 * @param fileNames Dateinamen der Bilddateien (ohne Pfad)
+	 * @param imgs      dekodierte Bilder, gleiche Reihenfolge wie fileNames
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @return Ergebnisse in derselben Reihenfolge, null für übersprungene Bilder
+	 * @throws TranslateException
+	 */
+	List<Result> predictBatch(List<String> fileNames, List<Image> imgs, Predictor<Image, DetectedObjects> predictor)
+			throws TranslateException {
+		if (duplicates == null) {
+			return predictBatchUnique(fileNames, imgs, predictor);
+		}
+		// Duplikate bereits analysierter Bilder und Duplikate innerhalb des Batches
+		// heraussuchen, nur die übrigen Bilder gehen in den Batch
+		int n = imgs.size();
+		List<Result> results = new ArrayList<Result>(n);
+		DuplicateFinder.Key[] keys = new DuplicateFinder.Key[n];
+		int[] sameAs = new int[n];
+		DuplicateFinder<Integer> inBatch = new DuplicateFinder<Integer>(config.getDedupDistance());
+		List<Integer> todo = new ArrayList<Integer>(n);
+		List<String> todoNames = new ArrayList<String>(n);
+		List<Image> todoImgs = new ArrayList<Image>(n);
+		for (int i = 0; i < n; i++) {
+			Image img = imgs.get(i);
+			keys[i] = DuplicateFinder.key(img);
+			sameAs[i] = -1;
+			Result duplicate = null;
+			if (keys[i] != null) {
+				duplicate = duplicateOf(fileNames.get(i), img, duplicates.find(keys[i]));
+				if (duplicate == null) {
+					Integer j = inBatch.find(keys[i]);
+					if (j != null) {
+						sameAs[i] = j;
+					} else {
+						inBatch.add(keys[i], i);
+					}
+				}
+			}
+			results.add(duplicate);
+			if (duplicate == null && sameAs[i] < 0) {
+				todo.add(i);
+				todoNames.add(fileNames.get(i));
+				todoImgs.add(img);
+			}
+		}
+		if (!todo.isEmpty()) {
+			List<Result> predicted = predictBatchUnique(todoNames, todoImgs, predictor);
+			for (int t = 0; t < todo.size(); t++) {
+				int i = todo.get(t);
+				Result result = predicted.get(t);
+				results.set(i, result);
+				if (result != null && keys[i] != null) {
+					duplicates.add(keys[i], result.detections());
+				}
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (sameAs[i] >= 0) {
+				Result representative = results.get(sameAs[i]);
+				Result duplicate = duplicateOf(fileNames.get(i), imgs.get(i),
+						representative == null ? null : representative.detections());
+				// ist der Repräsentant fehlgeschlagen, wird das Bild selbst analysiert
+				results.set(i, duplicate != null ? duplicate
+						: predictOrSkip(fileNames.get(i), imgs.get(i), predictor));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Wie predictBatch(), aber ohne Suche nach Duplikaten.
+	 */
+	private List<Result> predictBatchUnique(List<String> fileNames, List<Image> imgs,
+			Predictor<Image, DetectedObjects> predictor) throws TranslateException {
+		if (tiling == null) {
+			return predictWholeImages(fileNames, imgs, predictor);
+		}
+		// große Bilder werden einzeln in Kacheln analysiert, die Kacheln eines
+		// Bildes bilden eigene Batches. Die kleinen Bilder gehen gemeinsam in
+		// einen Batch.
+		int n = imgs.size();
+		List<Result> results = new ArrayList<Result>(n);
+		List<Integer> small = new ArrayList<Integer>(n);
+		List<String> smallNames = new ArrayList<String>(n);
+		List<Image> smallImgs = new ArrayList<Image>(n);
+		for (int i = 0; i < n; i++) {
+			Image img = imgs.get(i);
+			if (tiling.applies(img)) {
+				results.add(predictOrSkip(fileNames.get(i), img, predictor));
+			} else {
+				results.add(null);
+				small.add(i);
+				smallNames.add(fileNames.get(i));
+				smallImgs.add(img);
+			}
+		}
+		if (!small.isEmpty()) {
+			List<Result> predicted = predictWholeImages(smallNames, smallImgs, predictor);
+			for (int s = 0; s < small.size(); s++) {
+				results.set(small.get(s), predicted.get(s));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Analysiert die Bilder ohne Kacheln mit einem batchPredict()-Aufruf. Schlägt
+	 * dieser fehl, wird jedes Bild einzeln analysiert.
+	 */
+	private List<Result> predictWholeImages(List<String> fileNames, List<Image> imgs,
+			Predictor<Image, DetectedObjects> predictor) throws TranslateException {
+		List<Result> results = new ArrayList<Result>(imgs.size());
+		if (imgs.size() == 1) {
+			results.add(predictOrSkip(fileNames.get(0), imgs.get(0), predictor));
+			return results;
+		}
+		List<DetectedObjects> batch;
+		long startTime = System.nanoTime();
+		try {
+			batch = predictor.batchPredict(imgs);
+		} catch (TranslateException | RuntimeException e) {
+			logger.warn("batchPredict fehlgeschlagen, analysiere " + imgs.size() + " Bilder einzeln: " + e);
+			for (int i = 0; i < imgs.size(); i++) {
+				results.add(predictOrSkip(fileNames.get(i), imgs.get(i), predictor));
+			}
+			return results;
+		}
+		long nanos = System.nanoTime() - startTime;
+		long predictTime = Math.round(nanos / 1e6 / imgs.size());
+		logger.info("batch predict time: {} msec for {} images", TimeUnit.NANOSECONDS.toMillis(nanos), imgs.size());
+		for (int i = 0; i < imgs.size(); i++) {
+			metrics.record(RunMetrics.PREDICT, nanos / imgs.size());
+			Image img = imgs.get(i);
+			results.add(postFilter(new Result(fileNames.get(i), SubsampledImage.originalWidth(img),
+					SubsampledImage.originalHeight(img), batch.get(i), predictTime)));
+		}
+		return results;
+	}
+
+	/**
+	 * Wie predict() ohne Suche nach Duplikaten, bei eingeschalteter
+	 * Fehler-Isolierung wird ein fehlerhaftes Bild aber übersprungen.
+	 *
+	 * @return Ergebnis oder null (übersprungen)
+	 * @throws TranslateException
+	 */
+	private Result predictOrSkip(String fileName, Image img, Predictor<Image, DetectedObjects> predictor)
+			throws TranslateException {
+		try {
+			return predictUnique(fileName, img, predictor);
+		} catch (TranslateException e) {
+			if (skip(fileName, e)) {
+				return null;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Liest mehrere Bilder, analysiert sie als ein Batch und speichert ggf. die
+	 * Kopien mit Bounding Boxes. Übersprungene Bilder (siehe setErrorReport())
+	 * fehlen im Ergebnis.
+	 *
+	 * @param fileNames Dateinamen der Bilddateien (ohne Pfad)
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @return Ergebnisse in derselben Reihenfolge
+	 * @throws IOException
+	 * @throws TranslateException
+	 */
+	List<Result> detectBatch(List<String> fileNames, Predictor<Image, DetectedObjects> predictor)
+			throws IOException, TranslateException {
+		// Bilder mit gültigem Cache-Eintrag werden nicht gelesen
+		List<Result> results = new ArrayList<Result>(fileNames.size());
+		List<Integer> missing = new ArrayList<Integer>(fileNames.size());
+		List<String> missingNames = new ArrayList<String>(fileNames.size());
+		List<Image> imgs = new ArrayList<Image>(fileNames.size());
+		for (int i = 0; i < fileNames.size(); i++) {
+			String fileName = fileNames.get(i);
+			Result cached = lookupCache(fileName);
+			results.add(cached);
+			if (cached == null) {
+				Image img;
+				try {
+					img = readImage(fileName);
+				} catch (IOException e) {
+					if (skip(fileName, e)) {
+						continue;
+					}
+					throw e;
+				}
+				missing.add(i);
+				missingNames.add(fileName);
+				imgs.add(img);
+			}
+		}
+		if (!imgs.isEmpty()) {
+			List<Result> predicted = predictBatch(missingNames, imgs, predictor);
+			for (int i = 0; i < imgs.size(); i++) {
+				Result result = predicted.get(i);
+				if (result == null) {
+					continue;
+				}
+				if (config.isSaveBoundingBoxImage()) {
+					saveBoundingBoxImage(missingNames.get(i), imgs.get(i), result.getObjects());
+				}
+				storeCache(result);
+				results.set(missing.get(i), result);
+			}
+		}
+		// übersprungene Bilder entfernen
+		results.removeIf(r -> r == null);
+		return results;
+	}
+
+	/**
+	 * Speichert die Kopie mit Bounding Boxes im dafür vorgesehenen Verzeichnis
+	 * (dritte Stufe der Verarbeitung).
+	 *
+	 * Unterverzeichnisse der Sammlung (--recursive) werden nachgebildet, damit
+	 * gleichnamige Bilder in verschiedenen Verzeichnissen sich nicht
+	 * überschreiben.
+	 *
+	 * @param fileName  Dateiname der Bilddatei (relativ zum
+	 *                  "collection"-Verzeichnis)
+	 * @param img       dekodiertes Bild
+	 * @param detection erkannte Objekte
+	 * @throws IOException
+	 */
+	void saveBoundingBoxImage(String fileName, Image img, DetectedObjects detection) throws IOException {
+		Path target = Paths.get(config.getBoundingBoxesPath()).resolve(fileName);
+		Path parent = target.getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		renderer.submit(target.toString(), img, detection);
+	}
+
+	/**
+	 * Führt die Objekt-Ekennung für alle Bilder im "collection"-Verzeichnis durch.
+	 *
+	 * @return Ergebnis-Liste mit Bildern und erkannten Objekten
+	 * @throws Exception
+	 */
+	public Result[] detectAll() throws Exception {
+		List<Result> results = new ArrayList<Result>();
+		detectAll(results::add);
+		return results.toArray(new Result[results.size()]);
+	}
+
+	/**
+	 * Führt die Objekt-Ekennung für alle Bilder im "collection"-Verzeichnis durch
+	 * und übergibt jedes Ergebnis sofort, in der Reihenfolge der Dateien. Die
+	 * Ergebnisse werden nicht gesammelt.
+	 *
+	 * @param consumer Empfänger der Ergebnisse, z.B. StreamingXmlExporter
+	 * @throws Exception
+	 */
+	public void detectAll(ResultConsumer consumer) throws Exception {
+		String collectionPath = config.getCollectionPath();
+		logger.info("lese Bilder aus Verzeichnis " + collectionPath);
+		Path root = Paths.get(collectionPath);
+		if (!Files.isDirectory(root)) {
+			throw new Exception("Collection files not found!");
+		}
+		try (CollectionWalker walker = new CollectionWalker(root, config.isRecursive(), config.getIncludeGlob())) {
+			Iterator<String> files = walker;
+			Shard shard = config.getShard();
+			if (shard != null) {
+				logger.info("analysiere nur Teil " + shard + " der Bilder");
+				files = shard.filter(files);
+			}
+			detectFiles(files, consumer);
+		}
+	}
+
+	/**
+	 * Führt die Objekt-Erkennung für die angegebenen Bilder durch, z.B. für die
+	 * Stichprobe des AutoTuners, und übergibt jedes Ergebnis sofort.
+	 *
+	 * @param files    Dateinamen der Bilddateien (relativ zum
+	 *                 "collection"-Verzeichnis)
+	 * @param consumer Empfänger der Ergebnisse
+	 * @throws Exception
+	 */
+	void detectFiles(Iterator<String> files, ResultConsumer consumer) throws Exception {
+		String collectionPath = config.getCollectionPath();
+		// liest bei eingeschaltetem Vorlesen die nächsten Dateien im Hintergrund
+		files = loader.prefetching(files, name -> Paths.get(collectionPath, name));
+		int workers = config.getWorkers();
+		if (config.getDecodeThreads() > 0) {
+			logger.info("Pipeline mit " + config.getDecodeThreads() + " decode-, " + workers + " infer- und "
+					+ config.getOutputThreads() + " output-Threads");
+			DetectionPipeline pipeline = new DetectionPipeline(config.getDecodeThreads(), workers,
+					config.getOutputThreads(), config.getQueueCapacity());
+			pipeline.setDetector(this);
+			pipeline.setBatchSize(config.getBatchSize());
+			pipeline.setMaxInFlight(config.getMaxInFlight());
+			if (model == null) {
+				// ein einziger Inferenz-Thread benutzt den Predictor der Instanz
+				synchronized (predictorLock) {
+					pipeline.run(files, model, predictor, consumer);
+				}
+			} else {
+				pipeline.run(files, model, predictor, consumer);
+			}
+		} else if (workers > 1) {
+			detectAllParallel(files, consumer);
+		} else {
+			synchronized (predictorLock) {
+				detectAllSequential(files, consumer);
+			}
+		}
+		// asynchron gespeicherte Bounding-Box-Bilder müssen fertig sein
+		renderer.flush();
+	}
+
+	/**
+	 * Analysiert die Bilder nacheinander mit dem Predictor der Instanz, einzeln
+	 * oder in Batches.
+	 */
+	private void detectAllSequential(Iterator<String> files, ResultConsumer consumer) throws Exception {
+		if (config.getBatchSize() > 1) {
+			while (files.hasNext()) {
+				for (Result r : detectBatch(chunk(files), predictor)) {
+					consumer.accept(r);
+				}
+			}
+		} else {
+			while (files.hasNext()) {
+				Result r = detect(files.next(), predictor, true);
+				if (r != null) {
+					consumer.accept(r);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param files noch nicht verarbeitete Dateinamen
+	 * @return die nächsten bis zu batchSize Dateinamen (letzter Batch ggf. kleiner)
+	 */
+	private List<String> chunk(Iterator<String> files) {
+		int batchSize = config.getBatchSize();
+		List<String> chunk = new ArrayList<String>(batchSize);
+		while (chunk.size() < batchSize && files.hasNext()) {
+			chunk.add(files.next());
+		}
+		return chunk;
+	}
+
+	/**
+	 * Führt die Objekt-Erkennung mit mehreren Worker-Threads durch. Jeder Worker
+	 * leiht sich einen Predictor aus einem Pool und bearbeitet jeweils einen Batch
+	 * von batchSize Bildern. Die Ergebnisse werden in derselben Reihenfolge wie die
+	 * Dateinamen übergeben. Es werden nur so viele Dateinamen gelesen, dass
+	 * höchstens maxInFlight Bilder gleichzeitig in Arbeit sind.
+	 *
+	 * @param files    Dateinamen der Bilddateien (relativ zum
+	 *                 "collection"-Verzeichnis)
+	 * @param consumer Empfänger der Ergebnisse
+	 * @throws Exception
+	 */
+	private void detectAllParallel(Iterator<String> files, ResultConsumer consumer) throws Exception {
+		if (model == null) {
+			throw new Exception("Kein Model vorhanden! Parallele Verarbeitung benötigt ein Model.");
+		}
+		int workers = config.getWorkers();
+		logger.info("parallele Objekt-Erkennung mit " + workers + " Workern");
+		// mindestens so viele Batches, dass alle Worker beschäftigt sind
+		int maxBatches = Math.max(workers, config.getMaxInFlight() / config.getBatchSize());
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		Deque<Future<List<Result>>> futures = new ArrayDeque<Future<List<Result>>>(maxBatches);
+		try (PredictorPool pool = new PredictorPool(model, workers)) {
+			try {
+				while (files.hasNext() || !futures.isEmpty()) {
+					while (futures.size() < maxBatches && files.hasNext()) {
+						List<String> chunk = chunk(files);
+						futures.add(executor.submit(() -> {
+							Predictor<Image, DetectedObjects> p = pool.borrow();
+							try {
+								return detectBatch(chunk, p);
+							} finally {
+								pool.release(p);
+							}
+						}));
+					}
+					try {
+						for (Result r : futures.remove().get()) {
+							consumer.accept(r);
+						}
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof Exception) {
+							throw (Exception) e.getCause();
+						}
+						throw e;
+					}
+				}
+			} finally {
+				// auch wenn der Empfänger scheitert; erst danach schließt der Pool die
+				// Predictors
+				for (Future<List<Result>> f : futures) {
+					f.cancel(true);
+				}
+				awaitWorkers(executor);
+			}
+		}
+	}
+
+	/**
+	 * Beendet die Worker und wartet, bis alle fertig sind. Laufende
+	 * predict()-Aufrufe der Engine lassen sich nicht unterbrechen, sie benutzen
+	 * ihren Predictor bis zum Ende.
+	 *
+	 * @param executor Worker-Threads
+	 */
+	private static void awaitWorkers(ExecutorService executor) {
+		executor.shutdownNow();
+		try {
+			while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				logger.warn("warte auf laufende Worker");
+			}
+		} catch (InterruptedException e) {
+			logger.warn("Warten auf laufende Worker unterbrochen");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gibt Renderer und Loader frei sowie Predictor und Modell, soweit sie diesem
+	 * Detector gehören. Der Cache gehört dem Aufrufer und bleibt offen.
+	 *
+	 * @throws IOException wenn asynchron gespeicherte Bilder fehlgeschlagen sind
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			renderer.close();
+		} finally {
+			loader.close();
+			synchronized (predictorLock) {
+				if (ownsPredictor && predictor != null) {
+					predictor.close();
+				}
+				predictor = null;
+				ownsPredictor = false;
+			}
+			if (ownsModel && model != null) {
+				model.close();
+			}
+			model = null;
+			ownsModel = false;
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package de.heikozelt.objectdetection;
+
+/**
+ * Unveränderliche Einstellungen eines Detector: woher die Bilder kommen, wie
+ * sie verarbeitet werden und welches Modell verwendet wird. Erzeugt wird sie
+ * mit einem Builder, z.B.
+ *
+ * <pre>
+ * {@code
+ * DetectorConfig config = DetectorConfig.builder().setCollectionPath("collection").setThreshold(0.6f)
+ * 		.setWorkers(4).build();
+ * }
+ * </pre>
+ *
+ * Mit toBuilder() lässt sich eine abgewandelte Kopie erzeugen. Da sich eine
+ * Konfiguration nicht ändert, dürfen mehrere Detector-Instanzen und Threads sie
+ * gemeinsam verwenden.
+ *
+ * @author Heiko Zelt
+ */
+public final class DetectorConfig {
+
+	private final String collectionPath;
+	private final String boundingBoxesPath;
+	private final boolean saveBoundingBoxImage;
+	private final float threshold;
+	private final int workers;
+	private final int decodeThreads;
+	private final int outputThreads;
+	private final int queueCapacity;
+	private final int batchSize;
+	private final boolean recursive;
+	private final String includeGlob;
+	private final int maxInFlight;
+	private final int decodeMinEdge;
+	private final int warmUpIterations;
+	private final boolean listModels;
+	private final String modelArtifact;
+	private final Shard shard;
+	private final DetectionFilter filter;
+	private final int dedupDistance;
+	private final int tileSize;
+	private final int tileOverlap;
+	private final int tileMemoryMb;
+
+	private DetectorConfig(Builder b) {
+		collectionPath = b.collectionPath;
+		boundingBoxesPath = b.boundingBoxesPath;
+		saveBoundingBoxImage = b.saveBoundingBoxImage;
+		threshold = b.threshold;
+		workers = b.workers;
+		decodeThreads = b.decodeThreads;
+		outputThreads = b.outputThreads;
+		queueCapacity = b.queueCapacity;
+		batchSize = b.batchSize;
+		recursive = b.recursive;
+		includeGlob = b.includeGlob;
+		maxInFlight = b.maxInFlight;
+		decodeMinEdge = b.decodeMinEdge;
+		warmUpIterations = b.warmUpIterations;
+		listModels = b.listModels;
+		modelArtifact = b.modelArtifact;
+		shard = b.shard;
+		// eigene Kopie, damit Konfigurationen aus demselben Builder sich den
+		// Filter nicht teilen und er nachträglich nicht geändert werden kann
+		filter = b.filter == null ? null : b.filter.frozenCopy();
+		dedupDistance = b.dedupDistance;
+		tileSize = b.tileSize;
+		tileOverlap = b.tileOverlap;
+		tileMemoryMb = b.tileMemoryMb;
+	}
+
+	/**
+	 * @return Builder mit den Standardwerten
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return Builder mit den Werten dieser Konfiguration
+	 */
+	public Builder toBuilder() {
+		return new Builder(this);
+	}
+
+	/**
+	 * @return Verzeichnis mit den Bildern
+	 */
+	public String getCollectionPath() {
+		return collectionPath;
+	}
+
+	/**
+	 * @return Verzeichnis für die Kopien mit Bounding Boxes
+	 */
+	public String getBoundingBoxesPath() {
+		return boundingBoxesPath;
+	}
+
+	/**
+	 * @return true, wenn Kopien mit Bounding Boxes gespeichert werden
+	 */
+	public boolean isSaveBoundingBoxImage() {
+		return saveBoundingBoxImage;
+	}
+
+	/**
+	 * @return minimale Wahrscheinlichkeit eines erkannten Objekts
+	 */
+	public float getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @return Anzahl paralleler Worker bzw. Inferenz-Threads der Pipeline
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return Anzahl Threads zum Dekodieren in der Pipeline, 0 = keine Pipeline
+	 */
+	public int getDecodeThreads() {
+		return decodeThreads;
+	}
+
+	/**
+	 * @return Anzahl Threads zum Speichern in der Pipeline
+	 */
+	public int getOutputThreads() {
+		return outputThreads;
+	}
+
+	/**
+	 * @return Kapazität der Queues zwischen den Pipeline-Stufen
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @return Anzahl Bilder pro batchPredict()-Aufruf
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return true, wenn auch Unterverzeichnisse durchsucht werden
+	 */
+	public boolean isRecursive() {
+		return recursive;
+	}
+
+	/**
+	 * @return Muster der zu analysierenden Dateinamen
+	 */
+	public String getIncludeGlob() {
+		return includeGlob;
+	}
+
+	/**
+	 * @return maximale Anzahl Bilder, die gleichzeitig in Arbeit sind
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @return minimale kürzere Kante beim Dekodieren, 0 = ganz dekodieren
+	 */
+	public int getDecodeMinEdge() {
+		return decodeMinEdge;
+	}
+
+	/**
+	 * @return Anzahl Aufwärm-Vorhersagen nach dem Laden des Modells
+	 */
+	public int getWarmUpIterations() {
+		return warmUpIterations;
+	}
+
+	/**
+	 * @return true, wenn die passenden Modelle protokolliert werden
+	 */
+	public boolean isListModels() {
+		return listModels;
+	}
+
+	/**
+	 * @return z.B. "ai.djl.pytorch:ssd" oder null (Modell suchen)
+	 */
+	public String getModelArtifact() {
+		return modelArtifact;
+	}
+
+	/**
+	 * @return Teil der Sammlung oder null (alle Bilder)
+	 */
+	public Shard getShard() {
+		return shard;
+	}
+
+	/**
+	 * @return unveränderlicher Filter für die erkannten Objekte oder null
+	 */
+	public DetectionFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return -1 = keine Suche nach Duplikaten, 0 = nur exakte Duplikate, sonst
+	 *         maximaler Hamming-Abstand ähnlicher Bilder, siehe DuplicateFinder
+	 */
+	public int getDedupDistance() {
+		return dedupDistance;
+	}
+
+	/**
+	 * @return Kantenlänge der Kacheln in Pixeln, 0 = ganze Bilder analysieren
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * @return Überlappung benachbarter Kacheln in Pixeln
+	 */
+	public int getTileOverlap() {
+		return tileOverlap;
+	}
+
+	/**
+	 * @return Speicher für die Kacheln eines Batches in MB
+	 */
+	public int getTileMemoryMb() {
+		return tileMemoryMb;
+	}
+
+	/**
+	 * Sammelt die Werte einer Konfiguration. Jeder Setter prüft seinen Wert
+	 * sofort und liefert den Builder zurück.
+	 */
+	public static final class Builder {
+		private String collectionPath = "collection";
+		private String boundingBoxesPath = "boxes";
+		private boolean saveBoundingBoxImage = true;
+		private float threshold = 0.5f;
+		private int workers = 1;
+		private int decodeThreads = 0;
+		private int outputThreads = 1;
+		private int queueCapacity = 8;
+		private int batchSize = 1;
+		private boolean recursive = false;
+		private String includeGlob = CollectionWalker.DEFAULT_GLOB;
+		private int maxInFlight = 256;
+		private int decodeMinEdge = 0;
+		private int warmUpIterations = 1;
+		private boolean listModels = false;
+		private String modelArtifact = null;
+		private Shard shard = null;
+		private DetectionFilter filter = null;
+		private int dedupDistance = -1;
+		private int tileSize = 0;
+		private int tileOverlap = 128;
+		private int tileMemoryMb = 512;
+
+		private Builder() {
+		}
+
+		private Builder(DetectorConfig c) {
+			collectionPath = c.collectionPath;
+			boundingBoxesPath = c.boundingBoxesPath;
+			saveBoundingBoxImage = c.saveBoundingBoxImage;
+			threshold = c.threshold;
+			workers = c.workers;
+			decodeThreads = c.decodeThreads;
+			outputThreads = c.outputThreads;
+			queueCapacity = c.queueCapacity;
+			batchSize = c.batchSize;
+			recursive = c.recursive;
+			includeGlob = c.includeGlob;
+			maxInFlight = c.maxInFlight;
+			decodeMinEdge = c.decodeMinEdge;
+			warmUpIterations = c.warmUpIterations;
+			listModels = c.listModels;
+			modelArtifact = c.modelArtifact;
+			shard = c.shard;
+			filter = c.filter;
+			dedupDistance = c.dedupDistance;
+			tileSize = c.tileSize;
+			tileOverlap = c.tileOverlap;
+			tileMemoryMb = c.tileMemoryMb;
+		}
+
+		/**
+		 * @param path Verzeichnis mit den Bildern, z.B. "collection" (Standard)
+		 * @return this
+		 */
+		public Builder setCollectionPath(String path) {
+			collectionPath = path;
+			return this;
+		}
+
+		/**
+		 * @param path Verzeichnis für die Kopien mit Bounding Boxes, Standard "boxes"
+		 * @return this
+		 */
+		public Builder setBoundingBoxesPath(String path) {
+			boundingBoxesPath = path;
+			return this;
+		}
+
+		/**
+		 * @param enabled true = Kopien mit Bounding Boxes speichern (Standard)
+		 * @return this
+		 */
+		public Builder setSaveBoundingBoxImage(boolean enabled) {
+			saveBoundingBoxImage = enabled;
+			return this;
+		}
+
+		/**
+		 * @param threshold minimale Wahrscheinlichkeit, Standard 0.5
+		 * @return this
+		 */
+		public Builder setThreshold(float threshold) {
+			if (threshold < 0 || threshold > 1) {
+				throw new IllegalArgumentException("Threshold muss zwischen 0 und 1 liegen: " + threshold);
+			}
+			this.threshold = threshold;
+			return this;
+		}
+
+		/**
+		 * @param workers Anzahl paralleler Worker, Standard 1
+		 * @return this
+		 */
+		public Builder setWorkers(int workers) {
+			if (workers < 1) {
+				throw new IllegalArgumentException("Anzahl Worker muss mindestens 1 sein: " + workers);
+			}
+			this.workers = workers;
+			return this;
+		}
+
+		/**
+		 * @param decodeThreads Anzahl Threads zum Lesen und Dekodieren, 0 = keine
+		 *                      Pipeline (Standard)
+		 * @param outputThreads Anzahl Threads zum Speichern, Standard 1
+		 * @param queueCapacity Kapazität der Queues, Standard 8
+		 * @return this
+		 */
+		public Builder setPipeline(int decodeThreads, int outputThreads, int queueCapacity) {
+			if (decodeThreads < 0 || outputThreads < 1 || queueCapacity < 1) {
+				throw new IllegalArgumentException("Ungültige Pipeline-Konfiguration: " + decodeThreads + "/"
+						+ outputThreads + "/" + queueCapacity);
+			}
+			this.decodeThreads = decodeThreads;
+			this.outputThreads = outputThreads;
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+
+		/**
+		 * @param batchSize Anzahl Bilder pro batchPredict()-Aufruf, Standard 1
+		 * @return this
+		 */
+		public Builder setBatchSize(int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException("Batch-Größe muss mindestens 1 sein: " + batchSize);
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * @param recursive true = auch Unterverzeichnisse durchsuchen
+		 * @return this
+		 */
+		public Builder setRecursive(boolean recursive) {
+			this.recursive = recursive;
+			return this;
+		}
+
+		/**
+		 * @param glob Muster der Dateinamen, z.B. "*.jpg"
+		 * @return this
+		 */
+		public Builder setIncludeGlob(String glob) {
+			includeGlob = glob;
+			return this;
+		}
+
+		/**
+		 * @param maxInFlight maximale Anzahl Bilder in Arbeit, Standard 256
+		 * @return this
+		 */
+		public Builder setMaxInFlight(int maxInFlight) {
+			if (maxInFlight < 1) {
+				throw new IllegalArgumentException("maxInFlight muss mindestens 1 sein: " + maxInFlight);
+			}
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * @param minEdge minimale kürzere Kante beim Dekodieren, 0 = ganz
+		 *                dekodieren (Standard)
+		 * @return this
+		 */
+		public Builder setDecodeMinEdge(int minEdge) {
+			if (minEdge < 0) {
+				throw new IllegalArgumentException("Kantenlänge darf nicht negativ sein: " + minEdge);
+			}
+			decodeMinEdge = minEdge;
+			return this;
+		}
+
+		/**
+		 * @param iterations Anzahl Aufwärm-Vorhersagen, Standard 1
+		 * @return this
+		 */
+		public Builder setWarmUpIterations(int iterations) {
+			if (iterations < 0) {
+				throw new IllegalArgumentException("Anzahl Aufwärm-Vorhersagen darf nicht negativ sein: " + iterations);
+			}
+			warmUpIterations = iterations;
+			return this;
+		}
+
+		/**
+		 * @param enabled true = passende Modelle protokollieren (langsam)
+		 * @return this
+		 */
+		public Builder setListModels(boolean enabled) {
+			listModels = enabled;
+			return this;
+		}
+
+		/**
+		 * @param artifact z.B. "ai.djl.pytorch:ssd" oder null (Modell suchen)
+		 * @return this
+		 */
+		public Builder setModelArtifact(String artifact) {
+			if (artifact != null && artifact.split(":").length != 2) {
+				throw new IllegalArgumentException("Modell muss als GROUP:ARTIFACT angegeben werden: " + artifact);
+			}
+			modelArtifact = artifact;
+			return this;
+		}
+
+		/**
+		 * @param shard Teil der Sammlung oder null (alle Bilder)
+		 * @return this
+		 */
+		public Builder setShard(Shard shard) {
+			this.shard = shard;
+			return this;
+		}
+
+		/**
+		 * @param filter Filter für die erkannten Objekte oder null; build()
+		 *               übernimmt eine unveränderliche Kopie
+		 * @return this
+		 */
+		public Builder setFilter(DetectionFilter filter) {
+			this.filter = filter;
+			return this;
+		}
+
+		/**
+		 * @param distance -1 = aus (Standard), 0 = Bilder mit gleichen Pixeln nur
+		 *                 einmal analysieren, 1 bis DuplicateFinder.MAX_DISTANCE =
+		 *                 auch ähnliche Bilder mit höchstens so vielen
+		 *                 unterschiedlichen Bits im dHash
+		 * @return this
+		 */
+		public Builder setDedupDistance(int distance) {
+			if (distance < -1 || distance > DuplicateFinder.MAX_DISTANCE) {
+				throw new IllegalArgumentException(
+						"Hamming-Abstand muss zwischen 0 und " + DuplicateFinder.MAX_DISTANCE + " liegen: " + distance);
+			}
+			dedupDistance = distance;
+			return this;
+		}
+
+		/**
+		 * @param tileSize  Kantenlänge der Kacheln in Pixeln (mindestens 64), 0 =
+		 *                  ganze Bilder analysieren (Standard), siehe
+		 *                  TiledInference
+		 * @param overlap   Überlappung benachbarter Kacheln in Pixeln, kleiner als
+		 *                  tileSize / 2, Standard 128
+		 * @param memoryMb  Speicher für die Kacheln eines Batches in MB, Standard
+		 *                  512
+		 * @return this
+		 */
+		public Builder setTiling(int tileSize, int overlap, int memoryMb) {
+			if ((tileSize != 0 && tileSize < 64) || overlap < 0 || (tileSize > 0 && overlap >= tileSize / 2)
+					|| memoryMb < 1) {
+				throw new IllegalArgumentException(
+						"Ungültige Kachel-Konfiguration: " + tileSize + "/" + overlap + "/" + memoryMb);
+			}
+			this.tileSize = tileSize;
+			tileOverlap = overlap;
+			tileMemoryMb = memoryMb;
+			return this;
+		}
+
+		/**
+		 * @return neue, unveränderliche Konfiguration
+		 */
+		public DetectorConfig build() {
+			return new DetectorConfig(this);
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package de.heikozelt.objectdetection;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.djl.modality.cv.Image;
+
+/**
+ * Findet Bilder, die schon einmal analysiert wurden, damit ihre erkannten
+ * Objekte wiederverwendet werden können, statt die Objekt-Erkennung erneut
+ * durchzuführen.
+ * <p>
+ * Pro Bild werden in einem Durchlauf über die dekodierten Pixel zwei Werte
+ * berechnet:
+ * <ul>
+ * <li>der SHA-256-Hash der Pixel für exakte Duplikate. Dieselben Pixel
+ * ergeben dieselben erkannten Objekte, auch wenn die Dateien unterschiedlich
+ * komprimiert sind.</li>
+ * <li>ein 64-Bit Difference Hash (dHash) für ähnliche Bilder, z.B.
+ * Serienaufnahmen: das Bild wird in 9 x 8 Felder geteilt, pro Feld wird die
+ * mittlere Helligkeit bestimmt, jedes Bit sagt, ob ein Feld heller ist als
+ * sein rechter Nachbar. Ähnliche Bilder unterscheiden sich nur in wenigen Bits
+ * (Hamming-Abstand). Da der dHash nur Helligkeitsunterschiede enthält, hätten
+ * z.B. ein ganz weißes und ein ganz schwarzes Bild denselben dHash. Ähnliche
+ * Bilder müssen deshalb auch eine ähnliche mittlere Helligkeit haben.</li>
+ * </ul>
+ * Beide Werte werden auf einem festen Raster berechnet, unabhängig von Breite
+ * und Höhe. Ähnliche Bilder müssen deshalb auch dasselbe Seitenverhältnis
+ * haben, sonst passen die relativen Bounding Boxes nicht.
+ * Bei einem Hamming-Abstand von höchstens d wird der dHash in d + 1 Blöcke
+ * geteilt. Zwei Hashes mit höchstens d unterschiedlichen Bits stimmen in
+ * mindestens einem Block überein. Gesucht wird deshalb nur unter den Bildern
+ * mit einem gleichen Block, nicht unter allen bisherigen Bildern.
+ * <p>
+ * Eingetragen werden nur Repräsentanten, also Bilder, die tatsächlich
+ * analysiert wurden. Alle Methoden dürfen gleichzeitig aufgerufen werden.
+ * <p>
+ * Pro Repräsentant werden die Hashes (etwa 250 Bytes mit Verwaltung) und sein
+ * Wert gehalten. Damit der Speicherbedarf bei großen Sammlungen nicht mit der
+ * Anzahl verschiedener Bilder wächst, gibt es höchstens capacity
+ * Repräsentanten. Ist die Grenze erreicht, wird der am längsten nicht
+ * gefundene entfernt (LRU). Serienaufnahmen liegen meist nah beieinander, ihre
+ * Repräsentanten sind noch vorhanden.
+ *
+ * @param <T> Wert pro Repräsentant, z.B. die erkannten Objekte
+ * @author Heiko Zelt
+ */
+public class DuplicateFinder<T> {
+
+	/**
+	 * größter sinnvoller Hamming-Abstand, unterschiedliche Bilder unterscheiden
+	 * sich in etwa 32 Bits
+	 */
+	public static final int MAX_DISTANCE = 16;
+
+	/**
+	 * größter Unterschied der mittleren Helligkeit (0 bis 255) ähnlicher Bilder
+	 */
+	static final int MAX_BRIGHTNESS_DIFFERENCE = 32;
+
+	/**
+	 * größter relativer Unterschied der Seitenverhältnisse ähnlicher Bilder
+	 */
+	static final double MAX_ASPECT_DIFFERENCE = 0.01;
+
+	/**
+	 * Standard-Höchstzahl Repräsentanten, mit den erkannten Objekten etwa 30 bis
+	 * 50 MB
+	 */
+	public static final int DEFAULT_CAPACITY = 100000;
+
+	/**
+	 * Hashes eines Bildes
+	 */
+	public static final class Key {
+		final ByteBuffer digest;
+		final long dHash;
+		final int brightness;
+		final int width;
+		final int height;
+
+		Key(byte[] digest, long dHash, int brightness, int width, int height) {
+			this.digest = ByteBuffer.wrap(digest);
+			this.dHash = dHash;
+			this.brightness = brightness;
+			this.width = width;
+			this.height = height;
+		}
+
+		/**
+		 * @return Difference Hash
+		 */
+		public long getDHash() {
+			return dHash;
+		}
+	}
+
+	private static final class Entry<T> {
+		final ByteBuffer digest;
+		final long dHash;
+		final int brightness;
+		final int width;
+		final int height;
+		final T value;
+
+		Entry(Key key, T value) {
+			digest = key.digest;
+			dHash = key.dHash;
+			brightness = key.brightness;
+			width = key.width;
+			height = key.height;
+			this.value = value;
+		}
+	}
+
+	private final int maxDistance;
+	private final int capacity;
+	/**
+	 * alle Repräsentanten in der Reihenfolge des letzten Zugriffs
+	 */
+	private final LinkedHashMap<ByteBuffer, Entry<T>> exact;
+	private final List<Map<Long, List<Entry<T>>>> blocks;
+
+	/**
+	 * @param maxDistance 0 = nur exakte Duplikate, sonst auch ähnliche Bilder mit
+	 *                    höchstens so vielen unterschiedlichen Bits im dHash (1
+	 *                    bis MAX_DISTANCE)
+	 */
+	public DuplicateFinder(int maxDistance) {
+		this(maxDistance, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param maxDistance siehe DuplicateFinder(int)
+	 * @param capacity    Höchstzahl Repräsentanten
+	 */
+	@SuppressWarnings("serial")
+	public DuplicateFinder(int maxDistance, int capacity) {
+		if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+			throw new IllegalArgumentException(
+					"Hamming-Abstand muss zwischen 0 und " + MAX_DISTANCE + " liegen: " + maxDistance);
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity muss mindestens 1 sein: " + capacity);
+		}
+		this.maxDistance = maxDistance;
+		this.capacity = capacity;
+		exact = new LinkedHashMap<ByteBuffer, Entry<T>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, DuplicateFinder.Entry<T>> eldest) {
+				if (size() <= DuplicateFinder.this.capacity) {
+					return false;
+				}
+				unindex(eldest.getValue());
+				return true;
+			}
+		};
+		int n = maxDistance == 0 ? 0 : maxDistance + 1;
+		blocks = new ArrayList<Map<Long, List<Entry<T>>>>(n);
+		for (int b = 0; b < n; b++) {
+			blocks.add(new HashMap<Long, List<Entry<T>>>());
+		}
+	}
+
+	/**
+	 * Berechnet beide Hashes in einem Durchlauf über die Pixel.
+	 *
+	 * @param img dekodiertes Bild
+	 * @return Hashes oder null, wenn das Bild kein BufferedImage enthält
+	 */
+	public static Key key(Image img) {
+		if (!(img.getWrappedImage() instanceof BufferedImage)) {
+			return null;
+		}
+		BufferedImage image = (BufferedImage) img.getWrappedImage();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+		int[] row = new int[width];
+		ByteBuffer bytes = ByteBuffer.allocate(4 * width);
+		long[] sums = new long[9 * 8];
+		int[] counts = new int[9 * 8];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			bytes.clear();
+			bytes.asIntBuffer().put(row);
+			digest.update(bytes);
+			int cell = y * 8 / height * 9;
+			for (int x = 0; x < width; x++) {
+				int rgb = row[x];
+				int gray = (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+				int c = cell + x * 9 / width;
+				sums[c] += gray;
+				counts[c]++;
+			}
+		}
+		long total = 0;
+		for (long sum : sums) {
+			total += sum;
+		}
+		int brightness = (int) (total / ((long) width * height));
+		long dHash = 0;
+		for (int r = 0; r < 8; r++) {
+			for (int c = 0; c < 8; c++) {
+				int i = r * 9 + c;
+				long left = counts[i] == 0 ? 0 : sums[i] / counts[i];
+				long right = counts[i + 1] == 0 ? 0 : sums[i + 1] / counts[i + 1];
+				dHash = (dHash << 1) | (left > right ? 1 : 0);
+			}
+		}
+		return new Key(digest.digest(), dHash, brightness, width, height);
+	}
+
+	/**
+	 * @param key Hashes eines Bildes
+	 * @return Wert des exakt gleichen Bildes oder des ähnlichsten Bildes
+	 *         innerhalb des Hamming-Abstands, null = keins
+	 */
+	public synchronized T find(Key key) {
+		Entry<T> best = exact.get(key.digest);
+		if (best != null || blocks.isEmpty()) {
+			return best == null ? null : best.value;
+		}
+		int bestDistance = maxDistance + 1;
+		for (int b = 0; b < blocks.size(); b++) {
+			List<Entry<T>> candidates = blocks.get(b).get(block(key.dHash, b));
+			if (candidates == null) {
+				continue;
+			}
+			for (Entry<T> e : candidates) {
+				if (Math.abs(e.brightness - key.brightness) > MAX_BRIGHTNESS_DIFFERENCE
+						|| !sameAspectRatio(e.width, e.height, key.width, key.height)) {
+					continue;
+				}
+				int distance = Long.bitCount(e.dHash ^ key.dHash);
+				if (distance < bestDistance) {
+					bestDistance = distance;
+					best = e;
+				}
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+		exact.get(best.digest); // als zuletzt benutzt markieren
+		return best.value;
+	}
+
+	/**
+	 * Trägt einen Repräsentanten ein. Ein bereits eingetragenes exakt gleiches
+	 * Bild bleibt Repräsentant.
+	 *
+	 * @param key   Hashes des Bildes
+	 * @param value z.B. Result des Bildes
+	 */
+	public synchronized void add(Key key, T value) {
+		if (exact.containsKey(key.digest)) {
+			return;
+		}
+		Entry<T> entry = new Entry<T>(key, value);
+		for (int b = 0; b < blocks.size(); b++) {
+			blocks.get(b).computeIfAbsent(block(key.dHash, b), k -> new ArrayList<Entry<T>>(1)).add(entry);
+		}
+		// entfernt ggf. den ältesten Repräsentanten, siehe removeEldestEntry()
+		exact.put(key.digest, entry);
+	}
+
+	/**
+	 * Entfernt einen Repräsentanten aus den Blöcken.
+	 */
+	private void unindex(Entry<T> entry) {
+		for (int b = 0; b < blocks.size(); b++) {
+			Map<Long, List<Entry<T>>> index = blocks.get(b);
+			Long bits = block(entry.dHash, b);
+			List<Entry<T>> candidates = index.get(bits);
+			candidates.remove(entry);
+			if (candidates.isEmpty()) {
+				index.remove(bits);
+			}
+		}
+	}
+
+	/**
+	 * @return Anzahl eingetragener Repräsentanten
+	 */
+	public synchronized int size() {
+		return exact.size();
+	}
+
+	/**
+	 * @return true, wenn sich die Seitenverhältnisse höchstens um
+	 *         MAX_ASPECT_DIFFERENCE unterscheiden
+	 */
+	static boolean sameAspectRatio(int width1, int height1, int width2, int height2) {
+		// über Kreuz multipliziert, damit keine Division nötig ist
+		long a = (long) width1 * height2;
+		long b = (long) width2 * height1;
+		return Math.abs(a - b) <= MAX_ASPECT_DIFFERENCE * Math.max(a, b);
+	}
+
+	/**
+	 * @param dHash Difference Hash
+	 * @param b     Nummer des Blocks
+	 * @return Bits des Blocks
+	 */
+	private long block(long dHash, int b) {
+		int from = b * 64 / blocks.size();
+		int to = (b + 1) * 64 / blocks.size();
+		return (dHash >>> from) & ((1L << (to - from)) - 1);
+	}
+}
@@ -0,0 +1,138 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sammelt die Bilder, die nicht analysiert werden konnten, z.B. weil die Datei
+ * kein Bild oder beschädigt ist. Statt den ganzen Lauf abzubrechen, wird das
+ * Bild mit der Ursache eingetragen und übersprungen. Am Ende wird der Bericht
+ * neben der Ergebnisdatei gespeichert, eine Zeile pro Bild (tabulatorgetrennt:
+ * Dateiname, Exception-Klasse, Meldung).
+ * <p>
+ * Mehrere Threads dürfen gleichzeitig Fehler eintragen.
+ *
+ * @author Heiko Zelt
+ */
+public class ErrorReport {
+	private static Logger logger = LogManager.getLogger(ErrorReport.class);
+
+	/**
+	 * ein nicht analysiertes Bild
+	 */
+	public static class Failure {
+		private String fileName;
+		private Exception cause;
+
+		Failure(String fileName, Exception cause) {
+			this.fileName = fileName;
+			this.cause = cause;
+		}
+
+		/**
+		 * @return Dateiname relativ zum "collection"-Verzeichnis
+		 */
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * @return Ursache
+		 */
+		public Exception getCause() {
+			return cause;
+		}
+	}
+
+	private List<Failure> failures = new ArrayList<Failure>();
+
+	/**
+	 * Trägt ein Bild ein, das übersprungen wird.
+	 *
+	 * @param fileName Dateiname relativ zum "collection"-Verzeichnis
+	 * @param cause    Ursache
+	 */
+	public void record(String fileName, Exception cause) {
+		logger.error("Bild " + fileName + " übersprungen: " + cause);
+		logger.debug("Ursache", cause);
+		synchronized (failures) {
+			failures.add(new Failure(fileName, cause));
+		}
+	}
+
+	/**
+	 * @return Anzahl übersprungener Bilder
+	 */
+	public int getCount() {
+		synchronized (failures) {
+			return failures.size();
+		}
+	}
+
+	/**
+	 * @return Kopie der Einträge in der Reihenfolge des Auftretens
+	 */
+	public List<Failure> getFailures() {
+		synchronized (failures) {
+			return new ArrayList<Failure>(failures);
+		}
+	}
+
+	/**
+	 * Speichert den Bericht. Eine vorhandene Datei wird überschrieben, auch wenn
+	 * keine Fehler aufgetreten sind, damit kein veralteter Bericht liegen bleibt.
+	 *
+	 * @param path Ziel, z.B. export/result.errors.tsv
+	 * @throws IOException
+	 */
+	public void write(Path path) throws IOException {
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			for (Failure f : getFailures()) {
+				out.write(field(f.getFileName()));
+				out.write('\t');
+				out.write(f.getCause().getClass().getName());
+				out.write('\t');
+				out.write(field(f.getCause().getMessage()));
+				out.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * @param value beliebiger Text oder null
+	 * @return Text ohne Tabulatoren und Zeilenumbrüche
+	 */
+	private static String field(String value) {
+		if (value == null) {
+			return "";
+		}
+		return value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * Leitet den Dateinamen des Berichts aus dem Namen der Ergebnisdatei ab, z.B.
+	 * export/result.xml -> export/result.errors.tsv
+	 *
+	 * @param resultXmlFilename Name der Ergebnisdatei, ggf. mit {i} oder {t}
+	 * @return Dateiname des Berichts
+	 */
+	public static String filename(String resultXmlFilename) {
+		String base = resultXmlFilename.replace("{i}", "").replace("{t}", "");
+		if (base.endsWith(".xml") || base.endsWith(".bin")) {
+			base = base.substring(0, base.length() - 4);
+		}
+		return base + ".errors.tsv";
+	}
+}
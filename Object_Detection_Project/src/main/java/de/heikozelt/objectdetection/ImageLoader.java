@@ -0,0 +1,380 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Liest Bilddateien mit NIO. Kleine Dateien werden über einen FileChannel in
+ * einen direkten ByteBuffer aus einem Pool gelesen, große Dateien werden
+ * memory-mapped. Der Decoder bekommt einen ByteBufferInputStream, der Inhalt
+ * wird also nicht noch einmal in ein byte-Array kopiert. Der FileChannel wird
+ * sofort nach dem Lesen geschlossen, der Buffer mit ImageData.close() an den
+ * Pool zurückgegeben.
+ * <p>
+ * Optional werden die nächsten Dateien im Hintergrund gelesen (prefetch),
+ * während das aktuelle Bild analysiert wird. Dazu werden die Dateinamen durch
+ * prefetching() geleitet. Vorgelesene Dateien, die nicht abgeholt werden (z.B.
+ * weil das Ergebnis aus dem Cache kommt), werden verworfen, sobald zu viele
+ * vorgelesen sind.
+ * <p>
+ * Vorübergehende Lesefehler (z.B. auf einem Netzlaufwerk) können mit
+ * setRetries() mehrmals mit wachsender Pause wiederholt werden. Fehlende
+ * Dateien und fehlende Rechte werden sofort gemeldet.
+ *
+ * @author Heiko Zelt
+ */
+public class ImageLoader implements AutoCloseable {
+	private static Logger logger = LogManager.getLogger(ImageLoader.class);
+
+	/**
+	 * Dateien ab dieser Größe werden standardmäßig memory-mapped
+	 */
+	public static final long DEFAULT_MMAP_MIN_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * Buffer werden auf ein Vielfaches davon aufgerundet, damit sie für ähnlich
+	 * große Dateien wiederverwendet werden können
+	 */
+	private static final int BUFFER_GRANULARITY = 256 * 1024;
+
+	private long mmapMinSize;
+	private int prefetch;
+	private int maxPooled;
+	private int retries = 0;
+	private long retryDelayMillis = 100;
+
+	private ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+	private AtomicInteger pooled = new AtomicInteger();
+
+	/**
+	 * vorgelesene Dateien in der Reihenfolge des Vorlesens
+	 */
+	private Map<Path, CompletableFuture<ImageData>> prefetched = new LinkedHashMap<Path, CompletableFuture<ImageData>>();
+	private ExecutorService executor;
+
+	/**
+	 * ohne Vorlesen, Memory-Mapping ab 16 MB
+	 */
+	public ImageLoader() {
+		this(DEFAULT_MMAP_MIN_SIZE, 0);
+	}
+
+	/**
+	 * @param mmapMinSize Dateien ab dieser Größe in Bytes werden memory-mapped
+	 * @param prefetch    Anzahl Dateien, die im Voraus gelesen werden, 0 = keine
+	 */
+	public ImageLoader(long mmapMinSize, int prefetch) {
+		if (mmapMinSize < 0 || prefetch < 0) {
+			throw new IllegalArgumentException("Werte dürfen nicht negativ sein");
+		}
+		this.mmapMinSize = mmapMinSize;
+		this.prefetch = prefetch;
+		// vorgelesene plus gerade dekodierte Dateien
+		this.maxPooled = prefetch + Runtime.getRuntime().availableProcessors();
+		if (prefetch > 0) {
+			AtomicInteger threadNumber = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(Math.min(prefetch, 4), r -> {
+				Thread t = new Thread(r, "prefetch-" + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * Legt fest, wie oft ein fehlgeschlagenes Lesen wiederholt wird. Die Pause vor
+	 * jedem weiteren Versuch verdoppelt sich.
+	 *
+	 * @param retries     Anzahl Wiederholungen, 0 = keine (Standard)
+	 * @param delayMillis Pause vor der ersten Wiederholung in Millisekunden
+	 */
+	public void setRetries(int retries, long delayMillis) {
+		if (retries < 0 || delayMillis < 0) {
+			throw new IllegalArgumentException("Werte dürfen nicht negativ sein");
+		}
+		this.retries = retries;
+		this.retryDelayMillis = delayMillis;
+	}
+
+	/**
+	 * Inhalt einer Bilddatei. Muss nach dem Dekodieren geschlossen werden, damit
+	 * der Buffer wiederverwendet werden kann.
+	 */
+	public class ImageData implements AutoCloseable {
+		private ByteBuffer buffer;
+		private boolean pooledBuffer;
+
+		private ImageData(ByteBuffer buffer, boolean pooledBuffer) {
+			this.buffer = buffer;
+			this.pooledBuffer = pooledBuffer;
+		}
+
+		/**
+		 * @return Inhalt der Datei zwischen position und limit, nur lesen
+		 */
+		public ByteBuffer buffer() {
+			return buffer.asReadOnlyBuffer();
+		}
+
+		/**
+		 * @return neuer Stream über den Inhalt, ohne Kopie
+		 */
+		public InputStream stream() {
+			return new ByteBufferInputStream(buffer);
+		}
+
+		/**
+		 * @return Größe der Datei in Bytes
+		 */
+		public int size() {
+			return buffer.remaining();
+		}
+
+		/**
+		 * Gibt den Buffer an den Pool zurück. Ein memory-mapped Buffer wird vom
+		 * Garbage Collector freigegeben, die Datei selbst ist bereits geschlossen.
+		 */
+		@Override
+		public void close() {
+			if (buffer != null && pooledBuffer) {
+				release(buffer);
+			}
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Liest eine Datei. Wurde sie vorgelesen, wird auf das Ergebnis gewartet.
+	 *
+	 * @param path Bilddatei
+	 * @return Inhalt, muss geschlossen werden
+	 * @throws IOException
+	 */
+	public ImageData load(Path path) throws IOException {
+		CompletableFuture<ImageData> future;
+		synchronized (prefetched) {
+			future = prefetched.remove(path);
+		}
+		if (future != null) {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				// Fehler so melden, als wäre die Datei jetzt gelesen worden
+				logger.debug("prefetch of {} failed: {}", path, e.getCause());
+			}
+		}
+		return readWithRetry(path);
+	}
+
+	/**
+	 * Liest eine Datei, vorübergehende Fehler werden wiederholt.
+	 */
+	private ImageData readWithRetry(Path path) throws IOException {
+		long delay = retryDelayMillis;
+		for (int attempt = 0;; attempt++) {
+			try {
+				return read(path);
+			} catch (IOException e) {
+				if (attempt >= retries || !isTransient(e)) {
+					throw e;
+				}
+				logger.warn("Lesen von " + path + " fehlgeschlagen, neuer Versuch in " + delay + " msec: " + e);
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					InterruptedIOException interrupted = new InterruptedIOException("Warten auf neuen Versuch unterbrochen");
+					interrupted.addSuppressed(e);
+					throw interrupted;
+				}
+				delay *= 2;
+			}
+		}
+	}
+
+	/**
+	 * @param e Fehler beim Lesen
+	 * @return false, wenn ein neuer Versuch sicher nichts ändert
+	 */
+	static boolean isTransient(IOException e) {
+		return !(e instanceof NoSuchFileException || e instanceof AccessDeniedException
+				|| e instanceof NotDirectoryException || e instanceof InterruptedIOException);
+	}
+
+	private ImageData read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Datei ist zu groß: " + path);
+			}
+			if (size >= mmapMinSize && size > 0) {
+				return new ImageData(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), false);
+			}
+			ByteBuffer buffer = acquire((int) size);
+			try {
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+					// weiterlesen, bis die Datei komplett im Buffer ist
+				}
+			} catch (IOException e) {
+				release(buffer);
+				throw e;
+			}
+			buffer.flip();
+			return new ImageData(buffer, true);
+		}
+	}
+
+	/**
+	 * @param size benötigte Größe in Bytes
+	 * @return Buffer aus dem Pool oder neuer direkter Buffer, limit = size
+	 */
+	private ByteBuffer acquire(int size) {
+		ByteBuffer buffer = pool.poll();
+		if (buffer != null) {
+			pooled.decrementAndGet();
+			if (buffer.capacity() >= size) {
+				buffer.clear().limit(size);
+				return buffer;
+			}
+		}
+		int capacity = (int) Math.min(Integer.MAX_VALUE,
+				((long) size + BUFFER_GRANULARITY - 1) / BUFFER_GRANULARITY * BUFFER_GRANULARITY);
+		buffer = ByteBuffer.allocateDirect(Math.max(capacity, BUFFER_GRANULARITY));
+		buffer.limit(size);
+		return buffer;
+	}
+
+	private void release(ByteBuffer buffer) {
+		if (pooled.incrementAndGet() <= maxPooled) {
+			buffer.clear();
+			pool.offer(buffer);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Liest eine Datei im Hintergrund, falls Vorlesen eingeschaltet ist. Sind
+	 * schon zu viele Dateien vorgelesen, wird die älteste verworfen.
+	 *
+	 * @param path Bilddatei
+	 */
+	public void prefetch(Path path) {
+		if (executor == null) {
+			return;
+		}
+		synchronized (prefetched) {
+			if (prefetched.containsKey(path)) {
+				return;
+			}
+			prefetched.put(path, CompletableFuture.supplyAsync(() -> {
+				try {
+					return read(path);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor));
+			// Platz für die Dateien, die gerade vorgelesen und noch nicht abgeholt sind
+			Iterator<CompletableFuture<ImageData>> oldest = prefetched.values().iterator();
+			while (prefetched.size() > 2 * prefetch) {
+				discard(oldest.next());
+				oldest.remove();
+			}
+		}
+	}
+
+	private static void discard(CompletableFuture<ImageData> future) {
+		future.thenAccept(ImageData::close);
+	}
+
+	/**
+	 * Leitet Dateinamen durch und liest dabei die nächsten prefetch Dateien im
+	 * Hintergrund. Ohne Vorlesen werden die Dateinamen unverändert geliefert.
+	 *
+	 * @param names   Dateinamen
+	 * @param resolve bildet einen Dateinamen auf den Pfad ab, mit dem später
+	 *                load() aufgerufen wird
+	 * @return dieselben Dateinamen in derselben Reihenfolge
+	 */
+	public Iterator<String> prefetching(Iterator<String> names, Function<String, Path> resolve) {
+		if (executor == null) {
+			return names;
+		}
+		return new Iterator<String>() {
+			private Deque<String> ahead = new ArrayDeque<String>(prefetch + 1);
+
+			private void fill() {
+				while (ahead.size() <= prefetch && names.hasNext()) {
+					String name = names.next();
+					prefetch(resolve.apply(name));
+					ahead.add(name);
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				fill();
+				return !ahead.isEmpty();
+			}
+
+			@Override
+			public String next() {
+				fill();
+				if (ahead.isEmpty()) {
+					throw new NoSuchElementException();
+				}
+				return ahead.poll();
+			}
+		};
+	}
+
+	/**
+	 * @return Anzahl der Buffer im Pool
+	 */
+	int getPooled() {
+		return pooled.get();
+	}
+
+	/**
+	 * Beendet das Vorlesen und gibt die nicht abgeholten Dateien frei.
+	 */
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		synchronized (prefetched) {
+			for (CompletableFuture<ImageData> future : prefetched.values()) {
+				discard(future);
+			}
+			prefetched.clear();
+		}
+		pool.clear();
+		pooled.set(0);
+	}
+}
@@ -0,0 +1,132 @@
+package de.heikozelt.objectdetection;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramm für Laufzeiten in Nanosekunden nach dem Vorbild von
+ * HdrHistogram. Werte bis 127 werden exakt gezählt, darüber gibt es pro
+ * Zweierpotenz 64 gleich breite Klassen. Der relative Fehler eines Perzentils
+ * ist damit kleiner als 1/64 (ca. 1,6%), unabhängig davon, ob es um
+ * Mikrosekunden oder Minuten geht. Der Speicherbedarf ist fest (ca. 30 KB), es
+ * werden keine einzelnen Werte gespeichert. Mehrere Threads dürfen gleichzeitig
+ * Werte eintragen.
+ *
+ * @author Heiko Zelt
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Anzahl Bits für die Klassen innerhalb einer Zweierpotenz (64 Klassen)
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Werte unterhalb dieser Grenze werden exakt gezählt
+	 */
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+	/**
+	 * 128 exakte Klassen plus 64 Klassen für jede Zweierpotenz von 2^7 bis 2^62
+	 */
+	private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private LongAdder count = new LongAdder();
+	private LongAdder sum = new LongAdder();
+	private LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Trägt einen Wert ein.
+	 *
+	 * @param nanos Laufzeit in Nanosekunden, negative Werte werden als 0 gezählt
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @param value Wert >= 0
+	 * @return Index der Klasse, in die der Wert fällt
+	 */
+	static int bucket(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		int top = (int) (value >>> shift); // zwischen 64 und 127
+		return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+	}
+
+	/**
+	 * @param bucket Index einer Klasse
+	 * @return größter Wert, der in diese Klasse fällt
+	 */
+	static long highestValue(int bucket) {
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+		long top = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * @return Anzahl eingetragener Werte
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return größter eingetragener Wert (exakt)
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return Summe aller Werte
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return Durchschnitt aller Werte (exakt)
+	 */
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0.0 : (double) getSum() / n;
+	}
+
+	/**
+	 * Liefert ein Perzentil, z.B. 99.0 für p99. Das Ergebnis ist der größte Wert
+	 * der Klasse, in die das Perzentil fällt, höchstens aber das Maximum.
+	 *
+	 * @param percentile zwischen 0.0 und 100.0
+	 * @return Wert in Nanosekunden, 0 wenn nichts eingetragen wurde
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = getCount();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+}
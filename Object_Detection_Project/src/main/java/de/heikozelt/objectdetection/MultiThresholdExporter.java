@@ -0,0 +1,131 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Schreibt für mehrere Thresholds je eine Ergebnisdatei in einem einzigen
+ * Durchlauf.
+ * Die Objekt-Erkennung läuft nur einmal mit dem niedrigsten Threshold. Jedes
+ * Ergebnis wird für jeden Threshold gefiltert und in die zugehörige Datei
+ * geschrieben. Das ersetzt das wiederholte Starten der JVM pro Threshold (siehe
+ * loop_pytorch.sh).
+ *
+ * @author Heiko Zelt
+ */
+public class MultiThresholdExporter implements ResultExporter {
+	private static Logger logger = LogManager.getLogger(MultiThresholdExporter.class);
+
+	private float[] thresholds;
+	private ResultExporter[] exporters;
+
+	/**
+	 * Öffnet eine Ergebnisdatei pro Threshold. Im Dateinamen-Muster wird "{i}"
+	 * durch die laufende Nummer (ab 1) und "{t}" durch den Threshold ersetzt.
+	 *
+	 * @param pattern    z.B. "export/pytorch_result{i}.xml"
+	 * @param thresholds z.B. 0.1, 0.2, ... 0.9
+	 * @throws IOException
+	 */
+	public MultiThresholdExporter(String pattern, float[] thresholds) throws IOException {
+		this(pattern, thresholds, ResultExporter.FORMAT_XML);
+	}
+
+	/**
+	 * Wie oben, aber im angegebenen Format.
+	 *
+	 * @param pattern    z.B. "export/pytorch_result{i}.bin"
+	 * @param thresholds z.B. 0.1, 0.2, ... 0.9
+	 * @param format     ResultExporter.FORMAT_XML oder FORMAT_BINARY
+	 * @throws IOException
+	 */
+	public MultiThresholdExporter(String pattern, float[] thresholds, String format) throws IOException {
+		if (!pattern.contains("{i}") && !pattern.contains("{t}") && thresholds.length > 1) {
+			throw new IllegalArgumentException("Dateiname muss {i} oder {t} enthalten: " + pattern);
+		}
+		this.thresholds = thresholds.clone();
+		exporters = new ResultExporter[thresholds.length];
+		try {
+			for (int i = 0; i < thresholds.length; i++) {
+				exporters[i] = ResultExporter.open(Paths.get(filename(pattern, i, thresholds[i])), format);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param pattern   Dateinamen-Muster
+	 * @param index     Position des Thresholds (ab 0)
+	 * @param threshold Threshold
+	 * @return Dateiname für diesen Threshold
+	 */
+	public static String filename(String pattern, int index, float threshold) {
+		return pattern.replace("{i}", String.valueOf(index + 1)).replace("{t}", String.valueOf(threshold));
+	}
+
+	/**
+	 * Parst eine durch Kommas getrennte Liste von Thresholds.
+	 *
+	 * @param list z.B. "0.1,0.2,0.3"
+	 * @return Thresholds in der angegebenen Reihenfolge
+	 */
+	public static float[] parseThresholds(String list) {
+		String[] parts = list.split(",");
+		float[] thresholds = new float[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			thresholds[i] = Float.parseFloat(parts[i].trim());
+		}
+		return thresholds;
+	}
+
+	/**
+	 * @param thresholds Thresholds
+	 * @return kleinster Threshold, mit diesem muss die Objekt-Erkennung laufen
+	 */
+	public static float min(float[] thresholds) {
+		float min = Float.MAX_VALUE;
+		for (float t : thresholds) {
+			min = Math.min(min, t);
+		}
+		return min;
+	}
+
+	/**
+	 * Schreibt das Ergebnis gefiltert in jede Datei.
+	 */
+	@Override
+	public void accept(Result result) throws IOException {
+		for (int i = 0; i < thresholds.length; i++) {
+			exporters[i].accept(result.filter(thresholds[i]));
+		}
+	}
+
+	/**
+	 * Schließt alle Dateien.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException first = null;
+		for (ResultExporter exporter : exporters) {
+			if (exporter == null) {
+				continue;
+			}
+			try {
+				exporter.close();
+			} catch (IOException e) {
+				if (first == null) {
+					first = e;
+				}
+			}
+		}
+		logger.debug("{} result files closed", exporters.length);
+		if (first != null) {
+			throw first;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package de.heikozelt.objectdetection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.repository.zoo.ZooModel;
+
+/**
+ * Ein Pool von Predictors, die alle aus demselben Modell erzeugt wurden. DJL
+ * Predictors sind nicht thread-sicher. Deshalb leiht sich jeder Worker-Thread
+ * für die Dauer einer Objekt-Erkennung einen eigenen Predictor aus dem Pool und
+ * gibt ihn danach wieder zurück. Das Modell selbst wird von allen Predictors
+ * gemeinsam genutzt.
+ *
+ * @author Heiko Zelt
+ */
+public class PredictorPool implements AutoCloseable {
+	private static Logger logger = LogManager.getLogger(PredictorPool.class);
+
+	/**
+	 * alle vom Pool erzeugten Predictors (zum Schließen)
+	 */
+	private List<Predictor<Image, DetectedObjects>> all;
+
+	/**
+	 * zur Zeit nicht ausgeliehene Predictors
+	 */
+	private BlockingQueue<Predictor<Image, DetectedObjects>> idle;
+
+	/**
+	 * Erzeugt einen Pool mit der gewünschten Anzahl Predictors.
+	 *
+	 * @param model gemeinsam genutztes Modell
+	 * @param size  Anzahl Predictors, mindestens 1
+	 */
+	public PredictorPool(ZooModel<Image, DetectedObjects> model, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool-Größe muss mindestens 1 sein: " + size);
+		}
+		all = new ArrayList<Predictor<Image, DetectedObjects>>(size);
+		idle = new ArrayBlockingQueue<Predictor<Image, DetectedObjects>>(size);
+		for (int i = 0; i < size; i++) {
+			Predictor<Image, DetectedObjects> p = model.newPredictor();
+			all.add(p);
+			idle.add(p);
+		}
+		logger.debug("predictor pool with {} predictors created", size);
+	}
+
+	/**
+	 * @return Anzahl Predictors im Pool
+	 */
+	public int size() {
+		return all.size();
+	}
+
+	/**
+	 * Leiht einen Predictor aus. Wartet, bis einer frei ist.
+	 *
+	 * @return Predictor, der exklusiv vom aufrufenden Thread genutzt werden darf
+	 * @throws InterruptedException
+	 */
+	public Predictor<Image, DetectedObjects> borrow() throws InterruptedException {
+		return idle.take();
+	}
+
+	/**
+	 * Gibt einen ausgeliehenen Predictor zurück.
+	 *
+	 * @param predictor vorher mit borrow() ausgeliehener Predictor
+	 */
+	public void release(Predictor<Image, DetectedObjects> predictor) {
+		idle.add(predictor);
+	}
+
+	/**
+	 * Schließt alle Predictors des Pools. Das Modell wird nicht geschlossen.
+	 */
+	@Override
+	public void close() {
+		for (Predictor<Image, DetectedObjects> p : all) {
+			p.close();
+		}
+		all.clear();
+		idle.clear();
+	}
+}
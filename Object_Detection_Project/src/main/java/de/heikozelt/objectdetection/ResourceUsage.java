@@ -0,0 +1,166 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Momentaufnahme des Speichers und der offenen Dateien des Prozesses. Native
+ * Tensoren der Engine, direkte und memory-mapped Buffer liegen außerhalb des
+ * Java-Heaps und sind nur im Resident Set (RSS) des Prozesses sichtbar. Wächst
+ * der RSS oder die Anzahl offener Dateien über einen langen Lauf, wird
+ * irgendwo etwas nicht geschlossen.
+ * <p>
+ * RSS und offene Dateien werden unter Linux aus /proc/self gelesen, auf
+ * anderen Systemen sind sie -1.
+ *
+ * @author Heiko Zelt
+ */
+public final class ResourceUsage {
+
+	private static final Path STATUS = Paths.get("/proc/self/status");
+	private static final Path FD = Paths.get("/proc/self/fd");
+
+	private final long rssBytes;
+	private final long peakRssBytes;
+	private final long openFiles;
+	private final long heapBytes;
+	private final long directBytes;
+	private final long mappedBytes;
+
+	ResourceUsage(long rssBytes, long peakRssBytes, long openFiles, long heapBytes, long directBytes,
+			long mappedBytes) {
+		this.rssBytes = rssBytes;
+		this.peakRssBytes = peakRssBytes;
+		this.openFiles = openFiles;
+		this.heapBytes = heapBytes;
+		this.directBytes = directBytes;
+		this.mappedBytes = mappedBytes;
+	}
+
+	/**
+	 * @return aktuelle Werte des Prozesses
+	 */
+	public static ResourceUsage current() {
+		long rss = -1;
+		long peak = -1;
+		try {
+			List<String> status = Files.readAllLines(STATUS, StandardCharsets.ISO_8859_1);
+			rss = statusKiloBytes(status, "VmRSS:");
+			peak = statusKiloBytes(status, "VmHWM:");
+		} catch (IOException e) {
+			// kein Linux
+		}
+		long files = -1;
+		try (DirectoryStream<Path> fds = Files.newDirectoryStream(FD)) {
+			files = 0;
+			for (@SuppressWarnings("unused") Path fd : fds) {
+				files++;
+			}
+			// der DirectoryStream selbst ist auch eine offene Datei
+			files--;
+		} catch (IOException e) {
+			files = -1;
+		}
+		long direct = 0;
+		long mapped = 0;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(pool.getName())) {
+				direct = pool.getMemoryUsed();
+			} else if ("mapped".equals(pool.getName())) {
+				mapped = pool.getMemoryUsed();
+			}
+		}
+		long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		return new ResourceUsage(rss, peak, files, heap, direct, mapped);
+	}
+
+	/**
+	 * @param status Zeilen von /proc/self/status
+	 * @param key    z.B. "VmRSS:"
+	 * @return Wert in Bytes oder -1
+	 */
+	static long statusKiloBytes(List<String> status, String key) {
+		for (String line : status) {
+			if (line.startsWith(key)) {
+				String[] parts = line.substring(key.length()).trim().split("\\s+");
+				return Long.parseLong(parts[0]) * 1024;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Resident Set Size des Prozesses in Bytes (Java-Heap, nativer
+	 *         Speicher der Engine, Buffer, Code) oder -1
+	 */
+	public long getRssBytes() {
+		return rssBytes;
+	}
+
+	/**
+	 * @return größter RSS seit Start des Prozesses in Bytes oder -1
+	 */
+	public long getPeakRssBytes() {
+		return peakRssBytes;
+	}
+
+	/**
+	 * @return Anzahl offener Dateien (File-Deskriptoren) oder -1
+	 */
+	public long getOpenFiles() {
+		return openFiles;
+	}
+
+	/**
+	 * @return belegter Java-Heap in Bytes
+	 */
+	public long getHeapBytes() {
+		return heapBytes;
+	}
+
+	/**
+	 * @return Speicher der direkten ByteBuffer in Bytes
+	 */
+	public long getDirectBytes() {
+		return directBytes;
+	}
+
+	/**
+	 * @return Größe der memory-mapped Dateien in Bytes
+	 */
+	public long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	/**
+	 * @return Werte als JSON-Objekt in einer Zeile
+	 */
+	String toJson() {
+		return "{\"rss_bytes\": " + rssBytes + ", \"peak_rss_bytes\": " + peakRssBytes + ", \"open_files\": "
+				+ openFiles + ", \"heap_bytes\": " + heapBytes + ", \"direct_bytes\": " + directBytes
+				+ ", \"mapped_bytes\": " + mappedBytes + "}";
+	}
+
+	private static String mb(long bytes) {
+		return bytes < 0 ? "?" : String.format(Locale.ROOT, "%.1f", bytes / 1048576.0);
+	}
+
+	/**
+	 * @return z.B. "rss=212.4 MB peak=230.0 MB files=31 heap=48.2 MB direct=8.0 MB
+	 *         mapped=0.0 MB"
+	 */
+	@Override
+	public String toString() {
+		return "rss=" + mb(rssBytes) + " MB peak=" + mb(peakRssBytes) + " MB files="
+				+ (openFiles < 0 ? "?" : Long.toString(openFiles)) + " heap=" + mb(heapBytes) + " MB direct="
+				+ mb(directBytes) + " MB mapped=" + mb(mappedBytes) + " MB";
+	}
+}
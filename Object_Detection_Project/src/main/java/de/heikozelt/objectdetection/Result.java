@@ -1,9 +1,9 @@
 package de.heikozelt.objectdetection;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
-
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import java.util.List;
 
 import ai.djl.modality.cv.output.BoundingBox;
 import ai.djl.modality.cv.output.DetectedObjects;
@@ -15,12 +15,26 @@ import ai.djl.modality.cv.output.DetectedObjects.DetectedObject;
  * Bildgröße und das Ergebnis der Objekterkennung für dieses Bild. Es können
  * mehrere Objekte pro Bild erkannt werden. Zu jedem erkannten Objekt gibt es
  * einen Klassennamen, eine Bounding Box und eine Wahrscheinlichkeit.
+ * <p>
+ * Die erkannten Objekte werden nicht als DJL-Objekte gehalten, sondern in
+ * Arrays mit primitiven Werten kopiert: die Nummern der Klassennamen (siehe
+ * ClassNameTable), die Bounding Boxes (x, y, Breite, Höhe hintereinander) und
+ * die Wahrscheinlichkeiten, alles mit float-Genauigkeit wie in der Engine. Das
+ * spart pro Objekt mehrere Java-Objekte, wenn sehr viele Ergebnisse im
+ * Speicher gehalten werden. Das DetectedObjects-Objekt der Engine kann nach
+ * dem Kopieren freigegeben werden. Über den Index (getClassName(i),
+ * getProbability(i) usw.) kann ohne Erzeugen von Objekten iteriert werden.
  * 
  * @author Heiko Zelt
  * @see ai.djl.modality.cv.output.DetectedObjects.DetectedObject
  */
 public class Result {
-	private static Logger logger = LogManager.getLogger(Result.class);
+	/**
+	 * ungefähre Länge des XML eines Objekts, für die Größe der Puffer
+	 */
+	static final int OBJECT_XML_LENGTH = 320;
+
+	private static volatile FormattedDate lastDate;
 
 	/**
 	 * Dateiname der Bilddatei
@@ -38,9 +52,9 @@ public class Result {
 	private int imgHeight;
 	
 	/**
-	 * Uhrzeit/Datum der Istanziierung
+	 * Uhrzeit/Datum der Istanziierung in Millisekunden seit 1970
 	 */
-	private Date date = new Date();
+	private long date = System.currentTimeMillis();
 	
 	/**
 	 * Laufzeit der eigentlichen Objekt-Erkennung (für Performance-Vergleich/Statistik-Auswertung)
@@ -52,9 +66,20 @@ public class Result {
 	}
 
 	/**
-	 * erkannte Objekte
+	 * Nummern der Klassennamen der erkannten Objekte, siehe ClassNameTable
+	 */
+	private int[] classIds;
+
+	/**
+	 * Bounding Boxes der erkannten Objekte, relativ zur Bildgröße (0.0 bis 1.0),
+	 * pro Objekt 4 Werte: x, y, Breite, Höhe
+	 */
+	private float[] boxes;
+
+	/**
+	 * Wahrscheinlichkeiten der erkannten Objekte
 	 */
-	private DetectedObjects objects;
+	private float[] probabilities;
 
 	/**
 	 * @return Dateiname, der Bilddatei, für welche die Objekte erkannt wurden
@@ -64,12 +89,88 @@ public class Result {
 	}
 
 	/**
+	 * Erzeugt bei jedem Aufruf neue DJL-Objekte, z.B. zum Zeichnen der Bounding
+	 * Boxes. Zum Lesen der Werte besser getNumberOfObjects(), getClassName(i)
+	 * usw. verwenden.
+	 * 
 	 * @return alle erkannten Objekte, jeweils mit Klassenname, Bounding Box und
 	 *         Wahrscheinlichkeit.
 	 * @see ai.djl.modality.cv.output.DetectedObjects
 	 */
 	public DetectedObjects getObjects() {
-		return objects;
+		int n = getNumberOfObjects();
+		List<String> classNames = new ArrayList<String>(n);
+		List<Double> probs = new ArrayList<Double>(n);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>(n);
+		for (int i = 0; i < n; i++) {
+			classNames.add(getClassName(i));
+			probs.add((double) probabilities[i]);
+			boundingBoxes.add(new Rectangle(getX(i), getY(i), getBoxWidth(i), getBoxHeight(i)));
+		}
+		return new DetectedObjects(classNames, probs, boundingBoxes);
+	}
+
+	/**
+	 * @return Anzahl erkannter Objekte
+	 */
+	public int getNumberOfObjects() {
+		return classIds.length;
+	}
+
+	/**
+	 * @param i Index des Objekts
+	 * @return Nummer des Klassennamens in der ClassNameTable
+	 */
+	public int getClassId(int i) {
+		return classIds[i];
+	}
+
+	/**
+	 * @param i Index des Objekts
+	 * @return Klassenname, z.B. "cat"
+	 */
+	public String getClassName(int i) {
+		return ClassNameTable.name(classIds[i]);
+	}
+
+	/**
+	 * @param i Index des Objekts
+	 * @return Wahrscheinlichkeit
+	 */
+	public float getProbability(int i) {
+		return probabilities[i];
+	}
+
+	/**
+	 * @param i Index des Objekts
+	 * @return linke Kante der Bounding Box relativ zur Bildbreite
+	 */
+	public float getX(int i) {
+		return boxes[4 * i];
+	}
+
+	/**
+	 * @param i Index des Objekts
+	 * @return obere Kante der Bounding Box relativ zur Bildhöhe
+	 */
+	public float getY(int i) {
+		return boxes[4 * i + 1];
+	}
+
+	/**
+	 * @param i Index des Objekts
+	 * @return Breite der Bounding Box relativ zur Bildbreite
+	 */
+	public float getBoxWidth(int i) {
+		return boxes[4 * i + 2];
+	}
+
+	/**
+	 * @param i Index des Objekts
+	 * @return Höhe der Bounding Box relativ zur Bildhöhe
+	 */
+	public float getBoxHeight(int i) {
+		return boxes[4 * i + 3];
 	}
 
 	/**
@@ -84,8 +185,166 @@ public class Result {
 		this.filename = filename;
 		this.imgWidth = imgWidth;
 		this.imgHeight = imgHeight;
-		this.objects = objects;
 		this.predictTime = predictTime;
+		int n = objects.getNumberOfObjects();
+		classIds = new int[n];
+		boxes = new float[4 * n];
+		probabilities = new float[n];
+		for (int i = 0; i < n; i++) {
+			DetectedObject obj = objects.item(i);
+			Rectangle rect = obj.getBoundingBox().getBounds();
+			classIds[i] = ClassNameTable.id(obj.getClassName());
+			boxes[4 * i] = (float) rect.getX();
+			boxes[4 * i + 1] = (float) rect.getY();
+			boxes[4 * i + 2] = (float) rect.getWidth();
+			boxes[4 * i + 3] = (float) rect.getHeight();
+			probabilities[i] = (float) obj.getProbability();
+		}
+	}
+
+	/**
+	 * Konstruktor mit Datum, z.B. beim Einlesen einer gespeicherten Ergebnisdatei
+	 * 
+	 * @param filename
+	 * @param imgWidth
+	 * @param imgHeight
+	 * @param objects
+	 * @param predictTime
+	 * @param date        Uhrzeit/Datum der ursprünglichen Objekt-Erkennung
+	 */
+	public Result(String filename, int imgWidth, int imgHeight, DetectedObjects objects, long predictTime,
+			Date date) {
+		this(filename, imgWidth, imgHeight, objects, predictTime);
+		this.date = date.getTime();
+	}
+
+	/**
+	 * Konstruktor für bereits kopierte Objekte, z.B. beim Einlesen einer
+	 * gespeicherten Ergebnisdatei. Die Arrays werden übernommen, nicht kopiert.
+	 * 
+	 * @param filename
+	 * @param imgWidth
+	 * @param imgHeight
+	 * @param classIds      Nummern der Klassennamen, siehe ClassNameTable
+	 * @param boxes         pro Objekt x, y, Breite, Höhe relativ zur Bildgröße
+	 * @param probabilities Wahrscheinlichkeiten
+	 * @param predictTime
+	 * @param date          Uhrzeit/Datum der ursprünglichen Objekt-Erkennung in
+	 *                      Millisekunden seit 1970
+	 */
+	public Result(String filename, int imgWidth, int imgHeight, int[] classIds, float[] boxes,
+			float[] probabilities, long predictTime, long date) {
+		if (boxes.length != 4 * classIds.length || probabilities.length != classIds.length) {
+			throw new IllegalArgumentException("Arrays passen nicht zusammen: " + classIds.length + " Objekte, "
+					+ boxes.length + " Koordinaten, " + probabilities.length + " Wahrscheinlichkeiten");
+		}
+		this.filename = filename;
+		this.imgWidth = imgWidth;
+		this.imgHeight = imgHeight;
+		this.classIds = classIds;
+		this.boxes = boxes;
+		this.probabilities = probabilities;
+		this.predictTime = predictTime;
+		this.date = date;
+	}
+
+	/**
+	 * Liefert eine Kopie, die nur die Objekte mit einer Wahrscheinlichkeit von
+	 * mindestens threshold enthält. Der Vergleich erfolgt wie im Translator der
+	 * Engine mit float-Genauigkeit. So kann nach einer Objekt-Erkennung mit
+	 * niedrigem Threshold das Ergebnis für jeden höheren Threshold erzeugt werden.
+	 * Dateiname, Bildgröße, Datum und predictTime bleiben gleich.
+	 * 
+	 * @param threshold minimale Wahrscheinlichkeit, z.B. 0.5
+	 * @return gefiltertes Ergebnis (oder this, wenn kein Objekt wegfällt)
+	 */
+	public Result filter(float threshold) {
+		int n = getNumberOfObjects();
+		boolean[] keep = new boolean[n];
+		int kept = 0;
+		for (int i = 0; i < n; i++) {
+			if (probabilities[i] >= threshold) {
+				keep[i] = true;
+				kept++;
+			}
+		}
+		return select(keep, kept);
+	}
+
+	/**
+	 * Liefert eine Kopie mit den ausgewählten Objekten in der bisherigen
+	 * Reihenfolge. Dateiname, Bildgröße, Datum und predictTime bleiben gleich.
+	 * 
+	 * @param keep  pro Objekt true, wenn es übernommen wird
+	 * @param count Anzahl der true-Werte in keep
+	 * @return gefiltertes Ergebnis (oder this, wenn kein Objekt wegfällt)
+	 */
+	Result select(boolean[] keep, int count) {
+		int n = getNumberOfObjects();
+		if (count == n) {
+			return this;
+		}
+		int[] ids = new int[count];
+		float[] b = new float[4 * count];
+		float[] p = new float[count];
+		int j = 0;
+		for (int i = 0; i < n; i++) {
+			if (keep[i]) {
+				ids[j] = classIds[i];
+				System.arraycopy(boxes, 4 * i, b, 4 * j, 4);
+				p[j] = probabilities[i];
+				j++;
+			}
+		}
+		return new Result(filename, imgWidth, imgHeight, ids, b, p, predictTime, date);
+	}
+
+	/**
+	 * Liefert die erkannten Objekte für ein anderes, gleiches oder sehr ähnliches
+	 * Bild, siehe DuplicateFinder. Da die Bounding Boxes relativ zur Bildgröße
+	 * gespeichert sind, passen sie auch bei anderer Bildgröße, die Pixel-Angaben
+	 * im XML werden mit der neuen Größe berechnet. Die Arrays werden nicht
+	 * kopiert, die predictTime ist 0.
+	 *
+	 * @param filename  Dateiname des anderen Bildes
+	 * @param imgWidth  Bildbreite des anderen Bildes in Pixel
+	 * @param imgHeight Bildhöhe des anderen Bildes in Pixel
+	 * @return neues Ergebnis mit denselben Objekten
+	 */
+	public Result copyFor(String filename, int imgWidth, int imgHeight) {
+		return detections().copyFor(filename, imgWidth, imgHeight);
+	}
+
+	/**
+	 * @return nur die erkannten Objekte, die Arrays werden nicht kopiert
+	 */
+	Detections detections() {
+		return new Detections(classIds, boxes, probabilities);
+	}
+
+	/**
+	 * Nur die erkannten Objekte eines Ergebnisses, ohne Dateiname, Bildgröße und
+	 * Datum. Der DuplicateFinder hält so für jedes analysierte Bild nur die
+	 * Arrays im Speicher.
+	 */
+	static final class Detections {
+		private final int[] classIds;
+		private final float[] boxes;
+		private final float[] probabilities;
+
+		private Detections(int[] classIds, float[] boxes, float[] probabilities) {
+			this.classIds = classIds;
+			this.boxes = boxes;
+			this.probabilities = probabilities;
+		}
+
+		/**
+		 * siehe Result.copyFor()
+		 */
+		Result copyFor(String filename, int imgWidth, int imgHeight) {
+			return new Result(filename, imgWidth, imgHeight, classIds, boxes, probabilities, 0,
+					System.currentTimeMillis());
+		}
 	}
 
 	/**
@@ -109,29 +368,72 @@ public class Result {
 	 * </pre>
 	 */
 	public String objectAsXml(DetectedObject obj) {
-		logger.debug("term: " + obj.getClassName());
-		BoundingBox box = obj.getBoundingBox();
-		logger.debug("bounding box: " + box.toString());
-		Rectangle rect = box.getBounds();
-		int xPx = (int) Math.round(rect.getX() * imgWidth);
-		int yPx = (int) Math.round(rect.getY() * imgHeight);
-		int widthPx = (int) Math.round(rect.getWidth() * imgWidth);
-		int heightPx = (int) Math.round(rect.getHeight() * imgHeight);
-
-		StringBuilder str = new StringBuilder();
-		str.append("      <object>\n");
-		str.append("        <term>").append(obj.getClassName()).append("</term>\n");
-		str.append("        <bounding-box>\n");
-		str.append("          <x>").append(xPx).append("</x>\n");
-		str.append("          <y>").append(yPx).append("</y>\n");
-		str.append("          <width>").append(widthPx).append("</width>\n");
-		str.append("          <height>").append(heightPx).append("</height>\n");
-		str.append("        </bounding-box>\n");
-		str.append("        <probability>").append(obj.getProbability()).append("</probability>\n");
-		str.append("      </object>\n");
+		StringBuilder str = new StringBuilder(OBJECT_XML_LENGTH);
+		appendObjectXml(str, obj);
 		return str.toString();
 	}
 
+	/**
+	 * Wie objectAsXml(), schreibt aber direkt in das Ziel, ohne Zwischen-String.
+	 * 
+	 * @param out Ziel, z.B. ein Writer oder StringBuilder
+	 * @param obj erkanntes Objekt
+	 * @throws IOException
+	 */
+	public void appendObjectXml(Appendable out, DetectedObject obj) throws IOException {
+		if (out instanceof StringBuilder) {
+			appendObjectXml((StringBuilder) out, obj);
+		} else {
+			StringBuilder str = new StringBuilder(OBJECT_XML_LENGTH);
+			appendObjectXml(str, obj);
+			out.append(str);
+		}
+	}
+
+	/**
+	 * Wie appendObjectXml(Appendable, DetectedObject), aber ohne Umweg über
+	 * Strings.
+	 * 
+	 * @param out Ziel
+	 * @param obj erkanntes Objekt
+	 */
+	public void appendObjectXml(StringBuilder out, DetectedObject obj) {
+		Rectangle rect = obj.getBoundingBox().getBounds();
+		appendObjectXml(out, obj.getClassName(), rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(),
+				obj.getProbability());
+	}
+
+	/**
+	 * Schreibt das i-te gespeicherte Objekt, ohne DJL-Objekte oder Strings zu
+	 * erzeugen.
+	 * 
+	 * @param out Ziel
+	 * @param i   Index des Objekts
+	 */
+	public void appendObjectXml(StringBuilder out, int i) {
+		appendObjectXml(out, getClassName(i), getX(i), getY(i), getBoxWidth(i), getBoxHeight(i), getProbability(i));
+	}
+
+	/**
+	 * Zahlen werden mit StringBuilder.append(int/double) direkt in den Puffer
+	 * geschrieben, ohne String.valueOf() und ohne Boxing.
+	 */
+	private void appendObjectXml(StringBuilder out, String className, double x, double y, double width,
+			double height, double probability) {
+		out.append("      <object>\n");
+		out.append("        <term>");
+		appendEscaped(out, className);
+		out.append("</term>\n");
+		out.append("        <bounding-box>\n");
+		out.append("          <x>").append((int) Math.round(x * imgWidth)).append("</x>\n");
+		out.append("          <y>").append((int) Math.round(y * imgHeight)).append("</y>\n");
+		out.append("          <width>").append((int) Math.round(width * imgWidth)).append("</width>\n");
+		out.append("          <height>").append((int) Math.round(height * imgHeight)).append("</height>\n");
+		out.append("        </bounding-box>\n");
+		out.append("        <probability>").append(probability).append("</probability>\n");
+		out.append("      </object>\n");
+	}
+
 	/**
 	 * Serialisiert die Daten aller erkannten Objekte eines Bildes als
 	 * XML-Zeichenkette.
@@ -160,21 +462,110 @@ public class Result {
 	 * </pre>
 	 */
 	public String asXml() {
-		StringBuilder str = new StringBuilder();
-		logger.debug("file: " + filename);
-		str.append("  <gmaf-data>\n");
-		str.append("    <file>").append(filename).append("</file>\n");
-		str.append("    <date>").append(date).append("</date>\n");
-		str.append("    <objects>\n");
-		for (int i = 0; i < objects.getNumberOfObjects(); i++) {
-			DetectedObject obj = (DetectedObject) (objects.item(i));
-			str.append(objectAsXml(obj));
-		}
-		str.append("    </objects>\n");
-		str.append("  </gmaf-data>\n");
+		StringBuilder str = new StringBuilder(128 + getNumberOfObjects() * OBJECT_XML_LENGTH);
+		appendXml(str);
 		return str.toString();
 	}
 
+	/**
+	 * Wie asXml(), schreibt aber direkt in das Ziel, ohne Zwischen-String.
+	 * 
+	 * @param out Ziel, z.B. ein Writer oder StringBuilder
+	 * @throws IOException
+	 */
+	public void appendXml(Appendable out) throws IOException {
+		if (out instanceof StringBuilder) {
+			appendXml((StringBuilder) out);
+		} else {
+			out.append(asXml());
+		}
+	}
+
+	/**
+	 * Wie asXml(), hängt das XML aber an einen Puffer an, der wiederverwendet
+	 * werden kann. Wird vom StreamingXmlExporter verwendet. Ist der Puffer groß
+	 * genug, entsteht kein Müll: Zahlen werden direkt formatiert, das Datum wird
+	 * nur einmal pro Sekunde formatiert, Sonderzeichen werden ohne
+	 * Zwischen-String maskiert.
+	 * 
+	 * @param out Ziel
+	 */
+	public void appendXml(StringBuilder out) {
+		out.append("  <gmaf-data>\n");
+		out.append("    <file>");
+		appendEscaped(out, filename);
+		out.append("</file>\n");
+		out.append("    <date>").append(formatDate(date)).append("</date>\n");
+		out.append("    <objects>\n");
+		for (int i = 0; i < getNumberOfObjects(); i++) {
+			appendObjectXml(out, i);
+		}
+		out.append("    </objects>\n");
+		out.append("  </gmaf-data>\n");
+	}
+
+	/**
+	 * Hängt Text an und maskiert dabei die Sonderzeichen von XML.
+	 * 
+	 * @param out  Ziel
+	 * @param text z.B. ein Dateiname
+	 */
+	static void appendEscaped(StringBuilder out, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			case '&':
+				out.append("&amp;");
+				break;
+			case '"':
+				out.append("&quot;");
+				break;
+			case '\'':
+				out.append("&apos;");
+				break;
+			default:
+				out.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Formatiert ein Datum wie Date.toString(). Die meisten Ergebnisse eines Laufs
+	 * entstehen in derselben Sekunde wie ihr Vorgänger, deshalb wird der zuletzt
+	 * formatierte Wert wiederverwendet.
+	 * 
+	 * @param millis Millisekunden seit 1970
+	 * @return z.B. "Wed Apr 14 10:00:00 CEST 2021"
+	 */
+	static String formatDate(long millis) {
+		long second = Math.floorDiv(millis, 1000);
+		FormattedDate cached = lastDate;
+		if (cached == null || cached.second != second) {
+			cached = new FormattedDate(second, new Date(millis).toString());
+			lastDate = cached;
+		}
+		return cached.text;
+	}
+
+	/**
+	 * zuletzt formatiertes Datum, Sekunde und Text werden gemeinsam ersetzt
+	 */
+	private static final class FormattedDate {
+		private final long second;
+		private final String text;
+
+		private FormattedDate(long second, String text) {
+			this.second = second;
+			this.text = text;
+		}
+	}
+
 	public int getImgWidth() {
 		return imgWidth;
 	}
@@ -183,4 +574,18 @@ public class Result {
 		return imgHeight;
 	}
 
+	/**
+	 * @return Uhrzeit/Datum der Objekt-Erkennung
+	 */
+	public Date getDate() {
+		return new Date(date);
+	}
+
+	/**
+	 * @return Uhrzeit/Datum der Objekt-Erkennung in Millisekunden seit 1970
+	 */
+	public long getTime() {
+		return date;
+	}
+
 }
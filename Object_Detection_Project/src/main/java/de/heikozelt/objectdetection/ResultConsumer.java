@@ -0,0 +1,22 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+
+/**
+ * Empfänger für die Ergebnisse der Objekt-Erkennung. Die Ergebnisse werden in
+ * der Reihenfolge der Bilddateien übergeben, sobald sie fertig sind. So müssen
+ * nicht alle Ergebnisse bis zum Ende im Speicher gehalten werden.
+ *
+ * @author Heiko Zelt
+ */
+@FunctionalInterface
+public interface ResultConsumer {
+
+	/**
+	 * Nimmt das Ergebnis für ein Bild entgegen.
+	 *
+	 * @param result erkannte Objekte und weitere Infos
+	 * @throws IOException z.B. wenn das Ergebnis nicht geschrieben werden kann
+	 */
+	void accept(Result result) throws IOException;
+}
@@ -0,0 +1,50 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Ein Empfänger für Ergebnisse, der sie in eine oder mehrere Dateien schreibt.
+ * Mit close() werden die Dateien abgeschlossen.
+ *
+ * @author Heiko Zelt
+ */
+public interface ResultExporter extends ResultConsumer, AutoCloseable {
+
+	/**
+	 * XML-Format (GMAF), siehe StreamingXmlExporter
+	 */
+	String FORMAT_XML = "xml";
+
+	/**
+	 * kompaktes Binärformat, siehe BinaryResultWriter
+	 */
+	String FORMAT_BINARY = "bin";
+
+	/**
+	 * Öffnet eine Ergebnisdatei im angegebenen Format.
+	 *
+	 * @param path   Ergebnisdatei
+	 * @param format FORMAT_XML oder FORMAT_BINARY
+	 * @return Exporter, der die Ergebnisse direkt schreibt
+	 * @throws IOException
+	 */
+	static ResultExporter open(Path path, String format) throws IOException {
+		switch (format) {
+		case FORMAT_XML:
+			return new StreamingXmlExporter(path);
+		case FORMAT_BINARY:
+			return new BinaryResultWriter(path);
+		default:
+			throw new IllegalArgumentException("unbekanntes Format: " + format);
+		}
+	}
+
+	/**
+	 * Schließt die Ausgabe ab, z.B. Ende des XML-Dokuments schreiben.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,343 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Führt die Ergebnisdateien mehrerer Teil-Läufe (siehe Shard) zu einer Datei
+ * zusammen. Die Bilder werden nach Dateinamen sortiert, das Ergebnis hängt
+ * also nicht von der Reihenfolge der Teil-Läufe oder des Dateisystems ab.
+ * Kommt ein Bild in mehreren Dateien vor, gilt die zuerst angegebene Datei.
+ * <p>
+ * XML-Dateien werden nicht neu serialisiert: Es wird nur die Lage jedes
+ * {@code <gmaf-data>}-Elements gemerkt, danach werden die Abschnitte in
+ * sortierter Reihenfolge unverändert kopiert. So bleibt der Speicherbedarf klein
+ * und die Zahlen werden nicht neu gerundet. Ein am Ende unvollständiges Element
+ * (abgebrochener Teil-Lauf) wird mit einer Warnung weggelassen. Dateien im
+ * Binärformat werden gelesen und neu geschrieben.
+ * <p>
+ * Liegen neben den Teil-Dateien Laufzeit-Messungen (*.metrics.json), werden
+ * sie zusammengefasst: Anzahl Bilder und Anzahl pro Stufe werden addiert, die
+ * Gesamtlaufzeit ist die des langsamsten Teils. Perzentile lassen sich aus den
+ * Teil-Werten nicht berechnen, es gibt deshalb nur Mittelwert und Maximum.
+ *
+ * @author Heiko Zelt
+ */
+public class ResultMerger {
+	private static Logger logger = LogManager.getLogger(ResultMerger.class);
+
+	private static final Pattern IMAGES = Pattern.compile("\"images\": (\\d+)");
+	private static final Pattern WALL = Pattern.compile("\"wall_ms\": (\\d+)");
+	private static final Pattern STAGE = Pattern
+			.compile("\"(\\w+)\": \\{\"count\": (\\d+), \"mean_ns\": (\\d+),[^}]*\"max_ns\": (\\d+)\\}");
+
+	/**
+	 * Lage eines {@code <gmaf-data>}-Elements in einer Teil-Datei
+	 */
+	private static class Entry {
+		String fileName;
+		int input;
+		long start;
+		long end;
+
+		Entry(int input, long start) {
+			this.input = input;
+			this.start = start;
+		}
+	}
+
+	private ResultMerger() {
+	}
+
+	/**
+	 * Führt die Teil-Dateien zusammen. Alle Teil-Dateien müssen dasselbe Format
+	 * haben, die Ausgabe bekommt ebenfalls dieses Format.
+	 *
+	 * @param inputs Ergebnisdateien der Teil-Läufe
+	 * @param output zusammengeführte Ergebnisdatei, wird überschrieben
+	 * @return Anzahl Bilder in der Ausgabe
+	 * @throws IOException
+	 */
+	public static int merge(List<Path> inputs, Path output) throws IOException {
+		if (inputs.isEmpty()) {
+			throw new IllegalArgumentException("keine Teil-Dateien angegeben");
+		}
+		boolean binary = isBinary(inputs.get(0));
+		for (Path input : inputs) {
+			if (Files.exists(output) && Files.isSameFile(input, output)) {
+				throw new IllegalArgumentException("Ausgabe darf keine Teil-Datei sein: " + output);
+			}
+			if (isBinary(input) != binary) {
+				throw new IOException("Teil-Dateien haben unterschiedliche Formate: " + input);
+			}
+		}
+		Path parent = output.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		int count = binary ? mergeBinary(inputs, output) : mergeXml(inputs, output);
+		logger.info(count + " Bilder aus " + inputs.size() + " Teil-Dateien in " + output + " zusammengeführt");
+		return count;
+	}
+
+	/**
+	 * @param path Ergebnisdatei
+	 * @return true, wenn sie mit der Kennung des Binärformats beginnt
+	 * @throws IOException
+	 */
+	static boolean isBinary(Path path) throws IOException {
+		byte[] magic = new byte[BinaryResultWriter.MAGIC.length];
+		try (InputStream in = Files.newInputStream(path)) {
+			int n = in.readNBytes(magic, 0, magic.length);
+			return n == magic.length && Arrays.equals(magic, BinaryResultWriter.MAGIC);
+		}
+	}
+
+	private static int mergeXml(List<Path> inputs, Path output) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int i = 0; i < inputs.size(); i++) {
+			index(inputs.get(i), i, entries);
+		}
+		// stabil sortiert: bei gleichen Namen steht die zuerst angegebene Datei vorne
+		entries.sort(Comparator.comparing(e -> e.fileName));
+		FileChannel[] channels = new FileChannel[inputs.size()];
+		try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (int i = 0; i < channels.length; i++) {
+				channels[i] = FileChannel.open(inputs.get(i), StandardOpenOption.READ);
+			}
+			write(out, StreamingXmlExporter.HEADER);
+			int count = 0;
+			String previous = null;
+			for (Entry e : entries) {
+				if (e.fileName.equals(previous)) {
+					logger.warn("Bild " + e.fileName + " kommt mehrfach vor, ignoriere " + inputs.get(e.input));
+					continue;
+				}
+				previous = e.fileName;
+				long position = e.start;
+				while (position < e.end) {
+					long n = channels[e.input].transferTo(position, e.end - position, out);
+					if (n <= 0) {
+						throw new IOException(inputs.get(e.input) + " wurde während des Zusammenführens gekürzt");
+					}
+					position += n;
+				}
+				count++;
+			}
+			write(out, StreamingXmlExporter.FOOTER);
+			return count;
+		} finally {
+			for (FileChannel channel : channels) {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+		}
+	}
+
+	private static void write(FileChannel out, String text) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * Merkt sich Dateiname, Anfang und Ende jedes {@code <gmaf-data>}-Elements.
+	 * Erwartet das zeilenweise Format von StreamingXmlExporter.
+	 */
+	private static void index(Path path, int input, List<Entry> entries) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+			ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+			long offset = 0;
+			Entry entry = null;
+			while (true) {
+				line.reset();
+				int c;
+				while ((c = in.read()) != -1) {
+					line.write(c);
+					if (c == '\n') {
+						break;
+					}
+				}
+				if (line.size() == 0) {
+					break;
+				}
+				long lineStart = offset;
+				offset += line.size();
+				String text = line.toString(StandardCharsets.UTF_8).trim();
+				if (text.equals("<gmaf-data>")) {
+					entry = new Entry(input, lineStart);
+				} else if (entry != null && text.startsWith("<file>") && text.endsWith("</file>")) {
+					entry.fileName = unescape(text.substring(6, text.length() - 7));
+				} else if (text.equals("</gmaf-data>")) {
+					if (entry == null || entry.fileName == null) {
+						throw new IOException("<gmaf-data> ohne <file> in " + path + " vor Byte " + offset);
+					}
+					entry.end = offset;
+					entries.add(entry);
+					entry = null;
+				}
+			}
+			if (entry != null) {
+				logger.warn("unvollständiges letztes Element in " + path + " wird weggelassen");
+			}
+		}
+	}
+
+	/**
+	 * @param text maskierter Text aus dem XML
+	 * @return Text ohne die Maskierung von Result.appendEscaped()
+	 */
+	static String unescape(String text) {
+		if (text.indexOf('&') < 0) {
+			return text;
+		}
+		return text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+				.replace("&amp;", "&");
+	}
+
+	private static int mergeBinary(List<Path> inputs, Path output) throws IOException {
+		List<Result> results = new ArrayList<Result>();
+		for (Path input : inputs) {
+			results.addAll(BinaryResultReader.readAll(input));
+		}
+		results.sort(Comparator.comparing(Result::getFilename));
+		int count = 0;
+		try (BinaryResultWriter writer = new BinaryResultWriter(output)) {
+			String previous = null;
+			for (Result r : results) {
+				if (r.getFilename().equals(previous)) {
+					logger.warn("Bild " + r.getFilename() + " kommt mehrfach vor, nur das erste wird übernommen");
+					continue;
+				}
+				previous = r.getFilename();
+				writer.accept(r);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Fasst die Laufzeit-Messungen der Teil-Läufe zusammen, soweit vorhanden.
+	 *
+	 * @param inputs Ergebnisdateien der Teil-Läufe
+	 * @return JSON-Dokument oder null, wenn es zu keiner Teil-Datei Messungen
+	 *         gibt
+	 * @throws IOException
+	 */
+	static String mergeMetrics(List<Path> inputs) throws IOException {
+		int shards = 0;
+		long images = 0;
+		long wallMs = 0;
+		long busyMs = 0;
+		// Stufe -> {count, Summe in ns, max in ns}
+		Map<String, long[]> stages = new LinkedHashMap<String, long[]>();
+		for (Path input : inputs) {
+			Path file = Paths.get(RunMetrics.filename(input.toString(), "json"));
+			if (!Files.exists(file)) {
+				logger.warn("keine Laufzeit-Messungen für " + input);
+				continue;
+			}
+			String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			shards++;
+			images += find(IMAGES, json, file);
+			long wall = find(WALL, json, file);
+			wallMs = Math.max(wallMs, wall);
+			busyMs += wall;
+			Matcher m = STAGE.matcher(json);
+			while (m.find()) {
+				long count = Long.parseLong(m.group(2));
+				long[] s = stages.computeIfAbsent(m.group(1), k -> new long[3]);
+				s[0] += count;
+				s[1] += count * Long.parseLong(m.group(3));
+				s[2] = Math.max(s[2], Long.parseLong(m.group(4)));
+			}
+		}
+		if (shards == 0) {
+			return null;
+		}
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"shards\": ").append(shards).append(",\n");
+		json.append("  \"images\": ").append(images).append(",\n");
+		json.append("  \"wall_ms\": ").append(wallMs).append(",\n");
+		json.append("  \"busy_ms\": ").append(busyMs).append(",\n");
+		json.append("  \"images_per_sec\": ")
+				.append(String.format(Locale.ROOT, "%.3f", wallMs == 0 ? 0.0 : images * 1000.0 / wallMs))
+				.append(",\n");
+		json.append("  \"stages\": {");
+		String separator = "\n";
+		for (Map.Entry<String, long[]> e : stages.entrySet()) {
+			long[] s = e.getValue();
+			json.append(separator).append("    \"").append(e.getKey()).append("\": {");
+			json.append("\"count\": ").append(s[0]);
+			json.append(", \"mean_ns\": ").append(s[0] == 0 ? 0 : Math.round((double) s[1] / s[0]));
+			json.append(", \"max_ns\": ").append(s[2]).append("}");
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+		return json.toString();
+	}
+
+	private static long find(Pattern pattern, String json, Path file) throws IOException {
+		Matcher m = pattern.matcher(json);
+		if (!m.find()) {
+			throw new IOException("ungültige Laufzeit-Messungen: " + file);
+		}
+		return Long.parseLong(m.group(1));
+	}
+
+	/**
+	 * Führt die Teil-Dateien zusammen und speichert die zusammengefassten
+	 * Laufzeit-Messungen neben der Ausgabe, z.B.
+	 * {@code java -cp ... de.heikozelt.objectdetection.ResultMerger export/result.xml export/result.shard*.xml}
+	 *
+	 * @param args zusammengeführte Ergebnisdatei, danach alle Teil-Dateien
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			logger.error("usage: java -cp ... de.heikozelt.objectdetection.ResultMerger <merged result>"
+					+ " <shard result> [<shard result> ...]");
+			System.exit(1);
+		}
+		List<Path> inputs = new ArrayList<Path>();
+		for (int i = 1; i < args.length; i++) {
+			inputs.add(Paths.get(args[i]));
+		}
+		try {
+			merge(inputs, Paths.get(args[0]));
+			String metrics = mergeMetrics(inputs);
+			if (metrics != null) {
+				logger.info(metrics);
+				Files.write(Paths.get(RunMetrics.filename(args[0], "json")), metrics.getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.error(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
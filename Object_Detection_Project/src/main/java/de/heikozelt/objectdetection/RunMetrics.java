@@ -0,0 +1,313 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Laufzeit-Messungen eines Laufs. Für jede Stufe der Verarbeitung (Lesen,
+ * Dekodieren, Objekt-Erkennung, Zeichnen der Bounding Boxes, Serialisieren)
+ * gibt es ein LatencyHistogram mit Nanosekunden-Auflösung. Am Ende werden
+ * Perzentile und Durchsatz protokolliert und als JSON bzw. CSV gespeichert.
+ * Zusätzlich werden Speicher und offene Dateien des Prozesses zu Beginn und am
+ * Ende des Laufs festgehalten (siehe ResourceUsage). Bei eingeschalteter
+ * Suche nach Duplikaten wird gezählt, wie viele Bilder ohne Objekt-Erkennung
+ * auskamen.
+ *
+ * @author Heiko Zelt
+ */
+public class RunMetrics {
+
+	public static final String READ = "read";
+	public static final String DECODE = "decode";
+	public static final String PREDICT = "predict";
+	public static final String RENDER = "render";
+	public static final String SERIALIZE = "serialize";
+
+	private static final String CSV_HEADER = "timestamp,images,wall_ms,images_per_sec,stage,count,mean_ns,p50_ns,p90_ns,p99_ns,max_ns";
+
+	private Map<String, LatencyHistogram> histograms = new LinkedHashMap<String, LatencyHistogram>();
+	private Map<String, Long> startup = new LinkedHashMap<String, Long>();
+	private LongAdder images = new LongAdder();
+	private LongAdder duplicates = new LongAdder();
+	private long startNanos;
+	private long endNanos;
+	private Instant timestamp;
+	private ResourceUsage resourcesAtStart;
+	private ResourceUsage resourcesAtEnd;
+
+	/**
+	 * legt die Histogramme für alle Stufen an
+	 */
+	public RunMetrics() {
+		for (String stage : new String[] { READ, DECODE, PREDICT, RENDER, SERIALIZE }) {
+			histograms.put(stage, new LatencyHistogram());
+		}
+		start();
+	}
+
+	/**
+	 * Beginn des Laufs, ab hier wird der Durchsatz berechnet.
+	 */
+	public void start() {
+		timestamp = Instant.now();
+		startNanos = System.nanoTime();
+		endNanos = 0;
+		resourcesAtStart = ResourceUsage.current();
+		resourcesAtEnd = null;
+	}
+
+	/**
+	 * Ende des Laufs.
+	 */
+	public void stop() {
+		endNanos = System.nanoTime();
+		resourcesAtEnd = ResourceUsage.current();
+	}
+
+	/**
+	 * @return Speicher und offene Dateien zu Beginn des Laufs
+	 */
+	public ResourceUsage getResourcesAtStart() {
+		return resourcesAtStart;
+	}
+
+	/**
+	 * @return Speicher und offene Dateien am Ende des Laufs, bis jetzt, falls
+	 *         stop() noch nicht aufgerufen wurde
+	 */
+	public ResourceUsage getResourcesAtEnd() {
+		return resourcesAtEnd == null ? ResourceUsage.current() : resourcesAtEnd;
+	}
+
+	/**
+	 * Trägt die Dauer einer Stufe ein.
+	 *
+	 * @param stage Name der Stufe, z.B. RunMetrics.PREDICT
+	 * @param nanos Dauer in Nanosekunden
+	 */
+	public void record(String stage, long nanos) {
+		histograms.get(stage).record(nanos);
+	}
+
+	/**
+	 * Trägt die Dauer einer Phase des Programmstarts ein, z.B. Laden des Modells.
+	 *
+	 * @param phase Name der Phase, z.B. "load-model"
+	 * @param nanos Dauer in Nanosekunden
+	 */
+	public synchronized void recordStartup(String phase, long nanos) {
+		startup.put(phase, nanos);
+	}
+
+	/**
+	 * @return Dauer der Phasen des Programmstarts in Nanosekunden, in der
+	 *         Reihenfolge der Phasen
+	 */
+	public synchronized Map<String, Long> getStartup() {
+		return new LinkedHashMap<String, Long>(startup);
+	}
+
+	/**
+	 * Zählt ein fertiges Bild (auch aus dem Cache).
+	 */
+	public void imageDone() {
+		images.increment();
+	}
+
+	/**
+	 * Zählt ein Bild, dessen Objekte von einem gleichen oder ähnlichen Bild
+	 * übernommen wurden, siehe DuplicateFinder.
+	 */
+	public void duplicateFound() {
+		duplicates.increment();
+	}
+
+	/**
+	 * @return Anzahl Bilder ohne Objekt-Erkennung, weil sie ein Duplikat waren
+	 */
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	/**
+	 * @return Anteil der Duplikate an allen analysierten Bildern (Duplikate und
+	 *         Objekt-Erkennungen), 0.0 bis 1.0
+	 */
+	public double getSkippedInferenceRatio() {
+		long skipped = getDuplicates();
+		long total = skipped + histograms.get(PREDICT).getCount();
+		return total == 0 ? 0.0 : (double) skipped / total;
+	}
+
+	/**
+	 * @param stage Name der Stufe
+	 * @return Histogramm der Stufe
+	 */
+	public LatencyHistogram getHistogram(String stage) {
+		return histograms.get(stage);
+	}
+
+	public long getImages() {
+		return images.sum();
+	}
+
+	/**
+	 * @return Laufzeit in Nanosekunden, bis jetzt, falls stop() noch nicht
+	 *         aufgerufen wurde
+	 */
+	public long getWallNanos() {
+		return (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+	}
+
+	/**
+	 * @return fertige Bilder pro Sekunde
+	 */
+	public double getThroughput() {
+		long wall = getWallNanos();
+		return wall <= 0 ? 0.0 : getImages() * 1e9 / wall;
+	}
+
+	/**
+	 * @return Zusammenfassung, eine Zeile für den Programmstart, eine Zeile pro
+	 *         Stufe mit Werten in Millisekunden, eine Zeile für Duplikate (falls
+	 *         welche gefunden wurden), eine Zeile für den Durchsatz und zwei
+	 *         Zeilen für die Ressourcen zu Beginn und am Ende
+	 */
+	public List<String> summary() {
+		List<String> lines = new ArrayList<String>();
+		Map<String, Long> phases = getStartup();
+		if (!phases.isEmpty()) {
+			StringBuilder line = new StringBuilder("startup");
+			long total = 0;
+			for (Map.Entry<String, Long> e : phases.entrySet()) {
+				line.append(String.format(Locale.ROOT, " %s=%.3f", e.getKey(), e.getValue() / 1e6));
+				total += e.getValue();
+			}
+			line.append(String.format(Locale.ROOT, " total=%.3f msec", total / 1e6));
+			lines.add(line.toString());
+		}
+		for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+			LatencyHistogram h = e.getValue();
+			if (h.getCount() == 0) {
+				continue;
+			}
+			lines.add(String.format(Locale.ROOT,
+					"stage %-9s count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f msec", e.getKey(),
+					h.getCount(), h.getMean() / 1e6, h.getValueAtPercentile(50) / 1e6,
+					h.getValueAtPercentile(90) / 1e6, h.getValueAtPercentile(99) / 1e6, h.getMax() / 1e6));
+		}
+		if (getDuplicates() > 0) {
+			lines.add(String.format(Locale.ROOT, "dedup %d of %d images without inference (%.1f %%)",
+					getDuplicates(), getDuplicates() + histograms.get(PREDICT).getCount(),
+					100 * getSkippedInferenceRatio()));
+		}
+		lines.add(String.format(Locale.ROOT, "throughput %d images in %.3f sec = %.2f images/sec", getImages(),
+				getWallNanos() / 1e9, getThroughput()));
+		lines.add("resources start " + resourcesAtStart);
+		lines.add("resources end   " + getResourcesAtEnd());
+		return lines;
+	}
+
+	/**
+	 * Schreibt alle Werte als JSON-Datei. Eine vorhandene Datei wird
+	 * überschrieben.
+	 *
+	 * @param file z.B. "export/result.metrics.json"
+	 * @throws IOException
+	 */
+	public void writeJson(Path file) throws IOException {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"timestamp\": \"").append(timestamp).append("\",\n");
+		json.append("  \"images\": ").append(getImages()).append(",\n");
+		json.append("  \"wall_ms\": ").append(getWallNanos() / 1_000_000).append(",\n");
+		json.append("  \"images_per_sec\": ").append(String.format(Locale.ROOT, "%.3f", getThroughput()))
+				.append(",\n");
+		json.append("  \"duplicates\": ").append(getDuplicates()).append(",\n");
+		json.append("  \"skipped_inference_ratio\": ")
+				.append(String.format(Locale.ROOT, "%.4f", getSkippedInferenceRatio())).append(",\n");
+		json.append("  \"startup_ns\": {");
+		String separator = "";
+		for (Map.Entry<String, Long> e : getStartup().entrySet()) {
+			json.append(separator).append("\"").append(e.getKey()).append("\": ").append(e.getValue());
+			separator = ", ";
+		}
+		json.append("},\n");
+		json.append("  \"resources\": {\"start\": ").append(resourcesAtStart.toJson()).append(",\n");
+		json.append("    \"end\": ").append(getResourcesAtEnd().toJson()).append("},\n");
+		json.append("  \"stages\": {");
+		separator = "\n";
+		for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+			LatencyHistogram h = e.getValue();
+			json.append(separator).append("    \"").append(e.getKey()).append("\": {");
+			json.append("\"count\": ").append(h.getCount());
+			json.append(", \"mean_ns\": ").append(Math.round(h.getMean()));
+			json.append(", \"p50_ns\": ").append(h.getValueAtPercentile(50));
+			json.append(", \"p90_ns\": ").append(h.getValueAtPercentile(90));
+			json.append(", \"p99_ns\": ").append(h.getValueAtPercentile(99));
+			json.append(", \"max_ns\": ").append(h.getMax()).append("}");
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+		Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Hängt eine Zeile pro Stufe an eine CSV-Datei an. So lassen sich mehrere
+	 * Läufe über die Zeit vergleichen. Ist die Datei neu, wird zuerst die
+	 * Kopfzeile geschrieben.
+	 *
+	 * @param file z.B. "export/result.metrics.csv"
+	 * @throws IOException
+	 */
+	public void appendCsv(Path file) throws IOException {
+		boolean isNew = !Files.exists(file) || Files.size(file) == 0;
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND)) {
+			if (isNew) {
+				out.write(CSV_HEADER + "\n");
+			}
+			String run = String.format(Locale.ROOT, "%s,%d,%d,%.3f", timestamp, getImages(),
+					getWallNanos() / 1_000_000, getThroughput());
+			for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+				LatencyHistogram h = e.getValue();
+				out.write(run + "," + e.getKey() + "," + h.getCount() + "," + Math.round(h.getMean()) + ","
+						+ h.getValueAtPercentile(50) + "," + h.getValueAtPercentile(90) + ","
+						+ h.getValueAtPercentile(99) + "," + h.getMax() + "\n");
+			}
+			// jede Phase des Programmstarts als eigene Zeile mit genau einem Wert
+			for (Map.Entry<String, Long> e : getStartup().entrySet()) {
+				long v = e.getValue();
+				out.write(run + ",startup." + e.getKey() + ",1," + v + "," + v + "," + v + "," + v + "," + v + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Leitet den Namen der Metrik-Datei vom Namen der Ergebnisdatei ab, z.B.
+	 * "export/result.xml" -&gt; "export/result.metrics.json". Platzhalter für
+	 * mehrere Thresholds werden entfernt.
+	 *
+	 * @param resultXmlFilename Name der Ergebnisdatei
+	 * @param extension         "json" oder "csv"
+	 * @return Name der Metrik-Datei
+	 */
+	public static String filename(String resultXmlFilename, String extension) {
+		String base = resultXmlFilename.replace("{i}", "").replace("{t}", "");
+		if (base.endsWith(".xml") || base.endsWith(".bin")) {
+			base = base.substring(0, base.length() - 4);
+		}
+		return base + ".metrics." + extension;
+	}
+}
@@ -0,0 +1,128 @@
+package de.heikozelt.objectdetection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Teil einer Bildersammlung für verteilte Läufe. Die Sammlung wird in N Teile
+ * zerlegt, jeder Prozess analysiert einen davon (--shard i/N). Welcher Teil
+ * ein Bild bekommt, hängt nur vom CRC32 des Dateinamens relativ zum
+ * "collection"-Verzeichnis ab, nicht von der Reihenfolge im Dateisystem oder vom
+ * Rechner. Jedes Bild landet so in genau einem Teil, auch wenn Bilder
+ * hinzukommen, und ein wiederholter Lauf eines Teils analysiert dieselben
+ * Bilder. Die Ergebnisse werden mit ResultMerger wieder zusammengeführt.
+ *
+ * @author Heiko Zelt
+ */
+public final class Shard {
+
+	private final int index;
+	private final int count;
+
+	/**
+	 * @param index Nummer des Teils, 1 bis count
+	 * @param count Anzahl Teile
+	 */
+	public Shard(int index, int count) {
+		if (count < 1 || index < 1 || index > count) {
+			throw new IllegalArgumentException("Shard muss zwischen 1/" + count + " und " + count + "/" + count
+					+ " liegen: " + index + "/" + count);
+		}
+		this.index = index;
+		this.count = count;
+	}
+
+	/**
+	 * @param spec z.B. "2/4" für den zweiten von vier Teilen
+	 * @return Teil
+	 */
+	public static Shard parse(String spec) {
+		int slash = spec.indexOf('/');
+		if (slash < 0) {
+			throw new IllegalArgumentException("Shard muss die Form i/N haben: " + spec);
+		}
+		try {
+			return new Shard(Integer.parseInt(spec.substring(0, slash).trim()),
+					Integer.parseInt(spec.substring(slash + 1).trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Shard muss die Form i/N haben: " + spec);
+		}
+	}
+
+	/**
+	 * @return Nummer des Teils, 1 bis getCount()
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return Anzahl Teile
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Berechnet den Teil eines Bildes. Der Backslash unter Windows wird wie ein
+	 * Schrägstrich behandelt, damit alle Rechner dieselbe Aufteilung bekommen.
+	 *
+	 * @param fileName Dateiname relativ zum "collection"-Verzeichnis
+	 * @param count    Anzahl Teile
+	 * @return Nummer des Teils, 1 bis count
+	 */
+	static int of(String fileName, int count) {
+		CRC32 crc = new CRC32();
+		crc.update(fileName.replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+		return (int) (crc.getValue() % count) + 1;
+	}
+
+	/**
+	 * @param fileName Dateiname relativ zum "collection"-Verzeichnis
+	 * @return true, wenn das Bild zu diesem Teil gehört
+	 */
+	public boolean contains(String fileName) {
+		return count == 1 || of(fileName, count) == index;
+	}
+
+	/**
+	 * @param names alle Dateinamen
+	 * @return nur die Dateinamen dieses Teils, in derselben Reihenfolge
+	 */
+	public Iterator<String> filter(Iterator<String> names) {
+		if (count == 1) {
+			return names;
+		}
+		return new Iterator<String>() {
+			private String next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && names.hasNext()) {
+					String name = names.next();
+					if (contains(name)) {
+						next = name;
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				String name = next;
+				next = null;
+				return name;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return index + "/" + count;
+	}
+}
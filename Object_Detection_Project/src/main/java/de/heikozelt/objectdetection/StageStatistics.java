@@ -0,0 +1,145 @@
+package de.heikozelt.objectdetection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Zähler für eine Stufe der DetectionPipeline. Es wird gezählt, wie viele
+ * Elemente verarbeitet wurden, wie lange die Threads der Stufe beschäftigt
+ * waren und wie voll die Eingangs-Queue der Stufe war. Eine Stufe mit hoher
+ * Auslastung und voller Eingangs-Queue ist der Flaschenhals.
+ *
+ * @author Heiko Zelt
+ */
+public class StageStatistics {
+
+	/**
+	 * Name der Stufe, z.B. "decode"
+	 */
+	private String name;
+
+	/**
+	 * Anzahl Threads der Stufe
+	 */
+	private int threads;
+
+	/**
+	 * Anzahl verarbeiteter Elemente
+	 */
+	private LongAdder items = new LongAdder();
+
+	/**
+	 * Summe der Bearbeitungszeiten in Nanosekunden
+	 */
+	private LongAdder busyNanos = new LongAdder();
+
+	/**
+	 * Summe der beobachteten Queue-Längen (für Durchschnitt)
+	 */
+	private LongAdder queueDepthSum = new LongAdder();
+
+	/**
+	 * Anzahl Beobachtungen der Queue-Länge
+	 */
+	private LongAdder queueDepthSamples = new LongAdder();
+
+	/**
+	 * maximale beobachtete Queue-Länge
+	 */
+	private LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * aktuelle Queue-Länge (zuletzt beobachtet)
+	 */
+	private AtomicLong queueDepth = new AtomicLong();
+
+	/**
+	 * einfacher Konstruktor
+	 *
+	 * @param name    Name der Stufe
+	 * @param threads Anzahl Threads der Stufe
+	 */
+	public StageStatistics(String name, int threads) {
+		this.name = name;
+		this.threads = threads;
+	}
+
+	/**
+	 * Merkt sich die Länge der Eingangs-Queue. Wird bei jeder Entnahme aufgerufen.
+	 *
+	 * @param depth aktuelle Anzahl Elemente in der Queue
+	 */
+	public void sampleQueueDepth(int depth) {
+		queueDepth.set(depth);
+		queueDepthSum.add(depth);
+		queueDepthSamples.increment();
+		maxQueueDepth.accumulate(depth);
+	}
+
+	/**
+	 * Zählt ein verarbeitetes Element.
+	 *
+	 * @param nanos Bearbeitungszeit in Nanosekunden
+	 */
+	public void recordBusy(long nanos) {
+		items.increment();
+		busyNanos.add(nanos);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public long getItems() {
+		return items.sum();
+	}
+
+	public long getBusyNanos() {
+		return busyNanos.sum();
+	}
+
+	public long getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	public long getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * @return durchschnittliche Länge der Eingangs-Queue
+	 */
+	public double getAverageQueueDepth() {
+		long samples = queueDepthSamples.sum();
+		return samples == 0 ? 0.0 : (double) queueDepthSum.sum() / samples;
+	}
+
+	/**
+	 * Berechnet die Auslastung der Stufe.
+	 *
+	 * @param wallNanos Gesamtlaufzeit der Pipeline in Nanosekunden
+	 * @return Anteil der Zeit, in der die Threads der Stufe beschäftigt waren (0.0
+	 *         bis 1.0)
+	 */
+	public double getUtilization(long wallNanos) {
+		if (wallNanos <= 0) {
+			return 0.0;
+		}
+		return (double) getBusyNanos() / ((double) wallNanos * threads);
+	}
+
+	/**
+	 * @param wallNanos Gesamtlaufzeit der Pipeline in Nanosekunden
+	 * @return Zusammenfassung als eine Zeile für das Log
+	 */
+	public String summary(long wallNanos) {
+		return String.format("stage %-7s threads=%d items=%d busy=%d msec utilization=%.0f%% queue avg=%.1f max=%d",
+				name, threads, getItems(), getBusyNanos() / 1_000_000, getUtilization(wallNanos) * 100,
+				getAverageQueueDepth(), getMaxQueueDepth());
+	}
+}
@@ -0,0 +1,151 @@
+package de.heikozelt.objectdetection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Schreibt die Ergebnisse der Objekt-Erkennung direkt in eine XML-Datei,
+ * sobald sie fertig sind. Kopf und Ende des {@code <gmaf-collection>}-Elements
+ * werden genau einmal geschrieben. Im Gegensatz zu BatchJob.resultsAsXml() wird
+ * das Dokument nie als Ganzes im Speicher gehalten.
+ * <p>
+ * Jedes Ergebnis wird zuerst in einen Puffer formatiert, der für alle
+ * Ergebnisse wiederverwendet wird, und dann als char-Array geschrieben. So
+ * entstehen pro Ergebnis keine Strings. Ein Exporter darf nur von einem Thread
+ * gleichzeitig verwendet werden.
+ *
+ * @author Heiko Zelt
+ */
+public class StreamingXmlExporter implements ResultExporter {
+	private static Logger logger = LogManager.getLogger(StreamingXmlExporter.class);
+
+	/**
+	 * Anfang des Dokuments
+	 */
+	public static final String HEADER = "<gmaf-collection xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:noNamespaceSchemaLocation=\"gmaf_schema.xsd\">\n";
+
+	/**
+	 * Ende des Dokuments
+	 */
+	public static final String FOOTER = "</gmaf-collection>\n";
+
+	private Writer out;
+
+	/**
+	 * Puffer für das XML eines Ergebnisses
+	 */
+	private StringBuilder buffer = new StringBuilder(4096);
+	private char[] chars = new char[4096];
+
+	/**
+	 * Anzahl geschriebener Ergebnisse
+	 */
+	private long count = 0;
+
+	/**
+	 * Öffnet die Datei (UTF-8, gepuffert) und schreibt den Kopf des Dokuments.
+	 *
+	 * @param path Ergebnisdatei, z.B. export/result.xml
+	 * @throws IOException
+	 */
+	public StreamingXmlExporter(Path path) throws IOException {
+		this(new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8)));
+		logger.info("exportiere Ergebnisse im XML-Format in Datei " + path);
+	}
+
+	/**
+	 * Schreibt in einen beliebigen Writer, z.B. zu Testzwecken. Der Writer wird mit
+	 * close() geschlossen.
+	 *
+	 * @param out Ziel
+	 * @throws IOException
+	 */
+	public StreamingXmlExporter(Writer out) throws IOException {
+		this.out = out;
+		out.write(HEADER);
+	}
+
+	/**
+	 * Schreibt das {@code <gmaf-data>}-Element eines Bildes.
+	 *
+	 * @param result erkannte Objekte und weitere Infos
+	 * @throws IOException
+	 */
+	@Override
+	public void accept(Result result) throws IOException {
+		buffer.setLength(0);
+		result.appendXml(buffer);
+		int length = buffer.length();
+		if (length > chars.length) {
+			chars = new char[Math.max(length, 2 * chars.length)];
+		}
+		buffer.getChars(0, length, chars, 0);
+		out.write(chars, 0, length);
+		count++;
+	}
+
+	/**
+	 * @return Anzahl bisher geschriebener Ergebnisse
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Schreibt einen XML-Kommentar, z.B. für ein übersprungenes Bild.
+	 *
+	 * @param text Inhalt des Kommentars
+	 * @throws IOException
+	 */
+	public void comment(String text) throws IOException {
+		// "--" ist in XML-Kommentaren nicht erlaubt
+		out.write("<!-- " + text.replace("--", "- -") + " -->\n");
+	}
+
+	/**
+	 * Beendet das Dokument mit einer Fehlermarke statt mit dem Ende-Tag und
+	 * schließt die Datei. Ein Empfänger, der den Status nicht mehr erfährt, z.B.
+	 * weil der HTTP-Status schon gesendet ist, erkennt so das unvollständige
+	 * Ergebnis. Ein anschließendes close() schreibt nichts mehr.
+	 *
+	 * @param message Ursache des Abbruchs
+	 * @throws IOException
+	 */
+	public void abort(String message) throws IOException {
+		if (out == null) {
+			return;
+		}
+		try {
+			comment("ERROR: " + message);
+		} finally {
+			out.close();
+			out = null;
+		}
+		logger.debug("aborted after {} results", count);
+	}
+
+	/**
+	 * Schreibt das Ende des Dokuments und schließt die Datei.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.write(FOOTER);
+		} finally {
+			out.close();
+			out = null;
+		}
+		logger.debug("{} results exported", count);
+	}
+}
@@ -0,0 +1,175 @@
+package de.heikozelt.objectdetection;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Joints;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+
+/**
+ * Ein Bild, das mit verringerter Auflösung dekodiert wurde. Der Detektor
+ * verkleinert jedes Bild ohnehin auf seine kleine Eingabegröße. Bei großen
+ * Fotos ist es deshalb schneller und spart Speicher, mit ImageIO nur jedes
+ * n-te Pixel zu dekodieren (Subsampling), statt das ganze Bild zu dekodieren.
+ * <p>
+ * Alle Methoden arbeiten auf dem verkleinerten Bild. Zusätzlich merkt sich das
+ * Bild die Größe des Originals. Da die Bounding Boxes relativ zur Bildgröße
+ * (0.0 bis 1.0) angegeben werden, passen sie unverändert zum Original. Mit der
+ * Originalgröße im Result stimmen die Pixel-Angaben in der XML-Datei.
+ *
+ * @author Heiko Zelt
+ */
+public class SubsampledImage implements Image {
+	private static Logger logger = LogManager.getLogger(SubsampledImage.class);
+
+	private Image image;
+	private int originalWidth;
+	private int originalHeight;
+
+	/**
+	 * @param image          verkleinertes Bild
+	 * @param originalWidth  Breite des Originals in Pixeln
+	 * @param originalHeight Höhe des Originals in Pixeln
+	 */
+	public SubsampledImage(Image image, int originalWidth, int originalHeight) {
+		this.image = image;
+		this.originalWidth = originalWidth;
+		this.originalHeight = originalHeight;
+	}
+
+	/**
+	 * Dekodiert ein Bild so, dass die kürzere Kante noch mindestens minEdge Pixel
+	 * hat. Kleinere Bilder und Formate ohne passenden ImageReader werden ganz
+	 * dekodiert.
+	 *
+	 * @param bytes   Inhalt der Bilddatei
+	 * @param minEdge minimale Länge der kürzeren Kante nach dem Dekodieren
+	 * @return SubsampledImage oder, falls nicht verkleinert, ein normales Image
+	 * @throws IOException wenn die Datei kein lesbares Bild ist
+	 */
+	public static Image decode(byte[] bytes, int minEdge) throws IOException {
+		return decode(ByteBuffer.wrap(bytes), minEdge);
+	}
+
+	/**
+	 * Wie decode(byte[], int), liest aber direkt aus einem ByteBuffer, z.B. von
+	 * ImageLoader.
+	 *
+	 * @param bytes   Inhalt der Bilddatei zwischen position und limit
+	 * @param minEdge minimale Länge der kürzeren Kante nach dem Dekodieren
+	 * @return SubsampledImage oder, falls nicht verkleinert, ein normales Image
+	 * @throws IOException wenn die Datei kein lesbares Bild ist
+	 */
+	public static Image decode(ByteBuffer bytes, int minEdge) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(new ByteBufferInputStream(bytes))) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (readers.hasNext()) {
+				ImageReader reader = readers.next();
+				try {
+					reader.setInput(in, true, true);
+					int width = reader.getWidth(0);
+					int height = reader.getHeight(0);
+					int factor = subsampling(width, height, minEdge);
+					if (factor > 1) {
+						ImageReadParam param = reader.getDefaultReadParam();
+						param.setSourceSubsampling(factor, factor, 0, 0);
+						BufferedImage img = reader.read(0, param);
+						logger.debug("decoded {}x{} with subsampling {} to {}x{}", width, height, factor,
+								img.getWidth(), img.getHeight());
+						return new SubsampledImage(ImageFactory.getInstance().fromImage(img), width, height);
+					}
+				} finally {
+					reader.dispose();
+				}
+			}
+		}
+		return ImageFactory.getInstance().fromInputStream(new ByteBufferInputStream(bytes));
+	}
+
+	/**
+	 * @return größter Faktor, bei dem die kürzere Kante noch mindestens minEdge
+	 *         Pixel lang ist, 1 = nicht verkleinern
+	 */
+	static int subsampling(int width, int height, int minEdge) {
+		if (minEdge <= 0) {
+			return 1;
+		}
+		return Math.max(1, Math.min(width, height) / minEdge);
+	}
+
+	/**
+	 * @param img beliebiges Bild
+	 * @return Breite des Originals, bei normalen Bildern die Breite des Bildes
+	 */
+	public static int originalWidth(Image img) {
+		return img instanceof SubsampledImage ? ((SubsampledImage) img).originalWidth : img.getWidth();
+	}
+
+	/**
+	 * @param img beliebiges Bild
+	 * @return Höhe des Originals, bei normalen Bildern die Höhe des Bildes
+	 */
+	public static int originalHeight(Image img) {
+		return img instanceof SubsampledImage ? ((SubsampledImage) img).originalHeight : img.getHeight();
+	}
+
+	@Override
+	public int getWidth() {
+		return image.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return image.getHeight();
+	}
+
+	@Override
+	public Object getWrappedImage() {
+		return image.getWrappedImage();
+	}
+
+	@Override
+	public Image getSubimage(int x, int y, int w, int h) {
+		return image.getSubimage(x, y, w, h);
+	}
+
+	@Override
+	public Image duplicate(Type type) {
+		return image.duplicate(type);
+	}
+
+	@Override
+	public NDArray toNDArray(NDManager manager, Flag flag) {
+		return image.toNDArray(manager, flag);
+	}
+
+	@Override
+	public void save(OutputStream os, String type) throws IOException {
+		image.save(os, type);
+	}
+
+	@Override
+	public void drawBoundingBoxes(DetectedObjects detections) {
+		image.drawBoundingBoxes(detections);
+	}
+
+	@Override
+	public void drawJoints(Joints joints) {
+		image.drawJoints(joints);
+	}
+}
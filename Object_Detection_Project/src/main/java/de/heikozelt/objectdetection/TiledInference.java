@@ -0,0 +1,221 @@
+package de.heikozelt.objectdetection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.DetectedObjects.DetectedObject;
+import ai.djl.modality.cv.output.Rectangle;
+import ai.djl.translate.TranslateException;
+
+/**
+ * Objekt-Erkennung in Kacheln für sehr große Bilder. Der Translator verkleinert
+ * jedes Bild auf die kleine Eingabegröße des Modells, bei z.B. 8000 x 6000
+ * Pixeln verschwinden dabei kleine Objekte. Deshalb wird das Bild in sich
+ * überlappende, quadratische Kacheln geteilt, die jeweils einzeln verkleinert
+ * werden. Zusätzlich wird das ganze Bild analysiert, damit auch große Objekte
+ * gefunden werden, die über mehrere Kacheln reichen.
+ * <p>
+ * Die Kacheln werden gemeinsam mit batchPredict() analysiert, die Engine
+ * verarbeitet die Kacheln eines Batches parallel. Damit der Speicher reicht,
+ * gehen höchstens so viele Kacheln in einen Batch, wie ins Speicherbudget
+ * passen. Gerechnet wird vorsichtig mit 4 Bytes pro Farbwert und Pixel einer
+ * Kachel. Reicht ein Batch nicht, laufen die Batches nacheinander im
+ * aufrufenden Thread, damit das Budget eingehalten wird.
+ * <p>
+ * Die Bounding Boxes der Kacheln werden von Koordinaten relativ zur Kachel in
+ * Koordinaten relativ zum ganzen Bild umgerechnet. Objekte im Überlappungsbereich
+ * werden in beiden Kacheln gefunden, ebenso im ganzen Bild. Solche doppelten
+ * Objekte derselben Klasse werden mit Non-Maximum Suppression zusammengeführt,
+ * es bleibt das wahrscheinlichste.
+ *
+ * @author Heiko Zelt
+ */
+public class TiledInference {
+	private static Logger logger = LogManager.getLogger(TiledInference.class);
+
+	/**
+	 * Objekte derselben Klasse, die sich stärker überlappen, sind dasselbe Objekt
+	 */
+	static final float MERGE_IOU = 0.5f;
+
+	private final int tileSize;
+	private final int overlap;
+	private final int tilesPerBatch;
+
+	/**
+	 * @param tileSize       Kantenlänge der Kacheln in Pixeln
+	 * @param overlap        Überlappung benachbarter Kacheln in Pixeln, kleiner
+	 *                       als tileSize / 2
+	 * @param memoryBudgetMb Speicher für die Kacheln eines Batches in MB
+	 */
+	public TiledInference(int tileSize, int overlap, int memoryBudgetMb) {
+		this.tileSize = tileSize;
+		this.overlap = overlap;
+		long bytesPerTile = 4L * 3 * tileSize * tileSize;
+		tilesPerBatch = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudgetMb * 1048576L / bytesPerTile));
+	}
+
+	/**
+	 * @return Anzahl Kacheln, die höchstens gemeinsam analysiert werden
+	 */
+	public int getTilesPerBatch() {
+		return tilesPerBatch;
+	}
+
+	/**
+	 * @param img dekodiertes Bild
+	 * @return true, wenn das Bild größer als eine Kachel ist
+	 */
+	public boolean applies(Image img) {
+		return img.getWidth() > tileSize || img.getHeight() > tileSize;
+	}
+
+	/**
+	 * Verteilt die Kacheln gleichmäßig über eine Kante. Die erste Kachel beginnt
+	 * am Anfang, die letzte endet genau am Ende, die Überlappung ist mindestens
+	 * overlap.
+	 *
+	 * @param length  Länge der Kante in Pixeln
+	 * @param tile    Kantenlänge der Kacheln
+	 * @param overlap minimale Überlappung
+	 * @return Anfang jeder Kachel
+	 */
+	static int[] positions(int length, int tile, int overlap) {
+		if (length <= tile) {
+			return new int[] { 0 };
+		}
+		int stride = tile - overlap;
+		int n = (length - tile + stride - 1) / stride + 1;
+		int[] starts = new int[n];
+		for (int i = 0; i < n; i++) {
+			starts[i] = (int) ((long) (length - tile) * i / (n - 1));
+		}
+		return starts;
+	}
+
+	/**
+	 * @param width  Bildbreite in Pixeln
+	 * @param height Bildhöhe in Pixeln
+	 * @return Kacheln als x, y, Breite, Höhe in Pixeln, das ganze Bild zuletzt
+	 */
+	List<int[]> tiles(int width, int height) {
+		List<int[]> tiles = new ArrayList<int[]>();
+		int w = Math.min(tileSize, width);
+		int h = Math.min(tileSize, height);
+		for (int y : positions(height, tileSize, overlap)) {
+			for (int x : positions(width, tileSize, overlap)) {
+				tiles.add(new int[] { x, y, w, h });
+			}
+		}
+		tiles.add(new int[] { 0, 0, width, height });
+		return tiles;
+	}
+
+	/**
+	 * Analysiert alle Kacheln eines Bildes und führt die Objekte zusammen.
+	 *
+	 * @param img       dekodiertes Bild
+	 * @param predictor Predictor, der nur vom aufrufenden Thread genutzt wird
+	 * @return Objekte mit Bounding Boxes relativ zum ganzen Bild
+	 * @throws TranslateException
+	 */
+	public DetectedObjects predict(Image img, Predictor<Image, DetectedObjects> predictor)
+			throws TranslateException {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		List<int[]> tiles = tiles(width, height);
+		logger.debug("{} Kacheln für ein Bild mit {}x{} Pixeln", tiles.size(), width, height);
+		List<String> classNames = new ArrayList<String>();
+		List<Double> probabilities = new ArrayList<Double>();
+		List<float[]> boxes = new ArrayList<float[]>();
+		for (int from = 0; from < tiles.size(); from += tilesPerBatch) {
+			List<int[]> batch = tiles.subList(from, Math.min(tiles.size(), from + tilesPerBatch));
+			List<Image> imgs = new ArrayList<Image>(batch.size());
+			for (int[] t : batch) {
+				imgs.add(t[2] == width && t[3] == height ? img : img.getSubimage(t[0], t[1], t[2], t[3]));
+			}
+			List<DetectedObjects> detected;
+			if (imgs.size() == 1) {
+				detected = Collections.singletonList(predictor.predict(imgs.get(0)));
+			} else {
+				detected = predictor.batchPredict(imgs);
+			}
+			for (int i = 0; i < batch.size(); i++) {
+				int[] t = batch.get(i);
+				DetectedObjects objects = detected.get(i);
+				for (int j = 0; j < objects.getNumberOfObjects(); j++) {
+					DetectedObject obj = objects.item(j);
+					Rectangle r = obj.getBoundingBox().getBounds();
+					classNames.add(obj.getClassName());
+					probabilities.add(obj.getProbability());
+					boxes.add(new float[] { (float) ((t[0] + r.getX() * t[2]) / width),
+							(float) ((t[1] + r.getY() * t[3]) / height), (float) (r.getWidth() * t[2] / width),
+							(float) (r.getHeight() * t[3] / height) });
+				}
+			}
+		}
+		return merge(classNames, probabilities, boxes);
+	}
+
+	/**
+	 * Non-Maximum Suppression pro Klasse: von Objekten derselben Klasse, die sich
+	 * stärker als MERGE_IOU überlappen, bleibt das wahrscheinlichste. Die übrigen
+	 * Objekte sind nach Wahrscheinlichkeit absteigend sortiert.
+	 *
+	 * @param classNames    Klassennamen aller Kacheln
+	 * @param probabilities Wahrscheinlichkeiten
+	 * @param boxes         x, y, Breite, Höhe relativ zum ganzen Bild
+	 * @return zusammengeführte Objekte
+	 */
+	static DetectedObjects merge(List<String> classNames, List<Double> probabilities, List<float[]> boxes) {
+		int n = classNames.size();
+		List<Integer> order = new ArrayList<Integer>(n);
+		for (int i = 0; i < n; i++) {
+			order.add(i);
+		}
+		order.sort((a, b) -> Double.compare(probabilities.get(b), probabilities.get(a)));
+		List<Integer> kept = new ArrayList<Integer>();
+		for (int i : order) {
+			float[] bi = boxes.get(i);
+			boolean duplicate = false;
+			for (int k : kept) {
+				float[] bk = boxes.get(k);
+				if (classNames.get(k).equals(classNames.get(i))
+						&& DetectionFilter.iou(bk[0], bk[1], bk[2], bk[3], bi[0], bi[1], bi[2], bi[3]) > MERGE_IOU) {
+					duplicate = true;
+					break;
+				}
+			}
+			if (!duplicate) {
+				kept.add(i);
+			}
+		}
+		List<String> names = new ArrayList<String>(kept.size());
+		List<Double> probs = new ArrayList<Double>(kept.size());
+		List<BoundingBox> rects = new ArrayList<BoundingBox>(kept.size());
+		for (int k : kept) {
+			float[] b = boxes.get(k);
+			names.add(classNames.get(k));
+			probs.add(probabilities.get(k));
+			rects.add(new Rectangle(b[0], b[1], b[2], b[3]));
+		}
+		return new DetectedObjects(names, probs, rects);
+	}
+
+	/**
+	 * @return z.B. "1024+128" (Kantenlänge + Überlappung), für den Fingerabdruck
+	 *         des Caches
+	 */
+	@Override
+	public String toString() {
+		return tileSize + "+" + overlap;
+	}
+}
@@ -0,0 +1,201 @@
+package de.heikozelt.objectdetection;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Die schnellste Einstellung, die der AutoTuner für eine Engine auf einem
+ * Rechner gefunden hat. Sie wird als Properties-Datei gespeichert, damit
+ * spätere Läufe sie ohne erneute Kalibrierung übernehmen können.
+ * <p>
+ * Die Threads der Engine werden über System-Properties eingestellt, die DJL
+ * nur beim Start der Engine liest. Deshalb muss applyThreadProperties() vor
+ * dem Laden des Modells aufgerufen werden.
+ *
+ * @author Heiko Zelt
+ */
+public class TuningProfile {
+	private static Logger logger = LogManager.getLogger(TuningProfile.class);
+
+	/**
+	 * Threads, die PyTorch innerhalb einer Operation nutzt (intra-op)
+	 */
+	public static final String INTRA_OP_PROPERTY = "ai.djl.pytorch.num_threads";
+
+	/**
+	 * Threads, auf die PyTorch unabhängige Operationen verteilt (inter-op)
+	 */
+	public static final String INTER_OP_PROPERTY = "ai.djl.pytorch.num_interop_threads";
+
+	private final String engine;
+	private final int cores;
+	private final int workers;
+	private final int batchSize;
+	private final int intraOpThreads;
+	private final int interOpThreads;
+	private final double imagesPerSec;
+
+	/**
+	 * @param engine         Name der Engine, z.B. "PyTorch"
+	 * @param cores          Anzahl Prozessorkerne des Rechners
+	 * @param workers        Anzahl paralleler Worker
+	 * @param batchSize      Anzahl Bilder pro batchPredict()-Aufruf
+	 * @param intraOpThreads intra-op Threads der Engine, 0 = Standard der Engine
+	 * @param interOpThreads inter-op Threads der Engine, 0 = Standard der Engine
+	 * @param imagesPerSec   gemessener Durchsatz
+	 */
+	public TuningProfile(String engine, int cores, int workers, int batchSize, int intraOpThreads,
+			int interOpThreads, double imagesPerSec) {
+		if (workers < 1 || batchSize < 1 || intraOpThreads < 0 || interOpThreads < 0) {
+			throw new IllegalArgumentException("Ungültiges Profil: " + workers + " Worker, Batch " + batchSize
+					+ ", Threads " + intraOpThreads + "/" + interOpThreads);
+		}
+		this.engine = engine;
+		this.cores = cores;
+		this.workers = workers;
+		this.batchSize = batchSize;
+		this.intraOpThreads = intraOpThreads;
+		this.interOpThreads = interOpThreads;
+		this.imagesPerSec = imagesPerSec;
+	}
+
+	/**
+	 * @return Name der Engine
+	 */
+	public String getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return Anzahl Prozessorkerne bei der Kalibrierung
+	 */
+	public int getCores() {
+		return cores;
+	}
+
+	/**
+	 * @return Anzahl paralleler Worker
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return Anzahl Bilder pro batchPredict()-Aufruf
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return intra-op Threads, 0 = Standard der Engine
+	 */
+	public int getIntraOpThreads() {
+		return intraOpThreads;
+	}
+
+	/**
+	 * @return inter-op Threads, 0 = Standard der Engine
+	 */
+	public int getInterOpThreads() {
+		return interOpThreads;
+	}
+
+	/**
+	 * @return gemessener Durchsatz in Bildern pro Sekunde
+	 */
+	public double getImagesPerSec() {
+		return imagesPerSec;
+	}
+
+	/**
+	 * Stellt die Threads der Engine für den nächsten Start der Engine ein. Mit -D
+	 * auf der Kommandozeile gesetzte Werte haben Vorrang.
+	 */
+	public void applyThreadProperties() {
+		if (intraOpThreads > 0 && System.getProperty(INTRA_OP_PROPERTY) == null) {
+			System.setProperty(INTRA_OP_PROPERTY, String.valueOf(intraOpThreads));
+		}
+		if (interOpThreads > 0 && System.getProperty(INTER_OP_PROPERTY) == null) {
+			System.setProperty(INTER_OP_PROPERTY, String.valueOf(interOpThreads));
+		}
+	}
+
+	/**
+	 * @param file Properties-Datei
+	 * @throws IOException
+	 */
+	public void save(Path file) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("engine", engine);
+		props.setProperty("cores", String.valueOf(cores));
+		props.setProperty("workers", String.valueOf(workers));
+		props.setProperty("batch_size", String.valueOf(batchSize));
+		props.setProperty("intra_op_threads", String.valueOf(intraOpThreads));
+		props.setProperty("inter_op_threads", String.valueOf(interOpThreads));
+		props.setProperty("images_per_sec", String.format(Locale.ROOT, "%.2f", imagesPerSec));
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			props.store(out, "object detection auto-tune profile");
+		}
+		logger.info("Profil gespeichert in " + file + ": " + this);
+	}
+
+	/**
+	 * @param file Properties-Datei, geschrieben von save()
+	 * @return gespeichertes Profil
+	 * @throws IOException Datei nicht lesbar oder unvollständig
+	 */
+	public static TuningProfile load(Path file) throws IOException {
+		Properties props = new Properties();
+		try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			props.load(in);
+		}
+		try {
+			return new TuningProfile(required(props, "engine"), Integer.parseInt(required(props, "cores")),
+					Integer.parseInt(required(props, "workers")), Integer.parseInt(required(props, "batch_size")),
+					Integer.parseInt(props.getProperty("intra_op_threads", "0")),
+					Integer.parseInt(props.getProperty("inter_op_threads", "0")),
+					Double.parseDouble(props.getProperty("images_per_sec", "0")));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Ungültiges Profil " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static String required(Properties props, String key) {
+		String value = props.getProperty(key);
+		if (value == null) {
+			throw new IllegalArgumentException("Eintrag fehlt: " + key);
+		}
+		return value;
+	}
+
+	/**
+	 * @return z.B. "PyTorch: 4 Worker, Batch 8, Threads 2/1, 12.5 Bilder/s"
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%s: %d Worker, Batch %d, Threads %s/%s, %.1f Bilder/s", engine, workers,
+				batchSize, threads(intraOpThreads), threads(interOpThreads), imagesPerSec);
+	}
+
+	/**
+	 * @param n Anzahl Threads
+	 * @return n oder "auto" für den Standard der Engine
+	 */
+	static String threads(int n) {
+		return n == 0 ? "auto" : String.valueOf(n);
+	}
+}
@@ -0,0 +1,130 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.repository.zoo.ZooModel;
+
+/**
+ * JUnit-Tests für Klasse AutoTuner
+ * @author Heiko Zelt
+ */
+@ExtendWith(MockitoExtension.class)
+public class AutoTunerTest {
+
+	@Mock
+	ZooModel<Image, DetectedObjects> modelMock;
+
+	@TempDir
+	Path tempDir;
+
+	private static DetectedObjects none() {
+		return new DetectedObjects(new ArrayList<String>(), new ArrayList<Double>(), new ArrayList<BoundingBox>());
+	}
+
+	/**
+	 * Predictor, der für jeden Aufruf 40 ms braucht, egal wie groß der Batch ist.
+	 * Je nach Batch-Größe wird nur predict() oder nur batchPredict() aufgerufen.
+	 */
+	private static Predictor<Image, DetectedObjects> slowPredictor() throws Exception {
+		@SuppressWarnings("unchecked")
+		Predictor<Image, DetectedObjects> p = mock(Predictor.class, withSettings().stubOnly().lenient());
+		when(p.predict(any(Image.class))).thenAnswer(invocation -> {
+			Thread.sleep(40);
+			return none();
+		});
+		when(p.batchPredict(anyList())).thenAnswer(invocation -> {
+			Thread.sleep(40);
+			List<DetectedObjects> batch = new ArrayList<DetectedObjects>();
+			for (int i = 0; i < invocation.<List<?>>getArgument(0).size(); i++) {
+				batch.add(none());
+			}
+			return batch;
+		});
+		return p;
+	}
+
+	private Path collection(int images) throws IOException {
+		Path dir = Files.createDirectory(tempDir.resolve("sample"));
+		for (int i = 0; i < images; i++) {
+			Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"),
+					dir.resolve(String.format("white%02d.png", i)));
+		}
+		return dir;
+	}
+
+	/**
+	 * Die Stichprobe enthält nur 4 der 6 Bilder. Am schnellsten sind 2 Worker mit
+	 * je einem Batch von 2 Bildern: ein Aufruf pro Worker statt vier
+	 * nacheinander.
+	 */
+	@Test
+	public void testCalibrate() throws Exception {
+		Path dir = collection(6);
+		when(modelMock.newPredictor()).thenAnswer(invocation -> slowPredictor());
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString()).build();
+		try (Detector detector = new Detector(config, modelMock, slowPredictor())) {
+			AutoTuner tuner = new AutoTuner(detector).setSampleSize(4).setWorkerCounts(1, 2).setBatchSizes(1, 2);
+			TuningProfile best = tuner.calibrate();
+			assertEquals(4, tuner.getTable().size());
+			assertEquals(2, best.getWorkers());
+			assertEquals(2, best.getBatchSize());
+			// ohne PyTorch bleiben die Threads der Engine unverändert
+			assertEquals("none", best.getEngine());
+			assertEquals(0, best.getIntraOpThreads());
+			for (TuningProfile p : tuner.getTable()) {
+				assertTrue(p.getImagesPerSec() > 0);
+				assertTrue(p.getImagesPerSec() <= best.getImagesPerSec());
+			}
+			// der Detector selbst bleibt unverändert
+			assertEquals(1, detector.getConfig().getWorkers());
+			assertEquals(1, detector.getConfig().getBatchSize());
+		}
+	}
+
+	/**
+	 * Batches größer als die Stichprobe werden nicht probiert.
+	 */
+	@Test
+	public void testCalibrate_SmallSample() throws Exception {
+		Path dir = collection(2);
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString()).build();
+		try (Detector detector = new Detector(config, null, slowPredictor())) {
+			AutoTuner tuner = new AutoTuner(detector).setWorkerCounts(1).setBatchSizes(1, 2, 8);
+			tuner.calibrate();
+			assertEquals(2, tuner.getTable().size());
+		}
+	}
+
+	@Test
+	public void testCalibrate_Empty() throws Exception {
+		Path dir = Files.createDirectory(tempDir.resolve("empty"));
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString()).build();
+		try (Detector detector = new Detector(config, null, null)) {
+			assertThrows(Exception.class, () -> new AutoTuner(detector).calibrate());
+		}
+	}
+}
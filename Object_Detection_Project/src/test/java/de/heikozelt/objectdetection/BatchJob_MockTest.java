@@ -2,16 +2,33 @@ package de.heikozelt.objectdetection;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -20,6 +37,7 @@ import ai.djl.modality.cv.Image;
 import ai.djl.modality.cv.output.BoundingBox;
 import ai.djl.modality.cv.output.DetectedObjects;
 import ai.djl.modality.cv.output.Rectangle;
+import ai.djl.repository.zoo.ZooModel;
 import ai.djl.translate.TranslateException;
 
 /**
@@ -32,6 +50,12 @@ public class BatchJob_MockTest {
 	
 	@Mock
 	Predictor<Image, DetectedObjects> predictorMock;
+
+	@Mock
+	ZooModel<Image, DetectedObjects> modelMock;
+
+	@TempDir
+	Path tempDir;
 	
 	/**
 	 * Fall: Auf einem weissen Bild wird eine Katze erkannt.
@@ -71,4 +95,298 @@ public class BatchJob_MockTest {
 		}
 	}
 
+	/**
+	 * Fall: 8 Bilder werden von 4 Workern parallel analysiert. Der Mock wartet an
+	 * einer Barriere, bis 4 Threads gleichzeitig in predict() sind. Ohne echte
+	 * Parallelität würde die Barriere nach einem Timeout brechen. Die Ergebnisse
+	 * müssen trotz zufälliger Laufzeiten in der Reihenfolge der Dateien stehen.
+	 */
+	@Test
+	public void testDetectAll_ParallelWorkers() throws IOException {
+		final int workers = 4;
+		for (int i = 0; i < 2 * workers; i++) {
+			Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"),
+					tempDir.resolve(String.format("white%02d.png", i)));
+		}
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.5);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boundingBoxes);
+
+		CyclicBarrier barrier = new CyclicBarrier(workers);
+		try {
+			when(predictorMock.predict(any(Image.class))).thenAnswer(invocation -> {
+				barrier.await(10, TimeUnit.SECONDS);
+				Thread.sleep(ThreadLocalRandom.current().nextInt(50));
+				return objects;
+			});
+		} catch (TranslateException e) {
+			logger.fatal(e);
+			fail("predict should not have thrown any exception");
+		}
+		when(modelMock.newPredictor()).thenReturn(predictorMock);
+
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		BatchJob.setModel(modelMock);
+		BatchJob.setWorkers(workers);
+		try {
+			Result[] results = BatchJob.detectAll();
+			String[] fileNames = new File(tempDir.toString()).list();
+			assertEquals(fileNames.length, results.length);
+			for (int i = 0; i < results.length; i++) {
+				assertEquals(fileNames[i], results[i].getFilename(), "Ergebnisse müssen in Eingabe-Reihenfolge sein!");
+				assertEquals(1, results[i].getObjects().getNumberOfObjects());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail("Should not have thrown any exception!");
+		} finally {
+			BatchJob.setWorkers(1);
+			BatchJob.setModel(null);
+		}
+	}
+
+	/**
+	 * Erzeugt Kopien des weissen Testbildes im temporären Verzeichnis.
+	 */
+	private void copyWhiteImages(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"),
+					tempDir.resolve(String.format("white%02d.png", i)));
+		}
+	}
+
+	/**
+	 * @return eine erkannte Katze
+	 */
+	private DetectedObjects cat() {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.5);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		return new DetectedObjects(classNames, probabilities, boundingBoxes);
+	}
+
+	/**
+	 * Fall: 7 Bilder mit Batch-Größe 3. Es muss zwei volle Batches geben und das
+	 * letzte Bild wird einzeln analysiert. Das XML ist dasselbe wie bei der
+	 * Einzelverarbeitung.
+	 */
+	@Test
+	public void testDetectAll_BatchPredict() throws Exception {
+		copyWhiteImages(7);
+		DetectedObjects objects = cat();
+		when(predictorMock.batchPredict(anyList())).thenAnswer(invocation -> {
+			List<DetectedObjects> batch = new ArrayList<DetectedObjects>();
+			for (int i = 0; i < invocation.getArgument(0, List.class).size(); i++) {
+				batch.add(objects);
+			}
+			return batch;
+		});
+		when(predictorMock.predict(any(Image.class))).thenReturn(objects);
+
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		BatchJob.setPredictor(predictorMock);
+		BatchJob.setBatchSize(3);
+		try {
+			Result[] results = BatchJob.detectAll();
+			String[] fileNames = new File(tempDir.toString()).list();
+			assertEquals(7, results.length);
+			Result single = BatchJob.detect(fileNames[0]);
+			for (int i = 0; i < results.length; i++) {
+				assertEquals(fileNames[i], results[i].getFilename());
+				assertEquals(single.objectAsXml(single.getObjects().item(0)),
+						results[i].objectAsXml(results[i].getObjects().item(0)));
+			}
+			verify(predictorMock, times(2)).batchPredict(anyList());
+			verify(predictorMock, times(2)).predict(any(Image.class));
+		} finally {
+			BatchJob.setBatchSize(1);
+		}
+	}
+
+	/**
+	 * Fall: batchPredict schlägt fehl. Die Bilder des Batches werden einzeln
+	 * analysiert und bekommen trotzdem ein Ergebnis.
+	 */
+	@Test
+	public void testDetectAll_BatchPredictFailure() throws Exception {
+		copyWhiteImages(4);
+		DetectedObjects objects = cat();
+		when(predictorMock.batchPredict(anyList())).thenThrow(new TranslateException("kaputt"));
+		when(predictorMock.predict(any(Image.class))).thenReturn(objects);
+
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		BatchJob.setPredictor(predictorMock);
+		BatchJob.setBatchSize(4);
+		try {
+			Result[] results = BatchJob.detectAll();
+			assertEquals(4, results.length);
+			for (Result r : results) {
+				assertEquals(1, r.getObjects().getNumberOfObjects());
+			}
+			verify(predictorMock, times(4)).predict(any(Image.class));
+		} finally {
+			BatchJob.setBatchSize(1);
+		}
+	}
+
+	/**
+	 * Fall: Eine Datei ist kein Bild, bei einer anderen schlägt die Analyse fehl.
+	 * Mit Fehler-Isolierung werden beide übersprungen und eingetragen, einzeln
+	 * und im Batch.
+	 */
+	@Test
+	public void testDetectAll_ErrorIsolation() throws Exception {
+		copyWhiteImages(4);
+		Files.write(tempDir.resolve("broken.png"), "kein Bild".getBytes());
+		DetectedObjects objects = cat();
+		when(predictorMock.predict(any(Image.class))).thenReturn(objects, objects,
+				objects).thenThrow(new TranslateException("kaputt")).thenReturn(objects);
+
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		BatchJob.setPredictor(predictorMock);
+		ErrorReport errors = new ErrorReport();
+		BatchJob.setErrorReport(errors);
+		try {
+			Result[] results = BatchJob.detectAll();
+			assertIsolated(results, errors);
+
+			// im Batch: batchPredict schlägt fehl, einzeln scheitert das dritte Bild
+			errors = new ErrorReport();
+			BatchJob.setErrorReport(errors);
+			when(predictorMock.batchPredict(anyList())).thenThrow(new TranslateException("kaputt"));
+			when(predictorMock.predict(any(Image.class))).thenReturn(objects, objects)
+					.thenThrow(new TranslateException("kaputt")).thenReturn(objects);
+			BatchJob.setBatchSize(5);
+			results = BatchJob.detectAll();
+			assertIsolated(results, errors);
+		} finally {
+			BatchJob.setBatchSize(1);
+			BatchJob.setErrorReport(null);
+		}
+	}
+
+	/**
+	 * Fall: Programmfehler, z.B. ein fehlender Predictor. Eine NullPointerException
+	 * ist kein Fehler des Bildes und bricht den Lauf auch mit Fehler-Isolierung
+	 * ab.
+	 */
+	@Test
+	public void testDetectAll_ProgrammingErrorNotIsolated() throws Exception {
+		copyWhiteImages(2);
+		when(predictorMock.predict(any(Image.class))).thenThrow(new NullPointerException("kein Predictor"));
+
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		BatchJob.setPredictor(predictorMock);
+		ErrorReport errors = new ErrorReport();
+		BatchJob.setErrorReport(errors);
+		try {
+			assertThrows(NullPointerException.class, () -> BatchJob.detectAll());
+			assertEquals(0, errors.getCount());
+		} finally {
+			BatchJob.setErrorReport(null);
+		}
+	}
+
+	/**
+	 * Prüft, dass die 5 Dateien entweder ein Ergebnis haben oder im Bericht
+	 * stehen: broken.png nicht lesbar, ein weisses Bild nicht analysierbar.
+	 */
+	private void assertIsolated(Result[] results, ErrorReport errors) {
+		assertEquals(3, results.length);
+		assertEquals(2, errors.getCount());
+		Set<String> names = new HashSet<String>();
+		for (Result r : results) {
+			names.add(r.getFilename());
+		}
+		for (ErrorReport.Failure f : errors.getFailures()) {
+			if (f.getFileName().equals("broken.png")) {
+				assertTrue(f.getCause() instanceof IOException);
+			} else {
+				assertEquals(TranslateException.class, f.getCause().getClass());
+			}
+			assertTrue(names.add(f.getFileName()));
+		}
+		assertEquals(5, names.size());
+		assertTrue(names.contains("broken.png"));
+	}
+
+	/**
+	 * Fall: Eine Datei ist kein Bild, die Fehler-Isolierung ist ausgeschaltet.
+	 * Der erste Fehler bricht ab.
+	 */
+	@Test
+	public void testDetectAll_FailFast() throws Exception {
+		Files.write(tempDir.resolve("broken.png"), "kein Bild".getBytes());
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setPredictor(predictorMock);
+		assertThrows(IOException.class, () -> BatchJob.detectAll());
+	}
+
+	/**
+	 * Fall: drei Teil-Läufe wie auf drei Rechnern. Jedes Bild wird genau einmal
+	 * analysiert, die zusammengeführte Datei ist nach Dateinamen sortiert.
+	 */
+	@Test
+	public void testDetectAll_ShardsAndMerge() throws Exception {
+		copyWhiteImages(9);
+		when(predictorMock.predict(any(Image.class))).thenReturn(cat());
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		BatchJob.setPredictor(predictorMock);
+		List<Path> shardFiles = new ArrayList<Path>();
+		try {
+			for (int i = 1; i <= 3; i++) {
+				BatchJob.setShard(new Shard(i, 3));
+				Path shardFile = tempDir.resolve("export/result.shard" + i + ".xml");
+				Files.createDirectories(shardFile.getParent());
+				try (ResultExporter exporter = ResultExporter.open(shardFile, ResultExporter.FORMAT_XML)) {
+					BatchJob.detectAll(exporter);
+				}
+				shardFiles.add(shardFile);
+			}
+		} finally {
+			BatchJob.setShard(null);
+		}
+		verify(predictorMock, times(9)).predict(any(Image.class));
+
+		Path merged = tempDir.resolve("export/result.xml");
+		assertEquals(9, ResultMerger.merge(shardFiles, merged));
+		String xml = new String(Files.readAllBytes(merged), "UTF-8");
+		for (int i = 0; i < 9; i++) {
+			String file = String.format("<file>white%02d.png</file>", i);
+			assertTrue(xml.contains(file));
+			if (i > 0) {
+				assertTrue(xml.indexOf(String.format("<file>white%02d.png</file>", i - 1)) < xml.indexOf(file));
+			}
+		}
+	}
+
+	/**
+	 * Fall: 3 Aufwärm-Vorhersagen mit künstlichem Bild. Sie dürfen nicht in die
+	 * Statistik eingehen.
+	 */
+	@Test
+	public void testWarmUp() throws Exception {
+		when(predictorMock.predict(any(Image.class))).thenReturn(cat());
+		RunMetrics metrics = new RunMetrics();
+		BatchJob.setMetrics(metrics);
+		BatchJob.warmUp(predictorMock, 3);
+		verify(predictorMock, times(3)).predict(any(Image.class));
+		assertEquals(0, metrics.getHistogram(RunMetrics.PREDICT).getCount());
+		BatchJob.warmUp(predictorMock, 0);
+		verify(predictorMock, times(3)).predict(any(Image.class));
+	}
+
 }
@@ -0,0 +1,84 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+
+/**
+ * JUnit-Tests für Klasse BinaryResultReader, Fehlerfälle
+ * @author Heiko Zelt
+ */
+public class BinaryResultReaderTest {
+
+	private BinaryResultReader reader(byte[] bytes) throws IOException {
+		return new BinaryResultReader(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * XML-Datei statt Binärformat
+	 */
+	@Test
+	public void testWrongMagic() {
+		byte[] xml = StreamingXmlExporter.HEADER.getBytes();
+		assertThrows(IOException.class, () -> reader(xml));
+		assertThrows(IOException.class, () -> reader(new byte[3]));
+	}
+
+	/**
+	 * Datensätze unbekannten Typs werden übersprungen.
+	 */
+	@Test
+	public void testSkipUnknownRecord() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(BinaryResultWriter.MAGIC);
+		out.writeByte(BinaryResultWriter.VERSION);
+		out.writeByte(99);
+		out.writeInt(5);
+		out.write(new byte[5]);
+		out.flush();
+		// gültigen Datensatz ohne Kopf anhängen
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (BinaryResultWriter writer = new BinaryResultWriter(result)) {
+			writer.accept(new Result("a.png", 1, 2,
+					new DetectedObjects(new ArrayList<String>(), new ArrayList<Double>(), new ArrayList<BoundingBox>()),
+					3));
+		}
+		byte[] record = result.toByteArray();
+		int header = BinaryResultWriter.MAGIC.length + 1;
+		bytes.write(record, header, record.length - header);
+		try (BinaryResultReader reader = reader(bytes.toByteArray())) {
+			assertEquals("a.png", reader.read().getFilename());
+			assertNull(reader.read());
+		}
+	}
+
+	/**
+	 * abgeschnittene Datei
+	 */
+	@Test
+	public void testTruncated() throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (BinaryResultWriter writer = new BinaryResultWriter(result)) {
+			writer.accept(new Result("a.png", 1, 2,
+					new DetectedObjects(new ArrayList<String>(), new ArrayList<Double>(), new ArrayList<BoundingBox>()),
+					3));
+		}
+		byte[] bytes = result.toByteArray();
+		try (BinaryResultReader reader = reader(Arrays.copyOf(bytes, bytes.length - 4))) {
+			assertThrows(IOException.class, () -> reader.read());
+		}
+	}
+}
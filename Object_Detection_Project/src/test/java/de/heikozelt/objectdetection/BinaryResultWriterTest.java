@@ -0,0 +1,151 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.DetectedObjects.DetectedObject;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * JUnit-Tests für Klassen BinaryResultWriter und BinaryResultReader
+ * @author Heiko Zelt
+ */
+public class BinaryResultWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	private DetectedObjects objects(String... classNames) {
+		List<String> names = new ArrayList<String>();
+		List<Double> probabilities = new ArrayList<Double>();
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		for (int i = 0; i < classNames.length; i++) {
+			names.add(classNames[i]);
+			probabilities.add((double) (0.5f + i * 0.01f));
+			boundingBoxes.add(new Rectangle(0.1f * (i % 8), 0.25f, 0.125f, 0.5f));
+		}
+		return new DetectedObjects(names, probabilities, boundingBoxes);
+	}
+
+	private Result[] sampleResults() {
+		Result[] results = { new Result("img001.png", 100, 200, objects("cat", "dog"), 300, new Date(1618401600000L)),
+				new Result("Bär.png", 640, 480, objects(), 10, new Date(1618401601000L)),
+				new Result("sub/img002.jpg", 1024, 768, objects("dog", "cat", "bird"), 42) };
+		return results;
+	}
+
+	private byte[] write(Result[] results) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (BinaryResultWriter writer = new BinaryResultWriter(bytes)) {
+			for (Result r : results) {
+				writer.accept(r);
+			}
+			assertEquals(results.length, writer.getCount());
+		}
+		return bytes.toByteArray();
+	}
+
+	private void assertSame(Result expected, Result actual) {
+		assertEquals(expected.getFilename(), actual.getFilename());
+		assertEquals(expected.getImgWidth(), actual.getImgWidth());
+		assertEquals(expected.getImgHeight(), actual.getImgHeight());
+		assertEquals(expected.getDate(), actual.getDate());
+		assertEquals(expected.getPredictTime(), actual.getPredictTime());
+		assertEquals(expected.getObjects().getNumberOfObjects(), actual.getObjects().getNumberOfObjects());
+		for (int i = 0; i < expected.getObjects().getNumberOfObjects(); i++) {
+			DetectedObject e = expected.getObjects().item(i);
+			DetectedObject a = actual.getObjects().item(i);
+			assertEquals(e.getClassName(), a.getClassName());
+			assertEquals(e.getProbability(), a.getProbability());
+			Rectangle er = e.getBoundingBox().getBounds();
+			Rectangle ar = a.getBoundingBox().getBounds();
+			assertEquals(er.getX(), ar.getX());
+			assertEquals(er.getY(), ar.getY());
+			assertEquals(er.getWidth(), ar.getWidth());
+			assertEquals(er.getHeight(), ar.getHeight());
+		}
+		// Werte mit float-Genauigkeit ergeben dasselbe XML
+		assertEquals(expected.asXml(), actual.asXml());
+	}
+
+	/**
+	 * Schreiben und wieder Lesen liefert dieselben Ergebnisse.
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		Result[] results = sampleResults();
+		try (BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(write(results)))) {
+			for (Result expected : results) {
+				assertSame(expected, reader.read());
+			}
+			assertNull(reader.read());
+		}
+	}
+
+	/**
+	 * Schreiben in eine Datei über ResultExporter.open()
+	 */
+	@Test
+	public void testFile() throws IOException {
+		Path file = tempDir.resolve("result.bin");
+		Result[] results = sampleResults();
+		try (ResultExporter exporter = ResultExporter.open(file, ResultExporter.FORMAT_BINARY)) {
+			for (Result r : results) {
+				exporter.accept(r);
+			}
+		}
+		List<Result> read = BinaryResultReader.readAll(file);
+		assertEquals(results.length, read.size());
+		for (int i = 0; i < results.length; i++) {
+			assertSame(results[i], read.get(i));
+		}
+	}
+
+	/**
+	 * Jeder Klassenname steht nur einmal in der Datei.
+	 */
+	@Test
+	public void testClassNamesOnce() throws IOException {
+		String bytes = new String(write(sampleResults()), "ISO-8859-1");
+		assertEquals(bytes.indexOf("cat"), bytes.lastIndexOf("cat"));
+		assertEquals(bytes.indexOf("dog"), bytes.lastIndexOf("dog"));
+	}
+
+	/**
+	 * mindestens Faktor 10 kleiner als XML
+	 */
+	@Test
+	public void testSize() throws IOException {
+		String[] names = new String[10];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = i % 2 == 0 ? "person" : "potted plant";
+		}
+		Result[] results = new Result[100];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = new Result(String.format("IMG_%06d.jpg", i), 640, 480, objects(names), 100);
+		}
+		Path xml = tempDir.resolve("result.xml");
+		try (ResultExporter exporter = ResultExporter.open(xml, ResultExporter.FORMAT_XML)) {
+			for (Result r : results) {
+				exporter.accept(r);
+			}
+		}
+		int binarySize = write(results).length;
+		assertTrue(binarySize * 10 < Files.size(xml), binarySize + " vs. " + Files.size(xml));
+	}
+}
@@ -0,0 +1,152 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * JUnit-Tests für Klasse BoundingBoxRenderer
+ * @author Heiko Zelt
+ */
+public class BoundingBoxRendererTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static final int WHITE = 0xffffffff;
+
+	private Image white(int width, int height) {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				img.setRGB(x, y, WHITE);
+			}
+		}
+		return ImageFactory.getInstance().fromImage(img);
+	}
+
+	private DetectedObjects twoObjects() {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		classNames.add("dog");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.9);
+		probabilities.add(0.6);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.25d, 0.5d, 0.5d, 0.25d));
+		boundingBoxes.add(new Rectangle(0.0d, 0.0d, 0.1d, 0.1d));
+		return new DetectedObjects(classNames, probabilities, boundingBoxes);
+	}
+
+	/**
+	 * Standard: PNG in Originalgröße, der Rahmen ist eingezeichnet.
+	 */
+	@Test
+	public void testFullPng() throws IOException {
+		BoundingBoxRenderer renderer = new BoundingBoxRenderer();
+		renderer.submit(tempDir.resolve("a.png").toString(), white(400, 200), twoObjects());
+		BufferedImage saved = ImageIO.read(tempDir.resolve("a.png.boxes.png").toFile());
+		assertEquals(400, saved.getWidth());
+		assertEquals(200, saved.getHeight());
+		// linke Kante des Katzen-Rahmens bei x=100, mitten in der Box bleibt es weiß
+		assertNotEquals(WHITE, saved.getRGB(100, 130));
+		assertEquals(WHITE, saved.getRGB(200, 130));
+	}
+
+	/**
+	 * Thumbnail als JPEG, der Puffer wird für ein kleineres Bild wiederverwendet.
+	 */
+	@Test
+	public void testJpegThumbnail() throws IOException {
+		BoundingBoxRenderer renderer = new BoundingBoxRenderer();
+		renderer.setFormat("jpeg");
+		renderer.setMaxEdge(100);
+		renderer.submit(tempDir.resolve("big.png").toString(), white(400, 200), twoObjects());
+		renderer.submit(tempDir.resolve("small.png").toString(), white(50, 80), twoObjects());
+		BufferedImage big = ImageIO.read(tempDir.resolve("big.png.boxes.jpg").toFile());
+		assertEquals(100, big.getWidth());
+		assertEquals(50, big.getHeight());
+		BufferedImage small = ImageIO.read(tempDir.resolve("small.png.boxes.jpg").toFile());
+		assertEquals(50, small.getWidth());
+		assertEquals(80, small.getHeight());
+	}
+
+	/**
+	 * Nur die Ausschnitte der Objekte, je eine Datei.
+	 */
+	@Test
+	public void testCrops() throws IOException {
+		BoundingBoxRenderer renderer = new BoundingBoxRenderer();
+		renderer.setCropsOnly(true);
+		renderer.submit(tempDir.resolve("a.png").toString(), white(400, 200), twoObjects());
+		BufferedImage cat = ImageIO.read(tempDir.resolve("a.png.crop1.png").toFile());
+		assertEquals(200, cat.getWidth());
+		assertEquals(50, cat.getHeight());
+		BufferedImage dog = ImageIO.read(tempDir.resolve("a.png.crop2.png").toFile());
+		assertEquals(40, dog.getWidth());
+		assertEquals(20, dog.getHeight());
+		assertTrue(Files.notExists(tempDir.resolve("a.png.boxes.png")));
+	}
+
+	/**
+	 * Höhere Kompression ergibt eine kleinere Datei.
+	 */
+	@Test
+	public void testPngCompression() throws IOException {
+		BoundingBoxRenderer fast = new BoundingBoxRenderer();
+		fast.setPngCompression(0);
+		fast.submit(tempDir.resolve("fast.png").toString(), white(400, 200), twoObjects());
+		BoundingBoxRenderer small = new BoundingBoxRenderer();
+		small.setPngCompression(9);
+		small.submit(tempDir.resolve("small.png").toString(), white(400, 200), twoObjects());
+		assertTrue(Files.size(tempDir.resolve("small.png.boxes.png")) < Files.size(tempDir.resolve("fast.png.boxes.png")));
+		assertThrows(IllegalArgumentException.class, () -> fast.setPngCompression(10));
+	}
+
+	/**
+	 * Asynchron mit kleiner Queue: nach close() sind alle Dateien da.
+	 */
+	@Test
+	public void testAsync() throws IOException {
+		try (BoundingBoxRenderer renderer = new BoundingBoxRenderer()) {
+			renderer.setThreads(2, 1);
+			for (int i = 0; i < 10; i++) {
+				renderer.submit(tempDir.resolve("img" + i + ".png").toString(), white(64, 48), twoObjects());
+			}
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals(64, ImageIO.read(tempDir.resolve("img" + i + ".png.boxes.png").toFile()).getWidth());
+		}
+	}
+
+	/**
+	 * Fehler beim asynchronen Speichern werden spätestens bei flush() gemeldet.
+	 */
+	@Test
+	public void testAsyncFailure() throws IOException {
+		BoundingBoxRenderer renderer = new BoundingBoxRenderer();
+		renderer.setThreads(1, 1);
+		renderer.submit(tempDir.resolve("missing/dir/a.png").toString(), white(64, 48), twoObjects());
+		assertThrows(IOException.class, () -> renderer.flush());
+		renderer.close();
+	}
+}
@@ -0,0 +1,40 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit-Tests für Klasse ByteBufferInputStream
+ * @author Heiko Zelt
+ */
+public class ByteBufferInputStreamTest {
+
+	/**
+	 * Lesen, Überspringen, mark/reset. Der Buffer selbst bleibt unverändert.
+	 */
+	@Test
+	public void testRead() throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 1, 2, (byte) 200, 4, 5, 6 });
+		buffer.position(1);
+		try (ByteBufferInputStream in = new ByteBufferInputStream(buffer)) {
+			assertEquals(5, in.available());
+			assertEquals(2, in.read());
+			assertEquals(200, in.read());
+			in.mark(10);
+			assertEquals(1, in.skip(1));
+			byte[] b = new byte[10];
+			assertEquals(2, in.read(b, 0, 10));
+			assertEquals(5, b[0]);
+			assertEquals(6, b[1]);
+			assertEquals(-1, in.read());
+			assertEquals(-1, in.read(b, 0, 10));
+			in.reset();
+			assertEquals(4, in.read());
+		}
+		assertEquals(1, buffer.position());
+	}
+}
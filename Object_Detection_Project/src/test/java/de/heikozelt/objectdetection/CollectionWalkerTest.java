@@ -0,0 +1,90 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JUnit-Tests für Klasse CollectionWalker
+ * @author Heiko Zelt
+ */
+public class CollectionWalkerTest {
+
+	@TempDir
+	Path tempDir;
+
+	@BeforeEach
+	public void createFiles() throws IOException {
+		Files.createFile(tempDir.resolve("a.png"));
+		Files.createFile(tempDir.resolve("B.JPG"));
+		Files.createFile(tempDir.resolve("notes.txt"));
+		Files.createDirectories(tempDir.resolve("sub/subsub"));
+		Files.createFile(tempDir.resolve("sub/c.jpg"));
+		Files.createFile(tempDir.resolve("sub/subsub/d.png"));
+	}
+
+	private List<String> walk(boolean recursive, String glob) throws IOException {
+		List<String> names = new ArrayList<String>();
+		try (CollectionWalker walker = new CollectionWalker(tempDir, recursive, glob)) {
+			while (walker.hasNext()) {
+				names.add(walker.next());
+			}
+			assertThrows(NoSuchElementException.class, () -> walker.next());
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Fall: nur oberstes Verzeichnis, nur Bilder. Unterverzeichnisse und
+	 * Text-Dateien werden übersprungen.
+	 */
+	@Test
+	public void testFlat() throws IOException {
+		assertEquals(List.of("B.JPG", "a.png"), walk(false, CollectionWalker.DEFAULT_GLOB));
+	}
+
+	/**
+	 * Fall: mit Unterverzeichnissen. Die Namen sind relativ zum Wurzelverzeichnis.
+	 */
+	@Test
+	public void testRecursive() throws IOException {
+		assertEquals(List.of("B.JPG", "a.png", "sub" + File.separator + "c.jpg",
+				"sub" + File.separator + "subsub" + File.separator + "d.png"),
+				walk(true, CollectionWalker.DEFAULT_GLOB));
+	}
+
+	/**
+	 * Fall: eigenes Muster
+	 */
+	@Test
+	public void testGlob() throws IOException {
+		assertEquals(List.of("notes.txt"), walk(true, "*.txt"));
+		assertEquals(List.of("a.png", "sub" + File.separator + "subsub" + File.separator + "d.png"),
+				walk(true, "*.png"));
+	}
+
+	/**
+	 * Fall: leeres Verzeichnis
+	 */
+	@Test
+	public void testEmpty() throws IOException {
+		Path empty = Files.createDirectory(tempDir.resolve("empty"));
+		try (CollectionWalker walker = new CollectionWalker(empty, true, "*")) {
+			assertFalse(walker.hasNext());
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * JUnit-Tests für Klasse DetectionCache
+ * @author Heiko Zelt
+ */
+public class DetectionCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	private Path image;
+	private Path cacheFile;
+	private Result result;
+
+	@BeforeEach
+	public void createImage() throws IOException {
+		image = tempDir.resolve("img\t001.png");
+		Files.write(image, new byte[] { 1, 2, 3 });
+		cacheFile = tempDir.resolve("result.cache");
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		classNames.add("traffic light");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.8765432834625244);
+		probabilities.add(0.5);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		boundingBoxes.add(new Rectangle(0.123456789d, 0.5d, 0.25d, 0.01d));
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boundingBoxes);
+		result = new Result("img\t001.png", 640, 480, objects, 42);
+	}
+
+	/**
+	 * Fall: Ergebnis speichern, Cache neu öffnen, Ergebnis wiederfinden. Das XML
+	 * muss bis auf das Datum identisch sein.
+	 */
+	@Test
+	public void testStoreAndReload() throws IOException {
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			assertNull(cache.lookup("img\t001.png", image));
+			cache.store(result, image);
+		}
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			Result cached = cache.lookup("img\t001.png", image);
+			assertNotNull(cached);
+			assertEquals(640, cached.getImgWidth());
+			assertEquals(480, cached.getImgHeight());
+			assertEquals(42, cached.getPredictTime());
+			assertEquals(withoutDate(result.asXml()), withoutDate(cached.asXml()));
+			assertEquals(1, cache.getHits());
+			assertEquals(0, cache.getMisses());
+		}
+	}
+
+	/**
+	 * Fall: Das Bild wurde geändert (anderes Änderungsdatum).
+	 */
+	@Test
+	public void testModifiedImage() throws IOException {
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			cache.store(result, image);
+		}
+		Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 5000));
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			assertNull(cache.lookup("img\t001.png", image));
+			assertEquals(1, cache.getMisses());
+		}
+	}
+
+	/**
+	 * Fall: anderes Modell oder anderer Threshold. Der ganze Cache wird verworfen.
+	 */
+	@Test
+	public void testOtherModel() throws IOException {
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			cache.store(result, image);
+		}
+		try (DetectionCache cache = new DetectionCache(cacheFile, "TensorFlow/mobilenet_v2/0.5", false)) {
+			assertNull(cache.lookup("img\t001.png", image));
+		}
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			assertNull(cache.lookup("img\t001.png", image), "Cache muss beim Modellwechsel geleert worden sein");
+		}
+	}
+
+	/**
+	 * Fall: Absturz mitten im Schreiben. Die unvollständige letzte Zeile wird
+	 * ignoriert, die vollständigen Einträge bleiben gültig.
+	 */
+	@Test
+	public void testTruncatedLine() throws IOException {
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			cache.store(result, image);
+		}
+		Files.write(cacheFile, "other.png\t3\t12".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			assertNotNull(cache.lookup("img\t001.png", image));
+		}
+	}
+
+	/**
+	 * Fall: Vergleich per Hash. Gleiche Größe und gleiches Datum, aber anderer
+	 * Inhalt.
+	 */
+	@Test
+	public void testHash() throws IOException {
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", true)) {
+			cache.store(result, image);
+		}
+		FileTime mtime = Files.getLastModifiedTime(image);
+		Files.write(image, new byte[] { 3, 2, 1 });
+		Files.setLastModifiedTime(image, mtime);
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			assertNotNull(cache.lookup("img\t001.png", image), "ohne Hash wird die Änderung nicht erkannt");
+		}
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", true)) {
+			assertNull(cache.lookup("img\t001.png", image));
+		}
+	}
+
+	/**
+	 * Fall: Ein Bild wird mehrmals geändert und neu analysiert. Beim Schließen
+	 * gibt es mehr ersetzte als gültige Zeilen, die Datei wird neu geschrieben
+	 * und enthält danach nur noch den Kopf und den letzten Eintrag.
+	 */
+	@Test
+	public void testCompact() throws IOException {
+		long mtime = Files.getLastModifiedTime(image).toMillis();
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			for (int i = 1; i <= 3; i++) {
+				Files.setLastModifiedTime(image, FileTime.fromMillis(mtime + i * 5000));
+				cache.store(result, image);
+			}
+			assertEquals(4, Files.readAllLines(cacheFile, StandardCharsets.UTF_8).size());
+		}
+		assertEquals(2, Files.readAllLines(cacheFile, StandardCharsets.UTF_8).size());
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			assertNotNull(cache.lookup("img\t001.png", image));
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDir, "*.tmp")) {
+			assertFalse(files.iterator().hasNext(), "temporäre Datei muss entfernt sein");
+		}
+	}
+
+	/**
+	 * Fall: Eine Cache-Datei von einer älteren Version, die nie aufgeräumt hat.
+	 * Sie wird schon beim Öffnen neu geschrieben.
+	 */
+	@Test
+	public void testCompactOnOpen() throws IOException {
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			cache.store(result, image);
+		}
+		List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+		Files.write(cacheFile, lines.subList(1, 2), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		Files.write(cacheFile, lines.subList(1, 2), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		try (DetectionCache cache = new DetectionCache(cacheFile, "PyTorch/resnet50/0.5", false)) {
+			assertEquals(lines, Files.readAllLines(cacheFile, StandardCharsets.UTF_8));
+			assertNotNull(cache.lookup("img\t001.png", image));
+		}
+	}
+
+	private static String withoutDate(String xml) {
+		return xml.replaceAll("<date>.*</date>", "");
+	}
+}
@@ -0,0 +1,148 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit-Tests für Klasse DetectionFilter
+ * @author Heiko Zelt
+ */
+public class DetectionFilterTest {
+
+	/**
+	 * 5 Objekte: zwei stark überlappende Katzen, ein Hund, eine Person und ein
+	 * Auto
+	 */
+	private Result result() {
+		int[] ids = { ClassNameTable.id("cat"), ClassNameTable.id("dog"), ClassNameTable.id("cat"),
+				ClassNameTable.id("person"), ClassNameTable.id("car") };
+		float[] boxes = { 0.1f, 0.1f, 0.4f, 0.4f, // cat
+				0.6f, 0.6f, 0.2f, 0.2f, // dog
+				0.12f, 0.1f, 0.4f, 0.4f, // cat, fast gleiche Box
+				0.0f, 0.0f, 1.0f, 1.0f, // person, ganzes Bild
+				0.7f, 0.1f, 0.2f, 0.1f }; // car
+		float[] probabilities = { 0.6f, 0.9f, 0.8f, 0.5f, 0.3f };
+		return new Result("a.png", 640, 480, ids, boxes, probabilities, 10, 0);
+	}
+
+	private String classes(Result r) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < r.getNumberOfObjects(); i++) {
+			s.append(i == 0 ? "" : ",").append(r.getClassName(i));
+		}
+		return s.toString();
+	}
+
+	@Test
+	public void testPassThrough() {
+		DetectionFilter filter = new DetectionFilter();
+		Result r = result();
+		assertTrue(filter.isPassThrough());
+		assertSame(r, filter.apply(r));
+		filter.setTopK(5);
+		assertSame(r, filter.apply(r));
+	}
+
+	@Test
+	public void testAllowDeny() {
+		DetectionFilter filter = new DetectionFilter();
+		filter.setAllow(Arrays.asList("cat", "dog", "person"));
+		assertEquals("cat,dog,cat,person", classes(filter.apply(result())));
+		filter.setDeny(Arrays.asList("cat"));
+		assertEquals("dog,person", classes(filter.apply(result())));
+		filter.setAllow(null);
+		assertEquals("dog,person,car", classes(filter.apply(result())));
+		// unbekannte Klasse in der Allow-Liste
+		filter.setDeny(Arrays.asList());
+		filter.setAllow(Arrays.asList("giraffe"));
+		assertEquals(0, filter.apply(result()).getNumberOfObjects());
+	}
+
+	@Test
+	public void testClassThresholds() {
+		DetectionFilter filter = new DetectionFilter();
+		filter.parseClassThresholds("cat=0.7, car=0.2");
+		Result r = filter.apply(result());
+		assertEquals("dog,cat,person,car", classes(r));
+		assertEquals(0.8f, r.getProbability(1));
+		assertEquals(0.2f, filter.getMinClassThreshold());
+		assertThrows(IllegalArgumentException.class, () -> filter.parseClassThresholds("cat"));
+		assertThrows(IllegalArgumentException.class, () -> filter.setClassThreshold("cat", 1.5f));
+	}
+
+	/**
+	 * Die wahrscheinlichsten Objekte bleiben, in der ursprünglichen
+	 * Reihenfolge.
+	 */
+	@Test
+	public void testTopK() {
+		DetectionFilter filter = new DetectionFilter();
+		filter.setTopK(3);
+		Result r = filter.apply(result());
+		assertEquals("cat,dog,cat", classes(r));
+		assertEquals(0.6f, r.getProbability(0));
+		assertEquals("a.png", r.getFilename());
+		assertEquals(10, r.getPredictTime());
+	}
+
+	/**
+	 * Die weniger wahrscheinliche der beiden Katzen fällt weg. Die Person
+	 * überlappt alle, aber nur wenig im Verhältnis zur Vereinigung.
+	 */
+	@Test
+	public void testNms() {
+		DetectionFilter filter = new DetectionFilter();
+		filter.setNmsIoU(0.5f);
+		Result r = filter.apply(result());
+		assertEquals("dog,cat,person,car", classes(r));
+		assertEquals(0.8f, r.getProbability(1));
+		// NMS vor Top-K: die zweite Katze zählt nicht mit
+		filter.setTopK(3);
+		assertEquals("dog,cat,person", classes(filter.apply(result())));
+	}
+
+	@Test
+	public void testIoU() {
+		assertEquals(1f, DetectionFilter.iou(0, 0, 1, 1, 0, 0, 1, 1));
+		assertEquals(0f, DetectionFilter.iou(0, 0, 1, 1, 1, 0, 1, 1));
+		assertEquals(1f / 3, DetectionFilter.iou(0, 0, 2, 1, 1, 0, 2, 1), 1e-6);
+		assertEquals(0.25f, DetectionFilter.iou(0, 0, 1, 1, 0, 0, 0.5f, 0.5f));
+	}
+
+	/**
+	 * Die unveränderliche Kopie filtert wie das Original und bleibt gleich, wenn
+	 * das Original geändert wird.
+	 */
+	@Test
+	public void testFrozenCopy() {
+		DetectionFilter filter = new DetectionFilter();
+		filter.setAllow(Arrays.asList("cat", "dog", "person"));
+		DetectionFilter copy = filter.frozenCopy();
+		filter.setDeny(Arrays.asList("cat"));
+		assertEquals("cat,dog,cat,person", classes(copy.apply(result())));
+		assertEquals("dog,person", classes(filter.apply(result())));
+		assertThrows(IllegalStateException.class, () -> copy.setDeny(Arrays.asList("dog")));
+		assertThrows(IllegalStateException.class, () -> copy.parseClassThresholds("cat=0.3"));
+		assertSame(copy, copy.frozenCopy());
+	}
+
+	@Test
+	public void testToString() {
+		DetectionFilter a = new DetectionFilter();
+		a.setAllow(Arrays.asList("dog", "cat"));
+		a.parseClassThresholds("dog=0.6,cat=0.4");
+		a.setTopK(5);
+		DetectionFilter b = new DetectionFilter();
+		b.setTopK(5);
+		b.parseClassThresholds("cat=0.4,dog=0.6");
+		b.setAllow(Arrays.asList("cat", "dog"));
+		assertEquals("filter allow=cat,dog thresholds=cat=0.4,dog=0.6 top-k=5", a.toString());
+		assertEquals(a.toString(), b.toString());
+	}
+}
@@ -0,0 +1,227 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+import ai.djl.translate.TranslateException;
+
+/**
+ * Tests für die Klasse DetectionPipeline mit Hilfe von Mockito
+ * @author Heiko Zelt
+ */
+@ExtendWith(MockitoExtension.class)
+public class DetectionPipelineTest {
+
+	@Mock
+	Predictor<Image, DetectedObjects> predictorMock;
+
+	@TempDir
+	Path tempDir;
+
+	@AfterEach
+	public void resetBatchJob() {
+		BatchJob.setCollectionPath("collection");
+	}
+
+	private DetectedObjects cat() {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.5);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		return new DetectedObjects(classNames, probabilities, boundingBoxes);
+	}
+
+	private String[] copyWhiteImages(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"),
+					tempDir.resolve(String.format("white%02d.png", i)));
+		}
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		return new File(tempDir.toString()).list();
+	}
+
+	/**
+	 * Fall: 10 Bilder, 3 Decode-Threads, ein Predictor, 2 Output-Threads und eine
+	 * sehr kleine Queue. Alle Bilder müssen in der richtigen Reihenfolge ankommen
+	 * und von jeder Stufe gezählt werden.
+	 */
+	@Test
+	public void testRun_OrderAndStatistics() throws Exception {
+		String[] fileNames = copyWhiteImages(10);
+		DetectedObjects objects = cat();
+		when(predictorMock.predict(any(Image.class))).thenReturn(objects);
+
+		DetectionPipeline pipeline = new DetectionPipeline(3, 1, 2, 1);
+		Result[] results = pipeline.run(fileNames, null, predictorMock);
+
+		assertEquals(fileNames.length, results.length);
+		for (int i = 0; i < results.length; i++) {
+			assertEquals(fileNames[i], results[i].getFilename());
+			assertEquals(16, results[i].getImgWidth());
+		}
+		for (StageStatistics s : pipeline.getStatistics()) {
+			assertEquals(10, s.getItems(), "stage " + s.getName());
+			assertTrue(s.getMaxQueueDepth() <= 1, "Queue-Kapazität darf nicht überschritten werden");
+		}
+		assertTrue(pipeline.getWallNanos() > 0);
+	}
+
+	/**
+	 * Fall: höchstens 2 Bilder gleichzeitig in der Pipeline. Trotz mehrerer
+	 * Decode-Threads darf es nicht hängen bleiben.
+	 */
+	@Test
+	public void testRun_MaxInFlight() throws Exception {
+		String[] fileNames = copyWhiteImages(10);
+		DetectedObjects objects = cat();
+		when(predictorMock.predict(any(Image.class))).thenReturn(objects);
+
+		DetectionPipeline pipeline = new DetectionPipeline(3, 1, 2, 4);
+		pipeline.setMaxInFlight(2);
+		Result[] results = pipeline.run(fileNames, null, predictorMock);
+		assertEquals(10, results.length);
+		for (int i = 0; i < results.length; i++) {
+			assertEquals(fileNames[i], results[i].getFilename());
+		}
+		assertTrue(pipeline.getStatistics()[1].getMaxQueueDepth() <= 2);
+	}
+
+	/**
+	 * Fall: Eine Datei ist kein Bild. Die Pipeline muss sauber beenden und die
+	 * Exception weiterreichen.
+	 */
+	@Test
+	public void testRun_DecodeFailure() throws Exception {
+		copyWhiteImages(4);
+		Files.write(tempDir.resolve("broken.png"), "kein Bild".getBytes());
+		String[] fileNames = new File(tempDir.toString()).list();
+		DetectedObjects objects = cat();
+		lenient().when(predictorMock.predict(any(Image.class))).thenReturn(objects);
+
+		DetectionPipeline pipeline = new DetectionPipeline(2, 1, 1, 2);
+		assertThrows(IOException.class, () -> pipeline.run(fileNames, null, predictorMock));
+	}
+
+	/**
+	 * Fall: Eine Datei ist kein Bild, die Fehler-Isolierung ist eingeschaltet.
+	 * Die übrigen Bilder kommen in der richtigen Reihenfolge an, das defekte Bild
+	 * steht im Bericht.
+	 */
+	@Test
+	public void testRun_DecodeFailureIsolated() throws Exception {
+		copyWhiteImages(4);
+		Files.write(tempDir.resolve("broken.png"), "kein Bild".getBytes());
+		String[] fileNames = new File(tempDir.toString()).list();
+		Arrays.sort(fileNames);
+		when(predictorMock.predict(any(Image.class))).thenReturn(cat());
+
+		ErrorReport errors = new ErrorReport();
+		BatchJob.setErrorReport(errors);
+		try {
+			DetectionPipeline pipeline = new DetectionPipeline(2, 1, 1, 2);
+			pipeline.setMaxInFlight(2);
+			Result[] results = pipeline.run(fileNames, null, predictorMock);
+			assertEquals(4, results.length);
+			for (int i = 0; i < results.length; i++) {
+				assertEquals(String.format("white%02d.png", i), results[i].getFilename());
+			}
+			assertEquals(1, errors.getCount());
+			assertEquals("broken.png", errors.getFailures().get(0).getFileName());
+		} finally {
+			BatchJob.setErrorReport(null);
+		}
+	}
+
+	/**
+	 * Führt den Lauf aus und sammelt dabei Fehler, die einen Thread der Pipeline
+	 * beenden, ohne von der Pipeline abgefangen zu werden.
+	 *
+	 * @return erwartete Exception aus run()
+	 */
+	private Exception runExpectingFailure(DetectionPipeline pipeline, String[] fileNames, ResultConsumer consumer)
+			throws Exception {
+		List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler((thread, e) -> uncaught.add(e));
+		try {
+			Exception e = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assertThrows(Exception.class,
+					() -> pipeline.run(Arrays.asList(fileNames).iterator(), null, predictorMock, consumer)));
+			assertEquals(Collections.emptyList(), uncaught);
+			return e;
+		} finally {
+			Thread.setDefaultUncaughtExceptionHandler(previous);
+		}
+	}
+
+	/**
+	 * Fall: Der Empfänger kann das zweite Ergebnis nicht schreiben,
+	 * Standardeinstellungen (unbegrenzt viele Bilder gleichzeitig). Die Pipeline
+	 * darf nicht hängen bleiben und muss die Exception weiterreichen.
+	 */
+	@Test
+	public void testRun_ConsumerFailure() throws Exception {
+		String[] fileNames = copyWhiteImages(10);
+		Arrays.sort(fileNames);
+		lenient().when(predictorMock.predict(any(Image.class))).thenReturn(cat());
+		IOException failure = new IOException("Platte voll");
+		List<Result> accepted = new ArrayList<Result>();
+
+		DetectionPipeline pipeline = new DetectionPipeline(2, 1, 1, 1);
+		Exception e = runExpectingFailure(pipeline, fileNames, result -> {
+			if (!accepted.isEmpty()) {
+				throw failure;
+			}
+			accepted.add(result);
+		});
+		assertSame(failure, e);
+		assertEquals(1, accepted.size());
+	}
+
+	/**
+	 * Fall: Die Objekt-Erkennung schlägt fehl, Standardeinstellungen. Die
+	 * Pipeline darf nicht hängen bleiben und muss die Exception weiterreichen.
+	 */
+	@Test
+	public void testRun_PredictFailure() throws Exception {
+		String[] fileNames = copyWhiteImages(10);
+		TranslateException failure = new TranslateException("kaputt");
+		when(predictorMock.predict(any(Image.class))).thenThrow(failure);
+
+		DetectionPipeline pipeline = new DetectionPipeline(2, 1, 1, 1);
+		Exception e = runExpectingFailure(pipeline, fileNames, result -> {
+		});
+		assertSame(failure, e);
+	}
+}
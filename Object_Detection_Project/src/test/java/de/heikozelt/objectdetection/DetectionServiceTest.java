@@ -0,0 +1,174 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+import ai.djl.repository.zoo.ZooModel;
+
+/**
+ * Tests für die Klasse DetectionService mit Hilfe von Mockito. Der Dienst
+ * läuft auf einem freien Port auf localhost.
+ * @author Heiko Zelt
+ */
+@ExtendWith(MockitoExtension.class)
+public class DetectionServiceTest {
+
+	@Mock
+	Predictor<Image, DetectedObjects> predictorMock;
+
+	@Mock
+	ZooModel<Image, DetectedObjects> modelMock;
+
+	@TempDir
+	Path tempDir;
+
+	DetectionService service;
+	HttpClient client = HttpClient.newHttpClient();
+
+	@BeforeEach
+	public void startService() throws IOException {
+		Files.createDirectory(tempDir.resolve("sub"));
+		Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"), tempDir.resolve("white.png"));
+		Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"), tempDir.resolve("sub/white.png"));
+		BatchJob.setCollectionPath(tempDir.toString());
+		BatchJob.setSaveBoundingBoxImageEnabled(false);
+		service = new DetectionService(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+		service.start();
+	}
+
+	@AfterEach
+	public void stopService() {
+		service.close();
+		BatchJob.setCollectionPath("collection");
+	}
+
+	private HttpResponse<String> get(String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + service.getPort() + path))
+				.build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private DetectedObjects warmUp() throws Exception {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.5);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boundingBoxes);
+		lenient().when(predictorMock.predict(any(Image.class))).thenReturn(objects);
+		when(modelMock.newPredictor()).thenReturn(predictorMock);
+		service.warmUp(modelMock, 1);
+		return objects;
+	}
+
+	/**
+	 * Fall: Das Modell wird noch geladen. Der Dienst lebt, ist aber nicht bereit.
+	 */
+	@Test
+	public void testHealthAndReadiness() throws Exception {
+		assertEquals(200, get("/health").statusCode());
+		assertEquals(503, get("/ready").statusCode());
+		assertEquals(503, get("/detect?file=white.png").statusCode());
+		warmUp();
+		assertEquals(200, get("/ready").statusCode());
+	}
+
+	/**
+	 * Fall: ein Bild, ein Verzeichnis und eine Liste. Die Antwort ist dasselbe XML
+	 * wie in der Ergebnisdatei.
+	 */
+	@Test
+	public void testDetect() throws Exception {
+		DetectedObjects objects = warmUp();
+		HttpResponse<String> response = get("/detect?file=white.png");
+		assertEquals(200, response.statusCode());
+		assertTrue(response.headers().firstValue("Content-Type").get().startsWith("application/xml"));
+		Result expected = new Result("white.png", 16, 16, objects, 0);
+		// das Datum kann um eine Sekunde abweichen
+		assertEquals(BatchJob.resultsAsXml(new Result[] { expected }).replaceAll("<date>.*</date>", ""),
+				response.body().replaceAll("<date>.*</date>", ""));
+
+		response = get("/detect?dir=sub");
+		assertEquals(200, response.statusCode());
+		assertTrue(response.body().contains("<file>sub" + File.separator + "white.png</file>"), response.body());
+
+		HttpRequest post = HttpRequest.newBuilder(URI.create("http://localhost:" + service.getPort() + "/detect"))
+				.POST(HttpRequest.BodyPublishers.ofString("white.png\nsub/white.png\n")).build();
+		response = client.send(post, HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, response.statusCode());
+		assertEquals(2, response.body().split("<gmaf-data>").length - 1);
+	}
+
+	/**
+	 * Fall: ein kaputtes Bild im Verzeichnis. Mit Fehler-Isolierung wird es
+	 * übersprungen und die Antwort ist vollständig, ohne endet sie mit einer
+	 * Fehlermarke statt des Ende-Tags.
+	 */
+	@Test
+	public void testDetect_BrokenImage() throws Exception {
+		warmUp();
+		Files.write(tempDir.resolve("sub/broken.png"), new byte[] { 1, 2, 3 });
+		ErrorReport errors = new ErrorReport();
+		BatchJob.setErrorReport(errors);
+		try {
+			HttpResponse<String> response = get("/detect?dir=sub");
+			assertEquals(200, response.statusCode());
+			assertEquals(1, response.body().split("<gmaf-data>").length - 1);
+			assertTrue(response.body().contains("<!-- übersprungen: sub" + File.separator + "broken.png -->"),
+					response.body());
+			assertTrue(response.body().endsWith(StreamingXmlExporter.FOOTER));
+			assertEquals(1, errors.getCount());
+		} finally {
+			BatchJob.setErrorReport(null);
+		}
+		HttpResponse<String> response = get("/detect?dir=sub");
+		assertEquals(200, response.statusCode());
+		assertTrue(response.body().contains("<!-- ERROR: "), response.body());
+		assertFalse(response.body().contains(StreamingXmlExporter.FOOTER));
+	}
+
+	/**
+	 * Fall: unbekannte Datei, Pfad außerhalb des collection-Verzeichnisses,
+	 * fehlender Parameter
+	 */
+	@Test
+	public void testBadRequests() throws Exception {
+		warmUp();
+		assertEquals(400, get("/detect?file=missing.png").statusCode());
+		assertEquals(400, get("/detect?file=..%2F..%2Fetc%2Fpasswd").statusCode());
+		assertEquals(400, get("/detect?dir=..").statusCode());
+		assertEquals(400, get("/detect").statusCode());
+	}
+}
@@ -0,0 +1,78 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit-Tests für Klasse DetectorConfig
+ * @author Heiko Zelt
+ */
+public class DetectorConfigTest {
+
+	@Test
+	public void testDefaults() {
+		DetectorConfig config = DetectorConfig.builder().build();
+		assertEquals("collection", config.getCollectionPath());
+		assertEquals(0.5f, config.getThreshold());
+		assertEquals(1, config.getWorkers());
+		assertEquals(0, config.getDecodeThreads());
+		assertEquals(CollectionWalker.DEFAULT_GLOB, config.getIncludeGlob());
+		assertTrue(config.isSaveBoundingBoxImage());
+		assertNull(config.getShard());
+		assertNull(config.getFilter());
+	}
+
+	/**
+	 * toBuilder() ändert nur die Kopie, die ursprüngliche Konfiguration bleibt
+	 * gleich.
+	 */
+	@Test
+	public void testToBuilder() {
+		DetectorConfig a = DetectorConfig.builder().setCollectionPath("a").setWorkers(4).build();
+		DetectorConfig b = a.toBuilder().setCollectionPath("b").setRecursive(true).build();
+		assertEquals("a", a.getCollectionPath());
+		assertFalse(a.isRecursive());
+		assertEquals("b", b.getCollectionPath());
+		assertTrue(b.isRecursive());
+		assertEquals(4, b.getWorkers());
+	}
+
+	/**
+	 * Die Konfiguration übernimmt eine unveränderliche Kopie des Filters.
+	 * Spätere Änderungen am Original wirken sich nicht aus, zwei Konfigurationen
+	 * aus demselben Builder teilen sich keinen veränderbaren Filter.
+	 */
+	@Test
+	public void testFilterCopied() {
+		DetectionFilter filter = new DetectionFilter();
+		filter.setTopK(3);
+		DetectorConfig.Builder builder = DetectorConfig.builder().setFilter(filter);
+		DetectorConfig a = builder.build();
+		filter.setTopK(5);
+		DetectorConfig b = builder.build();
+		assertEquals("filter top-k=3", a.getFilter().toString());
+		assertEquals("filter top-k=5", b.getFilter().toString());
+		assertTrue(a.getFilter().isFrozen());
+		assertThrows(IllegalStateException.class, () -> a.getFilter().setTopK(1));
+		assertSame(a.getFilter(), a.toBuilder().build().getFilter());
+	}
+
+	@Test
+	public void testInvalidValues() {
+		DetectorConfig.Builder builder = DetectorConfig.builder();
+		assertThrows(IllegalArgumentException.class, () -> builder.setThreshold(1.5f));
+		assertThrows(IllegalArgumentException.class, () -> builder.setWorkers(0));
+		assertThrows(IllegalArgumentException.class, () -> builder.setPipeline(1, 0, 8));
+		assertThrows(IllegalArgumentException.class, () -> builder.setModelArtifact("ssd"));
+		assertThrows(IllegalArgumentException.class, () -> builder.setTiling(1024, 512, 512));
+		assertThrows(IllegalArgumentException.class, () -> builder.setDedupDistance(DuplicateFinder.MAX_DISTANCE + 1));
+		// ungültige Werte ändern den Builder nicht
+		assertEquals(1, builder.build().getWorkers());
+	}
+}
@@ -0,0 +1,358 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+import ai.djl.repository.zoo.ZooModel;
+
+/**
+ * JUnit-Tests für Klasse Detector
+ * @author Heiko Zelt
+ */
+@ExtendWith(MockitoExtension.class)
+public class DetectorTest {
+
+	@Mock
+	Predictor<Image, DetectedObjects> catPredictor;
+
+	@Mock
+	Predictor<Image, DetectedObjects> dogPredictor;
+
+	@Mock
+	ZooModel<Image, DetectedObjects> modelMock;
+
+	@TempDir
+	Path tempDir;
+
+	private static DetectedObjects objects(String className, double... probabilities) {
+		List<String> classNames = new ArrayList<String>();
+		List<Double> probs = new ArrayList<Double>();
+		List<BoundingBox> boxes = new ArrayList<BoundingBox>();
+		for (double p : probabilities) {
+			classNames.add(className);
+			probs.add(p);
+			boxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		}
+		return new DetectedObjects(classNames, probs, boxes);
+	}
+
+	private Path collection(String name, int images) throws IOException {
+		Path dir = Files.createDirectory(tempDir.resolve(name));
+		for (int i = 0; i < images; i++) {
+			Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"),
+					dir.resolve(String.format("%s%02d.png", name, i)));
+		}
+		return dir;
+	}
+
+	/**
+	 * Zwei Detectors mit eigener Sammlung, eigenem Predictor und eigenen Messungen
+	 * laufen gleichzeitig. Die Barriere bricht nach einem Timeout, wenn die Läufe
+	 * nicht wirklich gleichzeitig stattfinden. Kein Ergebnis darf beim falschen
+	 * Lauf landen.
+	 */
+	@Test
+	public void testDetectAll_ConcurrentDetectors() throws Exception {
+		final int images = 4;
+		Path cats = collection("cat", images);
+		Path dogs = collection("dog", images);
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		when(catPredictor.predict(any(Image.class))).thenAnswer(invocation -> {
+			barrier.await(10, TimeUnit.SECONDS);
+			return objects("cat", 0.9);
+		});
+		when(dogPredictor.predict(any(Image.class))).thenAnswer(invocation -> {
+			barrier.await(10, TimeUnit.SECONDS);
+			return objects("dog", 0.9);
+		});
+		DetectorConfig base = DetectorConfig.builder().setSaveBoundingBoxImage(false).build();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try (Detector catDetector = new Detector(base.toBuilder().setCollectionPath(cats.toString()).build(), null,
+				catPredictor);
+				Detector dogDetector = new Detector(base.toBuilder().setCollectionPath(dogs.toString()).build(), null,
+						dogPredictor)) {
+			Future<Result[]> catResults = executor.submit(() -> catDetector.detectAll());
+			Future<Result[]> dogResults = executor.submit(() -> dogDetector.detectAll());
+			for (Result r : catResults.get(30, TimeUnit.SECONDS)) {
+				assertTrue(r.getFilename().startsWith("cat"), r.getFilename());
+				assertEquals("cat", r.getClassName(0));
+			}
+			for (Result r : dogResults.get(30, TimeUnit.SECONDS)) {
+				assertTrue(r.getFilename().startsWith("dog"), r.getFilename());
+				assertEquals("dog", r.getClassName(0));
+			}
+			assertEquals(images, catDetector.getMetrics().getHistogram(RunMetrics.PREDICT).getCount());
+			assertEquals(images, dogDetector.getMetrics().getHistogram(RunMetrics.PREDICT).getCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Zwei Detectors teilen sich ein Modell, jeder mit eigenem Predictor und
+	 * eigenem Threshold. close() schließt nur den eigenen Predictor.
+	 */
+	@Test
+	public void testSharedModel() throws Exception {
+		Path dir = collection("img", 1);
+		when(modelMock.newPredictor()).thenReturn(catPredictor).thenReturn(dogPredictor);
+		when(catPredictor.predict(any(Image.class))).thenReturn(objects("cat", 0.4, 0.8));
+		when(dogPredictor.predict(any(Image.class))).thenReturn(objects("cat", 0.4, 0.8));
+		DetectorConfig low = DetectorConfig.builder().setCollectionPath(dir.toString())
+				.setSaveBoundingBoxImage(false).setThreshold(0.3f).build();
+		DetectorConfig high = low.toBuilder().setThreshold(0.7f).build();
+		Detector lowDetector = new Detector(low, modelMock);
+		Detector highDetector = new Detector(high, modelMock);
+		assertEquals(2, lowDetector.detect("img00.png").getNumberOfObjects());
+		assertEquals(1, highDetector.detect("img00.png").getNumberOfObjects());
+
+		lowDetector.close();
+		verify(catPredictor).close();
+		verify(dogPredictor, never()).close();
+		highDetector.close();
+		verify(dogPredictor).close();
+		verify(modelMock, never()).close();
+		assertNull(lowDetector.getPredictor());
+	}
+
+	/**
+	 * Drei gleiche weiße Bilder und ein schwarzes: nur zwei Bilder werden
+	 * analysiert, die Duplikate bekommen die Objekte mit eigenem Dateinamen.
+	 */
+	@Test
+	public void testDetectAll_Dedup() throws Exception {
+		Path dir = collection("white", 3);
+		ImageIO.write(new BufferedImage(32, 16, BufferedImage.TYPE_INT_RGB), "png",
+				dir.resolve("black.png").toFile());
+		when(catPredictor.predict(any(Image.class))).thenReturn(objects("cat", 0.9));
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString())
+				.setSaveBoundingBoxImage(false).setDedupDistance(0).build();
+		try (Detector detector = new Detector(config, null, catPredictor)) {
+			Result[] results = detector.detectAll();
+			assertEquals(4, results.length);
+			Set<String> names = new HashSet<String>();
+			for (Result r : results) {
+				names.add(r.getFilename());
+				assertEquals("cat", r.getClassName(0));
+				assertEquals(r.getFilename().equals("black.png") ? 32 : 16, r.getImgWidth());
+			}
+			assertEquals(4, names.size());
+			verify(catPredictor, times(2)).predict(any(Image.class));
+			assertEquals(2, detector.getMetrics().getDuplicates());
+			assertEquals(0.5, detector.getMetrics().getSkippedInferenceRatio(), 1e-9);
+		}
+	}
+
+	/**
+	 * Auch Duplikate innerhalb desselben Batches werden nur einmal analysiert,
+	 * von fünf Bildern gehen nur das weiße und das schwarze in den Batch.
+	 */
+	@Test
+	public void testDetectAll_DedupBatch() throws Exception {
+		Path dir = collection("white", 4);
+		ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "png", dir.resolve("black.png").toFile());
+		when(catPredictor.batchPredict(anyList())).thenAnswer(invocation -> {
+			List<DetectedObjects> batch = new ArrayList<DetectedObjects>();
+			for (int i = 0; i < invocation.<List<?>>getArgument(0).size(); i++) {
+				batch.add(objects("cat", 0.9));
+			}
+			return batch;
+		});
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString())
+				.setSaveBoundingBoxImage(false).setDedupDistance(2).setBatchSize(5).build();
+		try (Detector detector = new Detector(config, null, catPredictor)) {
+			assertEquals(5, detector.detectAll().length);
+			verify(catPredictor).batchPredict(argThat(l -> l.size() == 2));
+			verify(catPredictor, never()).predict(any(Image.class));
+			assertEquals(3, detector.getMetrics().getDuplicates());
+		}
+	}
+
+	/**
+	 * Ein Bild, das größer als eine Kachel ist, wird in Kacheln analysiert, auch
+	 * im Batch-Betrieb. Breite und Höhe im Ergebnis sind die des ganzen Bildes.
+	 */
+	@Test
+	public void testDetectAll_Tiling() throws Exception {
+		Path dir = Files.createDirectory(tempDir.resolve("tiles"));
+		ImageIO.write(new BufferedImage(256, 128, BufferedImage.TYPE_INT_RGB), "png", dir.resolve("big.png").toFile());
+		when(catPredictor.batchPredict(anyList())).thenReturn(
+				Arrays.asList(objects("cat"), objects("cat"), objects("cat"), objects("cat", 0.9)));
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString())
+				.setSaveBoundingBoxImage(false).setBatchSize(4).setTiling(128, 16, 512).build();
+		try (Detector detector = new Detector(config, null, catPredictor)) {
+			Result[] results = detector.detectAll();
+			assertEquals(1, results.length);
+			assertEquals(256, results[0].getImgWidth());
+			assertEquals(1, results[0].getNumberOfObjects());
+			// 3 Kacheln und das ganze Bild
+			verify(catPredictor).batchPredict(argThat(l -> l.size() == 4));
+		}
+	}
+
+	/**
+	 * Bei eingeschalteten Kacheln werden nur große Bilder geteilt. Die kleinen
+	 * Bilder eines Batches werden weiterhin gemeinsam analysiert.
+	 */
+	@Test
+	public void testDetectAll_TilingMixed() throws Exception {
+		Path dir = Files.createDirectory(tempDir.resolve("mixed"));
+		ImageIO.write(new BufferedImage(256, 128, BufferedImage.TYPE_INT_RGB), "png", dir.resolve("a.png").toFile());
+		for (String name : Arrays.asList("b.png", "c.png")) {
+			Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"), dir.resolve(name));
+		}
+		when(catPredictor.batchPredict(anyList())).thenAnswer(invocation -> {
+			List<DetectedObjects> batch = new ArrayList<DetectedObjects>();
+			for (int i = 0; i < invocation.<List<?>>getArgument(0).size(); i++) {
+				batch.add(objects("cat", 0.9));
+			}
+			return batch;
+		});
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString())
+				.setSaveBoundingBoxImage(false).setBatchSize(4).setTiling(128, 16, 512).build();
+		try (Detector detector = new Detector(config, null, catPredictor)) {
+			Result[] results = detector.detectAll();
+			assertEquals(3, results.length);
+			assertEquals(256, results[0].getImgWidth());
+			assertEquals(16, results[1].getImgWidth());
+			// 3 Kacheln und das ganze Bild, dann die beiden kleinen Bilder
+			verify(catPredictor).batchPredict(argThat(l -> l.size() == 4));
+			verify(catPredictor).batchPredict(argThat(l -> l.size() == 2));
+			verify(catPredictor, never()).predict(any(Image.class));
+		}
+	}
+
+	/**
+	 * Scheitert der Empfänger, laufen keine Worker mehr, wenn der Pool die
+	 * Predictors schließt. Der Predictor wartet aktiv, wie ein nativer
+	 * predict()-Aufruf lässt er sich nicht unterbrechen.
+	 */
+	@Test
+	public void testDetectAll_ParallelConsumerFails() throws Exception {
+		Path dir = collection("fail", 8);
+		AtomicInteger running = new AtomicInteger();
+		AtomicBoolean closedWhileRunning = new AtomicBoolean();
+		when(modelMock.newPredictor()).thenReturn(catPredictor).thenReturn(dogPredictor);
+		for (Predictor<Image, DetectedObjects> p : Arrays.asList(catPredictor, dogPredictor)) {
+			when(p.predict(any(Image.class))).thenAnswer(invocation -> {
+				running.incrementAndGet();
+				long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+				while (System.nanoTime() < end) {
+					// aktiv warten
+				}
+				running.decrementAndGet();
+				return objects("cat", 0.9);
+			});
+			doAnswer(invocation -> {
+				if (running.get() > 0) {
+					closedWhileRunning.set(true);
+				}
+				return null;
+			}).when(p).close();
+		}
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString())
+				.setSaveBoundingBoxImage(false).setWorkers(2).build();
+		try (Detector detector = new Detector(config, modelMock, null)) {
+			assertThrows(IOException.class, () -> detector.detectAll(r -> {
+				throw new IOException("Exporter kaputt");
+			}));
+		}
+		assertFalse(closedWhileRunning.get());
+		verify(catPredictor).close();
+	}
+
+	/**
+	 * Gleichnamige Bilder in verschiedenen Unterverzeichnissen bekommen eigene
+	 * Bounding-Box-Bilder.
+	 */
+	@Test
+	public void testDetectAll_RecursiveBoundingBoxes() throws Exception {
+		Path dir = Files.createDirectory(tempDir.resolve("nested"));
+		for (String sub : Arrays.asList("a", "b")) {
+			Files.createDirectory(dir.resolve(sub));
+			Files.copy(Paths.get("src/test/resources/collection1/white16x16.png"), dir.resolve(sub + "/IMG_1.png"));
+		}
+		Path boxes = tempDir.resolve("boxes");
+		when(catPredictor.predict(any(Image.class))).thenReturn(objects("cat", 0.9));
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath(dir.toString())
+				.setBoundingBoxesPath(boxes.toString()).setRecursive(true).build();
+		try (Detector detector = new Detector(config, null, catPredictor)) {
+			assertEquals(2, detector.detectAll().length);
+		}
+		assertTrue(Files.exists(boxes.resolve("a/IMG_1.png.boxes.png")));
+		assertTrue(Files.exists(boxes.resolve("b/IMG_1.png.boxes.png")));
+	}
+
+	/**
+	 * Ein übergebener Predictor gehört dem Aufrufer und bleibt offen.
+	 */
+	@Test
+	public void testClose_BorrowedPredictor() throws IOException {
+		Detector detector = new Detector(DetectorConfig.builder().build(), modelMock, catPredictor);
+		detector.close();
+		verify(catPredictor, never()).close();
+		verify(modelMock, never()).close();
+	}
+
+	/**
+	 * Der Fingerabdruck hängt nur von der Konfiguration des Detectors ab.
+	 */
+	@Test
+	public void testModelFingerprint() {
+		DetectionFilter filter = new DetectionFilter();
+		filter.setAllow(Arrays.asList("cat"));
+		DetectorConfig config = DetectorConfig.builder().setThreshold(0.6f).build();
+		assertEquals("none/null/0.6", new Detector(config).modelFingerprint());
+		assertEquals("none/null/0.6/filter allow=cat",
+				new Detector(config.toBuilder().setFilter(filter).build()).modelFingerprint());
+		assertEquals("none/null/0.6", new Detector(config.toBuilder().setDedupDistance(0).build()).modelFingerprint());
+		assertEquals("none/null/0.6/dedup=4",
+				new Detector(config.toBuilder().setDedupDistance(4).build()).modelFingerprint());
+		assertEquals("none/null/0.6/model=ai.djl.pytorch:ssd",
+				new Detector(config.toBuilder().setModelArtifact("ai.djl.pytorch:ssd").build()).modelFingerprint());
+		assertEquals("none/null/0.6/decode=512",
+				new Detector(config.toBuilder().setDecodeMinEdge(512).build()).modelFingerprint());
+	}
+}
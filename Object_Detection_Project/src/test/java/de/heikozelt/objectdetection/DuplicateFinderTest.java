@@ -0,0 +1,160 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+
+/**
+ * JUnit-Tests für Klasse DuplicateFinder
+ * @author Heiko Zelt
+ */
+public class DuplicateFinderTest {
+
+	/**
+	 * Helligkeitsverlauf von links nach rechts bzw. von rechts nach links, dazu
+	 * ein Rauschen, das sich mit seed ändert
+	 */
+	private static Image gradient(int width, int height, boolean leftToRight, int seed) {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int gray = (leftToRight ? x : width - 1 - x) * 200 / width + ((x * 31 + y * 17 + seed) % 5);
+				img.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+			}
+		}
+		return ImageFactory.getInstance().fromImage(img);
+	}
+
+	@Test
+	public void testExactDuplicate() {
+		DuplicateFinder<String> finder = new DuplicateFinder<String>(0);
+		finder.add(DuplicateFinder.key(gradient(64, 48, true, 0)), "a.png");
+		assertEquals("a.png", finder.find(DuplicateFinder.key(gradient(64, 48, true, 0))));
+		// ein anderes Rauschen ist bei Abstand 0 kein Duplikat
+		assertNull(finder.find(DuplicateFinder.key(gradient(64, 48, true, 1))));
+		assertEquals(1, finder.size());
+	}
+
+	/**
+	 * Ein leicht verrauschtes Bild hat denselben oder einen sehr ähnlichen dHash,
+	 * ein gespiegelter Verlauf einen ganz anderen.
+	 */
+	@Test
+	public void testNearDuplicate() {
+		DuplicateFinder.Key a = DuplicateFinder.key(gradient(640, 480, true, 0));
+		DuplicateFinder.Key b = DuplicateFinder.key(gradient(640, 480, true, 3));
+		DuplicateFinder.Key c = DuplicateFinder.key(gradient(640, 480, false, 0));
+		assertTrue(Long.bitCount(a.getDHash() ^ b.getDHash()) <= 4);
+		assertTrue(Long.bitCount(a.getDHash() ^ c.getDHash()) > 16);
+		DuplicateFinder<String> finder = new DuplicateFinder<String>(4);
+		finder.add(a, "a.png");
+		assertEquals("a.png", finder.find(b));
+		assertNull(finder.find(c));
+	}
+
+	/**
+	 * Die Suche über die Blöcke findet jeden Hash bis zum maximalen Abstand, auch
+	 * wenn die unterschiedlichen Bits über alle Blöcke verteilt sind, und den
+	 * nächstgelegenen von mehreren Kandidaten.
+	 */
+	@Test
+	public void testDistance() {
+		DuplicateFinder<String> finder = new DuplicateFinder<String>(5);
+		finder.add(new DuplicateFinder.Key(new byte[] { 0 }, 0L, 128, 64, 48), "zero");
+		long fiveBits = (1L << 0) | (1L << 13) | (1L << 26) | (1L << 39) | (1L << 63);
+		assertEquals("zero", finder.find(new DuplicateFinder.Key(new byte[] { 1 }, fiveBits, 128, 64, 48)));
+		assertNull(finder.find(new DuplicateFinder.Key(new byte[] { 2 }, fiveBits | (1L << 50), 128, 64, 48)));
+		finder.add(new DuplicateFinder.Key(new byte[] { 3 }, fiveBits | (1L << 50), 128, 64, 48), "six");
+		assertEquals("six",
+				finder.find(new DuplicateFinder.Key(new byte[] { 4 }, fiveBits | (1L << 50) | 2L, 128, 64, 48)));
+	}
+
+	/**
+	 * Ein weißes und ein schwarzes Bild haben denselben dHash, aber eine ganz
+	 * andere Helligkeit.
+	 */
+	@Test
+	public void testBrightness() {
+		BufferedImage white = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 16; y++) {
+			for (int x = 0; x < 16; x++) {
+				white.setRGB(x, y, 0xffffff);
+			}
+		}
+		DuplicateFinder.Key w = DuplicateFinder.key(ImageFactory.getInstance().fromImage(white));
+		DuplicateFinder.Key b = DuplicateFinder.key(
+				ImageFactory.getInstance().fromImage(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB)));
+		assertEquals(w.getDHash(), b.getDHash());
+		DuplicateFinder<String> finder = new DuplicateFinder<String>(DuplicateFinder.MAX_DISTANCE);
+		finder.add(w, "white.png");
+		assertNull(finder.find(b));
+	}
+
+	/**
+	 * Derselbe Verlauf als 16:9, 4:3 und Hochformat hat denselben dHash, ist aber
+	 * kein Duplikat, die relativen Bounding Boxes würden nicht passen. Eine
+	 * andere Auflösung mit demselben Seitenverhältnis ist ein Duplikat.
+	 */
+	@Test
+	public void testAspectRatio() {
+		DuplicateFinder.Key wide = DuplicateFinder.key(gradient(640, 360, true, 0));
+		DuplicateFinder.Key standard = DuplicateFinder.key(gradient(640, 480, true, 0));
+		DuplicateFinder.Key portrait = DuplicateFinder.key(gradient(360, 640, true, 0));
+		DuplicateFinder.Key small = DuplicateFinder.key(gradient(320, 180, true, 0));
+		assertTrue(Long.bitCount(wide.getDHash() ^ standard.getDHash()) <= 4);
+		DuplicateFinder<String> finder = new DuplicateFinder<String>(4);
+		finder.add(wide, "wide.png");
+		assertNull(finder.find(standard));
+		assertNull(finder.find(portrait));
+		assertEquals("wide.png", finder.find(small));
+		assertTrue(DuplicateFinder.sameAspectRatio(1920, 1080, 1280, 720));
+		assertTrue(DuplicateFinder.sameAspectRatio(1920, 1080, 1921, 1080));
+		assertFalse(DuplicateFinder.sameAspectRatio(1920, 1080, 1440, 1080));
+	}
+
+	@Test
+	public void testKey_DifferentSize() {
+		DuplicateFinder.Key small = DuplicateFinder.key(gradient(8, 4, true, 0));
+		DuplicateFinder.Key large = DuplicateFinder.key(gradient(16, 8, true, 0));
+		assertNotEquals(small.digest, large.digest);
+	}
+
+	/**
+	 * Bei voller Kapazität wird der am längsten nicht gefundene Repräsentant
+	 * entfernt, aus dem exakten Index und aus den Blöcken.
+	 */
+	@Test
+	public void testCapacity() {
+		DuplicateFinder<String> finder = new DuplicateFinder<String>(2, 2);
+		DuplicateFinder.Key a = new DuplicateFinder.Key(new byte[] { 0 }, 0L, 128, 64, 48);
+		DuplicateFinder.Key b = new DuplicateFinder.Key(new byte[] { 1 }, -1L, 128, 64, 48);
+		DuplicateFinder.Key c = new DuplicateFinder.Key(new byte[] { 2 }, 0x00ff00ff00ff00ffL, 128, 64, 48);
+		finder.add(a, "a");
+		finder.add(b, "b");
+		// ähnliches Bild zu a, a ist danach zuletzt benutzt
+		assertEquals("a", finder.find(new DuplicateFinder.Key(new byte[] { 9 }, 1L, 128, 64, 48)));
+		finder.add(c, "c");
+		assertEquals(2, finder.size());
+		assertEquals("a", finder.find(a));
+		assertNull(finder.find(b));
+		assertNull(finder.find(new DuplicateFinder.Key(new byte[] { 8 }, -2L, 128, 64, 48)));
+		assertEquals("c", finder.find(c));
+	}
+
+	@Test
+	public void testInvalidDistance() {
+		assertThrows(IllegalArgumentException.class, () -> new DuplicateFinder<String>(-1));
+		assertThrows(IllegalArgumentException.class, () -> new DuplicateFinder<String>(DuplicateFinder.MAX_DISTANCE + 1));
+		assertThrows(IllegalArgumentException.class, () -> new DuplicateFinder<String>(0, 0));
+	}
+}
@@ -0,0 +1,63 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JUnit-Tests für Klasse ErrorReport
+ * @author Heiko Zelt
+ */
+public class ErrorReportTest {
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * Einträge werden in der Reihenfolge des Auftretens gespeichert, Tabulatoren
+	 * und Zeilenumbrüche in der Meldung werden ersetzt.
+	 */
+	@Test
+	public void testWrite() throws IOException {
+		ErrorReport report = new ErrorReport();
+		report.record("a.png", new IOException("Unsupported\timage\ntype"));
+		report.record("sub/b.png", new NoSuchFileException("sub/b.png"));
+		report.record("c.png", new IllegalStateException());
+		assertEquals(3, report.getCount());
+		assertEquals("sub/b.png", report.getFailures().get(1).getFileName());
+
+		Path file = tempDir.resolve("export/result.errors.tsv");
+		report.write(file);
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertEquals("a.png\tjava.io.IOException\tUnsupported image type", lines.get(0));
+		assertEquals("sub/b.png\tjava.nio.file.NoSuchFileException\tsub/b.png", lines.get(1));
+		assertEquals("c.png\tjava.lang.IllegalStateException\t", lines.get(2));
+	}
+
+	/**
+	 * Ein leerer Bericht überschreibt einen alten.
+	 */
+	@Test
+	public void testWriteEmpty() throws IOException {
+		Path file = tempDir.resolve("result.errors.tsv");
+		Files.write(file, "alt.png\tjava.io.IOException\talt\n".getBytes(StandardCharsets.UTF_8));
+		new ErrorReport().write(file);
+		assertEquals(0, Files.size(file));
+	}
+
+	@Test
+	public void testFilename() {
+		assertEquals("export/result.errors.tsv", ErrorReport.filename("export/result.xml"));
+		assertEquals("export/result.errors.tsv", ErrorReport.filename("export/result.bin"));
+		assertEquals("export/result_.errors.tsv", ErrorReport.filename("export/result_{t}.xml"));
+	}
+}
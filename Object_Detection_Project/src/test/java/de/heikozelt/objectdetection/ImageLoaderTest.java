@@ -0,0 +1,153 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JUnit-Tests für Klasse ImageLoader
+ * @author Heiko Zelt
+ */
+public class ImageLoaderTest {
+
+	@TempDir
+	Path tempDir;
+
+	private byte[] content(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		return bytes;
+	}
+
+	private Path file(String name, int size) throws IOException {
+		return Files.write(tempDir.resolve(name), content(size));
+	}
+
+	private byte[] bytes(ImageLoader.ImageData data) throws IOException {
+		return data.stream().readAllBytes();
+	}
+
+	/**
+	 * Kleine Datei über den Pool, der Buffer wird nach close() wiederverwendet.
+	 */
+	@Test
+	public void testPooledBuffer() throws IOException {
+		Path a = file("a.png", 1000);
+		Path b = file("b.png", 3000);
+		try (ImageLoader loader = new ImageLoader()) {
+			ByteBuffer first;
+			try (ImageLoader.ImageData data = loader.load(a)) {
+				assertEquals(1000, data.size());
+				assertArrayEquals(content(1000), bytes(data));
+				first = data.buffer();
+				assertTrue(first.isDirect());
+				assertTrue(first.isReadOnly());
+			}
+			assertEquals(1, loader.getPooled());
+			try (ImageLoader.ImageData data = loader.load(b)) {
+				assertEquals(0, loader.getPooled());
+				assertArrayEquals(content(3000), bytes(data));
+			}
+			assertEquals(1, loader.getPooled());
+		}
+	}
+
+	/**
+	 * Große Datei wird memory-mapped und nicht in den Pool gelegt.
+	 */
+	@Test
+	public void testMemoryMapped() throws IOException {
+		Path a = file("a.png", 5000);
+		try (ImageLoader loader = new ImageLoader(4096, 0)) {
+			try (ImageLoader.ImageData data = loader.load(a)) {
+				assertArrayEquals(content(5000), bytes(data));
+				// zweimal lesbar, z.B. für Subsampling mit Rückfall auf ganzes Dekodieren
+				assertArrayEquals(content(5000), bytes(data));
+			}
+			assertEquals(0, loader.getPooled());
+		}
+	}
+
+	/**
+	 * Fall: Datei existiert nicht, auch nicht beim Vorlesen
+	 */
+	@Test
+	public void testMissingFile() throws IOException {
+		try (ImageLoader loader = new ImageLoader(ImageLoader.DEFAULT_MMAP_MIN_SIZE, 2)) {
+			Path missing = tempDir.resolve("missing.png");
+			assertThrows(NoSuchFileException.class, () -> loader.load(missing));
+			loader.prefetch(missing);
+			assertThrows(NoSuchFileException.class, () -> loader.load(missing));
+		}
+	}
+
+	/**
+	 * Eine fehlende Datei wird trotz eingestellter Wiederholungen nicht erneut
+	 * gelesen, es wird also auch nicht gewartet.
+	 */
+	@Test
+	public void testNoRetryForMissingFile() {
+		try (ImageLoader loader = new ImageLoader()) {
+			loader.setRetries(5, 10_000);
+			long t0 = System.nanoTime();
+			assertThrows(NoSuchFileException.class, () -> loader.load(tempDir.resolve("missing.png")));
+			assertTrue(System.nanoTime() - t0 < 5_000_000_000L);
+		}
+		assertFalse(ImageLoader.isTransient(new NoSuchFileException("a.png")));
+		assertFalse(ImageLoader.isTransient(new AccessDeniedException("a.png")));
+		assertTrue(ImageLoader.isTransient(new IOException("Input/output error")));
+	}
+
+	/**
+	 * Vorlesen liefert die Dateinamen in derselben Reihenfolge und die Inhalte
+	 * der Dateien.
+	 */
+	@Test
+	public void testPrefetching() throws IOException {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			names.add("img" + i + ".png");
+			file("img" + i + ".png", 100 + i);
+		}
+		try (ImageLoader loader = new ImageLoader(ImageLoader.DEFAULT_MMAP_MIN_SIZE, 3)) {
+			Iterator<String> it = loader.prefetching(names.iterator(), name -> tempDir.resolve(name));
+			for (int i = 0; i < 10; i++) {
+				assertTrue(it.hasNext());
+				String name = it.next();
+				assertEquals(names.get(i), name);
+				try (ImageLoader.ImageData data = loader.load(tempDir.resolve(name))) {
+					assertArrayEquals(content(100 + i), bytes(data));
+				}
+			}
+			assertFalse(it.hasNext());
+		}
+	}
+
+	/**
+	 * Ohne Vorlesen wird der Iterator unverändert geliefert.
+	 */
+	@Test
+	public void testNoPrefetching() {
+		try (ImageLoader loader = new ImageLoader()) {
+			Iterator<String> names = new ArrayList<String>().iterator();
+			assertTrue(names == loader.prefetching(names, name -> tempDir.resolve(name)));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit-Tests für Klasse LatencyHistogram
+ * @author Heiko Zelt
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getValueAtPercentile(99));
+		assertEquals(0.0, h.getMean());
+	}
+
+	/**
+	 * Kleine Werte werden exakt gezählt.
+	 */
+	@Test
+	public void testSmallValuesExact() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			h.record(i);
+		}
+		assertEquals(100, h.getCount());
+		assertEquals(50, h.getValueAtPercentile(50));
+		assertEquals(90, h.getValueAtPercentile(90));
+		assertEquals(99, h.getValueAtPercentile(99));
+		assertEquals(100, h.getMax());
+		assertEquals(50.5, h.getMean());
+	}
+
+	/**
+	 * 1 bis 1.000.000 Mikrosekunden: Perzentile mit weniger als 1,6% Fehler, ein
+	 * einzelner Ausreißer taucht im Maximum auf, nicht im p99.
+	 */
+	@Test
+	public void testPercentilesRelativeError() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (long i = 1; i <= 1_000_000; i++) {
+			h.record(i * 1000);
+		}
+		for (double p : new double[] { 50, 90, 99, 99.9 }) {
+			double expected = p / 100.0 * 1_000_000 * 1000;
+			double actual = h.getValueAtPercentile(p);
+			assertTrue(Math.abs(actual - expected) / expected < 1.0 / 64, "p" + p + "=" + actual);
+		}
+		h.record(60_000_000_000L);
+		assertEquals(60_000_000_000L, h.getMax());
+		assertTrue(h.getValueAtPercentile(99) < 1_000_000_000L);
+		assertEquals(60_000_000_000L, h.getValueAtPercentile(100));
+	}
+
+	/**
+	 * Jeder Wert liegt in seiner Klasse und die Klassen schließen lückenlos
+	 * aneinander an.
+	 */
+	@Test
+	public void testBuckets() {
+		for (long v : new long[] { 0, 1, 127, 128, 129, 255, 256, 1000, 123456789, Long.MAX_VALUE }) {
+			int b = LatencyHistogram.bucket(v);
+			assertTrue(v <= LatencyHistogram.highestValue(b), "value " + v);
+			if (b > 0) {
+				assertTrue(v > LatencyHistogram.highestValue(b - 1), "value " + v);
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * JUnit-Tests für Klasse MultiThresholdExporter
+ * @author Heiko Zelt
+ */
+public class MultiThresholdExporterTest {
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * Jede Datei muss genau dem Ergebnis entsprechen, das ein eigener Lauf mit
+	 * diesem Threshold liefern würde.
+	 */
+	@Test
+	public void testOneFilePerThreshold() throws IOException {
+		List<String> classNames = new ArrayList<String>();
+		List<Double> probabilities = new ArrayList<Double>();
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		for (int i = 1; i <= 9; i++) {
+			classNames.add("class" + i);
+			probabilities.add((double) (i / 10.0f));
+			boundingBoxes.add(new Rectangle(0.01d * i, 0.2d, 0.3d, 0.4d));
+		}
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boundingBoxes);
+		Result[] results = { new Result("img001.png", 100, 200, objects, 300) };
+
+		float[] thresholds = MultiThresholdExporter.parseThresholds("0.1, 0.2,0.3,0.4,0.5,0.6,0.7,0.8,0.9");
+		assertEquals(0.1f, MultiThresholdExporter.min(thresholds));
+		String pattern = tempDir.resolve("result{i}.xml").toString();
+		try (MultiThresholdExporter exporter = new MultiThresholdExporter(pattern, thresholds)) {
+			for (Result r : results) {
+				exporter.accept(r);
+			}
+		}
+		for (int i = 0; i < thresholds.length; i++) {
+			Path file = tempDir.resolve("result" + (i + 1) + ".xml");
+			String xml = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			Result[] expected = { results[0].filter(thresholds[i]) };
+			assertEquals(9 - i, expected[0].getObjects().getNumberOfObjects());
+			assertEquals(BatchJob.resultsAsXml(expected), xml);
+		}
+	}
+
+	@Test
+	public void testFilename() {
+		assertEquals("export/pytorch_result3.xml", MultiThresholdExporter.filename("export/pytorch_result{i}.xml", 2, 0.3f));
+		assertEquals("export/result_0.3.xml", MultiThresholdExporter.filename("export/result_{t}.xml", 2, 0.3f));
+		assertArrayEquals(new float[] { 0.5f, 0.25f }, MultiThresholdExporter.parseThresholds("0.5,0.25"));
+		assertThrows(IllegalArgumentException.class,
+				() -> new MultiThresholdExporter(tempDir.resolve("result.xml").toString(), new float[] { 0.1f, 0.2f }));
+	}
+}
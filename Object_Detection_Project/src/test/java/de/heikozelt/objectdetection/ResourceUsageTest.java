@@ -0,0 +1,115 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * JUnit-Tests für Klasse ResourceUsage
+ * @author Heiko Zelt
+ */
+public class ResourceUsageTest {
+	private static Logger logger = LogManager.getLogger(ResourceUsageTest.class);
+
+	/**
+	 * Anzahl Bilder im Dauertest, für einen langen Lauf z.B.
+	 * mvn test -Dtest=ResourceUsageTest -Dsoak.iterations=100000
+	 */
+	private static final int SOAK_ITERATIONS = Integer.getInteger("soak.iterations", 2000);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testStatusKiloBytes() {
+		List<String> status = Arrays.asList("Name:\tjava", "VmHWM:\t  230400 kB", "VmRSS:\t  204800 kB");
+		assertEquals(200L * 1024 * 1024, ResourceUsage.statusKiloBytes(status, "VmRSS:"));
+		assertEquals(225L * 1024 * 1024, ResourceUsage.statusKiloBytes(status, "VmHWM:"));
+		assertEquals(-1, ResourceUsage.statusKiloBytes(status, "VmSwap:"));
+	}
+
+	/**
+	 * Unter Linux sind RSS und offene Dateien bekannt, eine zusätzlich geöffnete
+	 * Datei wird gezählt.
+	 */
+	@Test
+	public void testCurrent() throws Exception {
+		assumeTrue(Files.isDirectory(Paths.get("/proc/self/fd")));
+		ResourceUsage before = ResourceUsage.current();
+		assertTrue(before.getRssBytes() > 0);
+		assertTrue(before.getPeakRssBytes() >= before.getRssBytes());
+		assertTrue(before.getHeapBytes() > 0);
+		try (FileChannel channel = FileChannel.open(Paths.get("src/test/resources/collection1/white16x16.png"))) {
+			assertTrue(channel.isOpen());
+			assertEquals(before.getOpenFiles() + 1, ResourceUsage.current().getOpenFiles());
+		}
+		assertEquals(before.getOpenFiles(), ResourceUsage.current().getOpenFiles());
+	}
+
+	/**
+	 * Dauertest: dasselbe Bild wird immer wieder gelesen, mit einem Stub
+	 * analysiert und mit Bounding Boxes gespeichert. Nach dem Aufwärmen dürfen
+	 * weder die offenen Dateien noch RSS und direkte Buffer nennenswert wachsen.
+	 */
+	@Test
+	public void testSoak() throws Exception {
+		assumeTrue(Files.isDirectory(Paths.get("/proc/self/fd")));
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.9);
+		List<BoundingBox> boxes = new ArrayList<BoundingBox>();
+		boxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boxes);
+		// stubOnly: der Mock merkt sich die Aufrufe nicht, sonst wächst der Heap
+		@SuppressWarnings("unchecked")
+		Predictor<Image, DetectedObjects> stub = mock(Predictor.class, withSettings().stubOnly());
+		when(stub.predict(any(Image.class))).thenReturn(objects);
+
+		DetectorConfig config = DetectorConfig.builder().setCollectionPath("src/test/resources/collection1")
+				.setBoundingBoxesPath(tempDir.toString()).build();
+		try (Detector detector = new Detector(config, null, stub)) {
+			int warmUp = Math.max(100, SOAK_ITERATIONS / 10);
+			for (int i = 0; i < warmUp; i++) {
+				detector.detect("white16x16.png");
+			}
+			System.gc();
+			ResourceUsage before = ResourceUsage.current();
+			for (int i = 0; i < SOAK_ITERATIONS; i++) {
+				detector.detect("white16x16.png");
+			}
+			System.gc();
+			ResourceUsage after = ResourceUsage.current();
+			logger.info("soak " + SOAK_ITERATIONS + " images, before: " + before);
+			logger.info("soak " + SOAK_ITERATIONS + " images, after:  " + after);
+			// andere Teile der JVM öffnen und schließen nebenbei einzelne Dateien,
+			// ein Leck wüchse mit der Anzahl Bilder
+			assertTrue(after.getOpenFiles() <= before.getOpenFiles() + 2, "offene Dateien");
+			assertTrue(after.getDirectBytes() <= before.getDirectBytes() + 1024 * 1024, "direkte Buffer");
+			assertTrue(after.getRssBytes() < before.getRssBytes() + 64L * 1024 * 1024, "RSS");
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+/**
+ * JUnit-Tests für Klasse ResultMerger
+ * @author Heiko Zelt
+ */
+public class ResultMergerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private Result result(String fileName, long predictTime) {
+		return new Result(fileName, 640, 480, new int[] { ClassNameTable.id("cat") },
+				new float[] { 0.1f, 0.2f, 0.3f, 0.4f }, new float[] { 0.75f }, predictTime, 1618387200000L);
+	}
+
+	private Path write(String name, String format, Result... results) throws IOException {
+		Path path = tempDir.resolve(name);
+		try (ResultExporter exporter = ResultExporter.open(path, format)) {
+			for (Result r : results) {
+				exporter.accept(r);
+			}
+		}
+		return path;
+	}
+
+	private Document parse(Path path) throws Exception {
+		try (InputStream in = Files.newInputStream(path)) {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+		}
+	}
+
+	/**
+	 * Zwei Teil-Dateien in beliebiger Reihenfolge ergeben ein gültiges, nach
+	 * Dateinamen sortiertes Dokument. Die Elemente werden unverändert
+	 * übernommen.
+	 */
+	@Test
+	public void testMergeXml() throws Exception {
+		Result a = result("a&b.png", 10);
+		Result b = result("b.png", 20);
+		Result c = result("sub/c.png", 30);
+		Path shard1 = write("result.shard1.xml", ResultExporter.FORMAT_XML, c, a);
+		Path shard2 = write("result.shard2.xml", ResultExporter.FORMAT_XML, b);
+		Path merged = tempDir.resolve("merged/result.xml");
+
+		assertEquals(3, ResultMerger.merge(Arrays.asList(shard2, shard1), merged));
+		String expected = StreamingXmlExporter.HEADER + a.asXml() + b.asXml() + c.asXml()
+				+ StreamingXmlExporter.FOOTER;
+		assertEquals(expected, new String(Files.readAllBytes(merged), StandardCharsets.UTF_8));
+		NodeList files = parse(merged).getElementsByTagName("file");
+		assertEquals(3, files.getLength());
+		assertEquals("a&b.png", files.item(0).getTextContent());
+
+		// andere Reihenfolge der Teil-Dateien, gleiches Ergebnis
+		Path merged2 = tempDir.resolve("merged/result2.xml");
+		ResultMerger.merge(Arrays.asList(shard1, shard2), merged2);
+		assertEquals(expected, new String(Files.readAllBytes(merged2), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Ein abgebrochener Teil-Lauf: das letzte Element ist unvollständig und wird
+	 * weggelassen, doppelte Bilder werden nur einmal übernommen.
+	 */
+	@Test
+	public void testMergeXmlTruncatedAndDuplicate() throws Exception {
+		Path shard1 = write("result.shard1.xml", ResultExporter.FORMAT_XML, result("a.png", 10));
+		Path shard2 = tempDir.resolve("result.shard2.xml");
+		String truncated = StreamingXmlExporter.HEADER + result("a.png", 99).asXml() + result("b.png", 20).asXml()
+				+ "  <gmaf-data>\n    <file>c.png</file>\n";
+		Files.write(shard2, truncated.getBytes(StandardCharsets.UTF_8));
+		Path merged = tempDir.resolve("result.xml");
+
+		assertEquals(2, ResultMerger.merge(Arrays.asList(shard1, shard2), merged));
+		NodeList files = parse(merged).getElementsByTagName("file");
+		assertEquals(2, files.getLength());
+		assertEquals("a.png", files.item(0).getTextContent());
+		assertEquals("b.png", files.item(1).getTextContent());
+	}
+
+	@Test
+	public void testMergeBinary() throws Exception {
+		Path shard1 = write("result.shard1.bin", ResultExporter.FORMAT_BINARY, result("c.png", 30),
+				result("a.png", 10));
+		Path shard2 = write("result.shard2.bin", ResultExporter.FORMAT_BINARY, result("b.png", 20));
+		Path merged = tempDir.resolve("result.bin");
+
+		assertEquals(3, ResultMerger.merge(Arrays.asList(shard1, shard2), merged));
+		List<Result> results = BinaryResultReader.readAll(merged);
+		assertEquals("a.png", results.get(0).getFilename());
+		assertEquals("b.png", results.get(1).getFilename());
+		assertEquals("c.png", results.get(2).getFilename());
+		assertEquals(20, results.get(1).getPredictTime());
+		assertEquals(result("c.png", 30).asXml(), results.get(2).asXml());
+	}
+
+	@Test
+	public void testMixedFormats() throws Exception {
+		Path shard1 = write("result.shard1.bin", ResultExporter.FORMAT_BINARY, result("a.png", 10));
+		Path shard2 = write("result.shard2.xml", ResultExporter.FORMAT_XML, result("b.png", 20));
+		assertThrows(IOException.class,
+				() -> ResultMerger.merge(Arrays.asList(shard1, shard2), tempDir.resolve("result.xml")));
+		assertThrows(IllegalArgumentException.class,
+				() -> ResultMerger.merge(Arrays.asList(shard1), shard1));
+	}
+
+	/**
+	 * Anzahlen werden addiert, die Laufzeit ist die des langsamsten Teils, der
+	 * Mittelwert wird nach Anzahl gewichtet.
+	 */
+	@Test
+	public void testMergeMetrics() throws IOException {
+		Path shard1 = write("result.shard1.xml", ResultExporter.FORMAT_XML);
+		Path shard2 = write("result.shard2.xml", ResultExporter.FORMAT_XML);
+		Path shard3 = write("result.shard3.xml", ResultExporter.FORMAT_XML);
+		RunMetrics m1 = new RunMetrics();
+		m1.record(RunMetrics.PREDICT, 1000);
+		m1.imageDone();
+		m1.stop();
+		m1.writeJson(tempDir.resolve("result.shard1.metrics.json"));
+		RunMetrics m2 = new RunMetrics();
+		m2.record(RunMetrics.PREDICT, 4000);
+		m2.record(RunMetrics.PREDICT, 4000);
+		m2.record(RunMetrics.PREDICT, 4000);
+		m2.imageDone();
+		m2.imageDone();
+		m2.imageDone();
+		m2.stop();
+		m2.writeJson(tempDir.resolve("result.shard2.metrics.json"));
+
+		String json = ResultMerger.mergeMetrics(Arrays.asList(shard1, shard2, shard3));
+		assertTrue(json.contains("\"shards\": 2,"), json);
+		assertTrue(json.contains("\"images\": 4,"), json);
+		assertTrue(json.contains("\"predict\": {\"count\": 4, \"mean_ns\": 3250, \"max_ns\": 4000}"), json);
+		assertTrue(json.contains("\"read\": {\"count\": 0, \"mean_ns\": 0, \"max_ns\": 0}"), json);
+
+		assertNull(ResultMerger.mergeMetrics(Arrays.asList(shard3)));
+	}
+}
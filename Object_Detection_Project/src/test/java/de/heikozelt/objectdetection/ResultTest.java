@@ -1,7 +1,12 @@
 package de.heikozelt.objectdetection;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -111,4 +116,146 @@ public class ResultTest {
 		logger.debug(xml);
 		assertTrue(pattern.matcher(xml).matches());
 	}
+
+	/**
+	 * Die Objekte werden in Arrays kopiert. Gleiche Klassennamen haben dieselbe
+	 * Nummer, getObjects() liefert wieder DJL-Objekte mit denselben Werten.
+	 */
+	@Test
+	public void testArrays() {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		classNames.add("dog");
+		classNames.add("cat");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add((double) 0.9f);
+		probabilities.add((double) 0.3f);
+		probabilities.add((double) 0.7f);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1f, 0.2f, 0.3f, 0.4f));
+		boundingBoxes.add(new Rectangle(0.2f, 0.2f, 0.3f, 0.4f));
+		boundingBoxes.add(new Rectangle(0.3f, 0.25f, 0.5f, 0.125f));
+		Result r = new Result("img001.png", 100, 200, new DetectedObjects(classNames, probabilities, boundingBoxes),
+				300);
+		assertEquals(3, r.getNumberOfObjects());
+		assertEquals("dog", r.getClassName(1));
+		assertEquals(r.getClassId(0), r.getClassId(2));
+		assertEquals(ClassNameTable.id("cat"), r.getClassId(0));
+		assertEquals(0.7f, r.getProbability(2));
+		assertEquals(0.3f, r.getX(2));
+		assertEquals(0.25f, r.getY(2));
+		assertEquals(0.5f, r.getBoxWidth(2));
+		assertEquals(0.125f, r.getBoxHeight(2));
+
+		DetectedObjects objects = r.getObjects();
+		assertEquals(3, objects.getNumberOfObjects());
+		DetectedObject obj = objects.item(2);
+		assertEquals("cat", obj.getClassName());
+		assertEquals((double) 0.7f, obj.getProbability());
+		assertEquals(0.125f, obj.getBoundingBox().getBounds().getHeight());
+		assertEquals(r.asXml(), new Result("img001.png", 100, 200, objects, 300, r.getDate()).asXml());
+	}
+
+	/**
+	 * Testet das Filtern nach Wahrscheinlichkeit. Der Vergleich erfolgt mit
+	 * float-Genauigkeit wie im Translator.
+	 */
+	@Test
+	public void testFilter() {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		classNames.add("dog");
+		classNames.add("bird");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add((double) 0.9f);
+		probabilities.add((double) 0.3f);
+		probabilities.add((double) 0.1f);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		boundingBoxes.add(new Rectangle(0.2d, 0.2d, 0.3d, 0.4d));
+		boundingBoxes.add(new Rectangle(0.3d, 0.2d, 0.3d, 0.4d));
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boundingBoxes);
+		Result r = new Result("img001.png", 100, 200, objects, 300);
+
+		assertSame(r, r.filter(0.1f));
+		Result r3 = r.filter(0.3f);
+		assertEquals(2, r3.getObjects().getNumberOfObjects());
+		assertEquals("dog", ((DetectedObject) r3.getObjects().item(1)).getClassName());
+		assertEquals(300, r3.getPredictTime());
+		assertEquals(r.asXml().replace("      <object>\n        <term>bird</term>\n"
+				+ "        <bounding-box>\n          <x>30</x>\n          <y>40</y>\n          <width>30</width>\n"
+				+ "          <height>80</height>\n        </bounding-box>\n"
+				+ "        <probability>" + (double) 0.1f + "</probability>\n      </object>\n", ""), r3.asXml());
+		assertEquals(1, r.filter(0.31f).getObjects().getNumberOfObjects());
+		assertEquals(0, r.filter(0.95f).getObjects().getNumberOfObjects());
+	}
+
+	/**
+	 * Sonderzeichen in Dateiname und Klassenname werden maskiert.
+	 */
+	@Test
+	public void testEscape() {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("salt & pepper");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.5);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boundingBoxes);
+		Result r = new Result("<Tom's \"Bild\">.png", 100, 200, objects, 300);
+		String xml = r.asXml();
+		assertTrue(xml.contains("<file>&lt;Tom&apos;s &quot;Bild&quot;&gt;.png</file>"), xml);
+		assertTrue(xml.contains("<term>salt &amp; pepper</term>"), xml);
+	}
+
+	/**
+	 * Das Datum wird wie mit Date.toString() formatiert, auch wenn der Wert aus
+	 * dem Zwischenspeicher kommt.
+	 */
+	@Test
+	public void testFormatDate() {
+		long millis = 1618401600123L;
+		assertEquals(new Date(millis).toString(), Result.formatDate(millis));
+		assertEquals(new Date(millis).toString(), Result.formatDate(millis + 1));
+		assertEquals(new Date(millis + 1000).toString(), Result.formatDate(millis + 1000));
+		assertEquals(new Date(millis).toString(), Result.formatDate(millis));
+	}
+
+	/**
+	 * Wiederholtes Serialisieren in einen wiederverwendeten Puffer erzeugt keinen
+	 * Müll. Gemessen mit dem Zähler der allokierten Bytes des Threads.
+	 */
+	@Test
+	public void testAppendXmlWithoutGarbage() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		List<String> classNames = new ArrayList<String>();
+		List<Double> probabilities = new ArrayList<Double>();
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		for (int i = 0; i < 10; i++) {
+			classNames.add(i % 2 == 0 ? "cat" : "dog");
+			probabilities.add((double) (0.5f + i * 0.03125f));
+			boundingBoxes.add(new Rectangle(0.0625f * i, 0.125f, 0.25f, 0.5f));
+		}
+		Result r = new Result("img001.png", 640, 480, new DetectedObjects(classNames, probabilities, boundingBoxes),
+				300);
+		StringBuilder buffer = new StringBuilder(8192);
+		for (int i = 0; i < 20_000; i++) { // Aufwärmen, JIT
+			buffer.setLength(0);
+			r.appendXml(buffer);
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		int iterations = 1000;
+		for (int i = 0; i < iterations; i++) {
+			buffer.setLength(0);
+			r.appendXml(buffer);
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+		// Toleranz für die Messung selbst, pro Aufruf weniger als 1 Byte
+		assertTrue(allocated < iterations, allocated + " bytes allocated");
+	}
 }
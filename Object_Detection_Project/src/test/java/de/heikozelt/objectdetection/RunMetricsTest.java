@@ -0,0 +1,105 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JUnit-Tests für Klasse RunMetrics
+ * @author Heiko Zelt
+ */
+public class RunMetricsTest {
+
+	@TempDir
+	Path tempDir;
+
+	private RunMetrics sample() {
+		RunMetrics metrics = new RunMetrics();
+		for (int i = 1; i <= 10; i++) {
+			metrics.record(RunMetrics.PREDICT, i * 1_000_000L);
+			metrics.record(RunMetrics.SERIALIZE, 5_000L);
+			metrics.imageDone();
+		}
+		metrics.stop();
+		return metrics;
+	}
+
+	@Test
+	public void testSummary() {
+		RunMetrics metrics = sample();
+		List<String> lines = metrics.summary();
+		// Stufen ohne Messwerte werden nicht protokolliert
+		assertEquals(5, lines.size());
+		assertTrue(lines.get(0).startsWith("stage predict   count=10 mean=5.500 p50=5."), lines.get(0));
+		assertTrue(lines.get(0).endsWith("max=10.000 msec"), lines.get(0));
+		assertTrue(lines.get(2).startsWith("throughput 10 images in "), lines.get(2));
+		assertTrue(lines.get(3).startsWith("resources start rss="), lines.get(3));
+		assertTrue(lines.get(4).startsWith("resources end   rss="), lines.get(4));
+		assertTrue(metrics.getThroughput() > 0);
+	}
+
+	@Test
+	public void testWriteJson() throws IOException {
+		Path file = tempDir.resolve("result.metrics.json");
+		sample().writeJson(file);
+		String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		assertTrue(json.contains("\"images\": 10,"), json);
+		assertTrue(json.contains("\"predict\": {\"count\": 10, \"mean_ns\": 5500000, \"p50_ns\": "), json);
+		assertTrue(json.contains("\"max_ns\": 10000000}"), json);
+		assertTrue(json.contains("\"read\": {\"count\": 0,"), json);
+		assertTrue(json.contains("\"resources\": {\"start\": {\"rss_bytes\": "), json);
+	}
+
+	/**
+	 * Zwei Läufe: Kopfzeile nur einmal, dann eine Zeile pro Stufe und Lauf.
+	 */
+	@Test
+	public void testAppendCsv() throws IOException {
+		Path file = tempDir.resolve("result.metrics.csv");
+		sample().appendCsv(file);
+		sample().appendCsv(file);
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals(1 + 2 * 5, lines.size());
+		assertTrue(lines.get(0).startsWith("timestamp,images,"));
+		assertTrue(lines.get(3).contains(",10,") && lines.get(3).contains(",predict,10,5500000,"), lines.get(3));
+		assertTrue(lines.get(3).endsWith(",10000000"), lines.get(3));
+	}
+
+	@Test
+	public void testFilename() {
+		assertEquals("export/result.metrics.json", RunMetrics.filename("export/result.xml", "json"));
+		assertEquals("export/pytorch_result.metrics.csv", RunMetrics.filename("export/pytorch_result{i}.xml", "csv"));
+		assertEquals("out.metrics.csv", RunMetrics.filename("out", "csv"));
+	}
+
+	/**
+	 * Die Phasen des Programmstarts stehen in Zusammenfassung, JSON und CSV.
+	 */
+	@Test
+	public void testStartup() throws IOException {
+		RunMetrics metrics = sample();
+		metrics.recordStartup("engine", 2_000_000L);
+		metrics.recordStartup("load-model", 3_000_000L);
+		assertEquals("startup engine=2.000 load-model=3.000 total=5.000 msec", metrics.summary().get(0));
+
+		Path json = tempDir.resolve("result.metrics.json");
+		metrics.writeJson(json);
+		assertTrue(new String(Files.readAllBytes(json), StandardCharsets.UTF_8)
+				.contains("\"startup_ns\": {\"engine\": 2000000, \"load-model\": 3000000},"));
+
+		Path csv = tempDir.resolve("result.metrics.csv");
+		metrics.appendCsv(csv);
+		List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+		assertEquals(1 + 5 + 2, lines.size());
+		assertTrue(lines.get(7).endsWith(",startup.load-model,1,3000000,3000000,3000000,3000000,3000000"),
+				lines.get(7));
+	}
+}
@@ -0,0 +1,90 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit-Tests für Klasse Shard
+ * @author Heiko Zelt
+ */
+public class ShardTest {
+
+	@Test
+	public void testParse() {
+		Shard shard = Shard.parse("2/4");
+		assertEquals(2, shard.getIndex());
+		assertEquals(4, shard.getCount());
+		assertEquals("2/4", shard.toString());
+		assertThrows(IllegalArgumentException.class, () -> Shard.parse("0/4"));
+		assertThrows(IllegalArgumentException.class, () -> Shard.parse("5/4"));
+		assertThrows(IllegalArgumentException.class, () -> Shard.parse("2"));
+		assertThrows(IllegalArgumentException.class, () -> Shard.parse("a/b"));
+	}
+
+	/**
+	 * Jedes Bild gehört zu genau einem Teil, die Teile sind ungefähr gleich
+	 * groß.
+	 */
+	@Test
+	public void testPartition() {
+		int n = 4;
+		int[] sizes = new int[n];
+		for (int f = 0; f < 10000; f++) {
+			String name = String.format("sub%d/IMG_%05d.jpg", f % 7, f);
+			int owners = 0;
+			for (int i = 1; i <= n; i++) {
+				if (new Shard(i, n).contains(name)) {
+					owners++;
+					sizes[i - 1]++;
+				}
+			}
+			assertEquals(1, owners, name);
+		}
+		for (int size : sizes) {
+			assertTrue(size > 2300 && size < 2700, Arrays.toString(sizes));
+		}
+	}
+
+	/**
+	 * Die Aufteilung hängt nur vom Namen ab und ist auf allen Rechnern gleich.
+	 */
+	@Test
+	public void testStable() {
+		// CRC32("0006.png") = 0x5e236142
+		assertEquals(0x5e236142L % 5 + 1, Shard.of("0006.png", 5));
+		assertEquals(Shard.of("sub/0006.png", 3), Shard.of("sub\\0006.png", 3));
+		assertTrue(new Shard(1, 1).contains("0006.png"));
+	}
+
+	@Test
+	public void testFilter() {
+		List<String> names = new ArrayList<String>();
+		for (int f = 0; f < 20; f++) {
+			names.add(f + ".png");
+		}
+		Shard shard = new Shard(2, 3);
+		Iterator<String> it = shard.filter(names.iterator());
+		int count = 0;
+		String previous = null;
+		while (it.hasNext()) {
+			String name = it.next();
+			assertTrue(shard.contains(name));
+			if (previous != null) {
+				assertTrue(names.indexOf(previous) < names.indexOf(name));
+			}
+			previous = name;
+			count++;
+		}
+		assertEquals(names.stream().filter(shard::contains).count(), count);
+		assertFalse(it.hasNext());
+	}
+}
@@ -0,0 +1,88 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * JUnit-Tests für Klasse StreamingXmlExporter
+ * @author Heiko Zelt
+ */
+public class StreamingXmlExporterTest {
+
+	@TempDir
+	Path tempDir;
+
+	private Result[] sampleResults() {
+		List<String> classNames = new ArrayList<String>();
+		classNames.add("cat");
+		classNames.add("dog");
+		List<Double> probabilities = new ArrayList<Double>();
+		probabilities.add(0.5);
+		probabilities.add(0.75);
+		List<BoundingBox> boundingBoxes = new ArrayList<BoundingBox>();
+		boundingBoxes.add(new Rectangle(0.1d, 0.2d, 0.3d, 0.4d));
+		boundingBoxes.add(new Rectangle(0.5d, 0.5d, 0.25d, 0.25d));
+		DetectedObjects objects = new DetectedObjects(classNames, probabilities, boundingBoxes);
+		DetectedObjects none = new DetectedObjects(new ArrayList<String>(), new ArrayList<Double>(),
+				new ArrayList<BoundingBox>());
+		Result[] results = { new Result("img001.png", 100, 200, objects, 300),
+				new Result("Bär.png", 640, 480, none, 10) };
+		return results;
+	}
+
+	/**
+	 * Das gestreamte Dokument muss genau dem "großen" XML-String entsprechen.
+	 */
+	@Test
+	public void testSameAsResultsAsXml() throws IOException {
+		Result[] results = sampleResults();
+		StringWriter writer = new StringWriter();
+		try (StreamingXmlExporter exporter = new StreamingXmlExporter(writer)) {
+			for (Result r : results) {
+				exporter.accept(r);
+			}
+			assertEquals(2, exporter.getCount());
+		}
+		assertEquals(BatchJob.resultsAsXml(results), writer.toString());
+	}
+
+	/**
+	 * Die Datei wird als UTF-8 geschrieben, Kopf und Ende genau einmal.
+	 */
+	@Test
+	public void testFileIsUtf8() throws IOException {
+		Result[] results = sampleResults();
+		Path file = tempDir.resolve("result.xml");
+		try (StreamingXmlExporter exporter = new StreamingXmlExporter(file)) {
+			for (Result r : results) {
+				exporter.accept(r);
+			}
+		}
+		String xml = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		assertEquals(BatchJob.resultsAsXml(results), xml);
+	}
+
+	/**
+	 * Auch ohne Ergebnisse entsteht ein gültiges Dokument.
+	 */
+	@Test
+	public void testEmpty() throws IOException {
+		StringWriter writer = new StringWriter();
+		new StreamingXmlExporter(writer).close();
+		assertEquals(StreamingXmlExporter.HEADER + StreamingXmlExporter.FOOTER, writer.toString());
+	}
+}
@@ -0,0 +1,77 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import ai.djl.modality.cv.Image;
+
+/**
+ * JUnit-Tests für Klasse SubsampledImage
+ * @author Heiko Zelt
+ */
+public class SubsampledImageTest {
+
+	private byte[] png(int width, int height) throws IOException {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(img, "png", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Faktor so, dass die kürzere Kante nicht kleiner als minEdge wird
+	 */
+	@Test
+	public void testSubsampling() {
+		assertEquals(5, SubsampledImage.subsampling(4000, 3000, 600));
+		assertEquals(4, SubsampledImage.subsampling(2400, 4000, 600));
+		assertEquals(1, SubsampledImage.subsampling(800, 600, 600));
+		assertEquals(1, SubsampledImage.subsampling(400, 300, 600));
+		assertEquals(1, SubsampledImage.subsampling(4000, 3000, 0));
+	}
+
+	/**
+	 * großes Bild wird verkleinert dekodiert, Originalgröße bleibt erhalten
+	 */
+	@Test
+	public void testDecodeLarge() throws IOException {
+		Image img = SubsampledImage.decode(png(400, 200), 50);
+		assertTrue(img instanceof SubsampledImage);
+		assertEquals(100, img.getWidth());
+		assertEquals(50, img.getHeight());
+		assertEquals(400, SubsampledImage.originalWidth(img));
+		assertEquals(200, SubsampledImage.originalHeight(img));
+		BufferedImage wrapped = (BufferedImage) img.getWrappedImage();
+		assertEquals(100, wrapped.getWidth());
+	}
+
+	/**
+	 * kleines Bild wird ganz dekodiert
+	 */
+	@Test
+	public void testDecodeSmall() throws IOException {
+		Image img = SubsampledImage.decode(png(80, 60), 50);
+		assertFalse(img instanceof SubsampledImage);
+		assertEquals(80, img.getWidth());
+		assertEquals(80, SubsampledImage.originalWidth(img));
+		assertEquals(60, SubsampledImage.originalHeight(img));
+	}
+
+	/**
+	 * keine Bilddatei
+	 */
+	@Test
+	public void testDecodeInvalid() {
+		assertThrows(IOException.class, () -> SubsampledImage.decode("kein Bild".getBytes(), 50));
+	}
+}
@@ -0,0 +1,143 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+/**
+ * JUnit-Tests für Klasse TiledInference
+ * @author Heiko Zelt
+ */
+@ExtendWith(MockitoExtension.class)
+public class TiledInferenceTest {
+
+	@Mock
+	Predictor<Image, DetectedObjects> predictor;
+
+	private static DetectedObjects objects(String className, double probability, double x, double y, double w,
+			double h) {
+		List<BoundingBox> boxes = new ArrayList<BoundingBox>();
+		boxes.add(new Rectangle(x, y, w, h));
+		return new DetectedObjects(Arrays.asList(className), Arrays.asList(probability), boxes);
+	}
+
+	private static Image image(int width, int height) {
+		return ImageFactory.getInstance().fromImage(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+	}
+
+	private static DetectedObjects none() {
+		return new DetectedObjects(new ArrayList<String>(), new ArrayList<Double>(), new ArrayList<BoundingBox>());
+	}
+
+	/**
+	 * Die Kacheln decken die ganze Kante ab und überlappen sich mindestens um
+	 * overlap Pixel.
+	 */
+	@Test
+	public void testPositions() {
+		assertArrayEquals(new int[] { 0 }, TiledInference.positions(1000, 1024, 128));
+		assertArrayEquals(new int[] { 0, 512, 1024 }, TiledInference.positions(2048, 1024, 128));
+		int[] starts = TiledInference.positions(8000, 1024, 128);
+		assertEquals(0, starts[0]);
+		assertEquals(8000 - 1024, starts[starts.length - 1]);
+		for (int i = 1; i < starts.length; i++) {
+			assertTrue(starts[i] - starts[i - 1] <= 1024 - 128);
+		}
+	}
+
+	@Test
+	public void testTiles() {
+		TiledInference tiling = new TiledInference(1024, 128, 512);
+		List<int[]> tiles = tiling.tiles(3000, 2000);
+		assertEquals(4 * 3 + 1, tiles.size());
+		assertArrayEquals(new int[] { 3000 - 1024, 2000 - 1024, 1024, 1024 }, tiles.get(11));
+		assertArrayEquals(new int[] { 0, 0, 3000, 2000 }, tiles.get(12));
+		assertTrue(tiling.applies(image(1025, 10)));
+		assertFalse(tiling.applies(image(1024, 1024)));
+	}
+
+	@Test
+	public void testTilesPerBatch() {
+		// 1024 x 1024 Pixel x 3 Farben x 4 Bytes = 12 MB pro Kachel
+		assertEquals(1, new TiledInference(1024, 128, 12).getTilesPerBatch());
+		assertEquals(42, new TiledInference(1024, 128, 512).getTilesPerBatch());
+	}
+
+	/**
+	 * 2048 x 1024 Pixel ergeben 3 Kacheln und das ganze Bild. Die Katze liegt im
+	 * Überlappungsbereich der ersten beiden Kacheln und wird nur einmal
+	 * übernommen, mit Koordinaten relativ zum ganzen Bild.
+	 */
+	@Test
+	public void testPredict() throws Exception {
+		when(predictor.batchPredict(anyList())).thenReturn(Arrays.asList(objects("cat", 0.9, 0.5, 0.5, 0.25, 0.25),
+				objects("cat", 0.8, 0.0, 0.5, 0.25, 0.25), objects("dog", 0.7, 0.5, 0.5, 0.1, 0.1), none()));
+		Image img = image(2048, 1024);
+		DetectedObjects merged = new TiledInference(1024, 128, 512).predict(img, predictor);
+		verify(predictor).batchPredict(anyList());
+		Result result = new Result("big.png", 2048, 1024, merged, 0);
+		assertEquals(2, result.getNumberOfObjects());
+		assertEquals("cat", result.getClassName(0));
+		assertEquals(0.9f, result.getProbability(0));
+		assertEquals(0.25f, result.getX(0), 1e-6);
+		assertEquals(0.5f, result.getY(0), 1e-6);
+		assertEquals(0.125f, result.getBoxWidth(0), 1e-6);
+		assertEquals(0.25f, result.getBoxHeight(0), 1e-6);
+		assertEquals("dog", result.getClassName(1));
+		assertEquals(0.75f, result.getX(1), 1e-6);
+		assertEquals(0.05f, result.getBoxWidth(1), 1e-6);
+	}
+
+	/**
+	 * Passt nur eine Kachel ins Speicherbudget, wird jede Kachel einzeln
+	 * analysiert.
+	 */
+	@Test
+	public void testPredict_SmallBudget() throws Exception {
+		when(predictor.predict(any(Image.class))).thenReturn(none());
+		Image img = image(2048, 1024);
+		DetectedObjects merged = new TiledInference(1024, 128, 12).predict(img, predictor);
+		assertEquals(0, merged.getNumberOfObjects());
+		verify(predictor, times(4)).predict(any(Image.class));
+		verify(predictor, never()).batchPredict(anyList());
+	}
+
+	/**
+	 * Nur Objekte derselben Klasse werden zusammengeführt.
+	 */
+	@Test
+	public void testMerge() {
+		List<float[]> boxes = Arrays.asList(new float[] { 0.1f, 0.1f, 0.2f, 0.2f },
+				new float[] { 0.1f, 0.1f, 0.2f, 0.2f }, new float[] { 0.11f, 0.1f, 0.2f, 0.2f });
+		DetectedObjects merged = TiledInference.merge(Arrays.asList("cat", "dog", "cat"), Arrays.asList(0.6, 0.7, 0.8),
+				boxes);
+		assertEquals(2, merged.getNumberOfObjects());
+		assertEquals("cat", merged.item(0).getClassName());
+		assertEquals(0.8, merged.item(0).getProbability(), 1e-9);
+		assertEquals("dog", merged.item(1).getClassName());
+	}
+}
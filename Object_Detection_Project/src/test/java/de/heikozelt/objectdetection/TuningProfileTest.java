@@ -0,0 +1,76 @@
+package de.heikozelt.objectdetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JUnit-Tests für Klasse TuningProfile
+ * @author Heiko Zelt
+ */
+public class TuningProfileTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testSaveLoad() throws IOException {
+		Path file = tempDir.resolve("profiles/autotune.properties");
+		new TuningProfile("PyTorch", 8, 4, 2, 2, 1, 12.5).save(file);
+		TuningProfile p = TuningProfile.load(file);
+		assertEquals("PyTorch", p.getEngine());
+		assertEquals(8, p.getCores());
+		assertEquals(4, p.getWorkers());
+		assertEquals(2, p.getBatchSize());
+		assertEquals(2, p.getIntraOpThreads());
+		assertEquals(1, p.getInterOpThreads());
+		assertEquals(12.5, p.getImagesPerSec(), 1e-9);
+		assertEquals("PyTorch: 4 Worker, Batch 2, Threads 2/1, 12.5 Bilder/s", p.toString());
+	}
+
+	@Test
+	public void testLoad_Invalid() throws IOException {
+		Path missing = tempDir.resolve("missing.properties");
+		Files.write(missing, "engine=PyTorch\ncores=8\n".getBytes("UTF-8"));
+		assertThrows(IOException.class, () -> TuningProfile.load(missing));
+		Path invalid = tempDir.resolve("invalid.properties");
+		Files.write(invalid, "engine=PyTorch\ncores=8\nworkers=0\nbatch_size=1\n".getBytes("UTF-8"));
+		assertThrows(IOException.class, () -> TuningProfile.load(invalid));
+	}
+
+	/**
+	 * Werte von der Kommandozeile haben Vorrang, 0 setzt nichts.
+	 */
+	@Test
+	public void testApplyThreadProperties() {
+		String intra = System.getProperty(TuningProfile.INTRA_OP_PROPERTY);
+		String inter = System.getProperty(TuningProfile.INTER_OP_PROPERTY);
+		try {
+			System.clearProperty(TuningProfile.INTRA_OP_PROPERTY);
+			System.setProperty(TuningProfile.INTER_OP_PROPERTY, "3");
+			new TuningProfile("PyTorch", 8, 4, 1, 2, 1, 10).applyThreadProperties();
+			assertEquals("2", System.getProperty(TuningProfile.INTRA_OP_PROPERTY));
+			assertEquals("3", System.getProperty(TuningProfile.INTER_OP_PROPERTY));
+			System.clearProperty(TuningProfile.INTRA_OP_PROPERTY);
+			new TuningProfile("TensorFlow", 8, 4, 1, 0, 0, 10).applyThreadProperties();
+			assertEquals(null, System.getProperty(TuningProfile.INTRA_OP_PROPERTY));
+		} finally {
+			restore(TuningProfile.INTRA_OP_PROPERTY, intra);
+			restore(TuningProfile.INTER_OP_PROPERTY, inter);
+		}
+	}
+
+	private static void restore(String key, String value) {
+		if (value == null) {
+			System.clearProperty(key);
+		} else {
+			System.setProperty(key, value);
+		}
+	}
+}